@@ -1,8 +1,23 @@
 package com.syrobin.cloud.commons.auto;
 
 import com.syrobin.cloud.commons.config.DefaultLoadBalancerConfiguration;
+import com.syrobin.cloud.commons.config.LoadBalancerClientProperties;
+import com.syrobin.cloud.commons.loadbalancer.ActiveHealthChecker;
+import com.syrobin.cloud.commons.loadbalancer.DiscoverySnapshotStore;
+import com.syrobin.cloud.commons.loadbalancer.InflightTracker;
+import com.syrobin.cloud.commons.loadbalancer.InstanceRefreshNotifier;
+import com.syrobin.cloud.commons.loadbalancer.OutlierDetector;
+import com.syrobin.cloud.commons.loadbalancer.PeakEwmaTracker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Paths;
+import java.time.Duration;
 
 /**
  * @author syrobin
@@ -13,4 +28,79 @@ import org.springframework.context.annotation.Configuration;
 @Configuration(proxyBeanMethods = false)
 @LoadBalancerClients(defaultConfiguration = DefaultLoadBalancerConfiguration.class)
 public class LoadBalancerAutoConfiguration {
+    private static final String OUTLIER_DETECTION = LoadBalancerClientProperties.PREFIX + ".outlier-detection.";
+    private static final String SNAPSHOT = LoadBalancerClientProperties.PREFIX + ".snapshot.";
+    private static final String HEALTH_CHECK = LoadBalancerClientProperties.PREFIX + ".health-check.";
+
+    /**
+     * 所有微服务共享，每个微服务的负载均衡器在各自的子 ApplicationContext 中，通过父 ApplicationContext 获取
+     * 断路器是全局的，如果每个负载均衡器都订阅一次，每个断路器事件会被处理多次
+     */
+    @Bean
+    public PeakEwmaTracker peakEwmaTracker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        PeakEwmaTracker peakEwmaTracker = new PeakEwmaTracker();
+        peakEwmaTracker.bindTo(circuitBreakerRegistry);
+        return peakEwmaTracker;
+    }
+
+    /**
+     * 在途请求数，同样所有微服务共享，LoadBalancerLifecycle 会从父 ApplicationContext 中获取
+     */
+    @Bean
+    public InflightTracker inflightTracker() {
+        return new InflightTracker();
+    }
+
+    /**
+     * 异常实例检测，同样所有微服务共享，是否驱逐由每个微服务的 outlier-detection.enabled 配置决定
+     */
+    @Bean
+    public OutlierDetector outlierDetector(Environment environment) {
+        return new OutlierDetector(
+                environment.getProperty(OUTLIER_DETECTION + "consecutive-failures", Integer.class, OutlierDetector.DEFAULT_CONSECUTIVE_FAILURES),
+                environment.getProperty(OUTLIER_DETECTION + "base-ejection-time", Duration.class, OutlierDetector.DEFAULT_BASE_EJECTION_TIME),
+                environment.getProperty(OUTLIER_DETECTION + "max-ejection-time", Duration.class, OutlierDetector.DEFAULT_MAX_EJECTION_TIME)
+        );
+    }
+
+    /**
+     * 注册中心客户端本地缓存刷新的通知，所有微服务共享，每个微服务的实例列表缓存订阅之后在注册表拉取之后马上刷新
+     */
+    @Bean
+    public InstanceRefreshNotifier instanceRefreshNotifier() {
+        return new InstanceRefreshNotifier();
+    }
+
+    /**
+     * 实例列表的本地文件快照，所有微服务共用一个文件，配置 snapshot.enabled 为 true 开启
+     * 默认保存在 ${user.home}/.syrobin/discovery-snapshot/${spring.application.name}.bin
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = LoadBalancerClientProperties.PREFIX + ".snapshot", name = "enabled", havingValue = "true")
+    public DiscoverySnapshotStore discoverySnapshotStore(Environment environment) {
+        String path = environment.getProperty(SNAPSHOT + "path");
+        return new DiscoverySnapshotStore(
+                path != null ? Paths.get(path) : Paths.get(System.getProperty("user.home"), ".syrobin", "discovery-snapshot",
+                        environment.getProperty("spring.application.name", "application") + ".bin"),
+                environment.getProperty(SNAPSHOT + "max-age", Duration.class, DiscoverySnapshotStore.DEFAULT_MAX_AGE),
+                environment.getProperty(SNAPSHOT + "write-delay", Duration.class, DiscoverySnapshotStore.DEFAULT_WRITE_DELAY)
+        );
+    }
+
+    /**
+     * 主动健康检查的探测器，所有微服务共享事件循环线程、连接池以及并发限制，是否探测由每个微服务的 health-check.enabled 配置决定
+     * 需要 reactor-netty 依赖，放在单独的配置类中，没有依赖的时候不会加载 ActiveHealthChecker
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "reactor.netty.http.client.HttpClient")
+    static class ActiveHealthCheckConfiguration {
+        @Bean
+        public ActiveHealthChecker activeHealthChecker(Environment environment) {
+            return new ActiveHealthChecker(
+                    environment.getProperty(HEALTH_CHECK + "max-concurrency", Integer.class, ActiveHealthChecker.DEFAULT_MAX_CONCURRENCY),
+                    environment.getProperty(HEALTH_CHECK + "timeout", Duration.class, ActiveHealthChecker.DEFAULT_TIMEOUT),
+                    environment.getProperty(HEALTH_CHECK + "threads", Integer.class, ActiveHealthChecker.DEFAULT_THREADS)
+            );
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package com.syrobin.cloud.commons.auto;
+
+import brave.baggage.BaggagePropagationCustomizer;
+import brave.baggage.BaggagePropagationConfig.SingleBaggageField;
+import com.syrobin.cloud.commons.resilience4j.RequestDeadline;
+import com.syrobin.cloud.commons.resilience4j.RetryBudgetRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description:
+ * @date 2026-10-18 20:40
+ */
+@Configuration(proxyBeanMethods = false)
+public class Resilience4jAutoConfiguration {
+    private static final String RETRY_BUDGET = "resilience4j.retry-budget.";
+
+    /**
+     * 重试预算，OpenFeign 以及 WebClient 所有微服务共享，每个微服务各自一个 RetryBudget，在各自子 ApplicationContext 的重试判断中使用
+     * 默认开启，配置 resilience4j.retry-budget.enabled 为 false 关闭，关闭之后只有 Retry 的最大重试次数限制
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "resilience4j.retry-budget", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public RetryBudgetRegistry retryBudgetRegistry(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new RetryBudgetRegistry(
+                environment.getProperty(RETRY_BUDGET + "ratio", Double.class, RetryBudgetRegistry.DEFAULT_RATIO),
+                environment.getProperty(RETRY_BUDGET + "min-retries-per-second", Integer.class, RetryBudgetRegistry.DEFAULT_MIN_RETRIES_PER_SECOND),
+                meterRegistry.getIfAvailable()
+        );
+    }
+
+    /**
+     * 调用链的截止时间作为 baggage 从请求头中读取，并且传递给之后的 OpenFeign 以及 WebClient 调用，不需要再配置 spring.sleuth.baggage.remote-fields
+     */
+    @Bean
+    public BaggagePropagationCustomizer requestDeadlineBaggagePropagationCustomizer() {
+        return builder -> builder.add(SingleBaggageField.remote(RequestDeadline.FIELD));
+    }
+}
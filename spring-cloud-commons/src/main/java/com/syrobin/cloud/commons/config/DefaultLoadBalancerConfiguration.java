@@ -1,27 +1,57 @@
 package com.syrobin.cloud.commons.config;
 
 import brave.Tracer;
+import com.syrobin.cloud.commons.loadbalancer.ActiveHealthCheckServiceInstanceListSupplier;
+import com.syrobin.cloud.commons.loadbalancer.ActiveHealthChecker;
+import com.syrobin.cloud.commons.loadbalancer.AttemptTable;
+import com.syrobin.cloud.commons.loadbalancer.BackgroundRankedInstanceSelector;
+import com.syrobin.cloud.commons.loadbalancer.DiscoverySnapshotStore;
+import com.syrobin.cloud.commons.loadbalancer.InflightTracker;
+import com.syrobin.cloud.commons.loadbalancer.InstanceRefreshNotifier;
+import com.syrobin.cloud.commons.loadbalancer.InstanceSelector;
+import com.syrobin.cloud.commons.loadbalancer.InstanceTopology;
+import com.syrobin.cloud.commons.loadbalancer.LeastOutstandingInstanceSelector;
+import com.syrobin.cloud.commons.loadbalancer.LoadBalancerMode;
+import com.syrobin.cloud.commons.loadbalancer.LocalityAwareServiceInstanceListSupplier;
+import com.syrobin.cloud.commons.loadbalancer.MaglevInstanceSelector;
+import com.syrobin.cloud.commons.loadbalancer.OutlierDetector;
+import com.syrobin.cloud.commons.loadbalancer.OutlierEjectingServiceInstanceListSupplier;
+import com.syrobin.cloud.commons.loadbalancer.PeakEwmaInstanceSelector;
+import com.syrobin.cloud.commons.loadbalancer.PeakEwmaTracker;
+import com.syrobin.cloud.commons.loadbalancer.PowerOfTwoChoicesInstanceSelector;
+import com.syrobin.cloud.commons.loadbalancer.RankingInstanceSelector;
 import com.syrobin.cloud.commons.loadbalancer.SameZoneOnlyServiceInstanceListSupplier;
+import com.syrobin.cloud.commons.loadbalancer.SlowStart;
+import com.syrobin.cloud.commons.loadbalancer.SlowStartInstanceSelector;
+import com.syrobin.cloud.commons.loadbalancer.SnapshotServiceInstanceListSupplier;
+import com.syrobin.cloud.commons.loadbalancer.StaleWhileRevalidateServiceInstanceListSupplier;
+import com.syrobin.cloud.commons.loadbalancer.SubsetServiceInstanceListSupplier;
 import com.syrobin.cloud.commons.loadbalancer.TracedCircuitBreakerRoundRobinLoadBalancer;
+import com.syrobin.cloud.commons.loadbalancer.WeightedRoundRobinInstanceSelector;
 import com.syrobin.cloud.commons.resilience4j.CircuitBreakerExtractor;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
-import org.springframework.cloud.loadbalancer.cache.LoadBalancerCacheManager;
+import org.springframework.cloud.client.serviceregistry.Registration;
 import org.springframework.cloud.loadbalancer.config.LoadBalancerZoneConfig;
-import org.springframework.cloud.loadbalancer.core.CachingServiceInstanceListSupplier;
 import org.springframework.cloud.loadbalancer.core.DiscoveryClientServiceInstanceListSupplier;
 import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
 import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
 import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
-import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import reactor.core.publisher.Flux;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
 
 /**
  * @author syrobin
@@ -31,6 +61,63 @@ import org.springframework.core.env.Environment;
  */
 @Configuration(proxyBeanMethods = false)
 public class DefaultLoadBalancerConfiguration {
+    /**
+     * 每个微服务记录已尝试实例的表的容量上限，表从很小开始按需扩容，同时在途（3 分钟内）的 traceId 个数超过 75% 容量上限会提前淘汰最旧的记录
+     */
+    public static final String ATTEMPT_TABLE_CAPACITY = "attempt-table.capacity";
+    /**
+     * 划分网段故障域的 CIDR 前缀长度，参考 InstanceTopology
+     */
+    public static final String TOPOLOGY_IPV4_PREFIX = "topology.ipv4-prefix";
+    public static final String TOPOLOGY_IPV6_PREFIX = "topology.ipv6-prefix";
+    /**
+     * 负载均衡模式，参考 LoadBalancerMode
+     */
+    public static final String MODE = "mode";
+    /**
+     * 一致性哈希模式下，从哪个请求头或者请求 attribute 中读取 key
+     */
+    public static final String HASH_KEY_HEADER = "hash-key.header";
+    public static final String HASH_KEY_ATTRIBUTE = "hash-key.attribute";
+    public static final String DEFAULT_HASH_KEY = "hash-key";
+    /**
+     * background-ranked 模式下后台排序的间隔
+     */
+    public static final String RANKING_REFRESH_INTERVAL = "ranking.refresh-interval";
+    /**
+     * 确定性子集大小，默认不使用子集
+     */
+    public static final String SUBSET_SIZE = "subset.size";
+    /**
+     * 同 zone 容量不足时是否溢出到其他 zone，以及开始溢出的容量阈值
+     */
+    public static final String ZONE_SPILLOVER = "zone.spillover";
+    public static final String ZONE_SPILLOVER_THRESHOLD = "zone.spillover-threshold";
+    /**
+     * 新实例预热时间，默认不预热
+     */
+    public static final String SLOW_START_WINDOW = "slow-start.window";
+    /**
+     * 异常实例驱逐，默认不驱逐，驱逐的阈值是所有微服务共享的，参考 LoadBalancerAutoConfiguration#outlierDetector
+     */
+    public static final String OUTLIER_DETECTION_ENABLED = "outlier-detection.enabled";
+    public static final String OUTLIER_DETECTION_MAX_EJECTION_PERCENT = "outlier-detection.max-ejection-percent";
+    public static final int DEFAULT_MAX_EJECTION_PERCENT = 50;
+    /**
+     * 实例列表后台刷新间隔，以及注册中心返回空列表时继续使用之前列表的时间
+     */
+    public static final String INSTANCES_REFRESH_INTERVAL = "instances.refresh-interval";
+    public static final String INSTANCES_EMPTY_SAFETY_WINDOW = "instances.empty-safety-window";
+    /**
+     * 是否在注册中心客户端拉取注册表之后马上刷新实例列表，默认开启
+     */
+    public static final String INSTANCES_EVENT_REFRESH = "instances.event-refresh";
+    /**
+     * 主动健康检查，默认不检查，探测并发以及超时是所有微服务共享的，参考 LoadBalancerAutoConfiguration#activeHealthChecker
+     */
+    public static final String HEALTH_CHECK_ENABLED = "health-check.enabled";
+    public static final String HEALTH_CHECK_PATH = "health-check.path";
+    public static final String HEALTH_CHECK_INTERVAL = "health-check.interval";
 
     @Bean
     //有这个类代表有 spring-mvc 依赖
@@ -39,26 +126,35 @@ public class DefaultLoadBalancerConfiguration {
     public ServiceInstanceListSupplier serviceInstanceListSupplier(
             DiscoveryClient discoveryClient,
             Environment env,
-            ConfigurableApplicationContext context,
-            LoadBalancerZoneConfig zoneConfig
+            ObjectProvider<MeterRegistry> meterRegistry,
+            LoadBalancerZoneConfig zoneConfig,
+            ObjectProvider<Registration> registration,
+            OutlierDetector outlierDetector,
+            ObjectProvider<DiscoverySnapshotStore> snapshotStore,
+            ObjectProvider<InstanceRefreshNotifier> refreshNotifier,
+            ObjectProvider<ActiveHealthChecker> healthChecker
     ) {
-        ObjectProvider<LoadBalancerCacheManager> cacheManagerProvider = context
-                //获取缓存管理器（这里其实就是 Caffeine），不能直接注入，会有找不到 Bean 的问题，因为加载顺序不可控
-                .getBeanProvider(LoadBalancerCacheManager.class);
-
-        //这里的流程就是，首先通过 DiscoveryClientServiceInstanceListSupplier 使用 discoveryClient 获取对应微服务的实例列表
-        //然后通过我们自定义的 SameZoneOnlyServiceInstanceListSupplier 进行筛选
-        //最后通过 CachingServiceInstanceListSupplier 将结果缓存起来
-        return  //使用框架内置的 CachingServiceInstanceListSupplier 开启服务实例缓存，缓存需要在最外层，即缓存经过前面所有的 Supplier 筛选后的结果
-                new CachingServiceInstanceListSupplier(
-                        //使用我们自定义的 SameZoneOnlyServiceInstanceListSupplier，只能返回同一个 zone 的服务实例
-                        new SameZoneOnlyServiceInstanceListSupplier(
-                                //使用框架内置的 DiscoveryClientServiceInstanceListSupplier，通过 discoveryClient 的服务发现获取初始实例列表
-                                new DiscoveryClientServiceInstanceListSupplier(discoveryClient, env),
-                                zoneConfig
+        //这里的流程就是，首先通过 DiscoveryClientServiceInstanceListSupplier 使用 discoveryClient 获取对应微服务的实例列表，开启了快照的话保存到本地文件
+        //然后通过我们自定义的 LocalityAwareServiceInstanceListSupplier 按照 zone 进行筛选，再通过 SubsetServiceInstanceListSupplier 取子集
+        //然后通过 StaleWhileRevalidateServiceInstanceListSupplier 将结果缓存起来并在后台刷新，最后去掉健康检查失败以及被驱逐的异常实例
+        return withOutlierEjection(withHealthCheck(
+                //使用我们自定义的 StaleWhileRevalidateServiceInstanceListSupplier 开启服务实例缓存，缓存需要在筛选实例的 Supplier 外面，即缓存经过前面所有的 Supplier 筛选后的结果
+                withStaleWhileRevalidate(
+                        //使用我们自定义的 SubsetServiceInstanceListSupplier，实例很多的时候只使用固定的一部分
+                        withSubset(
+                                //使用我们自定义的 LocalityAwareServiceInstanceListSupplier，优先返回同一个 zone 的服务实例
+                                withLocality(
+                                        //使用框架内置的 DiscoveryClientServiceInstanceListSupplier，通过 discoveryClient 的服务发现获取初始实例列表
+                                        //使用我们自定义的 SnapshotServiceInstanceListSupplier，注册中心还没有返回实例的时候使用本地文件快照
+                                        withSnapshot(new DiscoveryClientServiceInstanceListSupplier(discoveryClient, env), env, snapshotStore, meterRegistry),
+                                        env, zoneConfig
+                                ),
+                                env, registration
                         )
-                        , cacheManagerProvider.getIfAvailable()
-                );
+                        , env, meterRegistry, refreshNotifier
+                ), env, healthChecker),
+                env, outlierDetector
+        );
     }
 
     @Bean
@@ -70,26 +166,145 @@ public class DefaultLoadBalancerConfiguration {
     public ServiceInstanceListSupplier serviceInstanceListSupplierReactive(
             ReactiveDiscoveryClient reactiveDiscoveryClient,
             Environment env,
-            ConfigurableApplicationContext context,
-            LoadBalancerZoneConfig zoneConfig
+            ObjectProvider<MeterRegistry> meterRegistry,
+            LoadBalancerZoneConfig zoneConfig,
+            ObjectProvider<Registration> registration,
+            OutlierDetector outlierDetector,
+            ObjectProvider<DiscoverySnapshotStore> snapshotStore,
+            ObjectProvider<InstanceRefreshNotifier> refreshNotifier,
+            ObjectProvider<ActiveHealthChecker> healthChecker
     ) {
-        ObjectProvider<LoadBalancerCacheManager> cacheManagerProvider = context
-                //获取缓存管理器（这里其实就是 Caffeine），不能直接注入，会有找不到 Bean 的问题，因为加载顺序不可控
-                .getBeanProvider(LoadBalancerCacheManager.class);
-
-        //这里的流程就是，首先通过 DiscoveryClientServiceInstanceListSupplier 使用 discoveryClient 获取对应微服务的实例列表
-        //然后通过我们自定义的 SameZoneOnlyServiceInstanceListSupplier 进行筛选
-        //最后通过 CachingServiceInstanceListSupplier 将结果缓存起来
-        return  //使用框架内置的 CachingServiceInstanceListSupplier 开启服务实例缓存，缓存需要在最外层，即缓存经过前面所有的 Supplier 筛选后的结果
-                new CachingServiceInstanceListSupplier(
-                        //使用我们自定义的 SameZoneOnlyServiceInstanceListSupplier，只能返回同一个 zone 的服务实例
-                        new SameZoneOnlyServiceInstanceListSupplier(
-                                //使用框架内置的 DiscoveryClientServiceInstanceListSupplier，通过 discoveryClient 的服务发现获取初始实例列表
-                                new DiscoveryClientServiceInstanceListSupplier(reactiveDiscoveryClient, env),
-                                zoneConfig
+        //这里的流程就是，首先通过 DiscoveryClientServiceInstanceListSupplier 使用 discoveryClient 获取对应微服务的实例列表，开启了快照的话保存到本地文件
+        //然后通过我们自定义的 LocalityAwareServiceInstanceListSupplier 按照 zone 进行筛选，再通过 SubsetServiceInstanceListSupplier 取子集
+        //然后通过 StaleWhileRevalidateServiceInstanceListSupplier 将结果缓存起来并在后台刷新，最后去掉健康检查失败以及被驱逐的异常实例
+        return withOutlierEjection(withHealthCheck(
+                //使用我们自定义的 StaleWhileRevalidateServiceInstanceListSupplier 开启服务实例缓存，缓存需要在筛选实例的 Supplier 外面，即缓存经过前面所有的 Supplier 筛选后的结果
+                withStaleWhileRevalidate(
+                        //使用我们自定义的 SubsetServiceInstanceListSupplier，实例很多的时候只使用固定的一部分
+                        withSubset(
+                                //使用我们自定义的 LocalityAwareServiceInstanceListSupplier，优先返回同一个 zone 的服务实例
+                                withLocality(
+                                        //使用框架内置的 DiscoveryClientServiceInstanceListSupplier，通过 discoveryClient 的服务发现获取初始实例列表
+                                        //使用我们自定义的 SnapshotServiceInstanceListSupplier，注册中心还没有返回实例的时候使用本地文件快照
+                                        withSnapshot(new DiscoveryClientServiceInstanceListSupplier(reactiveDiscoveryClient, env), env, snapshotStore, meterRegistry),
+                                        env, zoneConfig
+                                ),
+                                env, registration
                         )
-                        , cacheManagerProvider.getIfAvailable()
-                );
+                        , env, meterRegistry, refreshNotifier
+                ), env, healthChecker),
+                env, outlierDetector
+        );
+    }
+
+    /**
+     * 默认优先使用同 zone 实例，容量不足时溢出到其他 zone，参考 LocalityAwareServiceInstanceListSupplier
+     * 配置 zone.spillover 为 false 的时候只使用同 zone 实例，参考 SameZoneOnlyServiceInstanceListSupplier
+     */
+    private ServiceInstanceListSupplier withLocality(ServiceInstanceListSupplier delegate, Environment env,
+                                                     LoadBalancerZoneConfig zoneConfig) {
+        String name = env.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        if (!LoadBalancerClientProperties.getProperty(env, name, ZONE_SPILLOVER, Boolean.class, true)) {
+            return new SameZoneOnlyServiceInstanceListSupplier(delegate, zoneConfig);
+        }
+        return new LocalityAwareServiceInstanceListSupplier(delegate, zoneConfig,
+                LoadBalancerClientProperties.getProperty(env, name, ZONE_SPILLOVER_THRESHOLD, Double.class,
+                        LocalityAwareServiceInstanceListSupplier.DEFAULT_SPILLOVER_THRESHOLD));
+    }
+
+    /**
+     * 配置了 subset.size 的时候，只使用固定的一部分实例，参考 SubsetServiceInstanceListSupplier
+     * 调用方实例 id 优先使用注册中心中的实例 id
+     */
+    private ServiceInstanceListSupplier withSubset(ServiceInstanceListSupplier delegate, Environment env,
+                                                   ObjectProvider<Registration> registration) {
+        String name = env.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        int subsetSize = LoadBalancerClientProperties.getProperty(env, name, SUBSET_SIZE, Integer.class, 0);
+        if (subsetSize <= 0) {
+            return delegate;
+        }
+        Registration current = registration.getIfAvailable();
+        String consumerId = current != null && current.getInstanceId() != null
+                ? current.getInstanceId()
+                : env.getProperty("spring.application.name", "") + ":" + getLocalHost() + ":" + env.getProperty("server.port", "");
+        return new SubsetServiceInstanceListSupplier(delegate, consumerId, subsetSize);
+    }
+
+    /**
+     * 开启了 snapshot.enabled 的时候（参考 LoadBalancerAutoConfiguration#discoverySnapshotStore），
+     * 保存注册中心返回的实例列表，注册中心还没有返回实例的时候使用本地文件快照，参考 SnapshotServiceInstanceListSupplier
+     */
+    private ServiceInstanceListSupplier withSnapshot(ServiceInstanceListSupplier delegate, Environment env,
+                                                     ObjectProvider<DiscoverySnapshotStore> snapshotStore,
+                                                     ObjectProvider<MeterRegistry> meterRegistry) {
+        DiscoverySnapshotStore store = snapshotStore.getIfAvailable();
+        if (store == null) {
+            return delegate;
+        }
+        String name = env.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        SnapshotServiceInstanceListSupplier supplier = new SnapshotServiceInstanceListSupplier(delegate, store);
+        meterRegistry.ifAvailable(registry -> Gauge.builder("loadbalancer.instances.snapshot.stale", supplier, s -> s.isStale() ? 1 : 0)
+                .tag("service", name).register(registry));
+        return supplier;
+    }
+
+    /**
+     * 缓存实例列表，后台定时刷新，并且默认在注册中心客户端每次拉取注册表之后刷新（instances.event-refresh），注册中心返回空列表的时候在 instances.empty-safety-window 内继续使用之前的列表，
+     * 参考 StaleWhileRevalidateServiceInstanceListSupplier
+     */
+    private ServiceInstanceListSupplier withStaleWhileRevalidate(ServiceInstanceListSupplier delegate, Environment env,
+                                                                 ObjectProvider<MeterRegistry> meterRegistry,
+                                                                 ObjectProvider<InstanceRefreshNotifier> refreshNotifier) {
+        String name = env.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        InstanceRefreshNotifier notifier = refreshNotifier.getIfAvailable();
+        Flux<?> refreshTrigger = notifier != null && LoadBalancerClientProperties.getProperty(env, name, INSTANCES_EVENT_REFRESH, Boolean.class, true)
+                ? notifier.events() : Flux.never();
+        StaleWhileRevalidateServiceInstanceListSupplier supplier = new StaleWhileRevalidateServiceInstanceListSupplier(delegate,
+                LoadBalancerClientProperties.getProperty(env, name, INSTANCES_REFRESH_INTERVAL, Duration.class,
+                        StaleWhileRevalidateServiceInstanceListSupplier.DEFAULT_REFRESH_INTERVAL),
+                LoadBalancerClientProperties.getProperty(env, name, INSTANCES_EMPTY_SAFETY_WINDOW, Duration.class,
+                        StaleWhileRevalidateServiceInstanceListSupplier.DEFAULT_EMPTY_SAFETY_WINDOW),
+                refreshTrigger);
+        meterRegistry.ifAvailable(registry -> supplier.bindTo(registry, name));
+        return supplier;
+    }
+
+    /**
+     * 配置了 health-check.enabled 并且有 reactor-netty 依赖的时候，去掉主动健康检查失败的实例，参考 ActiveHealthCheckServiceInstanceListSupplier
+     * 健康状态变化需要马上生效，所以放在缓存外面
+     */
+    private ServiceInstanceListSupplier withHealthCheck(ServiceInstanceListSupplier delegate, Environment env,
+                                                        ObjectProvider<ActiveHealthChecker> healthChecker) {
+        String name = env.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        ActiveHealthChecker checker = healthChecker.getIfAvailable();
+        if (checker == null || !LoadBalancerClientProperties.getProperty(env, name, HEALTH_CHECK_ENABLED, Boolean.class, false)) {
+            return delegate;
+        }
+        return new ActiveHealthCheckServiceInstanceListSupplier(delegate, checker,
+                LoadBalancerClientProperties.getProperty(env, name, HEALTH_CHECK_PATH, String.class, ActiveHealthCheckServiceInstanceListSupplier.DEFAULT_PATH),
+                LoadBalancerClientProperties.getProperty(env, name, HEALTH_CHECK_INTERVAL, Duration.class, ActiveHealthCheckServiceInstanceListSupplier.DEFAULT_INTERVAL));
+    }
+
+    /**
+     * 配置了 outlier-detection.enabled 的时候，去掉被驱逐的异常实例，参考 OutlierEjectingServiceInstanceListSupplier
+     * 驱逐需要马上生效，所以放在缓存外面
+     */
+    private ServiceInstanceListSupplier withOutlierEjection(ServiceInstanceListSupplier delegate, Environment env,
+                                                            OutlierDetector outlierDetector) {
+        String name = env.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        if (!LoadBalancerClientProperties.getProperty(env, name, OUTLIER_DETECTION_ENABLED, Boolean.class, false)) {
+            return delegate;
+        }
+        return new OutlierEjectingServiceInstanceListSupplier(delegate, outlierDetector,
+                LoadBalancerClientProperties.getProperty(env, name, OUTLIER_DETECTION_MAX_EJECTION_PERCENT, Integer.class, DEFAULT_MAX_EJECTION_PERCENT));
+    }
+
+    private static String getLocalHost() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return "";
+        }
     }
 
     @Bean
@@ -98,12 +313,65 @@ public class DefaultLoadBalancerConfiguration {
             ServiceInstanceListSupplier serviceInstanceListSupplier,
             Tracer tracer,
             CircuitBreakerExtractor circuitBreakerExtractor,
-            CircuitBreakerRegistry circuitBreakerRegistry
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            PeakEwmaTracker peakEwmaTracker,
+            InflightTracker inflightTracker
     ) {
         String name = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
-        return new TracedCircuitBreakerRoundRobinLoadBalancer(
+        TracedCircuitBreakerRoundRobinLoadBalancer loadBalancer = new TracedCircuitBreakerRoundRobinLoadBalancer(
                 serviceInstanceListSupplier, name,
                 tracer, circuitBreakerExtractor, circuitBreakerRegistry
         );
+        AttemptTable attemptTable = new AttemptTable(
+                LoadBalancerClientProperties.getProperty(environment, name, ATTEMPT_TABLE_CAPACITY, Integer.class, AttemptTable.DEFAULT_CAPACITY),
+                AttemptTable.DEFAULT_TTL
+        );
+        meterRegistry.ifAvailable(registry -> attemptTable.bindTo(registry, name));
+        loadBalancer.setAttemptTable(attemptTable);
+        loadBalancer.setInstanceTopology(new InstanceTopology(
+                LoadBalancerClientProperties.getProperty(environment, name, TOPOLOGY_IPV4_PREFIX, Integer.class, InstanceTopology.DEFAULT_IPV4_PREFIX),
+                LoadBalancerClientProperties.getProperty(environment, name, TOPOLOGY_IPV6_PREFIX, Integer.class, InstanceTopology.DEFAULT_IPV6_PREFIX)
+        ));
+        LoadBalancerMode mode = LoadBalancerMode.of(
+                LoadBalancerClientProperties.getProperty(environment, name, MODE, String.class, LoadBalancerMode.RANKING.name())
+        );
+        InstanceSelector instanceSelector = createInstanceSelector(environment, name, mode, meterRegistry, peakEwmaTracker, inflightTracker);
+        Duration slowStartWindow = LoadBalancerClientProperties.getProperty(environment, name, SLOW_START_WINDOW, Duration.class, Duration.ZERO);
+        if (slowStartWindow.toMillis() > 0) {
+            instanceSelector = new SlowStartInstanceSelector(instanceSelector, new SlowStart(slowStartWindow));
+        }
+        loadBalancer.setInstanceSelector(instanceSelector);
+        return loadBalancer;
+    }
+
+    private InstanceSelector createInstanceSelector(Environment environment, String name, LoadBalancerMode mode,
+                                                    ObjectProvider<MeterRegistry> meterRegistry,
+                                                    PeakEwmaTracker peakEwmaTracker, InflightTracker inflightTracker) {
+        switch (mode) {
+            case POWER_OF_TWO_CHOICES:
+                return new PowerOfTwoChoicesInstanceSelector(inflightTracker);
+            case PEAK_EWMA:
+                return new PeakEwmaInstanceSelector(peakEwmaTracker, inflightTracker);
+            case LEAST_OUTSTANDING:
+                return new LeastOutstandingInstanceSelector(inflightTracker);
+            case WEIGHTED_ROUND_ROBIN:
+                return new WeightedRoundRobinInstanceSelector();
+            case CONSISTENT_HASH:
+                return new MaglevInstanceSelector(
+                        LoadBalancerClientProperties.getProperty(environment, name, HASH_KEY_HEADER, String.class, DEFAULT_HASH_KEY),
+                        LoadBalancerClientProperties.getProperty(environment, name, HASH_KEY_ATTRIBUTE, String.class, DEFAULT_HASH_KEY)
+                );
+            case BACKGROUND_RANKED:
+                BackgroundRankedInstanceSelector backgroundRankedInstanceSelector = new BackgroundRankedInstanceSelector(
+                        LoadBalancerClientProperties.getProperty(environment, name, RANKING_REFRESH_INTERVAL, Duration.class,
+                                BackgroundRankedInstanceSelector.DEFAULT_REFRESH_INTERVAL)
+                );
+                meterRegistry.ifAvailable(registry -> backgroundRankedInstanceSelector.bindTo(registry, name));
+                return backgroundRankedInstanceSelector;
+            case RANKING:
+            default:
+                return new RankingInstanceSelector();
+        }
     }
 }
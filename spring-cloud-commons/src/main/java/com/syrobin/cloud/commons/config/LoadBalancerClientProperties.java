@@ -0,0 +1,22 @@
+package com.syrobin.cloud.commons.config;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 读取负载均衡器中我们自定义的配置，优先读取 spring.cloud.loadbalancer.clients.微服务名称.key，
+ * 没有的话读取 spring.cloud.loadbalancer.key，和框架内置的 LoadBalancerClientsProperties 的规则一致
+ * @date 2026-10-17 16:10
+ */
+public class LoadBalancerClientProperties {
+    public static final String PREFIX = "spring.cloud.loadbalancer";
+
+    public static <T> T getProperty(Environment environment, String serviceId, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + ".clients." + serviceId + "." + key, type);
+        if (value == null) {
+            value = environment.getProperty(PREFIX + "." + key, type, defaultValue);
+        }
+        return value;
+    }
+}
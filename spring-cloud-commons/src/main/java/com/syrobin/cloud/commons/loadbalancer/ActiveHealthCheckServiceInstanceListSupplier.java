@@ -0,0 +1,205 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 主动健康检查，定时探测每个实例的 actuator 健康检查接口，去掉探测失败的实例，
+ * 和断路器、{@link OutlierDetector} 这些只能通过真实请求发现问题的被动检查互补
+ * <p>
+ * 探测在后台进行（参考 {@link ActiveHealthChecker}），请求路径上只有一次按照引用的缓存判断：上游列表以及健康状态都没有变化的时候返回同一个 List 对象。
+ * 每个实例的探测间隔在 interval 上下浮动 20%，第一次探测的时间在一个间隔内随机分布，避免同一时间集中探测。
+ * 连续 {@link #UNHEALTHY_THRESHOLD} 次探测失败才认为不健康，一次成功就恢复；还没有探测过的实例认为是健康的
+ * <p>
+ * 所有实例都不健康的时候返回所有实例，这种情况多半是调用方自己的网络问题，交给断路器处理。
+ * 需要放在实例列表缓存外面，健康状态变化要马上生效
+ * @date 2026-10-18 12:40
+ */
+@Log4j2
+public class ActiveHealthCheckServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+    public static final String DEFAULT_PATH = "/actuator/health";
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(10);
+    static final int UNHEALTHY_THRESHOLD = 2;
+    private static final double JITTER = 0.2;
+
+    private final ActiveHealthChecker checker;
+    private final String path;
+    private final long intervalMillis;
+    private final LongSupplier clock;
+    private final Map<String, HostHealth> hosts = new ConcurrentHashMap<>();
+    /**
+     * 健康状态每次变化加一
+     */
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile List<ServiceInstance> latest = List.of();
+    private volatile Filtered filtered;
+    private volatile Disposable prober;
+
+    public ActiveHealthCheckServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, ActiveHealthChecker checker) {
+        this(delegate, checker, DEFAULT_PATH, DEFAULT_INTERVAL);
+    }
+
+    public ActiveHealthCheckServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, ActiveHealthChecker checker,
+                                                        String path, Duration interval) {
+        this(delegate, checker, path, interval, System::currentTimeMillis);
+    }
+
+    ActiveHealthCheckServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, ActiveHealthChecker checker,
+                                                 String path, Duration interval, LongSupplier clock) {
+        super(delegate);
+        this.checker = checker;
+        this.path = path;
+        this.intervalMillis = interval.toMillis();
+        this.clock = clock;
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        return getDelegate().get().map(this::filter);
+    }
+
+    private List<ServiceInstance> filter(List<ServiceInstance> serviceInstances) {
+        if (latest != serviceInstances) {
+            latest = serviceInstances;
+            startProbing();
+        }
+        Filtered current = this.filtered;
+        long currentVersion = version.get();
+        if (current != null && current.source == serviceInstances && current.version == currentVersion) {
+            return current.instances;
+        }
+        List<ServiceInstance> healthy = new ArrayList<>(serviceInstances.size());
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            HostHealth hostHealth = hosts.get(key(serviceInstance));
+            if (hostHealth == null || hostHealth.healthy) {
+                healthy.add(serviceInstance);
+            }
+        }
+        //都健康或者都不健康的时候返回原列表
+        List<ServiceInstance> instances = healthy.size() == serviceInstances.size() || healthy.isEmpty() ? serviceInstances : healthy;
+        this.filtered = new Filtered(serviceInstances, currentVersion, instances);
+        return instances;
+    }
+
+    private void startProbing() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        //每个实例的探测时间各不相同，按照间隔的 1/4 检查一次哪些实例到了探测时间
+        Duration tick = Duration.ofMillis(Math.max(intervalMillis / 4, 100));
+        this.prober = Flux.interval(tick, tick, Schedulers.parallel())
+                .onBackpressureDrop()
+                .concatMap(t -> probeDue(), 1)
+                .subscribe();
+    }
+
+    /**
+     * 探测所有到了探测时间的实例，同时清理已经不在实例列表中的实例
+     */
+    Mono<Void> probeDue() {
+        return Mono.defer(() -> {
+            long now = clock.getAsLong();
+            List<ServiceInstance> serviceInstances = latest;
+            Set<String> keys = new HashSet<>(serviceInstances.size() * 2);
+            List<ServiceInstance> due = new ArrayList<>();
+            for (ServiceInstance serviceInstance : serviceInstances) {
+                String key = key(serviceInstance);
+                keys.add(key);
+                HostHealth hostHealth = hosts.computeIfAbsent(key, k -> new HostHealth(now + (long) (ThreadLocalRandom.current().nextDouble() * intervalMillis)));
+                if (hostHealth.nextProbeAt <= now) {
+                    due.add(serviceInstance);
+                }
+            }
+            if (hosts.keySet().retainAll(keys)) {
+                version.incrementAndGet();
+            }
+            return Flux.fromIterable(due)
+                    //同时进行的探测个数由 ActiveHealthChecker 统一限制
+                    .flatMap(serviceInstance -> checker.probe(serviceInstance, path)
+                            .doOnNext(healthy -> onProbed(serviceInstance, healthy)), due.size() + 1)
+                    .then();
+        });
+    }
+
+    private void onProbed(ServiceInstance serviceInstance, boolean healthy) {
+        HostHealth hostHealth = hosts.get(key(serviceInstance));
+        if (hostHealth == null) {
+            return;
+        }
+        double jitter = 1 - JITTER + ThreadLocalRandom.current().nextDouble() * JITTER * 2;
+        hostHealth.nextProbeAt = clock.getAsLong() + (long) (intervalMillis * jitter);
+        if (healthy) {
+            hostHealth.failures = 0;
+            if (!hostHealth.healthy) {
+                hostHealth.healthy = true;
+                version.incrementAndGet();
+                log.info("health check of {} {} recovered", getServiceId(), key(serviceInstance));
+            }
+        } else if (++hostHealth.failures >= UNHEALTHY_THRESHOLD && hostHealth.healthy) {
+            hostHealth.healthy = false;
+            version.incrementAndGet();
+            log.warn("health check of {} {} failed {} times, remove it", getServiceId(), key(serviceInstance), hostHealth.failures);
+        }
+    }
+
+    private static String key(ServiceInstance serviceInstance) {
+        return Resilience4jUtil.getServiceInstance(serviceInstance.getHost(), serviceInstance.getPort());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        Disposable current = this.prober;
+        if (current != null) {
+            current.dispose();
+        }
+        super.destroy();
+    }
+
+    /**
+     * 同一个实例同一时间只有一个探测，探测结果只在探测完成的线程中修改
+     */
+    private static final class HostHealth {
+        private volatile long nextProbeAt;
+        private volatile boolean healthy = true;
+        private int failures;
+
+        private HostHealth(long nextProbeAt) {
+            this.nextProbeAt = nextProbeAt;
+        }
+    }
+
+    private static final class Filtered {
+        private final List<ServiceInstance> source;
+        private final long version;
+        private final List<ServiceInstance> instances;
+
+        private Filtered(List<ServiceInstance> source, long version, List<ServiceInstance> instances) {
+            this.source = source;
+            this.version = version;
+            this.instances = instances;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 主动健康检查的探测器，所有微服务共享，参考 {@link ActiveHealthCheckServiceInstanceListSupplier}
+ * <p>
+ * 使用 reactor-netty 的非阻塞 HttpClient，只有 threads 个事件循环线程，探测请求不占用任何业务线程，成千上万个实例也只需要这几个线程。
+ * 同时进行的探测最多 maxConcurrency 个，拿不到名额的实例直接跳过，等下一次检查，不会排队等待
+ * <p>
+ * 探测地址是实例 metadata 中的 management.port（没有的话使用实例端口）加上健康检查路径，返回 2xx 代表健康
+ * @date 2026-10-18 12:20
+ */
+public class ActiveHealthChecker implements DisposableBean {
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(2);
+    public static final int DEFAULT_THREADS = 2;
+    /**
+     * 和 Spring Cloud Eureka 注册时写入的 metadata 一致
+     */
+    public static final String MANAGEMENT_PORT = "management.port";
+
+    private final Semaphore permits;
+    private final BiFunction<String, Boolean, Mono<Integer>> requester;
+    private final LoopResources loopResources;
+    private final ConnectionProvider connectionProvider;
+
+    public ActiveHealthChecker() {
+        this(DEFAULT_MAX_CONCURRENCY, DEFAULT_TIMEOUT, DEFAULT_THREADS);
+    }
+
+    public ActiveHealthChecker(int maxConcurrency, Duration timeout, int threads) {
+        this.permits = new Semaphore(maxConcurrency);
+        this.loopResources = LoopResources.create("lb-health-check", threads, true);
+        this.connectionProvider = ConnectionProvider.builder("lb-health-check")
+                .maxConnections(maxConcurrency)
+                //探测间隔比较长，不保留空闲连接
+                .maxIdleTime(Duration.ofSeconds(1))
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .runOn(loopResources)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) timeout.toMillis())
+                .responseTimeout(timeout);
+        HttpClient secureClient = httpClient.secure();
+        this.requester = (uri, secure) -> (secure ? secureClient : httpClient)
+                .get().uri(uri)
+                .response()
+                .map(response -> response.status().code())
+                .timeout(timeout);
+    }
+
+    /**
+     * @param requester 发起请求，返回响应码
+     */
+    ActiveHealthChecker(int maxConcurrency, BiFunction<String, Boolean, Mono<Integer>> requester) {
+        this.permits = new Semaphore(maxConcurrency);
+        this.requester = requester;
+        this.loopResources = null;
+        this.connectionProvider = null;
+    }
+
+    /**
+     * @return 是否健康；没有探测名额的时候返回 empty，代表这次没有探测
+     */
+    public Mono<Boolean> probe(ServiceInstance serviceInstance, String path) {
+        return Mono.defer(() -> {
+            if (!permits.tryAcquire()) {
+                return Mono.empty();
+            }
+            return requester.apply(getUri(serviceInstance, path), serviceInstance.isSecure())
+                    .map(status -> status >= 200 && status < 300)
+                    .onErrorReturn(false)
+                    .defaultIfEmpty(false)
+                    .doFinally(signal -> permits.release());
+        });
+    }
+
+    static String getUri(ServiceInstance serviceInstance, String path) {
+        Map<String, String> metadata = serviceInstance.getMetadata();
+        String managementPort = metadata == null ? null : metadata.get(MANAGEMENT_PORT);
+        int port = serviceInstance.getPort();
+        if (managementPort != null) {
+            try {
+                port = Integer.parseInt(managementPort.trim());
+            } catch (NumberFormatException e) {
+                //配置错误的话使用实例端口
+            }
+        }
+        String host = serviceInstance.getHost();
+        //IPv6 地址需要加方括号
+        if (host.indexOf(':') >= 0 && !host.startsWith("[")) {
+            host = "[" + host + "]";
+        }
+        return (serviceInstance.isSecure() ? "https://" : "http://") + host + ":" + port + path;
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+        if (loopResources != null) {
+            loopResources.dispose();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 一次逻辑调用（算上所有重试）的上下文，通过 RequestDataContext 中 RequestData 的 attributes 传递给负载均衡器
+ * <p>
+ * 之前使用 Sleuth 的 traceId 作为 {@link AttemptTable} 的 key，同一个链路中对同一个微服务的所有调用都会被当作前一次调用的重试，
+ * 比如一个链路中并发调用 20 次，后面的调用会被排挤到最差的实例上。现在由 Feign 以及 WebClient 在重试外面为每次逻辑调用创建一个上下文，
+ * 负载均衡器使用上下文的 key 记录已经调用过的故障域，调用结束的时候 {@link #close()} 马上从表中删除，不用等 ttl 过期。
+ * 没有上下文的请求继续使用 traceId
+ * @date 2026-10-18 14:00
+ */
+public class AttemptContext implements AutoCloseable {
+
+    /**
+     * RequestData attributes 中的 key
+     */
+    public static final String ATTRIBUTE = "attempt_context";
+
+    /**
+     * 从随机值开始，和 traceId 混在同一个表中也基本不会冲突
+     */
+    private static final AtomicLong SEQUENCE = new AtomicLong(ThreadLocalRandom.current().nextLong());
+
+    private final long key = SEQUENCE.getAndIncrement();
+    private volatile AttemptTable attemptTable;
+    private volatile boolean closed;
+
+    public long getKey() {
+        return key;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 负载均衡器记录尝试之前调用，关闭的时候从这个表中删除
+     * 一次逻辑调用只会调用一个微服务，所以只需要记住一个表
+     */
+    void bind(AttemptTable attemptTable) {
+        this.attemptTable = attemptTable;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        AttemptTable current = this.attemptTable;
+        if (current != null) {
+            current.remove(key);
+        }
+    }
+
+    /**
+     * 从负载均衡请求中获取上下文，没有的话返回 null
+     */
+    public static AttemptContext of(Request<?> request) {
+        if (request == null || !(request.getContext() instanceof RequestDataContext)) {
+            return null;
+        }
+        RequestData clientRequest = ((RequestDataContext) request.getContext()).getClientRequest();
+        if (clientRequest == null) {
+            return null;
+        }
+        Map<String, Object> attributes = clientRequest.getAttributes();
+        Object attemptContext = attributes == null ? null : attributes.get(ATTRIBUTE);
+        return attemptContext instanceof AttemptContext ? (AttemptContext) attemptContext : null;
+    }
+}
@@ -0,0 +1,441 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 记录每个请求（key 为 {@link AttemptContext#getKey()}，没有上下文的时候为 traceId）已经尝试过哪些实例，替代之前三个 Caffeine LoadingCache<Long, ...>
+ * <p>
+ * 1. long key 的开放寻址哈希表（线性探测），不会产生装箱的 Long 以及并发 Set。每段从 {@link #INITIAL_SEGMENT_CAPACITY} 个槽开始，
+ * 放不下的时候翻倍，直到配置的容量为止，请求量小的微服务不会一开始就分配满容量的数组
+ * 2. 每个 key 内联保存每一级故障域（ip、物理机、机架、网段）最近 {@link #TRIED_CAPACITY} 个尝试过的 id
+ * 3. 分 {@link #SEGMENT_COUNT} 段加锁，每段是一个独立的小表
+ * 4. 过期使用定期清扫：每个 entry 记录写入时的 tick（ttl 的 1/{@link #TTL_TICKS}），每段在 tick 前进之后的第一次访问时，
+ * 在段锁内扫描整段，整批清理超过 ttl 的 entry，开销和这一段当前分配的容量成正比。
+ * 删除使用 backward shift，不需要墓碑。达到容量上限的时候采样淘汰最旧的 entry
+ * @date 2026-10-17 14:20
+ */
+public class AttemptTable {
+
+    public static final int TRIED_CAPACITY = 4;
+    /**
+     * 默认容量上限，每个 entry 大约 100 字节，按需扩容，不会一开始就分配
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(3);
+
+    private static final int SEGMENT_COUNT = 16;
+    /**
+     * 每段初始的槽数，16 段一共 256 个
+     */
+    static final int INITIAL_SEGMENT_CAPACITY = 16;
+    /**
+     * ttl 被切分为多少个 tick，也就是每个 ttl 内每段最多清扫多少次
+     */
+    private static final int TTL_TICKS = 12;
+    private static final int EMPTY = 0;
+    private static final int EVICTION_SAMPLES = 8;
+    private static final int STRIDE = TriedInstances.LEVELS * TRIED_CAPACITY;
+
+    private final Segment[] segments;
+    private final int capacity;
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final long startMillis;
+
+    private final LongAdder expiredEvictions = new LongAdder();
+    private final LongAdder overflowEvictions = new LongAdder();
+
+    public AttemptTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL);
+    }
+
+    public AttemptTable(int capacity, Duration ttl) {
+        this(capacity, ttl, System::currentTimeMillis);
+    }
+
+    AttemptTable(int capacity, Duration ttl, LongSupplier clock) {
+        int segmentCapacity = Integer.highestOneBit(Math.max(capacity / SEGMENT_COUNT - 1, 7)) << 1;
+        this.capacity = segmentCapacity * SEGMENT_COUNT;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(Math.min(INITIAL_SEGMENT_CAPACITY, segmentCapacity), segmentCapacity);
+        }
+        this.tickMillis = Math.max(1, ttl.toMillis() / TTL_TICKS);
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+    }
+
+    /**
+     * 读取 key 已经尝试过的实例，填充到 tried
+     */
+    public void read(long key, TriedInstances tried) {
+        segmentFor(key).read(key, currentTick(), tried);
+    }
+
+    /**
+     * 记录 key 这次选择了哪个实例
+     */
+    public void record(long key, ServiceInstanceSnapshot snapshot, int index) {
+        record(key, snapshot.getHostId(index), snapshot.getMachineId(index), snapshot.getRackId(index), snapshot.getSubnetId(index));
+    }
+
+    public void record(long key, int hostId, int subnetId) {
+        record(key, hostId, 0, 0, subnetId);
+    }
+
+    /**
+     * id 为 0 代表实例没有这一级故障域，不记录
+     */
+    public void record(long key, int hostId, int machineId, int rackId, int subnetId) {
+        segmentFor(key).record(key, currentTick(), hostId, machineId, rackId, subnetId);
+    }
+
+    /**
+     * 调用结束，删除 key 的记录
+     */
+    public void remove(long key) {
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * key 调用负载均衡器选择的次数
+     */
+    public int getAttempts(long key) {
+        TriedInstances tried = new TriedInstances();
+        read(key, tried);
+        return tried.attempts;
+    }
+
+    /**
+     * 容量上限
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 当前已经分配的槽数
+     */
+    int getAllocatedCapacity() {
+        int allocated = 0;
+        for (Segment segment : segments) {
+            allocated += segment.allocatedCapacity();
+        }
+        return allocated;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public double getOccupancy() {
+        return (double) size() / capacity;
+    }
+
+    /**
+     * 超过 ttl 被清理的 entry 个数
+     */
+    public long getExpiredEvictions() {
+        return expiredEvictions.sum();
+    }
+
+    /**
+     * 表满提前淘汰的 entry 个数，这个值持续增长说明容量不够
+     */
+    public long getOverflowEvictions() {
+        return overflowEvictions.sum();
+    }
+
+    /**
+     * 注册占用率以及淘汰次数的监控，每个微服务的负载均衡器各自有一个表，通过 service tag 区分
+     */
+    public void bindTo(MeterRegistry registry, String serviceId) {
+        Gauge.builder("loadbalancer.attempt.table.size", this, AttemptTable::size)
+                .tag("service", serviceId).register(registry);
+        Gauge.builder("loadbalancer.attempt.table.occupancy", this, AttemptTable::getOccupancy)
+                .tag("service", serviceId).register(registry);
+        FunctionCounter.builder("loadbalancer.attempt.table.evictions", this, AttemptTable::getExpiredEvictions)
+                .tag("service", serviceId).tag("cause", "expired").register(registry);
+        FunctionCounter.builder("loadbalancer.attempt.table.evictions", this, AttemptTable::getOverflowEvictions)
+                .tag("service", serviceId).tag("cause", "overflow").register(registry);
+    }
+
+    private int currentTick() {
+        //0 代表空槽，所以从 1 开始
+        return (int) ((clock.getAsLong() - startMillis) / tickMillis) + 1;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (mix(key) >>> 60)];
+    }
+
+    private static long mix(long key) {
+        //murmur3 fmix64
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private final class Segment {
+        private final int maxCapacity;
+        private int mask;
+        private int maxSize;
+        private long[] keys;
+        private int[] ticks;
+        private int[] attempts;
+        /**
+         * 每个 slot 每一级故障域写入过的 id 个数
+         */
+        private int[] sizes;
+        /**
+         * 每个 slot 占 {@link TriedInstances#LEVELS} * {@link #TRIED_CAPACITY} 个，布局和 TriedInstances#ids 一致
+         */
+        private int[] ids;
+        private int size;
+        private int sweptTick = 1;
+
+        Segment(int initialCapacity, int maxCapacity) {
+            this.maxCapacity = maxCapacity;
+            allocate(initialCapacity);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int allocatedCapacity() {
+            return mask + 1;
+        }
+
+        synchronized void read(long key, int tick, TriedInstances tried) {
+            expireIfNeeded(tick);
+            int slot = find(key);
+            if (slot < 0 || isExpired(slot, tick)) {
+                Arrays.fill(tried.counts, 0);
+                tried.attempts = 0;
+                return;
+            }
+            for (int level = 0; level < TriedInstances.LEVELS; level++) {
+                tried.counts[level] = Math.min(sizes[slot * TriedInstances.LEVELS + level], TRIED_CAPACITY);
+            }
+            System.arraycopy(ids, slot * STRIDE, tried.ids, 0, STRIDE);
+            tried.attempts = attempts[slot];
+        }
+
+        synchronized void record(long key, int tick, int hostId, int machineId, int rackId, int subnetId) {
+            expireIfNeeded(tick);
+            int slot = find(key);
+            if (slot >= 0 && isExpired(slot, tick)) {
+                reset(slot);
+            }
+            if (slot < 0) {
+                if (size >= maxSize) {
+                    if (mask + 1 < maxCapacity) {
+                        grow();
+                    } else {
+                        evictOldest(key);
+                    }
+                }
+                slot = insert(key);
+            }
+            ticks[slot] = tick;
+            attempts[slot]++;
+            add(slot, TriedInstances.IP, hostId);
+            add(slot, TriedInstances.MACHINE, machineId);
+            add(slot, TriedInstances.RACK, rackId);
+            add(slot, TriedInstances.SUBNET, subnetId);
+        }
+
+        synchronized void remove(long key) {
+            int slot = find(key);
+            if (slot >= 0) {
+                delete(slot);
+                size--;
+            }
+        }
+
+        /**
+         * 0 或者已经存在则不添加，超过容量则覆盖最旧的
+         */
+        private void add(int slot, int level, int id) {
+            if (id == 0) {
+                return;
+            }
+            int base = slot * STRIDE + level * TRIED_CAPACITY;
+            int count = sizes[slot * TriedInstances.LEVELS + level];
+            int stored = Math.min(count, TRIED_CAPACITY);
+            for (int i = 0; i < stored; i++) {
+                if (ids[base + i] == id) {
+                    return;
+                }
+            }
+            ids[base + count % TRIED_CAPACITY] = id;
+            sizes[slot * TriedInstances.LEVELS + level] = count + 1;
+        }
+
+        private int find(long key) {
+            int slot = (int) mix(key) & mask;
+            while (ticks[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int insert(long key) {
+            int slot = (int) mix(key) & mask;
+            while (ticks[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            reset(slot);
+            size++;
+            return slot;
+        }
+
+        private void reset(int slot) {
+            attempts[slot] = 0;
+            Arrays.fill(sizes, slot * TriedInstances.LEVELS, (slot + 1) * TriedInstances.LEVELS, 0);
+        }
+
+        private boolean isExpired(int slot, int tick) {
+            return tick - ticks[slot] > TTL_TICKS;
+        }
+
+        private void expireIfNeeded(int tick) {
+            if (tick != sweptTick) {
+                sweptTick = tick;
+                expiredEvictions.add(sweep(tick - TTL_TICKS - 1));
+            }
+        }
+
+        private void allocate(int capacity) {
+            this.mask = capacity - 1;
+            this.maxSize = capacity * 3 / 4;
+            this.keys = new long[capacity];
+            this.ticks = new int[capacity];
+            this.attempts = new int[capacity];
+            this.sizes = new int[capacity * TriedInstances.LEVELS];
+            this.ids = new int[capacity * STRIDE];
+        }
+
+        /**
+         * 容量翻倍，重新插入所有 entry
+         */
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldTicks = ticks;
+            int[] oldAttempts = attempts;
+            int[] oldSizes = sizes;
+            int[] oldIds = ids;
+            allocate(oldTicks.length << 1);
+            for (int from = 0; from < oldTicks.length; from++) {
+                if (oldTicks[from] == EMPTY) {
+                    continue;
+                }
+                int to = (int) mix(oldKeys[from]) & mask;
+                while (ticks[to] != EMPTY) {
+                    to = (to + 1) & mask;
+                }
+                keys[to] = oldKeys[from];
+                ticks[to] = oldTicks[from];
+                attempts[to] = oldAttempts[from];
+                System.arraycopy(oldSizes, from * TriedInstances.LEVELS, sizes, to * TriedInstances.LEVELS, TriedInstances.LEVELS);
+                System.arraycopy(oldIds, from * STRIDE, ids, to * STRIDE, STRIDE);
+            }
+        }
+
+        /**
+         * 表满的时候，从 key 的探测起点开始采样 {@link #EVICTION_SAMPLES} 个 entry，淘汰其中最旧的一个
+         */
+        private void evictOldest(long key) {
+            int slot = (int) mix(key) & mask;
+            int victim = -1;
+            for (int i = 0; i < EVICTION_SAMPLES; i++, slot = (slot + 1) & mask) {
+                if (ticks[slot] != EMPTY && (victim < 0 || ticks[slot] < ticks[victim])) {
+                    victim = slot;
+                }
+            }
+            if (victim < 0) {
+                //采样范围内都是空槽，说明这里不会发生探测冲突，直接扫描全段找一个
+                victim = slot;
+                while (ticks[victim] == EMPTY) {
+                    victim = (victim + 1) & mask;
+                }
+            }
+            delete(victim);
+            size--;
+            overflowEvictions.increment();
+        }
+
+        /**
+         * 删除所有 tick 小于等于 maxTick 的 entry
+         * 从一个空槽开始扫描，这样不会有跨越扫描起点的探测链，backward shift 移动过来的 entry 一定还没被扫描过
+         */
+        private int sweep(int maxTick) {
+            int start = 0;
+            while (ticks[start] != EMPTY) {
+                start++;
+            }
+            int removed = 0;
+            int slot = (start + 1) & mask;
+            for (int scanned = 1; scanned <= mask; ) {
+                if (ticks[slot] != EMPTY && ticks[slot] <= maxTick) {
+                    delete(slot);
+                    removed++;
+                    //backward shift 可能移动了后面的 entry 到当前位置，需要重新检查
+                    continue;
+                }
+                slot = (slot + 1) & mask;
+                scanned++;
+            }
+            size -= removed;
+            return removed;
+        }
+
+        private void delete(int slot) {
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (ticks[next] == EMPTY) {
+                    break;
+                }
+                int home = (int) mix(keys[next]) & mask;
+                //home 在 (hole, next] 之间的 entry 不能移动
+                boolean stay = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+                if (!stay) {
+                    move(next, hole);
+                    hole = next;
+                }
+            }
+            ticks[hole] = EMPTY;
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            ticks[to] = ticks[from];
+            attempts[to] = attempts[from];
+            System.arraycopy(sizes, from * TriedInstances.LEVELS, sizes, to * TriedInstances.LEVELS, TriedInstances.LEVELS);
+            System.arraycopy(ids, from * STRIDE, ids, to * STRIDE, STRIDE);
+        }
+    }
+}
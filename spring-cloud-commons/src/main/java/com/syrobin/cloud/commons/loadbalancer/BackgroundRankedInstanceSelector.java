@@ -0,0 +1,250 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 后台排序的实例选择器，请求路径上的开销和实例个数无关
+ * <p>
+ * 后台任务每隔 refreshInterval 读取一次所有实例的断路器状态以及错误率，排好序之后发布一个不可变的数组 {@link Ranked}，
+ * 请求路径上只从数组头部开始找第一个和之前尝试过的实例没有故障域冲突的实例，最多看 {@link #MAX_WALK} 个，不再读取每个实例的断路器数据
+ * <p>
+ * 错误率按照 {@link #FAILURE_RATE_BUCKET} 分档，和第一名状态、档位都相同的实例是第一梯队，请求在第一梯队内轮询，
+ * 否则一个刷新间隔内的请求会全部发到同一个实例上
+ * <p>
+ * 断路器是按照实例以及方法划分的，不同方法的断路器数组不同（参考 {@link CircuitBreakerHandleTable}），所以每个断路器数组各自排序，
+ * 最多 {@link #MAX_RANKINGS} 个，1 秒内没有使用的会被清理。还没有排序结果或者结果对应的是之前的实例列表时，
+ * 这次请求交给 {@link RankingInstanceSelector} 同步选择
+ * @date 2026-10-18 16:20
+ */
+public class BackgroundRankedInstanceSelector implements InstanceSelector, DisposableBean {
+
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMillis(5);
+    static final int MAX_WALK = 8;
+    static final int MAX_RANKINGS = 64;
+    /**
+     * 错误率分档，单位是百分比
+     */
+    static final float FAILURE_RATE_BUCKET = 5;
+    /**
+     * 多久没有使用的排序结果不再刷新，没有使用断路器缓存的请求每次都是新的断路器数组，注册之后不会再被使用，需要尽快清理
+     */
+    private static final long IDLE_MILLIS = Duration.ofSeconds(1).toMillis();
+
+    private final InstanceSelector fallback = new RankingInstanceSelector();
+    private final Duration refreshInterval;
+    private final LongSupplier clock;
+    /**
+     * 按照断路器数组的引用区分
+     */
+    private final Map<Key, Ranked> rankings = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    /**
+     * 第一梯队的轮询位置，不能放在排序结果里面，否则每次刷新之后都从第一个开始
+     */
+    private final AtomicInteger cursor = new AtomicInteger();
+    /**
+     * 大部分请求使用的都是同一个断路器数组，先和上一次的结果比较，不用查 Map
+     */
+    private volatile Ranked last;
+    private volatile Disposable refresher;
+
+    public BackgroundRankedInstanceSelector(Duration refreshInterval) {
+        this(refreshInterval, System::currentTimeMillis);
+    }
+
+    BackgroundRankedInstanceSelector(Duration refreshInterval, LongSupplier clock) {
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried) {
+        Ranked ranked = this.last;
+        if (ranked == null || ranked.key.circuitBreakers != circuitBreakers || ranked.stale) {
+            ranked = rankings.get(new Key(circuitBreakers));
+        }
+        if (ranked == null || ranked.snapshot != snapshot) {
+            misses.increment();
+            register(snapshot, circuitBreakers, ranked);
+            return fallback.select(snapshot, circuitBreakers, tried);
+        }
+        hits.increment();
+        this.last = ranked;
+        ranked.lastUsed = clock.getAsLong();
+        return ranked.select(tried, cursor.getAndIncrement() & Integer.MAX_VALUE);
+    }
+
+    private void register(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, Ranked previous) {
+        if (previous == null && rankings.size() >= MAX_RANKINGS) {
+            return;
+        }
+        Ranked ranked = rank(snapshot, new Key(circuitBreakers));
+        ranked.lastUsed = clock.getAsLong();
+        Ranked replaced = rankings.put(ranked.key, ranked);
+        if (replaced != null) {
+            replaced.stale = true;
+        }
+        if (started.compareAndSet(false, true)) {
+            this.refresher = Flux.interval(refreshInterval, refreshInterval, Schedulers.parallel())
+                    .onBackpressureDrop()
+                    .subscribe(t -> refresh());
+        }
+    }
+
+    /**
+     * 重新排序所有还在使用的断路器数组
+     */
+    void refresh() {
+        long now = clock.getAsLong();
+        for (Ranked ranked : rankings.values()) {
+            if (now - ranked.lastUsed > IDLE_MILLIS) {
+                rankings.remove(ranked.key, ranked);
+                ranked.stale = true;
+                continue;
+            }
+            Ranked refreshed = rank(ranked.snapshot, ranked.key);
+            refreshed.lastUsed = ranked.lastUsed;
+            //请求路径上可能已经换成了新实例列表的排序结果
+            if (rankings.replace(ranked.key, ranked, refreshed)) {
+                ranked.stale = true;
+            }
+        }
+    }
+
+    private Ranked rank(ServiceInstanceSnapshot snapshot, Key key) {
+        CircuitBreaker[] circuitBreakers = key.circuitBreakers;
+        int size = snapshot.size();
+        //高 32 位是状态以及错误率档位，低 32 位是下标，排序之后同一档的实例保持下标顺序
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            CircuitBreaker circuitBreaker = circuitBreakers[i];
+            //没有足够请求的时候错误率是 -1，和 0 同一档
+            int bucket = (int) (Math.max(circuitBreaker.getMetrics().getFailureRate(), 0) / FAILURE_RATE_BUCKET);
+            keys[i] = (long) circuitBreaker.getState().getOrder() << 56 | (long) bucket << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        int topTier = 0;
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+            if (keys[i] >>> 32 == keys[0] >>> 32) {
+                topTier++;
+            }
+        }
+        return new Ranked(key, snapshot, order, topTier, clock.getAsLong());
+    }
+
+    /**
+     * 最旧的排序结果距离现在的时间
+     */
+    public long getStalenessMillis() {
+        long now = clock.getAsLong();
+        long oldest = now;
+        for (Ranked ranked : rankings.values()) {
+            oldest = Math.min(oldest, ranked.rankedAt);
+        }
+        return now - oldest;
+    }
+
+    public void bindTo(MeterRegistry registry, String serviceId) {
+        Gauge.builder("loadbalancer.ranking.staleness", this, BackgroundRankedInstanceSelector::getStalenessMillis)
+                .tag("service", serviceId).baseUnit("milliseconds").register(registry);
+        FunctionCounter.builder("loadbalancer.ranking.selections", hits, LongAdder::sum)
+                .tag("service", serviceId).tag("result", "hit").register(registry);
+        FunctionCounter.builder("loadbalancer.ranking.selections", misses, LongAdder::sum)
+                .tag("service", serviceId).tag("result", "miss").register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        Disposable current = this.refresher;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+
+    private static final class Key {
+        private final CircuitBreaker[] circuitBreakers;
+
+        private Key(CircuitBreaker[] circuitBreakers) {
+            this.circuitBreakers = circuitBreakers;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).circuitBreakers == circuitBreakers;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(circuitBreakers);
+        }
+    }
+
+    private static final class Ranked {
+        private final Key key;
+        private final ServiceInstanceSnapshot snapshot;
+        private final int[] order;
+        private final int topTier;
+        private final long rankedAt;
+        private volatile long lastUsed;
+        /**
+         * 已经被新的排序结果替换
+         */
+        private volatile boolean stale;
+
+        private Ranked(Key key, ServiceInstanceSnapshot snapshot, int[] order, int topTier, long rankedAt) {
+            this.key = key;
+            this.snapshot = snapshot;
+            this.order = order;
+            this.topTier = topTier;
+            this.rankedAt = rankedAt;
+        }
+
+        /**
+         * 第一梯队从轮询位置开始，之后按照排序顺序，返回第一个没有故障域冲突的实例，都有冲突的话返回冲突最少的
+         */
+        int select(TriedInstances tried, int position) {
+            int size = order.length;
+            if (size == 0) {
+                return -1;
+            }
+            int start = position % topTier;
+            int walk = Math.min(size, MAX_WALK);
+            int best = -1;
+            int bestConflicts = Integer.MAX_VALUE;
+            for (int i = 0; i < walk; i++) {
+                int index = i < topTier ? order[(start + i) % topTier] : order[i];
+                int conflicts = tried.conflicts(snapshot, index);
+                if (conflicts == 0) {
+                    return index;
+                }
+                if (conflicts < bestConflicts) {
+                    best = index;
+                    bestConflicts = conflicts;
+                }
+            }
+            return best;
+        }
+    }
+}
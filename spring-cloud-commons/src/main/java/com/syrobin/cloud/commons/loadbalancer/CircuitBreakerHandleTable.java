@@ -0,0 +1,69 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 每个方法（key 参考 CircuitBreakerExtractor#getCircuitBreakerKey）和实例快照下标一一对应的 CircuitBreaker
+ * 实例快照变化的时候重新获取，其他时候负载均衡选择不需要拼接断路器名称以及查找 CircuitBreakerRegistry
+ * 返回的数组会被多个请求共享，只能读取
+ * @date 2026-10-17 19:20
+ */
+public class CircuitBreakerHandleTable {
+
+    /**
+     * webClient 的 key 是请求路径，路径中可能带有参数，需要限制大小
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private final Cache<Object, Handles> handles;
+
+    public CircuitBreakerHandleTable() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public CircuitBreakerHandleTable(int maximumSize) {
+        this.handles = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(3, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * @param key      方法
+     * @param snapshot 实例快照
+     * @param resolver 获取快照中某个下标实例的 CircuitBreaker
+     */
+    public CircuitBreaker[] get(Object key, ServiceInstanceSnapshot snapshot, IntFunction<CircuitBreaker> resolver) {
+        Handles current = handles.getIfPresent(key);
+        if (current == null || current.snapshot != snapshot) {
+            CircuitBreaker[] circuitBreakers = new CircuitBreaker[snapshot.size()];
+            for (int i = 0; i < circuitBreakers.length; i++) {
+                circuitBreakers[i] = resolver.apply(i);
+            }
+            current = new Handles(snapshot, circuitBreakers);
+            handles.put(key, current);
+        }
+        return current.circuitBreakers;
+    }
+
+    public long size() {
+        return handles.estimatedSize();
+    }
+
+    private static final class Handles {
+        private final ServiceInstanceSnapshot snapshot;
+        private final CircuitBreaker[] circuitBreakers;
+
+        private Handles(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers) {
+            this.snapshot = snapshot;
+            this.circuitBreakers = circuitBreakers;
+        }
+    }
+}
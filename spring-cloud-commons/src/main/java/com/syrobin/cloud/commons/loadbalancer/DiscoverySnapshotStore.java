@@ -0,0 +1,278 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 把每个微服务最后一次从注册中心获取到的实例列表保存到本地文件，重启的时候在注册中心第一次拉取完成之前
+ * （或者注册中心整体不可用的时候）使用文件中的实例列表，参考 {@link SnapshotServiceInstanceListSupplier}
+ * <p>
+ * 所有微服务共用一个文件，启动时通过 mmap 读取一次，之后在内存中维护。实例列表变化后延迟 writeDelay 合并写一次，
+ * 先写同目录下的临时文件再原子 rename，进程在写的过程中退出也不会留下半个文件。
+ * <p>
+ * 文件格式（大端）：magic、格式版本、写入时间、微服务个数，然后每个微服务依次是名称、实例个数以及每个实例的
+ * instanceId、host、port、secure、metadata，字符串为 长度 + UTF-8，最后是前面所有内容的 CRC32。
+ * 校验失败、格式版本不一致或者超过 maxAge 的文件直接忽略
+ * @date 2026-10-18 10:30
+ */
+@Log4j2
+public class DiscoverySnapshotStore implements DisposableBean {
+
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofDays(7);
+    public static final Duration DEFAULT_WRITE_DELAY = Duration.ofSeconds(10);
+
+    private static final int MAGIC = 0x53594453;
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path path;
+    private final long maxAgeMillis;
+    private final Duration writeDelay;
+    private final LongSupplier clock;
+    private final Map<String, List<ServiceInstance>> services = new ConcurrentHashMap<>();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private volatile Disposable pendingWrite;
+
+    public DiscoverySnapshotStore(Path path) {
+        this(path, DEFAULT_MAX_AGE, DEFAULT_WRITE_DELAY);
+    }
+
+    public DiscoverySnapshotStore(Path path, Duration maxAge, Duration writeDelay) {
+        this(path, maxAge, writeDelay, System::currentTimeMillis);
+    }
+
+    DiscoverySnapshotStore(Path path, Duration maxAge, Duration writeDelay, LongSupplier clock) {
+        this.path = path;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.writeDelay = writeDelay;
+        this.clock = clock;
+        load();
+    }
+
+    /**
+     * @return 文件中保存的实例列表，没有的话返回空列表，同一个微服务在更新之前返回同一个 List 对象
+     */
+    public List<ServiceInstance> get(String serviceId) {
+        return services.getOrDefault(serviceId, Collections.emptyList());
+    }
+
+    /**
+     * 注册中心返回了非空的实例列表，和保存的不一样的话延迟写入文件
+     */
+    public void put(String serviceId, List<ServiceInstance> serviceInstances) {
+        if (serviceId == null || serviceInstances.isEmpty() || same(services.get(serviceId), serviceInstances)) {
+            return;
+        }
+        List<ServiceInstance> copy = new ArrayList<>(serviceInstances.size());
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            copy.add(new DefaultServiceInstance(serviceInstance.getInstanceId(), serviceId, serviceInstance.getHost(),
+                    serviceInstance.getPort(), serviceInstance.isSecure(), copyMetadata(serviceInstance.getMetadata())));
+        }
+        services.put(serviceId, Collections.unmodifiableList(copy));
+        if (writeScheduled.compareAndSet(false, true)) {
+            this.pendingWrite = Schedulers.boundedElastic().schedule(this::flush, writeDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即写入文件
+     */
+    public void flush() {
+        writeScheduled.set(false);
+        if (services.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, encode(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("write discovery snapshot {} failed: {}", path, e.toString());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Disposable current = this.pendingWrite;
+        if (current != null) {
+            current.dispose();
+        }
+        if (writeScheduled.get()) {
+            flush();
+        }
+    }
+
+    private void load() {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Map<String, List<ServiceInstance>> loaded = decode(buffer);
+            if (loaded != null) {
+                services.putAll(loaded);
+                log.info("loaded discovery snapshot {} with {} services", path, loaded.size());
+            }
+        } catch (NoSuchFileException e) {
+            //第一次启动
+        } catch (IOException | RuntimeException e) {
+            log.warn("read discovery snapshot {} failed, ignore it: {}", path, e.toString());
+        }
+    }
+
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        //先拷贝一份，写的过程中可能有更新
+        Map<String, List<ServiceInstance>> current = new LinkedHashMap<>(services);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(clock.getAsLong());
+        out.writeInt(current.size());
+        for (Map.Entry<String, List<ServiceInstance>> entry : current.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (ServiceInstance serviceInstance : entry.getValue()) {
+                writeString(out, serviceInstance.getInstanceId());
+                writeString(out, serviceInstance.getHost());
+                out.writeInt(serviceInstance.getPort());
+                out.writeBoolean(serviceInstance.isSecure());
+                Map<String, String> metadata = serviceInstance.getMetadata();
+                out.writeInt(metadata.size());
+                for (Map.Entry<String, String> meta : metadata.entrySet()) {
+                    writeString(out, meta.getKey());
+                    writeString(out, meta.getValue());
+                }
+            }
+        }
+        out.flush();
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes.toByteArray());
+        out.writeLong(crc32.getValue());
+        return bytes.toByteArray();
+    }
+
+    private Map<String, List<ServiceInstance>> decode(ByteBuffer buffer) {
+        if (buffer.remaining() < 28) {
+            return null;
+        }
+        ByteBuffer content = buffer.duplicate();
+        content.limit(buffer.limit() - Long.BYTES);
+        CRC32 crc32 = new CRC32();
+        crc32.update(content);
+        if (crc32.getValue() != buffer.getLong(buffer.limit() - Long.BYTES)) {
+            log.warn("discovery snapshot {} is corrupted, ignore it", path);
+            return null;
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        long writtenAt = buffer.getLong();
+        if (clock.getAsLong() - writtenAt > maxAgeMillis) {
+            log.info("discovery snapshot {} is older than {}ms, ignore it", path, maxAgeMillis);
+            return null;
+        }
+        int serviceCount = buffer.getInt();
+        Map<String, List<ServiceInstance>> loaded = new HashMap<>(serviceCount * 2);
+        for (int i = 0; i < serviceCount; i++) {
+            String serviceId = readString(buffer);
+            int instanceCount = buffer.getInt();
+            List<ServiceInstance> serviceInstances = new ArrayList<>(instanceCount);
+            for (int j = 0; j < instanceCount; j++) {
+                String instanceId = readString(buffer);
+                String host = readString(buffer);
+                int port = buffer.getInt();
+                boolean secure = buffer.get() != 0;
+                int metadataCount = buffer.getInt();
+                Map<String, String> metadata = new LinkedHashMap<>(metadataCount * 2);
+                for (int k = 0; k < metadataCount; k++) {
+                    metadata.put(readString(buffer), readString(buffer));
+                }
+                serviceInstances.add(new DefaultServiceInstance(instanceId, serviceId, host, port, secure, metadata));
+            }
+            loaded.put(serviceId, Collections.unmodifiableList(serviceInstances));
+        }
+        return loaded;
+    }
+
+    /**
+     * 长度 + UTF-8，null 的长度为 -1
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> copyMetadata(Map<String, String> metadata) {
+        if (metadata == null) {
+            return new LinkedHashMap<>();
+        }
+        return new LinkedHashMap<>(metadata);
+    }
+
+    private static boolean same(List<ServiceInstance> saved, List<ServiceInstance> serviceInstances) {
+        if (saved == null || saved.size() != serviceInstances.size()) {
+            return false;
+        }
+        for (int i = 0; i < saved.size(); i++) {
+            ServiceInstance a = saved.get(i);
+            ServiceInstance b = serviceInstances.get(i);
+            if (!Objects.equals(a.getInstanceId(), b.getInstanceId()) || !Objects.equals(a.getHost(), b.getHost())
+                    || a.getPort() != b.getPort() || a.isSecure() != b.isSecure()
+                    || !Objects.equals(a.getMetadata(), b.getMetadata() == null ? Map.of() : b.getMetadata())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 将 host、网段之类的字符串映射为 int id，id 从 1 开始，0 代表空
+ * 只在构建实例快照时调用，这样请求路径上只需要比较 int
+ * <p>
+ * 每次 {@link #intern} 增加引用计数，快照被替换的时候通过 {@link ServiceInstanceSnapshot#release()} 释放，
+ * 计数归零的字符串被删除，id 留给之后新出现的字符串复用，所以映射的大小和 id 的范围只和当前实例列表有关，不会随实例滚动发布无限增长。
+ * AttemptTable 中还没过期的记录可能持有被复用的 id，最坏情况是新实例在这次请求的重试中被当作已经尝试过，只影响选择的优先级
+ * @date 2026-10-17 14:02
+ */
+public class HostIdInterner {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    /**
+     * 下标为 id
+     */
+    private final List<String> values = new ArrayList<>();
+    private int[] refs = new int[16];
+    private final BitSet freeIds = new BitSet();
+
+    public HostIdInterner() {
+        //id 0 代表空
+        values.add(null);
+    }
+
+    public synchronized int intern(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = freeIds.nextSetBit(1);
+            if (id < 0) {
+                id = values.size();
+                values.add(value);
+            } else {
+                freeIds.clear(id);
+                values.set(id, value);
+            }
+            ids.put(value, id);
+            if (id >= refs.length) {
+                refs = Arrays.copyOf(refs, refs.length << 1);
+            }
+        }
+        refs[id]++;
+        return id;
+    }
+
+    /**
+     * 和 {@link #intern} 成对调用，0 忽略
+     */
+    public synchronized void release(int id) {
+        if (id <= 0 || id >= values.size() || refs[id] <= 0) {
+            return;
+        }
+        if (--refs[id] == 0) {
+            ids.remove(values.get(id));
+            values.set(id, null);
+            freeIds.set(id);
+        }
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    /**
+     * 分配过的最大 id
+     */
+    synchronized int getMaxId() {
+        return values.size() - 1;
+    }
+}
@@ -0,0 +1,80 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 记录每个实例（host:port）的在途请求数
+ * <p>
+ * FeignBlockingLoadBalancerClientExtend 以及 WebClient 使用的 ReactorLoadBalancerExchangeFilterFunction 都会在
+ * 请求真正发出前调用 onStartRequest，请求结束后调用 onComplete，这两个地方分别加一减一
+ * LoadBalancerLifecycle 是通过 LoadBalancerClientFactory#getInstances 获取的，会包括父 ApplicationContext 中的 Bean，
+ * 所以这里只需要在父 ApplicationContext 注册一个，所有微服务共享
+ * <p>
+ * 计数器使用 LongAdder，请求路径上只有无锁的加减，读取（sum）只在负载均衡选择的时候发生
+ * <p>
+ * 计数器不按时间过期：还在某个实例快照中的实例，以及在途请求数不为 0 的实例都会保留，参考 {@link RetainedInstanceMap}。
+ * 按时间过期的话，超过过期时间的调用结束时会减到新的计数器上，变成负数
+ * @date 2026-10-17 18:20
+ */
+public class InflightTracker implements LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+
+    private final RetainedInstanceMap<LongAdder> inflights = new RetainedInstanceMap<>(LongAdder::new, adder -> adder.sum() == 0);
+
+    public LongAdder get(String host, int port) {
+        return inflights.get(host, port);
+    }
+
+    public long getInflight(String host, int port) {
+        LongAdder inflight = inflights.getIfPresent(host, port);
+        return inflight == null ? 0 : inflight.sum();
+    }
+
+    RetainedInstanceMap<LongAdder> getInflights() {
+        return inflights;
+    }
+
+    @Override
+    public void onStart(Request<Object> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+        if (lbResponse != null && lbResponse.hasServer()) {
+            ServiceInstance server = lbResponse.getServer();
+            while (true) {
+                LongAdder inflight = inflights.get(server.getHost(), server.getPort());
+                inflight.increment();
+                //加一之前计数器可能正好因为空闲被清理，这时候撤销之后在新的计数器上重新加一
+                if (inflights.isCurrent(server.getHost(), server.getPort(), inflight)) {
+                    return;
+                }
+                inflight.decrement();
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        //DISCARD 代表没有选到实例，请求没有发出去，也就没有调用 onStartRequest
+        if (completionContext.status() == CompletionContext.Status.DISCARD) {
+            return;
+        }
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (lbResponse != null && lbResponse.hasServer()) {
+            ServiceInstance server = lbResponse.getServer();
+            //在途请求数不为 0 的计数器不会被清理，不存在说明没有对应的 onStartRequest，不能创建新的计数器减成负数
+            LongAdder inflight = inflights.getIfPresent(server.getHost(), server.getPort());
+            if (inflight != null) {
+                inflight.decrement();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.ApplicationListener;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 注册中心客户端本地缓存刷新的通知，Eureka 客户端每次拉取完注册表（registry-fetch-interval-seconds）会在父
+ * ApplicationContext 中发布 HeartbeatEvent，这个事件不会传递到每个微服务负载均衡器的子 ApplicationContext，
+ * 所以在父 ApplicationContext 中监听，再转发给 {@link StaleWhileRevalidateServiceInstanceListSupplier}，
+ * 实例列表在注册表拉取之后马上刷新，不需要再等一个缓存刷新间隔
+ * @date 2026-10-18 11:40
+ */
+public class InstanceRefreshNotifier implements ApplicationListener<HeartbeatEvent> {
+
+    /**
+     * 没有订阅者或者订阅者来不及处理的时候直接丢弃，下一次注册表拉取还会再通知
+     */
+    private final Sinks.Many<Object> sink = Sinks.many().multicast().directBestEffort();
+
+    @Override
+    public void onApplicationEvent(HeartbeatEvent event) {
+        //不同注册中心的客户端可能从不同线程发布事件，Sinks 不允许并发 emit
+        synchronized (sink) {
+            sink.tryEmitNext(event.getValue() == null ? event : event.getValue());
+        }
+    }
+
+    public Flux<Object> events() {
+        return sink.asFlux();
+    }
+}
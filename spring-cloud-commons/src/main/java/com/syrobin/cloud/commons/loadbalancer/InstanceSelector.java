@@ -0,0 +1,32 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.cloud.client.loadbalancer.Request;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 从实例快照中选择一个实例，不同的负载均衡模式对应不同的实现，参考 {@link LoadBalancerMode}
+ * @date 2026-10-17 16:02
+ */
+public interface InstanceSelector {
+
+    /**
+     * 选择实例
+     *
+     * @param snapshot        实例快照
+     * @param circuitBreakers 和快照下标一一对应的断路器
+     * @param tried           这次请求之前已经调用过的故障域（ip、物理机、机架、网段）
+     * @return 选中实例在快照中的下标，没有实例返回 -1
+     */
+    int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried);
+
+    /**
+     * 需要根据请求内容选择实例的实现（例如一致性哈希）覆盖这个方法，负载均衡器调用的是这个方法
+     *
+     * @param request 负载均衡请求，单元测试中可能为 null
+     */
+    default int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried, Request<?> request) {
+        return select(snapshot, circuitBreakers, tried);
+    }
+}
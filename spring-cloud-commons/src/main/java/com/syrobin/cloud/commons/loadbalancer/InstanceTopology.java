@@ -0,0 +1,114 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.google.common.net.InetAddresses;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 实例的故障域划分，在构建 {@link ServiceInstanceSnapshot} 时对每个实例计算一次，
+ * 重试时尽量选择和之前调用过的实例不在同一个故障域的实例，参考 {@link TriedInstances#conflicts}
+ * <p>
+ * 从小到大四级故障域：
+ * <pre>
+ * ip       同一个 ip 的实例（IPv6 地址规范化之后比较）
+ * host     实例 metadata 中的 host，也就是实例所在的物理机（比如 k8s 的 node），没有配置则不划分
+ * rack     实例 metadata 中的 rack，也就是机架，没有配置则不划分
+ * subnet   ip 按照 CIDR 前缀（IPv4 默认 /24，IPv6 默认 /64）掩码之后的网段，host 不是 ip 地址则不划分
+ * </pre>
+ * 之前的网段是 host.substring(0, host.lastIndexOf(".")) 再用 contains 判断，10.0.1 会匹配到 10.0.11.x，IPv6 地址也无法划分。
+ * 现在 ip 地址只解析为字节（不会做 DNS 查询）然后按位掩码
+ * @date 2026-10-18 15:00
+ */
+public class InstanceTopology {
+
+    public static final String HOST = "host";
+    public static final String RACK = "rack";
+    public static final int DEFAULT_IPV4_PREFIX = 24;
+    public static final int DEFAULT_IPV6_PREFIX = 64;
+
+    private final int ipv4Prefix;
+    private final int ipv6Prefix;
+
+    public InstanceTopology() {
+        this(DEFAULT_IPV4_PREFIX, DEFAULT_IPV6_PREFIX);
+    }
+
+    public InstanceTopology(int ipv4Prefix, int ipv6Prefix) {
+        if (ipv4Prefix < 0 || ipv4Prefix > 32 || ipv6Prefix < 0 || ipv6Prefix > 128) {
+            throw new IllegalArgumentException("invalid prefix length: /" + ipv4Prefix + ", /" + ipv6Prefix);
+        }
+        this.ipv4Prefix = ipv4Prefix;
+        this.ipv6Prefix = ipv6Prefix;
+    }
+
+    /**
+     * ip 地址返回规范化的地址，其他 host 返回小写，host 为 null 返回 null
+     */
+    public String getAddress(String host) {
+        if (host == null) {
+            return null;
+        }
+        InetAddress address = parse(host);
+        return address == null ? host.toLowerCase(Locale.ROOT) : InetAddresses.toAddrString(address);
+    }
+
+    /**
+     * @return CIDR 形式的网段，例如 10.0.1.0/24；host 为 null 或者不是 ip 地址返回 null
+     */
+    public String getSubnet(String host) {
+        if (host == null) {
+            return null;
+        }
+        InetAddress address = parse(host);
+        if (address == null) {
+            return null;
+        }
+        byte[] bytes = address.getAddress();
+        int prefix = bytes.length == 4 ? ipv4Prefix : ipv6Prefix;
+        for (int i = 0; i < bytes.length; i++) {
+            int bits = prefix - i * 8;
+            if (bits <= 0) {
+                bytes[i] = 0;
+            } else if (bits < 8) {
+                bytes[i] &= (byte) (0xff << (8 - bits));
+            }
+        }
+        try {
+            return InetAddresses.toAddrString(InetAddress.getByAddress(bytes)) + "/" + prefix;
+        } catch (UnknownHostException e) {
+            //长度是 4 或者 16，不会出现
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String getHost(ServiceInstance serviceInstance) {
+        return getLabel(serviceInstance, HOST);
+    }
+
+    public static String getRack(ServiceInstance serviceInstance) {
+        return getLabel(serviceInstance, RACK);
+    }
+
+    private static String getLabel(ServiceInstance serviceInstance, String key) {
+        Map<String, String> metadata = serviceInstance.getMetadata();
+        String value = metadata == null ? null : metadata.get(key);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static InetAddress parse(String host) {
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        //只解析字面量地址，不会做 DNS 查询
+        return InetAddresses.isInetAddress(host) ? InetAddresses.forString(host) : null;
+    }
+}
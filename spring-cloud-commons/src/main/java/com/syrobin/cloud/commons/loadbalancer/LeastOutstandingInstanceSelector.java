@@ -0,0 +1,61 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 最少在途请求，单次遍历，依次比较：
+ * 和之前调用过的实例冲突的故障域（ip、物理机、机架、网段）、断路器状态、在途请求数（参考 {@link InflightTracker}），
+ * 全部相同的实例之间使用蓄水池抽样等概率选择
+ * 和负载均衡器返回次数不同，在途请求数在请求结束后会减少，能反映实例当前真实的负载
+ * @date 2026-10-17 18:40
+ */
+public class LeastOutstandingInstanceSelector implements InstanceSelector {
+
+    private final SnapshotAlignedCache<LongAdder> inflights;
+
+    public LeastOutstandingInstanceSelector(InflightTracker inflightTracker) {
+        this.inflights = new SnapshotAlignedCache<>(inflightTracker.getInflights(), LongAdder[]::new);
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried) {
+        LongAdder[] inflights = this.inflights.get(snapshot);
+        int best = -1;
+        long bestScore = 0;
+        long bestInflight = 0;
+        int ties = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            long score = RankingInstanceSelector.packScore(
+                    tried.conflicts(snapshot, i),
+                    circuitBreakers[i].getState(),
+                    0
+            );
+            if (best >= 0 && score > bestScore) {
+                continue;
+            }
+            long inflight = inflights[i].sum();
+            if (best >= 0 && score == bestScore) {
+                if (inflight > bestInflight) {
+                    continue;
+                }
+                if (inflight == bestInflight) {
+                    ties++;
+                    if (ThreadLocalRandom.current().nextInt(ties) == 0) {
+                        best = i;
+                    }
+                    continue;
+                }
+            }
+            best = i;
+            bestScore = score;
+            bestInflight = inflight;
+            ties = 1;
+        }
+        return best;
+    }
+}
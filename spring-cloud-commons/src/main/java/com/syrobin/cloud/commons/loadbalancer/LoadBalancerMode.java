@@ -0,0 +1,49 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import java.util.Locale;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 负载均衡模式，通过 spring.cloud.loadbalancer.clients.微服务名称.mode 针对微服务配置，
+ * 没有配置的话使用 spring.cloud.loadbalancer.mode，默认为 ranking
+ * @date 2026-10-17 16:05
+ */
+public enum LoadBalancerMode {
+    /**
+     * 遍历所有实例，按照断路器状态、错误率等排序取第一个，参考 {@link RankingInstanceSelector}
+     */
+    RANKING,
+    /**
+     * 随机取两个健康的实例，选择较好的那个，参考 {@link PowerOfTwoChoicesInstanceSelector}
+     */
+    POWER_OF_TWO_CHOICES,
+    /**
+     * 随机取两个健康的实例，选择 ewma 响应时间 * (在途请求数 + 1) 较小的那个，参考 {@link PeakEwmaInstanceSelector}
+     */
+    PEAK_EWMA,
+    /**
+     * 选择在途请求数最少的实例，参考 {@link LeastOutstandingInstanceSelector}
+     */
+    LEAST_OUTSTANDING,
+    /**
+     * 按照实例 metadata 中的 weight 平滑加权轮询，参考 {@link WeightedRoundRobinInstanceSelector}
+     */
+    WEIGHTED_ROUND_ROBIN,
+    /**
+     * 按照请求中的 key 一致性哈希，参考 {@link MaglevInstanceSelector}
+     */
+    CONSISTENT_HASH,
+    /**
+     * 和 ranking 的顺序相同，但是排序在后台定时进行，请求路径上的开销和实例个数无关，参考 {@link BackgroundRankedInstanceSelector}
+     */
+    BACKGROUND_RANKED,
+    ;
+
+    /**
+     * 配置中可以写 power-of-two-choices 或者 POWER_OF_TWO_CHOICES
+     */
+    public static LoadBalancerMode of(String value) {
+        return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+}
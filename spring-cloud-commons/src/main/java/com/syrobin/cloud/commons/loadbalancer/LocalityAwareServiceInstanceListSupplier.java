@@ -0,0 +1,141 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.config.LoadBalancerZoneConfig;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 优先使用同一个 zone 的服务实例，同 zone 容量不足的时候把一部分流量溢出到其他 zone，参考 Envoy 的 locality weighted load balancing
+ * <p>
+ * 假设调用方在各个 zone 之间是均匀分布的，每个 zone 应该承担的实例数是 总实例数 / zone 个数，
+ * 本 zone 容量 = 本 zone 实例数 / 每个 zone 应该承担的实例数，容量不低于 spilloverThreshold 的时候只返回本 zone 的实例，
+ * 否则本 zone 承担的流量比例是 容量 / spilloverThreshold，剩下的溢出到其他 zone
+ * <p>
+ * 负载均衡器在返回的实例之间基本是均匀分配的，所以通过在本 zone 实例之外加入 k 个其他 zone 的实例来实现溢出比例，
+ * 本 zone 比例 = 本 zone 实例数 / (本 zone 实例数 + k)，这样同一个实例列表返回同一个 List 对象，负载均衡器可以复用实例快照。
+ * 其他 zone 的实例按照每个调用方随机的种子做 rendezvous hash 选择，不同调用方溢出到不同的实例，实例列表变化时选择结果基本稳定
+ * <p>
+ * 本 zone 没有实例的时候返回所有其他 zone 的实例，不会因为本 zone 故障导致请求没有实例可用
+ * @date 2026-10-18 00:40
+ */
+public class LocalityAwareServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+    public static final double DEFAULT_SPILLOVER_THRESHOLD = 0.7;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final LoadBalancerZoneConfig zoneConfig;
+    private final double spilloverThreshold;
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private volatile Locality locality;
+
+    public LocalityAwareServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, LoadBalancerZoneConfig zoneConfig) {
+        this(delegate, zoneConfig, DEFAULT_SPILLOVER_THRESHOLD);
+    }
+
+    /**
+     * @param spilloverThreshold 本 zone 容量低于这个值的时候开始溢出，取值 0 到 1
+     */
+    public LocalityAwareServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, LoadBalancerZoneConfig zoneConfig,
+                                                    double spilloverThreshold) {
+        super(delegate);
+        this.zoneConfig = zoneConfig;
+        this.spilloverThreshold = spilloverThreshold;
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        return getDelegate().get().map(this::filteredByLocality);
+    }
+
+    private List<ServiceInstance> filteredByLocality(List<ServiceInstance> serviceInstances) {
+        Locality current = this.locality;
+        if (current == null || current.index.getSource() != serviceInstances) {
+            ServiceInstanceIndex index = ServiceInstanceIndex.of(serviceInstances, current == null ? null : current.index);
+            current = new Locality(index, select(index));
+            this.locality = current;
+        }
+        return current.instances;
+    }
+
+    private List<ServiceInstance> select(ServiceInstanceIndex index) {
+        List<ServiceInstance> serviceInstances = index.getSource();
+        String zone = zoneConfig.getZone();
+        if (zone == null) {
+            return serviceInstances;
+        }
+        List<ServiceInstance> local = index.getZone(zone);
+        if (local.isEmpty()) {
+            return serviceInstances;
+        }
+        int remoteCount = serviceInstances.size() - local.size();
+        int zoneCount = index.getZones().size();
+        int spillover = getSpillover(local.size(), serviceInstances.size(), zoneCount, remoteCount);
+        if (spillover == 0) {
+            return local;
+        }
+        if (spillover == remoteCount) {
+            return serviceInstances;
+        }
+        List<ServiceInstance> remote = new ArrayList<>(remoteCount);
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            if (!zone.equalsIgnoreCase(getZone(serviceInstance))) {
+                remote.add(serviceInstance);
+            }
+        }
+        remote.sort(Comparator.comparingLong(this::score).reversed());
+        List<ServiceInstance> instances = new ArrayList<>(local.size() + spillover);
+        instances.addAll(local);
+        instances.addAll(remote.subList(0, spillover));
+        return instances;
+    }
+
+    /**
+     * 需要加入的其他 zone 实例个数
+     */
+    int getSpillover(int localCount, int totalCount, int zoneCount, int remoteCount) {
+        double capacity = localCount * zoneCount / (double) totalCount;
+        if (spilloverThreshold <= 0 || capacity >= spilloverThreshold) {
+            return 0;
+        }
+        double localFraction = capacity / spilloverThreshold;
+        long spillover = Math.round(localCount * (1 - localFraction) / localFraction);
+        return (int) Math.min(spillover, remoteCount);
+    }
+
+    private long score(ServiceInstance serviceInstance) {
+        return HASH.newHasher()
+                .putLong(seed)
+                .putString(Resilience4jUtil.getServiceInstance(serviceInstance.getHost(), serviceInstance.getPort()), StandardCharsets.UTF_8)
+                .hash().asLong();
+    }
+
+    private static String getZone(ServiceInstance serviceInstance) {
+        Map<String, String> metadata = serviceInstance.getMetadata();
+        return metadata == null ? null : metadata.get(ServiceInstanceIndex.ZONE);
+    }
+
+    private static final class Locality {
+        private final ServiceInstanceIndex index;
+        private final List<ServiceInstance> instances;
+
+        private Locality(ServiceInstanceIndex index, List<ServiceInstance> instances) {
+            this.index = index;
+            this.instances = instances;
+        }
+    }
+}
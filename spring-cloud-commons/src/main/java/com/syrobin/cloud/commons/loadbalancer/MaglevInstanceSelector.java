@@ -0,0 +1,165 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: Maglev 一致性哈希，相同 key 的请求总是发到同一个实例，适合实例本地有按照 key 缓存数据的微服务
+ * <p>
+ * key 优先从请求 attribute 中读取（WebClient 可以通过 ClientRequest#attribute 设置），其次是请求头（Feign 可以通过 RequestInterceptor 设置），
+ * 没有 key 的请求使用 fallback 选择
+ * <p>
+ * 查找表在实例快照变化时构建一次，实例增减的时候只有很少一部分 key 会改变实例。
+ * 查到的实例断路器打开或者这次请求已经调用过（重试）的话，使用表中下一个位置的实例，这样故障实例的 key 会分散到其他实例上
+ * @date 2026-10-17 21:05
+ */
+public class MaglevInstanceSelector implements InstanceSelector {
+
+    /**
+     * 查找表大小必须是质数，并且远大于实例个数，这样每个实例分到的位置数量接近
+     */
+    private static final int[] TABLE_SIZES = {251, 509, 1021, 2039, 4093, 8191, 16381, 32749, 65521};
+    private static final int SLOTS_PER_INSTANCE = 100;
+
+    private static final HashFunction OFFSET_HASH = Hashing.murmur3_128(0);
+    private static final HashFunction SKIP_HASH = Hashing.murmur3_128(1);
+    private static final HashFunction KEY_HASH = Hashing.murmur3_128(2);
+
+    private final String hashKeyHeader;
+    private final String hashKeyAttribute;
+    private final InstanceSelector fallback;
+    private volatile LookupTable lookupTable;
+
+    public MaglevInstanceSelector(String hashKeyHeader, String hashKeyAttribute) {
+        this(hashKeyHeader, hashKeyAttribute, new RankingInstanceSelector());
+    }
+
+    public MaglevInstanceSelector(String hashKeyHeader, String hashKeyAttribute, InstanceSelector fallback) {
+        this.hashKeyHeader = hashKeyHeader;
+        this.hashKeyAttribute = hashKeyAttribute;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried) {
+        return fallback.select(snapshot, circuitBreakers, tried);
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried, Request<?> request) {
+        String hashKey = getHashKey(request);
+        if (hashKey == null || snapshot.size() == 0) {
+            return fallback.select(snapshot, circuitBreakers, tried);
+        }
+        return selectByHashKey(snapshot, circuitBreakers, tried, hashKey);
+    }
+
+    @VisibleForTesting
+    int selectByHashKey(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried, String hashKey) {
+        int[] table = getTable(snapshot);
+        int position = (int) Math.floorMod(KEY_HASH.hashString(hashKey, StandardCharsets.UTF_8).asLong(), (long) table.length);
+        for (int probe = 0; probe < table.length; probe++) {
+            int index = table[(position + probe) % table.length];
+            CircuitBreaker.State state = circuitBreakers[index].getState();
+            if (state != CircuitBreaker.State.OPEN
+                    && state != CircuitBreaker.State.FORCED_OPEN
+                    && !tried.containsHost(snapshot.getHostId(index))) {
+                return index;
+            }
+        }
+        return fallback.select(snapshot, circuitBreakers, tried);
+    }
+
+    private String getHashKey(Request<?> request) {
+        if (request == null || !(request.getContext() instanceof RequestDataContext)) {
+            return null;
+        }
+        RequestData clientRequest = ((RequestDataContext) request.getContext()).getClientRequest();
+        if (clientRequest == null) {
+            return null;
+        }
+        if (clientRequest.getAttributes() != null) {
+            Object attribute = clientRequest.getAttributes().get(hashKeyAttribute);
+            if (attribute != null) {
+                return attribute.toString();
+            }
+        }
+        return clientRequest.getHeaders() == null ? null : clientRequest.getHeaders().getFirst(hashKeyHeader);
+    }
+
+    private int[] getTable(ServiceInstanceSnapshot snapshot) {
+        LookupTable current = this.lookupTable;
+        if (current == null || current.snapshot != snapshot) {
+            current = new LookupTable(snapshot, buildTable(snapshot));
+            this.lookupTable = current;
+        }
+        return current.table;
+    }
+
+    /**
+     * Maglev 论文中的填表算法：每个实例根据名称生成一个 0 到 M-1 的排列，所有实例轮流按照自己的排列占据第一个空位
+     * 实例名称使用 host:port，填表时按照名称排序轮流，这样结果和实例在列表中的顺序无关
+     */
+    @VisibleForTesting
+    static int[] buildTable(ServiceInstanceSnapshot snapshot) {
+        int size = snapshot.size();
+        int tableSize = TABLE_SIZES[TABLE_SIZES.length - 1];
+        for (int candidate : TABLE_SIZES) {
+            if (candidate >= (long) size * SLOTS_PER_INSTANCE) {
+                tableSize = candidate;
+                break;
+            }
+        }
+        String[] names = new String[size];
+        Integer[] order = new Integer[size];
+        long[] offsets = new long[size];
+        long[] skips = new long[size];
+        long[] next = new long[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = Resilience4jUtil.getServiceInstance(snapshot.getHost(i), snapshot.getInstance(i).getPort());
+            order[i] = i;
+            offsets[i] = Math.floorMod(OFFSET_HASH.hashString(names[i], StandardCharsets.UTF_8).asLong(), (long) tableSize);
+            skips[i] = Math.floorMod(SKIP_HASH.hashString(names[i], StandardCharsets.UTF_8).asLong(), (long) tableSize - 1) + 1;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> names[i]));
+        int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+        int filled = 0;
+        while (true) {
+            for (int i : order) {
+                int slot = (int) ((offsets[i] + next[i] * skips[i]) % tableSize);
+                while (table[slot] >= 0) {
+                    next[i]++;
+                    slot = (int) ((offsets[i] + next[i] * skips[i]) % tableSize);
+                }
+                table[slot] = i;
+                next[i]++;
+                if (++filled == tableSize) {
+                    return table;
+                }
+            }
+        }
+    }
+
+    private static final class LookupTable {
+        private final ServiceInstanceSnapshot snapshot;
+        private final int[] table;
+
+        private LookupTable(ServiceInstanceSnapshot snapshot, int[] table) {
+            this.snapshot = snapshot;
+            this.table = table;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 异常实例检测，参考 Envoy 的 outlier detection
+ * <p>
+ * 和 {@link InflightTracker} 一样通过 LoadBalancerLifecycle#onComplete 获取每次请求的结果，Feign 和 WebClient 共用，
+ * 每个实例（host:port）连续失败 consecutiveFailures 次之后被驱逐，驱逐期间 {@link OutlierEjectingServiceInstanceListSupplier}
+ * 不会返回这个实例，负载均衡选择时完全没有这个实例的开销。一个实例所有方法都失败的时候，一次就被驱逐，不需要等每个方法的断路器分别打开
+ * <p>
+ * 失败包括：5xx 响应、连接失败以及读取超时（Feign 中是 582、583），不包括调用方自己的断路器打开（581）以及线程隔离满了（584），
+ * 这两种情况请求没有发出去，和实例无关
+ * <p>
+ * 驱逐时间为 baseEjectionTime * 2^(之前被驱逐的次数)，最大 maxEjectionTime，实例恢复之后稳定一个 maxEjectionTime 才会清零驱逐次数
+ * @date 2026-10-17 23:50
+ */
+@Log4j2
+public class OutlierDetector implements LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+    /**
+     * 和 webmvc 中的 SpecialHttpStatus 一致
+     */
+    static final int CIRCUIT_BREAKER_ON = 581;
+    static final int BULKHEAD_FULL = 584;
+
+    public static final int DEFAULT_CONSECUTIVE_FAILURES = 5;
+    public static final Duration DEFAULT_BASE_EJECTION_TIME = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_MAX_EJECTION_TIME = Duration.ofSeconds(300);
+
+    private final int consecutiveFailures;
+    private final long baseEjectionMillis;
+    private final long maxEjectionMillis;
+    private final LongSupplier clock;
+    /**
+     * 驱逐状态每次变化加一，{@link OutlierEjectingServiceInstanceListSupplier} 通过这个判断结果是否需要重新计算
+     */
+    private final AtomicLong version = new AtomicLong();
+    private final LoadingCache<String, HostState> hostStates;
+
+    public OutlierDetector() {
+        this(DEFAULT_CONSECUTIVE_FAILURES, DEFAULT_BASE_EJECTION_TIME, DEFAULT_MAX_EJECTION_TIME);
+    }
+
+    public OutlierDetector(int consecutiveFailures, Duration baseEjectionTime, Duration maxEjectionTime) {
+        this(consecutiveFailures, baseEjectionTime, maxEjectionTime, System::currentTimeMillis);
+    }
+
+    OutlierDetector(int consecutiveFailures, Duration baseEjectionTime, Duration maxEjectionTime, LongSupplier clock) {
+        this.consecutiveFailures = consecutiveFailures;
+        this.baseEjectionMillis = baseEjectionTime.toMillis();
+        this.maxEjectionMillis = Math.max(maxEjectionTime.toMillis(), baseEjectionMillis);
+        this.clock = clock;
+        //驱逐状态需要保留到驱逐次数清零
+        this.hostStates = Caffeine.newBuilder()
+                .expireAfterAccess(Math.max(maxEjectionMillis * 2, TimeUnit.MINUTES.toMillis(3)), TimeUnit.MILLISECONDS)
+                .build(k -> new HostState());
+    }
+
+    @Override
+    public void onStart(Request<Object> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+    }
+
+    @Override
+    public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        if (completionContext.status() == CompletionContext.Status.DISCARD) {
+            return;
+        }
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (lbResponse == null || !lbResponse.hasServer()) {
+            return;
+        }
+        Result result = completionContext.status() == CompletionContext.Status.FAILED
+                ? classifyThrowable(completionContext.getThrowable())
+                : classifyResponse(completionContext.getClientResponse());
+        if (result == Result.IGNORED) {
+            return;
+        }
+        ServiceInstance server = lbResponse.getServer();
+        if (result == Result.FAILURE) {
+            onFailure(server.getHost(), server.getPort());
+        } else {
+            onSuccess(server.getHost(), server.getPort());
+        }
+    }
+
+    public void onSuccess(String host, int port) {
+        HostState hostState = hostStates.getIfPresent(Resilience4jUtil.getServiceInstance(host, port));
+        if (hostState != null) {
+            hostState.consecutiveFailures.set(0);
+        }
+    }
+
+    public void onFailure(String host, int port) {
+        String serviceInstance = Resilience4jUtil.getServiceInstance(host, port);
+        HostState hostState = hostStates.get(serviceInstance);
+        if (hostState.consecutiveFailures.incrementAndGet() < consecutiveFailures) {
+            return;
+        }
+        synchronized (hostState) {
+            long now = clock.getAsLong();
+            //已经被驱逐，或者其他线程已经处理过
+            if (hostState.ejectedUntil > now || hostState.consecutiveFailures.get() < consecutiveFailures) {
+                return;
+            }
+            if (now - hostState.ejectedUntil > maxEjectionMillis) {
+                hostState.ejections = 0;
+            }
+            long ejectionMillis = Math.min(baseEjectionMillis << Math.min(hostState.ejections, 20), maxEjectionMillis);
+            hostState.ejectedUntil = now + ejectionMillis;
+            hostState.ejections++;
+            hostState.consecutiveFailures.set(0);
+            version.incrementAndGet();
+            log.warn("eject outlier {} for {}ms, ejections: {}", serviceInstance, ejectionMillis, hostState.ejections);
+        }
+    }
+
+    /**
+     * 驱逐结束时间，没有被驱逐返回 0
+     */
+    public long getEjectedUntil(String host, int port) {
+        HostState hostState = hostStates.getIfPresent(Resilience4jUtil.getServiceInstance(host, port));
+        if (hostState == null) {
+            return 0;
+        }
+        long ejectedUntil = hostState.ejectedUntil;
+        return ejectedUntil > clock.getAsLong() ? ejectedUntil : 0;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long currentTimeMillis() {
+        return clock.getAsLong();
+    }
+
+    private static Result classifyResponse(Object clientResponse) {
+        if (!(clientResponse instanceof ResponseData)) {
+            return Result.IGNORED;
+        }
+        ResponseData responseData = (ResponseData) clientResponse;
+        Integer status = responseData.getRawHttpStatus();
+        if (status == null && responseData.getHttpStatus() != null) {
+            status = responseData.getHttpStatus().value();
+        }
+        return status == null ? Result.IGNORED : classifyStatus(status);
+    }
+
+    private static Result classifyStatus(int status) {
+        if (status == CIRCUIT_BREAKER_ON || status == BULKHEAD_FULL) {
+            return Result.IGNORED;
+        }
+        return status >= 500 ? Result.FAILURE : Result.SUCCESS;
+    }
+
+    /**
+     * 带有响应码的异常（例如 WebClientResponseException）按照响应码判断，其他异常（连接失败、超时）都是失败
+     */
+    private static Result classifyThrowable(Throwable throwable) {
+        if (throwable == null) {
+            return Result.FAILURE;
+        }
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CallNotPermittedException || cause instanceof BulkheadFullException) {
+                return Result.IGNORED;
+            }
+        }
+        Method getRawStatusCode = ReflectionUtils.findMethod(throwable.getClass(), "getRawStatusCode");
+        if (getRawStatusCode != null && getRawStatusCode.getReturnType() == int.class) {
+            Object status = ReflectionUtils.invokeMethod(getRawStatusCode, throwable);
+            return classifyStatus((int) status);
+        }
+        return Result.FAILURE;
+    }
+
+    private enum Result {
+        SUCCESS, FAILURE, IGNORED
+    }
+
+    private static final class HostState {
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long ejectedUntil;
+        private int ejections;
+    }
+}
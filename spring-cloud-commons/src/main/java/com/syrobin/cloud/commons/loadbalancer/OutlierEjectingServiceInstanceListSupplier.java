@@ -0,0 +1,101 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 去掉被 {@link OutlierDetector} 驱逐的实例
+ * <p>
+ * 需要放在 {@link StaleWhileRevalidateServiceInstanceListSupplier} 外面，驱逐和恢复要马上生效，不能等缓存刷新。
+ * 上游列表、驱逐状态都没有变化并且没有实例恢复的时候，返回同一个 List 对象，负载均衡器可以复用实例快照
+ * <p>
+ * 最多驱逐 maxEjectionPercent 比例的实例，超过的话驱逐结束时间最早的实例会保留，至少保留一个实例，
+ * 防止下游整体故障（或者调用方自己的网络问题）的时候把所有实例都驱逐掉
+ * @date 2026-10-18 00:10
+ */
+public class OutlierEjectingServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+    private final OutlierDetector outlierDetector;
+    private final int maxEjectionPercent;
+    private volatile Ejected ejected;
+
+    public OutlierEjectingServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, OutlierDetector outlierDetector,
+                                                      int maxEjectionPercent) {
+        super(delegate);
+        this.outlierDetector = outlierDetector;
+        this.maxEjectionPercent = maxEjectionPercent;
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        return getDelegate().get().map(this::eject);
+    }
+
+    private List<ServiceInstance> eject(List<ServiceInstance> serviceInstances) {
+        Ejected current = this.ejected;
+        long version = outlierDetector.getVersion();
+        if (current != null && current.source == serviceInstances && current.version == version
+                && outlierDetector.currentTimeMillis() < current.validUntil) {
+            return current.instances;
+        }
+        current = compute(serviceInstances, version);
+        this.ejected = current;
+        return current.instances;
+    }
+
+    private Ejected compute(List<ServiceInstance> serviceInstances, long version) {
+        int size = serviceInstances.size();
+        long[] ejectedUntil = new long[size];
+        List<Integer> ejectedIndexes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ServiceInstance serviceInstance = serviceInstances.get(i);
+            ejectedUntil[i] = outlierDetector.getEjectedUntil(serviceInstance.getHost(), serviceInstance.getPort());
+            if (ejectedUntil[i] > 0) {
+                ejectedIndexes.add(i);
+            }
+        }
+        if (ejectedIndexes.isEmpty()) {
+            return new Ejected(serviceInstances, version, Long.MAX_VALUE, serviceInstances);
+        }
+        int maxEjected = Math.min(size * maxEjectionPercent / 100, size - 1);
+        //超过上限的话，保留驱逐结束时间最早的实例
+        ejectedIndexes.sort(Comparator.comparingLong((Integer i) -> ejectedUntil[i]).reversed());
+        boolean[] removed = new boolean[size];
+        //最早恢复的实例恢复之后需要重新计算
+        long validUntil = Long.MAX_VALUE;
+        for (int i = 0; i < ejectedIndexes.size() && i < maxEjected; i++) {
+            int index = ejectedIndexes.get(i);
+            removed[index] = true;
+            validUntil = Math.min(validUntil, ejectedUntil[index]);
+        }
+        List<ServiceInstance> instances = new ArrayList<>(size - Math.min(maxEjected, ejectedIndexes.size()));
+        for (int i = 0; i < size; i++) {
+            if (!removed[i]) {
+                instances.add(serviceInstances.get(i));
+            }
+        }
+        return new Ejected(serviceInstances, version, validUntil, instances.size() == size ? serviceInstances : instances);
+    }
+
+    private static final class Ejected {
+        private final List<ServiceInstance> source;
+        private final long version;
+        private final long validUntil;
+        private final List<ServiceInstance> instances;
+
+        private Ejected(List<ServiceInstance> source, long version, long validUntil, List<ServiceInstance> instances) {
+            this.source = source;
+            this.version = version;
+            this.validUntil = validUntil;
+            this.instances = instances;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 基于响应时间的负载均衡，采样方式和 {@link PowerOfTwoChoicesInstanceSelector} 一样，
+ * 两个实例先比较断路器状态，然后比较 ewma * (在途请求数 + 1)，参考 {@link PeakEwmaTracker} 以及 {@link InflightTracker}
+ * 一个实例变慢之后，它的 ewma 马上变大，同时在途请求堆积，流量会很快转移到其他实例上
+ * @date 2026-10-17 17:30
+ */
+public class PeakEwmaInstanceSelector extends PowerOfTwoChoicesInstanceSelector {
+
+    private final SnapshotAlignedCache<PeakEwmaTracker.PeakEwma> peakEwmas;
+    private final SnapshotAlignedCache<LongAdder> inflights;
+
+    public PeakEwmaInstanceSelector(PeakEwmaTracker peakEwmaTracker, InflightTracker inflightTracker) {
+        this.peakEwmas = new SnapshotAlignedCache<>(peakEwmaTracker.getPeakEwmas(), PeakEwmaTracker.PeakEwma[]::new);
+        this.inflights = new SnapshotAlignedCache<>(inflightTracker.getInflights(), LongAdder[]::new);
+    }
+
+    @Override
+    protected int compare(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried, int a, int b) {
+        int result = Integer.compare(circuitBreakers[a].getState().getOrder(), circuitBreakers[b].getState().getOrder());
+        if (result != 0) {
+            return result;
+        }
+        PeakEwmaTracker.PeakEwma[] peakEwmas = this.peakEwmas.get(snapshot);
+        LongAdder[] inflights = this.inflights.get(snapshot);
+        return Double.compare(peakEwmas[a].getLoad(inflights[a].sum()), peakEwmas[b].getLoad(inflights[b].sum()));
+    }
+}
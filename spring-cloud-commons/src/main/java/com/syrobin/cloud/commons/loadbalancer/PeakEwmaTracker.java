@@ -0,0 +1,127 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 每个实例（host:port）的 Peak EWMA 响应时间
+ * <p>
+ * 数据来源是断路器事件：Resilience4jFeignClient 和 ClientResponseCircuitBreakerSubscriber 每次请求结束都会调用断路器的
+ * onSuccess/onError，事件中带有请求耗时，断路器名称是 host:port 加上方法，所以同一个实例所有方法的耗时会合并到一起
+ * <p>
+ * Peak EWMA：耗时比当前值大的时候直接取这个耗时，比当前值小的时候按照距离上次更新的时间指数衰减，
+ * 这样实例变慢的时候可以马上感知，恢复的时候逐渐放量。失败请求的耗时只会拉高，不会拉低（快速失败的实例不应该看起来更快）
+ * <p>
+ * PeakEwma 不按时间过期，还在某个实例快照中的实例一直保留，不在任何快照中的实例在快照切换的时候清理，参考 {@link RetainedInstanceMap}
+ * @date 2026-10-17 17:05
+ */
+public class PeakEwmaTracker {
+
+    public static final Duration DEFAULT_DECAY = Duration.ofSeconds(10);
+
+    private final RetainedInstanceMap<PeakEwma> peakEwmas;
+    private final double decayNanos;
+    private final LongSupplier clock;
+
+    public PeakEwmaTracker() {
+        this(DEFAULT_DECAY);
+    }
+
+    public PeakEwmaTracker(Duration decay) {
+        this(decay, System::nanoTime);
+    }
+
+    PeakEwmaTracker(Duration decay, LongSupplier clock) {
+        this.decayNanos = decay.toNanos();
+        this.clock = clock;
+        //不在任何快照中的实例（比如直接指定 url 的调用）没有负载均衡器读取，快照切换的时候直接清理
+        this.peakEwmas = new RetainedInstanceMap<>(PeakEwma::new, peakEwma -> true);
+    }
+
+    public PeakEwma get(String host, int port) {
+        return peakEwmas.get(host, port);
+    }
+
+    RetainedInstanceMap<PeakEwma> getPeakEwmas() {
+        return peakEwmas;
+    }
+
+    /**
+     * 订阅断路器事件，包括之后新创建的断路器
+     */
+    public void bindTo(CircuitBreakerRegistry circuitBreakerRegistry) {
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(this::subscribe);
+        circuitBreakerRegistry.getEventPublisher()
+                .onEntryAdded(event -> subscribe(event.getAddedEntry()))
+                .onEntryReplaced(event -> subscribe(event.getNewEntry()));
+    }
+
+    private void subscribe(CircuitBreaker circuitBreaker) {
+        String serviceInstance = Resilience4jUtil.getServiceInstanceFromMethodId(circuitBreaker.getName());
+        if (serviceInstance == null) {
+            return;
+        }
+        circuitBreaker.getEventPublisher()
+                .onSuccess(event -> complete(serviceInstance, event.getElapsedDuration(), true))
+                .onError(event -> complete(serviceInstance, event.getElapsedDuration(), false))
+                .onIgnoredError(event -> complete(serviceInstance, event.getElapsedDuration(), true));
+    }
+
+    private void complete(String serviceInstance, Duration elapsed, boolean success) {
+        peakEwmas.get(serviceInstance).observe(elapsed.toNanos(), success);
+    }
+
+    public final class PeakEwma {
+        /**
+         * 没有耗时数据但是有在途请求的实例，说明请求还没有返回，不能当作最快的实例
+         */
+        private static final double PENALTY = 1e15;
+
+        private double cost;
+        private long stamp = clock.getAsLong();
+
+        synchronized void observe(double rtt, boolean success) {
+            double weight = weight();
+            if (rtt > cost) {
+                cost = rtt;
+            } else if (success) {
+                cost = cost * weight + rtt * (1 - weight);
+            }
+        }
+
+        /**
+         * 距离上次更新时间越久，之前的值权重越低
+         */
+        private double weight() {
+            long now = clock.getAsLong();
+            double elapsed = Math.max(now - stamp, 0);
+            stamp = now;
+            return Math.exp(-elapsed / decayNanos);
+        }
+
+        /**
+         * 读取的时候按照 0 耗时衰减，这样长时间没有请求的慢实例也会重新获得流量
+         */
+        public synchronized double getCost() {
+            cost = cost * weight();
+            return cost;
+        }
+
+        /**
+         * 负载 = ewma * (在途请求数 + 1)，在途请求数来自 {@link InflightTracker}
+         */
+        public double getLoad(long inflight) {
+            double cost = getCost();
+            if (cost == 0 && inflight > 0) {
+                return PENALTY + inflight;
+            }
+            return cost * (inflight + 1);
+        }
+    }
+}
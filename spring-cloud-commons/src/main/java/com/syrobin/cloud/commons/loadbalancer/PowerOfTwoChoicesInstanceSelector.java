@@ -0,0 +1,104 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: Power of two choices，随机取两个健康并且这次请求没有调用过的实例，选择较好的那个
+ * 每次选择只需要看两个实例，并且不会因为断路器数据有延迟，短时间内把所有请求都发给同一个"最好"的实例
+ * 两个实例依次比较：和之前调用过的实例冲突的故障域（物理机、机架、网段）、断路器状态、错误率、在途请求数
+ * 在途请求数优先使用 {@link InflightTracker}，请求结束之后会减少，能反映实例当前的负载；
+ * 没有 InflightTracker 或者在途请求数相同的时候，比较断路器中的请求数
+ * 采样 {@link #MAX_SAMPLES} 次都没有找到可用实例（大部分实例都不健康或者已经调用过），退化为完整排序
+ * @date 2026-10-17 16:20
+ */
+public class PowerOfTwoChoicesInstanceSelector implements InstanceSelector {
+
+    private static final int MAX_SAMPLES = 8;
+
+    private final InstanceSelector fallback;
+    /**
+     * 没有 InflightTracker 的时候为 null
+     */
+    private final SnapshotAlignedCache<LongAdder> inflights;
+
+    public PowerOfTwoChoicesInstanceSelector() {
+        this(new RankingInstanceSelector(), null);
+    }
+
+    public PowerOfTwoChoicesInstanceSelector(InflightTracker inflightTracker) {
+        this(new RankingInstanceSelector(), inflightTracker);
+    }
+
+    public PowerOfTwoChoicesInstanceSelector(InstanceSelector fallback, InflightTracker inflightTracker) {
+        this.fallback = fallback;
+        this.inflights = inflightTracker == null ? null : new SnapshotAlignedCache<>(inflightTracker.getInflights(), LongAdder[]::new);
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried) {
+        int size = snapshot.size();
+        if (size == 0) {
+            return -1;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = -1;
+        int second = -1;
+        for (int i = 0; i < MAX_SAMPLES && second < 0; i++) {
+            int candidate = random.nextInt(size);
+            if (candidate == first || !isAvailable(snapshot, circuitBreakers, tried, candidate)) {
+                continue;
+            }
+            if (first < 0) {
+                first = candidate;
+            } else {
+                second = candidate;
+            }
+        }
+        if (first < 0) {
+            return fallback.select(snapshot, circuitBreakers, tried);
+        }
+        if (second < 0) {
+            return first;
+        }
+        return compare(snapshot, circuitBreakers, tried, first, second) <= 0 ? first : second;
+    }
+
+    private static boolean isAvailable(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried, int index) {
+        CircuitBreaker.State state = circuitBreakers[index].getState();
+        return state != CircuitBreaker.State.OPEN
+                && state != CircuitBreaker.State.FORCED_OPEN
+                && !tried.containsHost(snapshot.getHostId(index));
+    }
+
+    /**
+     * 比较两个采样到的实例，小于等于 0 选择 a
+     */
+    protected int compare(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried, int a, int b) {
+        int result = Long.compare(score(snapshot, circuitBreakers, tried, a), score(snapshot, circuitBreakers, tried, b));
+        if (result != 0) {
+            return result;
+        }
+        if (inflights != null) {
+            LongAdder[] inflights = this.inflights.get(snapshot);
+            result = Long.compare(inflights[a].sum(), inflights[b].sum());
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(circuitBreakers[a].getMetrics().getNumberOfBufferedCalls(), circuitBreakers[b].getMetrics().getNumberOfBufferedCalls());
+    }
+
+    private static long score(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried, int index) {
+        CircuitBreaker circuitBreaker = circuitBreakers[index];
+        return RankingInstanceSelector.packScore(
+                tried.conflicts(snapshot, index),
+                circuitBreaker.getState(),
+                circuitBreaker.getMetrics().getFailureRate()
+        );
+    }
+}
@@ -0,0 +1,89 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 单次遍历的实例选择器，替代之前 shuffle + 六级 Comparator 全排序的实现
+ * 每个实例计算一个打包的 long 分数：
+ * <pre>
+ * bit 35-38  和之前调用过的实例冲突的故障域 {@link TriedInstances#conflicts}，依次为 ip、物理机、机架、网段
+ * bit 32-34  断路器状态 {@link CircuitBreaker.State#getOrder()}
+ * bit 0-31   错误率（按 Float.compare 的顺序映射为无符号整数）
+ * </pre>
+ * 分数相同的情况下，依次比较负载均衡器返回次数以及断路器中的请求数，遍历过程中只保留当前最小值
+ * 全部相同的实例之间使用蓄水池抽样等概率选择，等价于之前先 shuffle 再稳定排序取第一个
+ * @date 2026-10-17 10:30
+ */
+public class RankingInstanceSelector implements InstanceSelector {
+
+    private static final int CONFLICTS_SHIFT = 35;
+    private static final int STATE_SHIFT = 32;
+
+    /**
+     * 计算实例的打包分数，分数越小越优先
+     */
+    static long packScore(int conflicts, CircuitBreaker.State state, float failureRate) {
+        return (long) conflicts << CONFLICTS_SHIFT
+                | (long) state.getOrder() << STATE_SHIFT
+                | sortableFloatBits(failureRate);
+    }
+
+    /**
+     * 将 float 映射为无符号 32 位整数，并且保持 Float.compare 的顺序（包括负数以及 -0.0 和 0.0）
+     */
+    static long sortableFloatBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return (bits ^ 0x80000000) & 0xffffffffL;
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried) {
+        int best = -1;
+        long bestScore = 0;
+        long bestReturned = 0;
+        int bestBuffered = 0;
+        int ties = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            CircuitBreaker circuitBreaker = circuitBreakers[i];
+            CircuitBreaker.Metrics metrics = circuitBreaker.getMetrics();
+            long score = packScore(
+                    tried.conflicts(snapshot, i),
+                    circuitBreaker.getState(),
+                    metrics.getFailureRate()
+            );
+            if (best >= 0 && score > bestScore) {
+                continue;
+            }
+            //由于断路器数据和负载均衡之间更新不在一起，有一定延迟，为了防止短时间内收到太多请求，都发到同一个实例上，需要比较负载均衡器返回的次数
+            long returned = snapshot.getReturnedCounter(i).get();
+            if (best >= 0 && score == bestScore && returned > bestReturned) {
+                continue;
+            }
+            int buffered = metrics.getNumberOfBufferedCalls();
+            if (best >= 0 && score == bestScore && returned == bestReturned) {
+                if (buffered > bestBuffered) {
+                    continue;
+                }
+                if (buffered == bestBuffered) {
+                    //完全相同的实例之间等概率随机
+                    ties++;
+                    if (ThreadLocalRandom.current().nextInt(ties) == 0) {
+                        best = i;
+                    }
+                    continue;
+                }
+            }
+            best = i;
+            bestScore = score;
+            bestReturned = returned;
+            bestBuffered = buffered;
+            ties = 1;
+        }
+        return best;
+    }
+}
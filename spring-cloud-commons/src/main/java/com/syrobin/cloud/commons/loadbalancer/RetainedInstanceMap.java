@@ -0,0 +1,115 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 按照 host:port 保存每个实例的状态（PeakEwma、在途请求计数器），不按时间过期，按照实例快照的引用计数清理
+ * <p>
+ * {@link SnapshotAlignedCache} 切换快照的时候 retain 新快照中的实例，release 旧快照中的实例，然后调用 {@link #prune()}，
+ * 清理没有被任何快照引用并且已经空闲的状态。这样负载均衡器按下标读取的对象，和请求路径上更新的对象，只要实例还在某个快照里面就一定是同一个。
+ * 之前用 Caffeine expireAfterAccess，实例列表长时间不变的时候快照一直持有被淘汰的旧对象，请求路径更新的却是新对象，读到的永远是 0
+ * <p>
+ * 所有微服务的负载均衡器共享同一个对象，所以是引用计数，而不是跟着某一个快照整体替换
+ * @date 2026-10-20 10:10
+ */
+class RetainedInstanceMap<T> {
+
+    private final ConcurrentHashMap<String, Holder<T>> states = new ConcurrentHashMap<>();
+    private final Supplier<T> factory;
+    /**
+     * 没有被快照引用的状态，满足这个条件才会被清理，比如在途请求数为 0
+     */
+    private final Predicate<T> idle;
+
+    RetainedInstanceMap(Supplier<T> factory, Predicate<T> idle) {
+        this.factory = factory;
+        this.idle = idle;
+    }
+
+    /**
+     * 获取或者创建，不增加引用计数，没有被快照引用的话会在下次 {@link #prune()} 时清理
+     */
+    T get(String host, int port) {
+        return get(Resilience4jUtil.getServiceInstance(host, port));
+    }
+
+    /**
+     * @param serviceInstance host:port，参考 Resilience4jUtil#getServiceInstance
+     */
+    T get(String serviceInstance) {
+        Holder<T> holder = states.get(serviceInstance);
+        if (holder != null) {
+            return holder.value;
+        }
+        return states.computeIfAbsent(serviceInstance, k -> new Holder<>(factory.get())).value;
+    }
+
+    /**
+     * 只获取，不存在的时候返回 null
+     */
+    T getIfPresent(String host, int port) {
+        Holder<T> holder = states.get(Resilience4jUtil.getServiceInstance(host, port));
+        return holder == null ? null : holder.value;
+    }
+
+    /**
+     * 获取之后检查是否已经被并发的 {@link #prune()} 清理，用于在请求路径上修改状态：
+     * 修改之后再检查一次，如果被清理了，调用方撤销修改并重试，参考 InflightTracker#onStartRequest
+     */
+    boolean isCurrent(String host, int port, T value) {
+        Holder<T> holder = states.get(Resilience4jUtil.getServiceInstance(host, port));
+        return holder != null && holder.value == value;
+    }
+
+    /**
+     * 快照切换时调用，和 prune 中的删除都在 compute 中，保证不会 retain 一个正在被删除的状态
+     */
+    T retain(ServiceInstance serviceInstance) {
+        return states.compute(Resilience4jUtil.getServiceInstance(serviceInstance.getHost(), serviceInstance.getPort()), (k, holder) -> {
+            if (holder == null) {
+                holder = new Holder<>(factory.get());
+            }
+            holder.refs.incrementAndGet();
+            return holder;
+        }).value;
+    }
+
+    void release(ServiceInstance serviceInstance) {
+        Holder<T> holder = states.get(Resilience4jUtil.getServiceInstance(serviceInstance.getHost(), serviceInstance.getPort()));
+        if (holder != null) {
+            holder.refs.decrementAndGet();
+        }
+    }
+
+    /**
+     * 清理没有被任何快照引用并且已经空闲的状态，只在快照切换的时候调用，遍历的是所有微服务的实例数
+     */
+    void prune() {
+        states.forEach((key, holder) -> {
+            if (holder.refs.get() <= 0 && idle.test(holder.value)) {
+                states.computeIfPresent(key, (k, current) -> current.refs.get() <= 0 && idle.test(current.value) ? null : current);
+            }
+        });
+    }
+
+    int size() {
+        return states.size();
+    }
+
+    private static final class Holder<T> {
+        private final T value;
+        private final AtomicInteger refs = new AtomicInteger();
+
+        private Holder(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -7,23 +7,23 @@ import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
 import org.springframework.cloud.loadbalancer.core.ZonePreferenceServiceInstanceListSupplier;
 import reactor.core.publisher.Flux;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author syrobin
  * @version v1.0
  * @description: 只返回与当前实例同一个 Zone 的服务实例，不同 zone 之间的服务不互相调用
+ * 按照 zone 的筛选通过 {@link ServiceInstanceIndex} 完成，同一个上游列表每次返回同一个 List 对象
  * @date 2022-05-27 15:43
  */
 public class SameZoneOnlyServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
 
-    private final String ZONE = "zone";
-
     private final LoadBalancerZoneConfig zoneConfig;
 
-    private String zone;
+    /**
+     * 上游实例列表没有变化的时候复用索引，每次筛选只是一次 Map 查找
+     */
+    private volatile ServiceInstanceIndex index;
 
     public SameZoneOnlyServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
                                                    LoadBalancerZoneConfig zoneConfig) {
@@ -37,34 +37,16 @@ public class SameZoneOnlyServiceInstanceListSupplier extends DelegatingServiceIn
     }
 
     private List<ServiceInstance> filteredByZone(List<ServiceInstance> serviceInstances) {
+        String zone = zoneConfig.getZone();
         if (zone == null) {
-            zone = zoneConfig.getZone();
-        }
-        if (zone!= null) {
-            List<ServiceInstance> filteredInstances = new ArrayList<>();
-            for (ServiceInstance serviceInstance : serviceInstances) {
-                String instanceZone = getZone(serviceInstance);
-                if (zone.equalsIgnoreCase(instanceZone)) {
-                    filteredInstances.add(serviceInstance);
-                }
-            }
-            if (filteredInstances.size() > 0) {
-                return filteredInstances;
-            }
+            return List.of();
         }
+        ServiceInstanceIndex current = ServiceInstanceIndex.of(serviceInstances, this.index);
+        this.index = current;
         /**
          * @see ZonePreferenceServiceInstanceListSupplier 在没有相同zone实例的时候返回的是所有实例
          * 我们这里为了实现不同 zone 之间不互相调用需要返回空列表
          */
-        return List.of();
-    }
-
-    private String getZone(ServiceInstance serviceInstance) {
-        Map<String, String> metadata = serviceInstance.getMetadata();
-        if (metadata != null) {
-            return metadata.get(ZONE);
-        }
-        return null;
-
+        return current.getZone(zone);
     }
 }
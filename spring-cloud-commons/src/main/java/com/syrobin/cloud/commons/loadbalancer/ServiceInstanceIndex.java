@@ -0,0 +1,91 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 按照 metadata 中的 zone 以及 version 建立索引的实例列表，每次服务发现刷新（上游返回了新的 List 对象）时构建一次
+ * 之后按照 zone 或者 version 筛选只是一次 Map 查找，并且每次返回同一个 List 对象，下游可以按照引用判断实例列表是否变化
+ * <p>
+ * zone 不区分大小写（和之前 equalsIgnoreCase 的语义一致），version 区分大小写（和之前 equals 的语义一致）
+ * @date 2026-10-18 01:10
+ */
+public final class ServiceInstanceIndex {
+    public static final String ZONE = "zone";
+    public static final String VERSION = "version";
+
+    private final List<ServiceInstance> source;
+    private final Map<String, List<ServiceInstance>> zones;
+    private final Map<String, List<ServiceInstance>> versions;
+
+    private ServiceInstanceIndex(List<ServiceInstance> source) {
+        this.source = source;
+        Map<String, List<ServiceInstance>> zones = new HashMap<>();
+        Map<String, List<ServiceInstance>> versions = new HashMap<>();
+        for (ServiceInstance serviceInstance : source) {
+            Map<String, String> metadata = serviceInstance.getMetadata();
+            String zone = metadata == null ? null : metadata.get(ZONE);
+            String version = metadata == null ? null : metadata.get(VERSION);
+            zones.computeIfAbsent(zoneKey(zone), k -> new ArrayList<>()).add(serviceInstance);
+            if (version != null) {
+                versions.computeIfAbsent(version, k -> new ArrayList<>()).add(serviceInstance);
+            }
+        }
+        zones.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        versions.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        this.zones = zones;
+        this.versions = versions;
+    }
+
+    /**
+     * 上一次的索引是这个列表构建的话直接复用，否则重新构建
+     */
+    public static ServiceInstanceIndex of(List<ServiceInstance> serviceInstances, ServiceInstanceIndex previous) {
+        if (previous != null && previous.source == serviceInstances) {
+            return previous;
+        }
+        return new ServiceInstanceIndex(serviceInstances);
+    }
+
+    private static String zoneKey(String zone) {
+        return zone == null ? "" : zone.toLowerCase(Locale.ROOT);
+    }
+
+    public List<ServiceInstance> getSource() {
+        return source;
+    }
+
+    /**
+     * @return 这个 zone 的实例，没有的话返回空列表
+     */
+    public List<ServiceInstance> getZone(String zone) {
+        return zones.getOrDefault(zoneKey(zone), Collections.emptyList());
+    }
+
+    /**
+     * 所有出现过的 zone（小写），没有配置 zone 的实例是空字符串
+     */
+    public Set<String> getZones() {
+        return Collections.unmodifiableSet(zones.keySet());
+    }
+
+    public boolean containsZone(String zone) {
+        return zones.containsKey(zoneKey(zone));
+    }
+
+    /**
+     * @return 这个版本的实例，没有的话返回空列表
+     */
+    public List<ServiceInstance> getVersion(String version) {
+        return versions.getOrDefault(version, Collections.emptyList());
+    }
+}
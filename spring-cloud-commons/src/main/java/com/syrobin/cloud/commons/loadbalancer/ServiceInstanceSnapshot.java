@@ -0,0 +1,165 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 实例列表快照，每次实例列表变化（上游返回了新的 List 对象）时构建一次
+ * 去重、host、网段、实例 id 以及计数器的查找都在构建时完成，负载均衡选择时只需要按下标读取数组，
+ * 不再有字符串拼接、Map 查找以及 instance.toString() 之类的开销
+ * <p>
+ * 每个实例所在的故障域（ip、物理机、机架、网段，参考 {@link InstanceTopology}）也在构建时映射为 int id，0 代表没有这一级故障域，
+ * 快照被替换之后调用 {@link #release()} 释放这些 id
+ * @date 2026-10-17 10:12
+ */
+public class ServiceInstanceSnapshot {
+    /**
+     * 实例 metadata 中的权重，和 zone、version 一样通过注册中心的 metadata 配置
+     */
+    public static final String WEIGHT = "weight";
+    public static final int DEFAULT_WEIGHT = 1;
+    /**
+     * 构建快照的原始列表，通过引用判断实例列表是否变化
+     */
+    private final List<ServiceInstance> source;
+    private final ServiceInstance[] instances;
+    private final String[] hosts;
+    private final String[] subnets;
+    private final int[] hostIds;
+    private final int[] machineIds;
+    private final int[] rackIds;
+    private final int[] subnetIds;
+    private final int[] weights;
+    private final AtomicLong[] returnedCounters;
+    private final HostIdInterner hostIdInterner;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public ServiceInstanceSnapshot(List<ServiceInstance> source, LoadingCache<String, AtomicLong> numberOfReturnedByLoadBalancer,
+                                   HostIdInterner hostIdInterner) {
+        this(source, numberOfReturnedByLoadBalancer, hostIdInterner, new InstanceTopology());
+    }
+
+    public ServiceInstanceSnapshot(List<ServiceInstance> source, LoadingCache<String, AtomicLong> numberOfReturnedByLoadBalancer,
+                                   HostIdInterner hostIdInterner, InstanceTopology topology) {
+        this.source = source;
+        this.hostIdInterner = hostIdInterner;
+        //和之前 stream().distinct() 的语义一致
+        this.instances = new LinkedHashSet<>(source).toArray(new ServiceInstance[0]);
+        int size = instances.length;
+        this.hosts = new String[size];
+        this.subnets = new String[size];
+        this.hostIds = new int[size];
+        this.machineIds = new int[size];
+        this.rackIds = new int[size];
+        this.subnetIds = new int[size];
+        this.weights = new int[size];
+        this.returnedCounters = new AtomicLong[size];
+        for (int i = 0; i < size; i++) {
+            ServiceInstance instance = instances[i];
+            String host = instance.getHost();
+            hosts[i] = host;
+            subnets[i] = topology.getSubnet(host);
+            //host 比较不区分大小写，IPv6 地址规范化之后比较；有些注册中心的实例 host 可能为 null，这时候 id 为 0
+            hostIds[i] = intern(hostIdInterner, "", topology.getAddress(host));
+            //不同级别的故障域加上前缀，避免 id 冲突
+            machineIds[i] = intern(hostIdInterner, "host:", InstanceTopology.getHost(instance));
+            rackIds[i] = intern(hostIdInterner, "rack:", InstanceTopology.getRack(instance));
+            subnetIds[i] = intern(hostIdInterner, "subnet:", subnets[i]);
+            weights[i] = getWeight(instance);
+            returnedCounters[i] = numberOfReturnedByLoadBalancer.get(Resilience4jUtil.getServiceInstance(host, instance.getPort()));
+        }
+    }
+
+    private static int intern(HostIdInterner hostIdInterner, String prefix, String value) {
+        return value == null ? 0 : hostIdInterner.intern(prefix + value);
+    }
+
+    /**
+     * 没有配置或者配置错误的实例使用默认权重
+     */
+    static int getWeight(ServiceInstance instance) {
+        String weight = instance.getMetadata() == null ? null : instance.getMetadata().get(WEIGHT);
+        if (weight == null) {
+            return DEFAULT_WEIGHT;
+        }
+        try {
+            return Math.max(Integer.parseInt(weight.trim()), 0);
+        } catch (NumberFormatException e) {
+            return DEFAULT_WEIGHT;
+        }
+    }
+
+    /**
+     * 释放构建时 intern 的 id，快照被替换之后调用，多次调用只释放一次
+     */
+    void release() {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        for (int i = 0; i < instances.length; i++) {
+            hostIdInterner.release(hostIds[i]);
+            hostIdInterner.release(machineIds[i]);
+            hostIdInterner.release(rackIds[i]);
+            hostIdInterner.release(subnetIds[i]);
+        }
+    }
+
+    public boolean isSnapshotOf(List<ServiceInstance> serviceInstances) {
+        return source == serviceInstances;
+    }
+
+    public int size() {
+        return instances.length;
+    }
+
+    public ServiceInstance getInstance(int index) {
+        return instances[index];
+    }
+
+    public ServiceInstance[] getInstances() {
+        return instances.clone();
+    }
+
+    public String getHost(int index) {
+        return hosts[index];
+    }
+
+    /**
+     * CIDR 形式的网段，host 不是 ip 地址返回 null
+     */
+    public String getSubnet(int index) {
+        return subnets[index];
+    }
+
+    public int getHostId(int index) {
+        return hostIds[index];
+    }
+
+    public int getMachineId(int index) {
+        return machineIds[index];
+    }
+
+    public int getRackId(int index) {
+        return rackIds[index];
+    }
+
+    public int getSubnetId(int index) {
+        return subnetIds[index];
+    }
+
+    public int getWeight(int index) {
+        return weights[index];
+    }
+
+    public AtomicLong getReturnedCounter(int index) {
+        return returnedCounters[index];
+    }
+}
@@ -0,0 +1,125 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 新实例预热，实例刚注册的时候 JIT 没有预热、连接池是空的，马上承担全部流量会导致响应时间尖刺
+ * <p>
+ * 预热开始时间优先使用实例 metadata 中的 registration-timestamp（毫秒时间戳），没有的话使用实例第一次出现在实例列表中的时间，
+ * 预热系数从 {@link #MIN_FACTOR} 线性增长到 1，预热时间内实例只承担正常流量的这个比例
+ * <p>
+ * 调用方自己刚启动的时候，第一次拿到的实例列表都是已经在运行的实例，这些实例不需要预热。
+ * 上一次实例列表中没有的实例都视为新实例，下线之后用同样的 host:port 重新上线（比如重启）也会重新预热
+ * @date 2026-10-17 22:50
+ */
+public class SlowStart {
+    /**
+     * 实例 metadata 中的注册时间，和 zone、version 一样通过注册中心的 metadata 配置
+     */
+    public static final String REGISTRATION_TIMESTAMP = "registration-timestamp";
+    /**
+     * 预热刚开始的时候也要有少量流量，否则预热不会开始
+     */
+    static final double MIN_FACTOR = 0.1;
+
+    private final long windowMillis;
+    private final LongSupplier clock;
+    /**
+     * 上一次实例列表中的实例，host:port -> 第一次出现的时间
+     */
+    private Map<String, Long> seen = new HashMap<>();
+    private volatile boolean initialized;
+
+    public SlowStart(Duration window) {
+        this(window, System::currentTimeMillis);
+    }
+
+    SlowStart(Duration window, LongSupplier clock) {
+        this.windowMillis = window.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * 实例列表变化的时候调用，记录新出现实例的时间
+     *
+     * @return 之前没有见过的实例，第一次调用时返回空列表
+     */
+    public synchronized List<ServiceInstance> observe(Collection<ServiceInstance> serviceInstances) {
+        List<ServiceInstance> added = new ArrayList<>();
+        long now = clock.getAsLong();
+        //第一次看到的实例视为早已启动
+        long start = initialized ? now : now - windowMillis;
+        //只保留这次列表中的实例，下线的实例直接丢弃，重新上线的时候按照新实例处理
+        Map<String, Long> current = new HashMap<>();
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            String key = getKey(serviceInstance);
+            Long firstSeen = seen.get(key);
+            if (firstSeen == null) {
+                firstSeen = start;
+                if (initialized) {
+                    added.add(serviceInstance);
+                }
+            }
+            current.put(key, firstSeen);
+        }
+        seen = current;
+        initialized = true;
+        return added;
+    }
+
+    /**
+     * 预热开始时间，需要先调用 {@link #observe}
+     */
+    public long getStartMillis(ServiceInstance serviceInstance) {
+        String timestamp = serviceInstance.getMetadata() == null ? null : serviceInstance.getMetadata().get(REGISTRATION_TIMESTAMP);
+        if (timestamp != null) {
+            try {
+                return Long.parseLong(timestamp.trim());
+            } catch (NumberFormatException ignored) {
+                //配置错误使用第一次出现的时间
+            }
+        }
+        Long firstSeen;
+        synchronized (this) {
+            firstSeen = seen.get(getKey(serviceInstance));
+        }
+        return firstSeen == null ? clock.getAsLong() - windowMillis : firstSeen;
+    }
+
+    /**
+     * 预热结束时间
+     */
+    public long getEndMillis(long startMillis) {
+        return startMillis + windowMillis;
+    }
+
+    /**
+     * 预热系数，预热结束之后是 1
+     */
+    public double getFactor(long startMillis) {
+        long elapsed = clock.getAsLong() - startMillis;
+        if (elapsed >= windowMillis) {
+            return 1;
+        }
+        return Math.max((double) elapsed / windowMillis, MIN_FACTOR);
+    }
+
+    public long currentTimeMillis() {
+        return clock.getAsLong();
+    }
+
+    private static String getKey(ServiceInstance serviceInstance) {
+        return Resilience4jUtil.getServiceInstance(serviceInstance.getHost(), serviceInstance.getPort());
+    }
+}
@@ -0,0 +1,107 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 新实例预热，包装任意负载均衡模式的 {@link InstanceSelector}，参考 {@link SlowStart}
+ * <p>
+ * 选中的实例还在预热的话，按照 1 - 预热系数的概率放弃，把这个实例当作已经调用过，重新选择一次，
+ * 这样预热中的实例只承担正常流量的预热系数比例，和具体的选择算法无关
+ * <p>
+ * 新实例的负载均衡器返回次数从当前最小值开始，否则按照返回次数排序的模式下，新实例在追平其他实例之前会拿到所有请求
+ * @date 2026-10-17 23:05
+ */
+public class SlowStartInstanceSelector implements InstanceSelector, DisposableBean {
+
+    private final InstanceSelector delegate;
+    private final SlowStart slowStart;
+    private volatile Ramp ramp;
+
+    public SlowStartInstanceSelector(InstanceSelector delegate, SlowStart slowStart) {
+        this.delegate = delegate;
+        this.slowStart = slowStart;
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried) {
+        return select(snapshot, circuitBreakers, tried, null);
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried, Request<?> request) {
+        int index = delegate.select(snapshot, circuitBreakers, tried, request);
+        if (index < 0) {
+            return index;
+        }
+        Ramp current = getRamp(snapshot);
+        //所有实例都预热完成之后只有一次时间比较
+        if (slowStart.currentTimeMillis() >= current.endMillis) {
+            return index;
+        }
+        double factor = slowStart.getFactor(current.startMillis[index]);
+        if (factor >= 1 || ThreadLocalRandom.current().nextDouble() < factor) {
+            return index;
+        }
+        //放弃的选择也计入返回次数，否则按照返回次数排序的模式下预热中的实例每次都会排在第一位
+        snapshot.getReturnedCounter(index).incrementAndGet();
+        tried.addHost(snapshot.getHostId(index));
+        int other = delegate.select(snapshot, circuitBreakers, tried, request);
+        return other < 0 ? index : other;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (delegate instanceof DisposableBean) {
+            ((DisposableBean) delegate).destroy();
+        }
+    }
+
+    private Ramp getRamp(ServiceInstanceSnapshot snapshot) {
+        Ramp current = this.ramp;
+        if (current == null || current.snapshot != snapshot) {
+            current = new Ramp(snapshot);
+            this.ramp = current;
+        }
+        return current;
+    }
+
+    private final class Ramp {
+        private final ServiceInstanceSnapshot snapshot;
+        private final long[] startMillis;
+        private final long endMillis;
+
+        private Ramp(ServiceInstanceSnapshot snapshot) {
+            this.snapshot = snapshot;
+            int size = snapshot.size();
+            Set<ServiceInstance> added = new HashSet<>(slowStart.observe(Arrays.asList(snapshot.getInstances())));
+            long minReturned = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (!added.contains(snapshot.getInstance(i))) {
+                    minReturned = Math.min(minReturned, snapshot.getReturnedCounter(i).get());
+                }
+            }
+            this.startMillis = new long[size];
+            long end = Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                startMillis[i] = slowStart.getStartMillis(snapshot.getInstance(i));
+                end = Math.max(end, slowStart.getEndMillis(startMillis[i]));
+                AtomicLong returned = snapshot.getReturnedCounter(i);
+                if (minReturned != Long.MAX_VALUE && added.contains(snapshot.getInstance(i)) && returned.get() < minReturned) {
+                    returned.set(minReturned);
+                }
+            }
+            this.endMillis = end;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: nginx 的平滑加权轮询，实例列表变化时预先计算出一整轮的顺序，选择时只需要一个原子计数器按顺序取
+ * 例如权重 {5, 1, 1} 的顺序为 a a b a c a a，而不是 a a a a a b c，权重大的实例不会连续收到一批请求
+ * @date 2026-10-17 20:05
+ */
+public final class SmoothWeightedRoundRobin {
+
+    /**
+     * 一轮的最大长度，超过的话按比例缩小权重，避免权重设置得很大时计算以及内存开销过大
+     */
+    public static final int MAX_SCHEDULE_LENGTH = 4096;
+
+    private SmoothWeightedRoundRobin() {
+    }
+
+    /**
+     * 计算一整轮的选择顺序
+     *
+     * @param weights 每个实例的权重，小于等于 0 的实例不会出现在结果中
+     * @return 实例下标的顺序，所有权重都小于等于 0 返回空数组
+     */
+    public static int[] schedule(int[] weights) {
+        int[] normalized = normalize(weights);
+        int total = 0;
+        for (int weight : normalized) {
+            total += weight;
+        }
+        int[] schedule = new int[total];
+        long[] current = new long[normalized.length];
+        for (int step = 0; step < total; step++) {
+            int best = -1;
+            for (int i = 0; i < normalized.length; i++) {
+                if (normalized[i] <= 0) {
+                    continue;
+                }
+                current[i] += normalized[i];
+                if (best < 0 || current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[step] = best;
+        }
+        return schedule;
+    }
+
+    /**
+     * 除以最大公约数，超过 {@link #MAX_SCHEDULE_LENGTH} 的话按比例缩小，但是每个实例至少保留 1
+     */
+    private static int[] normalize(int[] weights) {
+        int gcd = 0;
+        long total = 0;
+        for (int weight : weights) {
+            if (weight > 0) {
+                gcd = gcd(gcd, weight);
+                total += weight;
+            }
+        }
+        int[] normalized = new int[weights.length];
+        if (gcd == 0) {
+            return normalized;
+        }
+        total /= gcd;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0) {
+                long weight = weights[i] / gcd;
+                if (total > MAX_SCHEDULE_LENGTH) {
+                    weight = Math.max(1, weight * MAX_SCHEDULE_LENGTH / total);
+                }
+                normalized[i] = (int) weight;
+            }
+        }
+        return normalized;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,65 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 和实例快照下标一一对应的数组，快照变化（上游返回了新的实例列表）时重新构建
+ * 用于缓存 PeakEwma、在途请求计数器之类按照 host:port 查找的对象，负载均衡选择时按下标读取，不需要查找
+ * <p>
+ * 数组中的对象来自 {@link RetainedInstanceMap}，构建的时候 retain，被替换的时候 release，
+ * 所以快照还在使用的时候这些对象不会被清理，请求路径上更新的一定是同一个对象
+ * @date 2026-10-17 18:30
+ */
+class SnapshotAlignedCache<T> {
+
+    private final RetainedInstanceMap<T> states;
+    private final IntFunction<T[]> arrayFactory;
+    private final AtomicReference<Entry<T>> entry = new AtomicReference<>();
+
+    SnapshotAlignedCache(RetainedInstanceMap<T> states, IntFunction<T[]> arrayFactory) {
+        this.states = states;
+        this.arrayFactory = arrayFactory;
+    }
+
+    T[] get(ServiceInstanceSnapshot snapshot) {
+        while (true) {
+            Entry<T> current = entry.get();
+            if (current != null && current.snapshot == snapshot) {
+                return current.values;
+            }
+            T[] values = arrayFactory.apply(snapshot.size());
+            for (int i = 0; i < values.length; i++) {
+                values[i] = states.retain(snapshot.getInstance(i));
+            }
+            Entry<T> fresh = new Entry<>(snapshot, values);
+            if (entry.compareAndSet(current, fresh)) {
+                if (current != null) {
+                    release(current.snapshot);
+                }
+                return values;
+            }
+            //并发构建的时候只有一个成功，失败的一方释放自己 retain 的引用之后重新读取
+            release(snapshot);
+        }
+    }
+
+    private void release(ServiceInstanceSnapshot snapshot) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            states.release(snapshot.getInstance(i));
+        }
+        states.prune();
+    }
+
+    private static final class Entry<T> {
+        private final ServiceInstanceSnapshot snapshot;
+        private final T[] values;
+
+        private Entry(ServiceInstanceSnapshot snapshot, T[] values) {
+            this.snapshot = snapshot;
+            this.values = values;
+        }
+    }
+}
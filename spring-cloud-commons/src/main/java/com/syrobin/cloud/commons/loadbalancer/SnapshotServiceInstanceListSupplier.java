@@ -0,0 +1,85 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 直接包装服务发现的 Supplier，注册中心返回的非空实例列表保存到 {@link DiscoverySnapshotStore}，
+ * 启动之后注册中心还没有返回过实例（第一次拉取还没有完成、注册中心不可用或者获取超时）的时候，使用文件中保存的实例列表
+ * <p>
+ * 文件中的实例列表在注册中心确认之前都是过期的，一旦注册中心返回过非空列表就不再使用，之后注册中心返回空列表的情况由
+ * {@link StaleWhileRevalidateServiceInstanceListSupplier} 处理
+ * <p>
+ * 需要放在筛选实例的 Supplier 里面，保存的是注册中心返回的完整列表，重启之后 zone、子集等筛选重新计算
+ * @date 2026-10-18 10:50
+ */
+@Log4j2
+public class SnapshotServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+    private final DiscoverySnapshotStore store;
+    /**
+     * 注册中心是否已经返回过非空列表
+     */
+    private volatile boolean confirmed;
+    private volatile boolean seeded;
+
+    public SnapshotServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, DiscoverySnapshotStore store) {
+        super(delegate);
+        this.store = store;
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        return getDelegate().get()
+                .map(this::onDiscovered)
+                .onErrorResume(e -> {
+                    List<ServiceInstance> snapshot = confirmed ? List.of() : seed();
+                    if (snapshot.isEmpty()) {
+                        return Flux.error(e);
+                    }
+                    log.warn("discovery of {} failed, use {} instances from snapshot: {}", getServiceId(), snapshot.size(), e.toString());
+                    return Flux.just(snapshot);
+                });
+    }
+
+    private List<ServiceInstance> onDiscovered(List<ServiceInstance> serviceInstances) {
+        if (!serviceInstances.isEmpty()) {
+            if (!confirmed) {
+                confirmed = true;
+                if (seeded) {
+                    log.info("discovery of {} confirmed {} instances, stop using snapshot", getServiceId(), serviceInstances.size());
+                }
+            }
+            store.put(getServiceId(), serviceInstances);
+            return serviceInstances;
+        }
+        if (confirmed) {
+            return serviceInstances;
+        }
+        List<ServiceInstance> snapshot = seed();
+        return snapshot.isEmpty() ? serviceInstances : snapshot;
+    }
+
+    private List<ServiceInstance> seed() {
+        List<ServiceInstance> snapshot = store.get(getServiceId());
+        if (!snapshot.isEmpty() && !seeded) {
+            seeded = true;
+            log.info("discovery of {} has no instances yet, use {} stale instances from snapshot", getServiceId(), snapshot.size());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 当前是否在使用文件中未经确认的实例列表
+     */
+    public boolean isStale() {
+        return seeded && !confirmed;
+    }
+}
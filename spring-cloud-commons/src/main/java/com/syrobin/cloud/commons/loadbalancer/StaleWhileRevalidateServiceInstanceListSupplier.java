@@ -0,0 +1,277 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 替代框架内置的 CachingServiceInstanceListSupplier，总是立即返回最后一次成功获取的实例列表，后台定时刷新
+ * <p>
+ * CachingServiceInstanceListSupplier 缓存过期之后，下一个请求需要等待重新获取实例列表，并且注册中心返回空列表的时候会直接缓存空列表。
+ * 这里只有第一次请求需要等待获取实例列表，之后请求不会等待刷新；刷新失败保留之前的列表；
+ * 之前的列表不为空而刷新结果为空的时候，连续为空超过 emptySafetyWindow 才会接受空列表，
+ * 这样 Eureka 重启或者网络隔离的时候仍然使用上次的实例列表，参考 eureka-server 的 application.yml
+ * <p>
+ * 刷新在第一次请求之后开始，除了定时刷新，refreshTrigger 每次通知（参考 {@link InstanceRefreshNotifier}）也会刷新，同一时间只有一个刷新在进行
+ * <p>
+ * 刷新结果和当前列表的实例以及 metadata 都一样的时候，继续返回当前的 List 对象，下游按照引用缓存的实例快照、轮询顺序等都不需要重新计算；
+ * 有变化的时候，保留下来的实例保持原来的相对顺序，新增的实例排在后面，实例在列表中的位置尽量稳定
+ * @date 2026-10-18 09:30
+ */
+@Log4j2
+public class StaleWhileRevalidateServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(35);
+    public static final Duration DEFAULT_EMPTY_SAFETY_WINDOW = Duration.ofMinutes(5);
+    /**
+     * 启动时注册中心客户端可能还没有完成第一次拉取，第一次获取到的可能是空列表或者 {@link SnapshotServiceInstanceListSupplier}
+     * 返回的过期列表，所以第一次刷新不用等一个完整的刷新间隔
+     */
+    private static final Duration FIRST_REFRESH_DELAY = Duration.ofSeconds(5);
+
+    private final Duration refreshInterval;
+    private final long emptySafetyMillis;
+    private final LongSupplier clock;
+    private final Flux<?> refreshTrigger;
+    private final LongAdder changes = new LongAdder();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile State state;
+    private volatile Disposable refresher;
+    private volatile Timer successTimer;
+    private volatile Timer emptyRejectedTimer;
+    private volatile Timer errorTimer;
+
+    public StaleWhileRevalidateServiceInstanceListSupplier(ServiceInstanceListSupplier delegate) {
+        this(delegate, DEFAULT_REFRESH_INTERVAL, DEFAULT_EMPTY_SAFETY_WINDOW);
+    }
+
+    /**
+     * @param refreshInterval   后台刷新间隔
+     * @param emptySafetyWindow 刷新结果连续为空超过这个时间才会替换之前不为空的列表
+     */
+    public StaleWhileRevalidateServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, Duration refreshInterval,
+                                                           Duration emptySafetyWindow) {
+        this(delegate, refreshInterval, emptySafetyWindow, Flux.never());
+    }
+
+    /**
+     * @param refreshTrigger 每次发出元素的时候刷新一次，例如注册中心客户端本地缓存刷新的通知
+     */
+    public StaleWhileRevalidateServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, Duration refreshInterval,
+                                                           Duration emptySafetyWindow, Flux<?> refreshTrigger) {
+        this(delegate, refreshInterval, emptySafetyWindow, refreshTrigger, System::currentTimeMillis);
+    }
+
+    StaleWhileRevalidateServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, Duration refreshInterval,
+                                                    Duration emptySafetyWindow, Flux<?> refreshTrigger, LongSupplier clock) {
+        super(delegate);
+        this.refreshInterval = refreshInterval;
+        this.emptySafetyMillis = emptySafetyWindow.toMillis();
+        this.refreshTrigger = refreshTrigger;
+        this.clock = clock;
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        return Flux.defer(() -> {
+            State current = this.state;
+            if (current != null) {
+                return Flux.just(current.instances);
+            }
+            //第一次获取，只能等待上游
+            return getDelegate().get().take(1).map(serviceInstances -> {
+                accept(serviceInstances);
+                startRefresh();
+                return this.state.instances;
+            });
+        });
+    }
+
+    private void startRefresh() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        Duration firstDelay = refreshInterval.compareTo(FIRST_REFRESH_DELAY) < 0 ? refreshInterval : FIRST_REFRESH_DELAY;
+        this.refresher = Flux.merge(Flux.interval(firstDelay, refreshInterval, Schedulers.parallel()), refreshTrigger)
+                .onBackpressureDrop()
+                //上一次刷新没有结束的时候丢弃这一次
+                .concatMap(tick -> refresh(), 1)
+                .subscribe();
+    }
+
+    /**
+     * 刷新一次，失败只记录日志，不会结束定时刷新
+     */
+    Mono<Void> refresh() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return getDelegate().get().next()
+                    .timeout(refreshInterval)
+                    .doOnNext(serviceInstances -> record(accept(serviceInstances) ? successTimer : emptyRejectedTimer, start))
+                    .doOnError(e -> {
+                        record(errorTimer, start);
+                        log.warn("refresh service instances of {} failed, keep using {} cached instances: {}",
+                                getServiceId(), this.state == null ? 0 : this.state.instances.size(), e.toString());
+                    })
+                    .onErrorResume(e -> Mono.empty())
+                    .then();
+        });
+    }
+
+    /**
+     * @return 是否接受了这次的结果
+     */
+    private synchronized boolean accept(List<ServiceInstance> serviceInstances) {
+        long now = clock.getAsLong();
+        State current = this.state;
+        if (current == null || !serviceInstances.isEmpty() || current.instances.isEmpty()) {
+            List<ServiceInstance> instances = current == null ? serviceInstances : diff(current.instances, serviceInstances);
+            if (current != null && instances != current.instances) {
+                changes.increment();
+            }
+            this.state = new State(instances, now, 0);
+            return true;
+        }
+        long emptySince = current.emptySince == 0 ? now : current.emptySince;
+        if (now - emptySince >= emptySafetyMillis) {
+            log.warn("service instances of {} have been empty for {}ms, drop {} cached instances",
+                    getServiceId(), now - emptySince, current.instances.size());
+            this.state = new State(serviceInstances, now, 0);
+            return true;
+        }
+        if (current.emptySince == 0) {
+            log.warn("discovery returned no instances for {}, keep using {} cached instances",
+                    getServiceId(), current.instances.size());
+        }
+        this.state = new State(current.instances, current.updatedAt, emptySince);
+        return false;
+    }
+
+    /**
+     * @return 实例以及 metadata 都没有变化的话返回 previous，否则返回按照 previous 顺序调整过的 current
+     */
+    static List<ServiceInstance> diff(List<ServiceInstance> previous, List<ServiceInstance> current) {
+        Map<String, ServiceInstance> byKey = new LinkedHashMap<>(current.size() * 2);
+        for (ServiceInstance serviceInstance : current) {
+            byKey.put(Resilience4jUtil.getServiceInstance(serviceInstance.getHost(), serviceInstance.getPort()), serviceInstance);
+        }
+        //有重复实例的时候不调整顺序，和之前的语义一致
+        if (byKey.size() != current.size()) {
+            return current;
+        }
+        boolean changed = previous.size() != current.size();
+        List<ServiceInstance> ordered = new ArrayList<>(current.size());
+        for (ServiceInstance old : previous) {
+            ServiceInstance serviceInstance = byKey.remove(Resilience4jUtil.getServiceInstance(old.getHost(), old.getPort()));
+            if (serviceInstance == null) {
+                changed = true;
+                continue;
+            }
+            if (!changed && (!Objects.equals(old.getInstanceId(), serviceInstance.getInstanceId())
+                    || old.isSecure() != serviceInstance.isSecure()
+                    || !Objects.equals(old.getMetadata(), serviceInstance.getMetadata()))) {
+                changed = true;
+            }
+            ordered.add(serviceInstance);
+        }
+        if (!changed && byKey.isEmpty()) {
+            return previous;
+        }
+        ordered.addAll(byKey.values());
+        return ordered;
+    }
+
+    /**
+     * 实例列表变化的次数
+     */
+    public long getChanges() {
+        return changes.sum();
+    }
+
+    private static void record(Timer timer, long start) {
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 距离上一次接受刷新结果的时间，刷新失败或者空列表被拒绝的时候会一直增长，还没有获取过返回 0
+     */
+    public long getStalenessMillis() {
+        State current = this.state;
+        return current == null ? 0 : clock.getAsLong() - current.updatedAt;
+    }
+
+    public int size() {
+        State current = this.state;
+        return current == null ? 0 : current.instances.size();
+    }
+
+    /**
+     * 刷新耗时（按照结果区分）、实例列表变化次数、缓存的实例个数以及缓存过期程度的监控，通过 service tag 区分微服务
+     */
+    public void bindTo(MeterRegistry registry, String serviceId) {
+        this.successTimer = Timer.builder("loadbalancer.instances.refresh")
+                .tag("service", serviceId).tag("outcome", "success").register(registry);
+        this.emptyRejectedTimer = Timer.builder("loadbalancer.instances.refresh")
+                .tag("service", serviceId).tag("outcome", "empty_rejected").register(registry);
+        this.errorTimer = Timer.builder("loadbalancer.instances.refresh")
+                .tag("service", serviceId).tag("outcome", "error").register(registry);
+        Gauge.builder("loadbalancer.instances.staleness", this, s -> s.getStalenessMillis() / 1000.0)
+                .tag("service", serviceId).baseUnit("seconds").register(registry);
+        FunctionCounter.builder("loadbalancer.instances.changes", this, StaleWhileRevalidateServiceInstanceListSupplier::getChanges)
+                .tag("service", serviceId).register(registry);
+        Gauge.builder("loadbalancer.instances.size", this, StaleWhileRevalidateServiceInstanceListSupplier::size)
+                .tag("service", serviceId).register(registry);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        Disposable current = this.refresher;
+        if (current != null) {
+            current.dispose();
+        }
+        super.destroy();
+    }
+
+    private static final class State {
+        private final List<ServiceInstance> instances;
+        /**
+         * 最后一次接受刷新结果的时间
+         */
+        private final long updatedAt;
+        /**
+         * 刷新结果开始连续为空的时间，0 代表不为空
+         */
+        private final long emptySince;
+
+        private State(List<ServiceInstance> instances, long updatedAt, long emptySince) {
+            this.instances = instances;
+            this.updatedAt = updatedAt;
+            this.emptySince = emptySince;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 确定性子集，每个调用方只使用固定的 subsetSize 个服务实例
+ * <p>
+ * 每个调用方默认会和所有服务实例建立连接，以及创建 Resilience4jFeignClient 中每个实例一个的线程池，
+ * 连接数以及线程数是调用方个数 * 服务实例个数。使用子集之后变成调用方个数 * subsetSize
+ * <p>
+ * 使用 rendezvous hash（最高随机权重）：每个服务实例的分数为 hash(调用方实例 id, 服务实例 host:port)，取分数最高的 subsetSize 个
+ * 1. 同一个调用方每次计算的结果一样，不需要协调
+ * 2. 不同调用方的分数互相独立，每个服务实例被选中的概率相同，负载是均匀的
+ * 3. 服务实例增减的时候，只有分数排在边界附近的实例会变化，其他调用方-服务实例之间的连接不受影响
+ * <p>
+ * 需要放在 {@link StaleWhileRevalidateServiceInstanceListSupplier} 里面，上游实例列表没有变化的时候返回同一个结果
+ * @date 2026-10-17 22:10
+ */
+public class SubsetServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final String consumerId;
+    private final int subsetSize;
+    private volatile Subset subset;
+
+    /**
+     * @param consumerId 当前调用方的实例 id
+     * @param subsetSize 子集大小，小于等于 0 代表不使用子集
+     */
+    public SubsetServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, String consumerId, int subsetSize) {
+        super(delegate);
+        this.consumerId = consumerId;
+        this.subsetSize = subsetSize;
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        return getDelegate().get().map(this::subset);
+    }
+
+    private List<ServiceInstance> subset(List<ServiceInstance> serviceInstances) {
+        if (subsetSize <= 0 || serviceInstances.size() <= subsetSize) {
+            return serviceInstances;
+        }
+        Subset current = this.subset;
+        if (current == null || current.source != serviceInstances) {
+            current = new Subset(serviceInstances, select(serviceInstances));
+            this.subset = current;
+        }
+        return current.instances;
+    }
+
+    private List<ServiceInstance> select(List<ServiceInstance> serviceInstances) {
+        int size = serviceInstances.size();
+        long[] scores = new long[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            ServiceInstance serviceInstance = serviceInstances.get(i);
+            scores[i] = score(serviceInstance);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> scores[i]).reversed());
+        List<ServiceInstance> instances = new ArrayList<>(subsetSize);
+        for (int i = 0; i < subsetSize; i++) {
+            instances.add(serviceInstances.get(order[i]));
+        }
+        return instances;
+    }
+
+    private long score(ServiceInstance serviceInstance) {
+        return HASH.newHasher()
+                .putString(consumerId, StandardCharsets.UTF_8)
+                //分隔符，避免不同的 id 拼接之后相同
+                .putChar('|')
+                .putString(Resilience4jUtil.getServiceInstance(serviceInstance.getHost(), serviceInstance.getPort()), StandardCharsets.UTF_8)
+                .hash().asLong();
+    }
+
+    private static final class Subset {
+        private final List<ServiceInstance> source;
+        private final List<ServiceInstance> instances;
+
+        private Subset(List<ServiceInstance> source, List<ServiceInstance> instances) {
+            this.source = source;
+            this.instances = instances;
+        }
+    }
+}
@@ -1,23 +1,16 @@
 package com.syrobin.cloud.commons.loadbalancer;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.function.IntFunction;
 
 import brave.Span;
 import brave.Tracer;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.syrobin.cloud.commons.resilience4j.CircuitBreakerExtractor;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
@@ -25,6 +18,7 @@ import lombok.NoArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import reactor.core.publisher.Mono;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.loadbalancer.DefaultResponse;
 import org.springframework.cloud.client.loadbalancer.EmptyResponse;
@@ -38,23 +32,22 @@ import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
 //因为注册的时候是ReactorServiceInstanceLoadBalancer
 @Log4j2
 @NoArgsConstructor//仅仅为了单元测试
-public class TracedCircuitBreakerRoundRobinLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+public class TracedCircuitBreakerRoundRobinLoadBalancer implements ReactorServiceInstanceLoadBalancer, DisposableBean {
     private ServiceInstanceListSupplier serviceInstanceListSupplier;
     //每次请求算上重试不会超过3分钟
     //对于超过3分钟的，这种请求肯定比较重，不应该重试
-    private final LoadingCache<Long, AtomicInteger> positionCache = Caffeine.newBuilder()
-            .expireAfterWrite(3, TimeUnit.MINUTES)
-            //随机初始值，防止每次都是从第一个开始调用
-            .build(k -> new AtomicInteger(ThreadLocalRandom.current().nextInt(0, 1000)));
-    private final LoadingCache<Long, Set<String>> calledIpPrefixes = Caffeine.newBuilder()
-            .expireAfterAccess(3, TimeUnit.MINUTES)
-            .build(k -> Sets.newConcurrentHashSet());
-    private final LoadingCache<Long, Set<String>> calledIps = Caffeine.newBuilder()
-            .expireAfterAccess(3, TimeUnit.MINUTES)
-            .build(k -> Sets.newConcurrentHashSet());
+    //记录每次逻辑调用（AttemptContext，没有的话使用 traceId）已经调用过的故障域（ip、物理机、机架、网段），固定容量
+    //调用结束的时候由 AttemptContext 删除，没有删除的记录超过 3 分钟会被定期清扫清理
+    private AttemptTable attemptTable = new AttemptTable();
+    private final HostIdInterner hostIdInterner = new HostIdInterner();
+    private InstanceTopology instanceTopology = new InstanceTopology();
     private final LoadingCache<String, AtomicLong> numberOfReturnedByLoadBalancer = Caffeine.newBuilder()
             .expireAfterAccess(3, TimeUnit.MINUTES)
             .build(k -> new AtomicLong(0L));
+    private InstanceSelector instanceSelector = new RankingInstanceSelector();
+    //按照方法缓存每个实例的断路器，实例列表变化时重新获取
+    private final CircuitBreakerHandleTable circuitBreakerHandleTable = new CircuitBreakerHandleTable();
+    private volatile ServiceInstanceSnapshot snapshot;
     private String serviceId;
     private Tracer tracer;
     private CircuitBreakerExtractor circuitBreakerExtractor;
@@ -76,15 +69,22 @@ public class TracedCircuitBreakerRoundRobinLoadBalancer implements ReactorServic
         this.circuitBreakerRegistry = circuitBreakerRegistry;
     }
 
-    @VisibleForTesting
-    public LoadingCache<Long, AtomicInteger> getPositionCache() {
-        return positionCache;
+    public void setInstanceSelector(InstanceSelector instanceSelector) {
+        this.instanceSelector = instanceSelector;
+    }
+
+    public void setInstanceTopology(InstanceTopology instanceTopology) {
+        this.instanceTopology = instanceTopology;
+    }
+
+    public void setAttemptTable(AttemptTable attemptTable) {
+        this.attemptTable = attemptTable;
     }
 
-	@VisibleForTesting
-	LoadingCache<Long, Set<String>> getCalledIpPrefixes() {
-		return calledIpPrefixes;
-	}
+    @VisibleForTesting
+    public AttemptTable getAttemptTable() {
+        return attemptTable;
+    }
 
 	public TracedCircuitBreakerRoundRobinLoadBalancer(
             ServiceInstanceListSupplier serviceInstanceListSupplier, String serviceId, Tracer tracer,
@@ -114,79 +114,100 @@ public class TracedCircuitBreakerRoundRobinLoadBalancer implements ReactorServic
             log.warn("No servers available for service: " + this.serviceId);
             return new EmptyResponse();
         }
-        Span currentSpan = tracer.currentSpan();
-        if (currentSpan == null) {
-            currentSpan = tracer.newTrace();
+        //同一个链路中的并发调用不能互相排除，优先使用每次逻辑调用的上下文
+        AttemptContext attemptContext = AttemptContext.of(request);
+        long key;
+        if (attemptContext != null) {
+            key = attemptContext.getKey();
+        } else {
+            Span currentSpan = tracer.currentSpan();
+            if (currentSpan == null) {
+                currentSpan = tracer.newTrace();
+            }
+            key = currentSpan.context().traceId();
+        }
+        ServiceInstanceSnapshot snapshot = getSnapshot(serviceInstances);
+        IntFunction<CircuitBreaker> resolver = i -> circuitBreakerExtractor.getCircuitBreaker(
+                circuitBreakerRegistry, request, snapshot.getHost(i), snapshot.getInstance(i).getPort());
+        Object circuitBreakerKey = circuitBreakerExtractor.getCircuitBreakerKey(request);
+        CircuitBreaker[] circuitBreakers;
+        if (circuitBreakerKey != null) {
+            circuitBreakers = circuitBreakerHandleTable.get(circuitBreakerKey, snapshot, resolver);
+        } else {
+            circuitBreakers = new CircuitBreaker[snapshot.size()];
+            for (int i = 0; i < circuitBreakers.length; i++) {
+                circuitBreakers[i] = resolver.apply(i);
+            }
+        }
+        return getInstanceResponseBySelector(key, attemptContext, snapshot, circuitBreakers, request);
+    }
+
+    /**
+     * 实例列表没有变化（上游返回同一个 List 对象）的时候复用快照
+     * 变化的时候加锁构建，被替换的快照释放 intern 的 id，并发请求不会各自构建一个然后互相覆盖
+     */
+    private ServiceInstanceSnapshot getSnapshot(List<ServiceInstance> serviceInstances) {
+        ServiceInstanceSnapshot current = this.snapshot;
+        if (current != null && current.isSnapshotOf(serviceInstances)) {
+            return current;
+        }
+        synchronized (this) {
+            current = this.snapshot;
+            if (current == null || !current.isSnapshotOf(serviceInstances)) {
+                ServiceInstanceSnapshot previous = current;
+                current = new ServiceInstanceSnapshot(serviceInstances, numberOfReturnedByLoadBalancer, hostIdInterner, instanceTopology);
+                this.snapshot = current;
+                if (previous != null) {
+                    previous.release();
+                }
+            }
+            return current;
         }
-        long l = currentSpan.context().traceId();
-        serviceInstances = serviceInstances.stream().distinct().collect(Collectors.toList());;
-        Map<ServiceInstance, CircuitBreaker> serviceInstanceCircuitBreakerMap = serviceInstances.stream()
-                .collect(Collectors.toMap(serviceInstance -> serviceInstance, v -> {
-                    return circuitBreakerExtractor
-                            .getCircuitBreaker(circuitBreakerRegistry, request, v.getHost(), v.getPort());
-                }));
-        return getInstanceResponseByRoundRobin(l, serviceInstances, serviceInstanceCircuitBreakerMap);
     }
 
     @VisibleForTesting
     public Response<ServiceInstance> getInstanceResponseByRoundRobin(long traceId, List<ServiceInstance> serviceInstances, Map<ServiceInstance, CircuitBreaker> serviceInstanceCircuitBreakerMap) {
-        Collections.shuffle(serviceInstances);
-        //需要先将所有参数缓存起来，否则 comparator 会调用多次，并且可能在排序过程中参数发生改变
-        Map<ServiceInstance, Integer> used = Maps.newHashMap();
-        Map<ServiceInstance, Long> counts = Maps.newHashMap();
-        serviceInstances = serviceInstances.stream().sorted(
-                Comparator
-                        //之前已经调用过的 ip，这里排后面
-                        .<ServiceInstance>comparingInt(serviceInstance -> {
-                            return used.computeIfAbsent(serviceInstance, k -> {
-                                return calledIps.get(traceId).stream().anyMatch(prefix -> {
-                                    return serviceInstance.getHost().equalsIgnoreCase(prefix);
-                                }) ? 1 : 0;
-                            });
-                        })
-                        //之前已经调用过的网段，这里排后面
-                        .thenComparingInt(serviceInstance -> {
-                            return used.computeIfAbsent(serviceInstance, k -> {
-                                return calledIpPrefixes.get(traceId).stream().anyMatch(prefix -> {
-                                    return serviceInstance.getHost().contains(prefix);
-                                }) ? 1 : 0;
-                            });
-                        })
-                        //当前断路器没有打开的优先
-                        .thenComparingInt(serviceInstance -> {
-                            return serviceInstanceCircuitBreakerMap.get(serviceInstance).getState().getOrder();
-                        })
-                        //当前错误率最少的
-                        .thenComparingDouble(serviceInstance -> {
-                            return serviceInstanceCircuitBreakerMap.get(serviceInstance).getMetrics().getFailureRate();
-                        })
-                        //由于断路器数据和负载均衡之间更新不在一起，有一定延迟，为了防止短时间内（几百毫秒内）收到太多请求，导致全都发到同一个实例上
-                        //加上这个所有实例负载均衡器选择并返回的次数，选择返回最少的，但是要在断路器以及错误判断之后，我们还是期望发到错误最少的
-                        .thenComparingLong(serviceInstance -> {
-                            return counts.computeIfAbsent(serviceInstance, k -> {
-                                return numberOfReturnedByLoadBalancer.get(k.toString()).get();
-                            });
-                        })
-                        //当前负载请求最少的
-                        .thenComparingLong(serviceInstance -> {
-                            return serviceInstanceCircuitBreakerMap.get(serviceInstance).getMetrics().getNumberOfBufferedCalls();
-                        })
-        ).collect(Collectors.toList());
-        if (serviceInstances.isEmpty()) {
+        ServiceInstanceSnapshot snapshot = getSnapshot(serviceInstances);
+        CircuitBreaker[] circuitBreakers = new CircuitBreaker[snapshot.size()];
+        for (int i = 0; i < circuitBreakers.length; i++) {
+            circuitBreakers[i] = serviceInstanceCircuitBreakerMap.get(snapshot.getInstance(i));
+        }
+        return getInstanceResponseBySelector(traceId, null, snapshot, circuitBreakers, null);
+    }
+
+    private Response<ServiceInstance> getInstanceResponseBySelector(long key, AttemptContext attemptContext, ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, Request<?> request) {
+        TriedInstances tried = new TriedInstances();
+        attemptTable.read(key, tried);
+        //选择规则取决于负载均衡模式，参考 LoadBalancerMode
+        int index = instanceSelector.select(snapshot, circuitBreakers, tried, request);
+        if (index < 0) {
             log.warn("No servers available for service: " + this.serviceId);
             return new EmptyResponse();
         }
-        ServiceInstance serviceInstance = serviceInstances.get(0);
-        //记录本次返回的网段
-        calledIpPrefixes.get(traceId).add(serviceInstance.getHost().substring(0, serviceInstance.getHost().lastIndexOf(".")));
-        calledIps.get(traceId).add(serviceInstance.getHost());
-        //目前记录这个只为了兼容之前的单元测试（调用次数测试）
-        positionCache.get(traceId).getAndIncrement();
-        AtomicLong atomicLong = numberOfReturnedByLoadBalancer.get(serviceInstance.toString());
+        ServiceInstance serviceInstance = snapshot.getInstance(index);
+        //记录本次返回实例的故障域，调用次数也会一起记录
+        if (attemptContext == null) {
+            attemptTable.record(key, snapshot, index);
+        } else if (!attemptContext.isClosed()) {
+            //调用已经结束（比如被取消）的上下文不再记录，否则只能等 ttl 过期
+            attemptContext.bind(attemptTable);
+            attemptTable.record(key, snapshot, index);
+        }
+        AtomicLong atomicLong = snapshot.getReturnedCounter(index);
         long increment = atomicLong.getAndIncrement();
         if (increment < 0) {
             atomicLong.set(0L);
         }
         return new DefaultResponse(serviceInstance);
     }
+
+    /**
+     * 后台排序之类的选择器有自己的定时任务，随负载均衡器所在的子 ApplicationContext 一起关闭
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (instanceSelector instanceof DisposableBean) {
+            ((DisposableBean) instanceSelector).destroy();
+        }
+    }
 }
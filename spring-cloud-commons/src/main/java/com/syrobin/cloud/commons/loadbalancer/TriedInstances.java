@@ -0,0 +1,90 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 一次请求（算上重试）已经尝试过的故障域，由 {@link AttemptTable#read} 填充
+ * 每一级故障域（ip、物理机、机架、网段，参考 {@link InstanceTopology}）只保存最近的 {@link AttemptTable#TRIED_CAPACITY} 个 id
+ * @date 2026-10-17 14:10
+ */
+public class TriedInstances {
+
+    /**
+     * 故障域级别，同时也是 {@link #conflicts} 返回值中的位，越大的故障域冲突越轻
+     */
+    static final int IP = 0;
+    static final int MACHINE = 1;
+    static final int RACK = 2;
+    static final int SUBNET = 3;
+    static final int LEVELS = 4;
+
+    public static final int SAME_IP = 1 << (LEVELS - 1 - IP);
+    public static final int SAME_MACHINE = 1 << (LEVELS - 1 - MACHINE);
+    public static final int SAME_RACK = 1 << (LEVELS - 1 - RACK);
+    public static final int SAME_SUBNET = 1 << (LEVELS - 1 - SUBNET);
+
+    /**
+     * 按照级别分段，每段 {@link AttemptTable#TRIED_CAPACITY} 个
+     */
+    final int[] ids = new int[LEVELS * AttemptTable.TRIED_CAPACITY];
+    final int[] counts = new int[LEVELS];
+    int attempts;
+
+    public boolean containsHost(int hostId) {
+        return contains(IP, hostId);
+    }
+
+    public boolean containsSubnet(int subnetId) {
+        return contains(SUBNET, subnetId);
+    }
+
+    /**
+     * 实例和之前尝试过的实例在哪些故障域冲突，每一级对应一位，ip 冲突是最高位，所以返回值越小越独立，可以直接比较
+     */
+    public int conflicts(ServiceInstanceSnapshot snapshot, int index) {
+        int conflicts = 0;
+        if (contains(IP, snapshot.getHostId(index))) {
+            conflicts |= SAME_IP;
+        }
+        if (contains(MACHINE, snapshot.getMachineId(index))) {
+            conflicts |= SAME_MACHINE;
+        }
+        if (contains(RACK, snapshot.getRackId(index))) {
+            conflicts |= SAME_RACK;
+        }
+        if (contains(SUBNET, snapshot.getSubnetId(index))) {
+            conflicts |= SAME_SUBNET;
+        }
+        return conflicts;
+    }
+
+    /**
+     * 本次选择中临时排除一个 host，不会记录到 {@link AttemptTable}，超过容量时忽略
+     */
+    void addHost(int hostId) {
+        if (hostId != 0 && counts[IP] < AttemptTable.TRIED_CAPACITY && !containsHost(hostId)) {
+            ids[IP * AttemptTable.TRIED_CAPACITY + counts[IP]++] = hostId;
+        }
+    }
+
+    /**
+     * 这次请求之前已经调用负载均衡器选择的次数
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    private boolean contains(int level, int id) {
+        //0 代表实例没有这一级故障域
+        if (id == 0) {
+            return false;
+        }
+        int base = level * AttemptTable.TRIED_CAPACITY;
+        for (int i = 0; i < counts[level]; i++) {
+            if (ids[base + i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
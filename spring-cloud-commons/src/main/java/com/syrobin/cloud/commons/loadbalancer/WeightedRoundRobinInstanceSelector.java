@@ -0,0 +1,74 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 平滑加权轮询，权重来自实例 metadata 中的 weight（参考 {@link ServiceInstanceSnapshot#getWeight(int)}）
+ * 一轮的顺序在实例快照变化时计算一次（参考 {@link SmoothWeightedRoundRobin}），选择时只有一次原子自增
+ * 轮到的实例断路器打开或者这次请求已经调用过的话，顺延到下一个，顺延 {@link #MAX_PROBES} 次都不可用则退化为完整排序
+ * @date 2026-10-17 20:20
+ */
+public class WeightedRoundRobinInstanceSelector implements InstanceSelector {
+
+    private static final int MAX_PROBES = 64;
+
+    private final InstanceSelector fallback;
+    private final AtomicInteger position = new AtomicInteger(ThreadLocalRandom.current().nextInt(1000));
+    private volatile Schedule schedule;
+
+    public WeightedRoundRobinInstanceSelector() {
+        this(new RankingInstanceSelector());
+    }
+
+    public WeightedRoundRobinInstanceSelector(InstanceSelector fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int select(ServiceInstanceSnapshot snapshot, CircuitBreaker[] circuitBreakers, TriedInstances tried) {
+        int[] order = getSchedule(snapshot);
+        if (order.length == 0) {
+            return fallback.select(snapshot, circuitBreakers, tried);
+        }
+        int probes = Math.min(order.length, MAX_PROBES);
+        for (int i = 0; i < probes; i++) {
+            //和 RoundRobinLoadBalancer 一样，溢出之后取绝对值
+            int index = order[(position.incrementAndGet() & Integer.MAX_VALUE) % order.length];
+            CircuitBreaker.State state = circuitBreakers[index].getState();
+            if (state != CircuitBreaker.State.OPEN
+                    && state != CircuitBreaker.State.FORCED_OPEN
+                    && !tried.containsHost(snapshot.getHostId(index))) {
+                return index;
+            }
+        }
+        return fallback.select(snapshot, circuitBreakers, tried);
+    }
+
+    private int[] getSchedule(ServiceInstanceSnapshot snapshot) {
+        Schedule current = this.schedule;
+        if (current == null || current.snapshot != snapshot) {
+            int[] weights = new int[snapshot.size()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = snapshot.getWeight(i);
+            }
+            current = new Schedule(snapshot, SmoothWeightedRoundRobin.schedule(weights));
+            this.schedule = current;
+        }
+        return current.order;
+    }
+
+    private static final class Schedule {
+        private final ServiceInstanceSnapshot snapshot;
+        private final int[] order;
+
+        private Schedule(ServiceInstanceSnapshot snapshot, int[] order) {
+            this.snapshot = snapshot;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 自适应并发限制，在线程池（信号量）隔离的容量之内按照响应时间调整每个实例的并发，不需要手动调小线程池，每个实例一个，
+ * 参考 {@link AdaptiveConcurrencyLimiterRegistry}
+ * <p>
+ * 算法参考 Netflix concurrency-limits 的 Gradient2：
+ * <pre>
+ * longRtt  = rtt 的指数移动平均（窗口 {@link #LONG_WINDOW} 个请求），代表实例没有排队时的响应时间
+ * gradient = clamp(tolerance * longRtt / rtt, 0.5, 1)
+ * newLimit = limit * gradient + sqrt(limit)
+ * limit    = limit * (1 - smoothing) + newLimit * smoothing
+ * </pre>
+ * 实例变慢（rtt 超过 longRtt 的 tolerance 倍）的时候 gradient 小于 1，并发限制跟着缩小；响应时间正常的时候每次增加 sqrt(limit) 的排队余量。
+ * 在途请求数不到限制一半的时候不增加限制，避免空闲时限制无限增长。
+ * longRtt 比 rtt 大一倍以上的时候衰减 longRtt，实例恢复之后能更快回到正常的基准
+ * @date 2026-10-18 17:30
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    static final int LONG_WINDOW = 600;
+    private static final int WARMUP = 10;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * 只在 synchronized 的 onSample 中修改
+     */
+    private double estimatedLimit;
+    private double longRtt;
+    private int samples;
+    private volatile int limit;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("invalid limits: min " + minLimit + ", max " + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @return 获取成功返回获取之前的在途请求数，需要在请求结束时调用 {@link #onSample} 或者 {@link #release}；超过限制返回 -1
+     */
+    public int tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return -1;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 请求结束，不记录响应时间，比如断路器打开、线程池满了这种请求没有发出去的情况
+     */
+    public void release() {
+        inflight.decrementAndGet();
+    }
+
+    /**
+     * 请求结束，根据响应时间调整并发限制
+     *
+     * @param rttNanos 响应时间，超时之类的异常也要记录，这种慢请求正是需要缩小并发的信号
+     * @param inflight {@link #tryAcquire()} 的返回值
+     */
+    public void onSample(long rttNanos, int inflight) {
+        this.inflight.decrementAndGet();
+        if (rttNanos <= 0) {
+            return;
+        }
+        update(rttNanos, inflight + 1);
+    }
+
+    private synchronized void update(double rtt, int inflight) {
+        if (samples < WARMUP) {
+            samples++;
+            longRtt += (rtt - longRtt) / samples;
+        } else {
+            longRtt += (rtt - longRtt) * 2 / (LONG_WINDOW + 1);
+        }
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+        //请求量不足，不能证明可以承受更大的并发
+        if (inflight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / rtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
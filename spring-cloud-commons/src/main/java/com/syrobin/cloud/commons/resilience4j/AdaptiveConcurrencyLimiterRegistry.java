@@ -0,0 +1,116 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 按照名称（和线程池隔离一样是 contextId:host:port）创建以及缓存 {@link AdaptiveConcurrencyLimiter}，所有实例共享一套参数，
+ * 每个实例的限制各自根据响应时间调整，不需要针对每个微服务调整线程池大小
+ * <p>
+ * 限制器在线程池（信号量）隔离之前获取，线程池仍然是每个实例并发的硬上限，所以每个限制器的最大限制不超过对应隔离的容量
+ * （线程池为最大线程数 + 队列长度，信号量为最大并发数），参考 {@link #limiter(String, int)}。
+ * 这样限制器允许的请求一定能进入线程池，超过限制的请求由限制器直接拒绝，线程池只负责执行，限制的监控反映的也是真实生效的值
+ * <p>
+ * 和线程池隔离一样按照 contextId:host:port 创建，实例下线之后不会再被访问，超过 {@link #DEFAULT_EXPIRE} 没有访问的限制器连同监控一起删除，
+ * 请求结束时释放的是自己获取的限制器对象，删除不会影响还在执行的请求，重新创建之后从初始限制重新学习
+ * @date 2026-10-18 17:50
+ */
+public class AdaptiveConcurrencyLimiterRegistry {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 4;
+    public static final int DEFAULT_MAX_LIMIT = 200;
+    public static final double DEFAULT_TOLERANCE = 1.5;
+    public static final double DEFAULT_SMOOTHING = 0.2;
+    public static final Duration DEFAULT_EXPIRE = Duration.ofMinutes(10);
+
+    private final Cache<String, AdaptiveConcurrencyLimiter> limiters;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final MeterRegistry meterRegistry;
+
+    public AdaptiveConcurrencyLimiterRegistry() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_TOLERANCE, DEFAULT_SMOOTHING, null);
+    }
+
+    /**
+     * @param meterRegistry 可以为 null，不为 null 的时候每个限制器注册限制、在途请求数以及拒绝次数的监控
+     */
+    public AdaptiveConcurrencyLimiterRegistry(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing,
+                                              MeterRegistry meterRegistry) {
+        this(initialLimit, minLimit, maxLimit, tolerance, smoothing, meterRegistry, DEFAULT_EXPIRE, Ticker.systemTicker());
+    }
+
+    AdaptiveConcurrencyLimiterRegistry(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing,
+                                       MeterRegistry meterRegistry, Duration expire, Ticker ticker) {
+        this.limiters = Caffeine.newBuilder()
+                .expireAfterAccess(expire)
+                .ticker(ticker)
+                //在清理的线程中同步删除监控，避免删除之后又被同名的新限制器注册
+                .executor(Runnable::run)
+                .removalListener(this::onRemoval)
+                .build();
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public AdaptiveConcurrencyLimiter limiter(String name) {
+        return limiter(name, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity 对应隔离的容量，限制器的最大限制不超过这个值，只在第一次创建的时候生效
+     */
+    public AdaptiveConcurrencyLimiter limiter(String name, int capacity) {
+        AdaptiveConcurrencyLimiter limiter = limiters.getIfPresent(name);
+        if (limiter != null) {
+            return limiter;
+        }
+        return limiters.get(name, k -> create(k, capacity));
+    }
+
+    public long size() {
+        limiters.cleanUp();
+        return limiters.estimatedSize();
+    }
+
+    private AdaptiveConcurrencyLimiter create(String name, int capacity) {
+        int max = Math.max(1, Math.min(maxLimit, capacity));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(name, Math.min(initialLimit, max), Math.min(minLimit, max), max,
+                tolerance, smoothing);
+        if (meterRegistry != null) {
+            Gauge.builder("concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .tag("name", name).register(meterRegistry);
+            Gauge.builder("concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInflight)
+                    .tag("name", name).register(meterRegistry);
+            FunctionCounter.builder("concurrency.rejected", limiter, AdaptiveConcurrencyLimiter::getRejected)
+                    .tag("name", name).register(meterRegistry);
+        }
+        return limiter;
+    }
+
+    private void onRemoval(String name, AdaptiveConcurrencyLimiter limiter, RemovalCause cause) {
+        if (meterRegistry == null || cause == RemovalCause.REPLACED) {
+            return;
+        }
+        for (String meter : new String[]{"concurrency.limit", "concurrency.inflight", "concurrency.rejected"}) {
+            meterRegistry.find(meter).tag("name", name).meters().forEach(meterRegistry::remove);
+        }
+    }
+}
@@ -20,4 +20,14 @@ public interface CircuitBreakerExtractor<T> {
 			String host,
 			int port
 			);
+
+	/**
+	 * 同一个负载均衡器（微服务）下，key 相同的请求，对于同一个实例一定获取到同一个 CircuitBreaker
+	 * 负载均衡器按照这个 key 缓存每个实例的 CircuitBreaker，这样不用每次请求对每个实例都拼接名称、查找 CircuitBreakerRegistry
+	 * @param request
+	 * @return 返回 null 代表不缓存，每次都调用 getCircuitBreaker
+	 */
+	default Object getCircuitBreakerKey(Request<T> request) {
+		return null;
+	}
 }
@@ -0,0 +1,14 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 已经过了 {@link RequestDeadline} 截止时间，请求没有发出去
+ * @date 2026-10-18 21:40
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(long deadline) {
+        super("request deadline " + deadline + " exceeded by " + (System.currentTimeMillis() - deadline) + "ms");
+    }
+}
@@ -0,0 +1,91 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+import brave.baggage.BaggageField;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 整个调用链的截止时间，网关设置 {@link #HEADER}（绝对时间，毫秒时间戳），之后作为 Sleuth 的 baggage 在每一跳之间传递
+ * （参考 Resilience4jAutoConfiguration 中注册的 BaggagePropagationCustomizer）
+ * <p>
+ * 每一跳的超时是单独配置的（OpenFeign 的 Request.Options，WebClient 的 responseTimeout，网关的 response-timeout），
+ * 重试会让调用远远超过调用方还愿意等待的时间。有截止时间的请求：
+ * <ul>
+ *     <li>超时缩短到剩余时间</li>
+ *     <li>剩余时间不够一个实例的预期响应时间（{@code PeakEwmaTracker}）的时候不再重试</li>
+ *     <li>已经过了截止时间的请求直接失败，不再发出去</li>
+ * </ul>
+ * 截止时间是绝对时间，依赖各个机器之间的时钟同步
+ * @date 2026-10-18 21:30
+ */
+public final class RequestDeadline {
+
+    public static final String HEADER = "x-request-deadline";
+    /**
+     * WebClient 的 ClientRequest 中保存截止时间的属性
+     */
+    public static final String ATTRIBUTE = "request_deadline";
+    public static final BaggageField FIELD = BaggageField.create(HEADER);
+    /**
+     * 没有截止时间
+     */
+    public static final long NONE = Long.MAX_VALUE;
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * 当前链路上下文中的截止时间，没有的话返回 {@link #NONE}
+     */
+    public static long current() {
+        return parse(FIELD.getValue());
+    }
+
+    /**
+     * 请求头中的截止时间和当前链路上下文中的截止时间，取更早的那个
+     */
+    public static long resolve(String headerValue) {
+        return Math.min(parse(headerValue), current());
+    }
+
+    public static long parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return NONE;
+        }
+        try {
+            long deadline = Long.parseLong(value.trim());
+            return deadline > 0 ? deadline : NONE;
+        } catch (NumberFormatException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * @return 剩余的毫秒数，可能小于等于 0；没有截止时间的时候返回 {@link #NONE}
+     */
+    public static long remainingMillis(long deadline) {
+        return deadline == NONE ? NONE : deadline - System.currentTimeMillis();
+    }
+
+    /**
+     * 超时缩短到剩余时间，至少 1 毫秒（0 在很多客户端中代表不超时）
+     */
+    public static long clamp(long timeoutMillis, long remainingMillis) {
+        if (remainingMillis >= timeoutMillis) {
+            return timeoutMillis;
+        }
+        return Math.max(remainingMillis, 1);
+    }
+
+    /**
+     * 剩余时间是否够再调用一次
+     *
+     * @param expectedNanos 预期的响应时间，没有数据的时候传 0，只要还没有过截止时间就可以重试
+     */
+    public static boolean hasTimeFor(long deadline, double expectedNanos) {
+        long remaining = remainingMillis(deadline);
+        return remaining == NONE || remaining > 0 && TimeUnit.MILLISECONDS.toNanos(remaining) > expectedNanos;
+    }
+}
@@ -23,4 +23,30 @@ public class Resilience4jUtil {
 	public static String getServiceInstanceMethodId(String host, int port, String path) {
 		return getServiceInstance(host, port) + path;
 	}
+
+	/**
+	 * 从 getServiceInstanceMethodId 生成的断路器名称中取出 host:port，格式不对返回 null
+	 * feign 的格式为 host:port:方法签名，webClient 的格式为 host:port/path
+	 * IPv6 的 host 本身包含冒号（例如 fe80::1:8080:方法签名），所以从右往左找端口：
+	 * 路径以第一个 / 开始，方法签名中没有冒号，host:port 之后第一个冒号右边不是数字，再往左的 ":数字" 就是端口
+	 * URL 中的 IPv6 地址带有方括号，去掉方括号，和 {@link #getServiceInstance(String, int)} 使用 ServiceInstance 的 host 生成的结果一致
+	 */
+	public static String getServiceInstanceFromMethodId(String serviceInstanceMethodId) {
+		int slash = serviceInstanceMethodId.indexOf('/');
+		int end = slash < 0 ? serviceInstanceMethodId.length() : slash;
+		for (int colon = serviceInstanceMethodId.lastIndexOf(':', end - 1); colon > 0; colon = serviceInstanceMethodId.lastIndexOf(':', colon - 1)) {
+			int portEnd = colon + 1;
+			while (portEnd < end && Character.isDigit(serviceInstanceMethodId.charAt(portEnd))) {
+				portEnd++;
+			}
+			if (portEnd > colon + 1 && (portEnd == end || serviceInstanceMethodId.charAt(portEnd) == ':')) {
+				String host = serviceInstanceMethodId.substring(0, colon);
+				if (host.length() > 2 && host.charAt(0) == '[' && host.charAt(host.length() - 1) == ']') {
+					host = host.substring(1, host.length() - 1);
+				}
+				return host + serviceInstanceMethodId.substring(colon, portEnd);
+			}
+		}
+		return null;
+	}
 }
@@ -0,0 +1,127 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 每个微服务的重试预算，和 resilience4j Retry 的最大重试次数一起限制重试
+ * <p>
+ * 最大重试次数只限制单次调用，部分实例故障的时候每个调用都重试 N 次，剩下的健康实例要承受 N 倍的压力。
+ * 重试预算限制最近 {@link #WINDOW_SECONDS} 秒内的重试次数不超过：
+ * <pre>
+ * 成功请求数 * ratio + minRetriesPerSecond * WINDOW_SECONDS
+ * </pre>
+ * 超过预算之后不再重试，调用快速失败。minRetriesPerSecond 保证请求量很小的时候也可以重试
+ * <p>
+ * resilience4j 在最后一次失败之后也会调用异常判断，所以 {@link #tryRetry()} 不能放在异常判断里面，
+ * 需要在确定还会重试之后再调用（OpenFeign 在重试间隔函数里面，WebClient 在 ClientResponseRetryOperator 里面）
+ * <p>
+ * 每秒一个桶，桶里面的计数是 LongAdder，请求路径上没有锁；过期的桶通过 CAS 替换。
+ * 判断和扣减不是原子的，并发的时候可能略微超过预算，重试预算不需要那么精确
+ * @date 2026-10-18 20:10
+ */
+public class RetryBudget {
+
+    static final int WINDOW_SECONDS = 10;
+
+    private final String name;
+    private final double ratio;
+    private final int minRetriesPerSecond;
+    private final LongSupplier clock;
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(WINDOW_SECONDS);
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public RetryBudget(String name, double ratio, int minRetriesPerSecond) {
+        this(name, ratio, minRetriesPerSecond, System::currentTimeMillis);
+    }
+
+    RetryBudget(String name, double ratio, int minRetriesPerSecond, LongSupplier clock) {
+        if (ratio < 0 || minRetriesPerSecond < 0) {
+            throw new IllegalArgumentException("invalid retry budget: ratio " + ratio + ", min retries per second " + minRetriesPerSecond);
+        }
+        this.name = name;
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.clock = clock;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            buckets.set(i, new Bucket(-1));
+        }
+    }
+
+    /**
+     * 一次调用成功，增加重试预算
+     */
+    public void onSuccess() {
+        bucket(currentSecond()).successes.increment();
+    }
+
+    /**
+     * 重试之前调用，预算足够的时候扣减一次并返回 true，否则返回 false
+     */
+    public boolean tryRetry() {
+        long second = currentSecond();
+        long successes = 0;
+        long retried = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            Bucket bucket = buckets.get(i);
+            if (second - bucket.second < WINDOW_SECONDS) {
+                successes += bucket.successes.sum();
+                retried += bucket.retries.sum();
+            }
+        }
+        if (retried >= (long) (successes * ratio) + (long) minRetriesPerSecond * WINDOW_SECONDS) {
+            rejected.increment();
+            return false;
+        }
+        bucket(second).retries.increment();
+        retries.increment();
+        return true;
+    }
+
+    private long currentSecond() {
+        return clock.getAsLong() / 1000;
+    }
+
+    private Bucket bucket(long second) {
+        int index = (int) (second % WINDOW_SECONDS);
+        Bucket bucket = buckets.get(index);
+        while (bucket.second != second) {
+            //时钟回拨的时候继续用现有的桶
+            if (bucket.second > second) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(second);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+            bucket = buckets.get(index);
+        }
+        return bucket;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private static final class Bucket {
+        private final long second;
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+
+        private Bucket(long second) {
+            this.second = second;
+        }
+    }
+}
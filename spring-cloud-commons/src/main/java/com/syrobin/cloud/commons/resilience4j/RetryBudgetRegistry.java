@@ -0,0 +1,56 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 按照微服务名称（OpenFeign 是 contextId，WebClient 是 serviceName，和 Retry 的名称一致）创建以及缓存 {@link RetryBudget}，
+ * OpenFeign 和 WebClient 的重试判断都从这里获取
+ * @date 2026-10-18 20:30
+ */
+public class RetryBudgetRegistry {
+
+    public static final double DEFAULT_RATIO = 0.2;
+    public static final int DEFAULT_MIN_RETRIES_PER_SECOND = 10;
+
+    private final ConcurrentHashMap<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+    private final double ratio;
+    private final int minRetriesPerSecond;
+    private final MeterRegistry meterRegistry;
+
+    public RetryBudgetRegistry() {
+        this(DEFAULT_RATIO, DEFAULT_MIN_RETRIES_PER_SECOND, null);
+    }
+
+    /**
+     * @param meterRegistry 可以为 null，不为 null 的时候每个预算注册重试次数以及被拒绝次数的监控
+     */
+    public RetryBudgetRegistry(double ratio, int minRetriesPerSecond, MeterRegistry meterRegistry) {
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public RetryBudget budget(String name) {
+        RetryBudget budget = budgets.get(name);
+        if (budget != null) {
+            return budget;
+        }
+        return budgets.computeIfAbsent(name, this::create);
+    }
+
+    private RetryBudget create(String name) {
+        RetryBudget budget = new RetryBudget(name, ratio, minRetriesPerSecond);
+        if (meterRegistry != null) {
+            FunctionCounter.builder("retry.budget.retries", budget, RetryBudget::getRetries)
+                    .tag("name", name).register(meterRegistry);
+            FunctionCounter.builder("retry.budget.rejected", budget, RetryBudget::getRejected)
+                    .tag("name", name).register(meterRegistry);
+        }
+        return budget;
+    }
+}
@@ -0,0 +1,132 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: ActiveHealthCheckServiceInstanceListSupplier 以及 ActiveHealthChecker 单元测试
+ * @date 2026-10-18 13:00
+ */
+public class ActiveHealthCheckServiceInstanceListSupplierTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+    private static List<ServiceInstance> serviceInstances() {
+        return List.of(
+                new DefaultServiceInstance(null, "test", "10.238.0.1", 80, false),
+                new DefaultServiceInstance(null, "test", "10.238.0.2", 80, false),
+                new DefaultServiceInstance(null, "test", "10.238.0.3", 80, false)
+        );
+    }
+
+    private ActiveHealthCheckServiceInstanceListSupplier supplier(List<ServiceInstance> serviceInstances, int maxConcurrency) {
+        ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+        Mockito.when(delegate.get()).thenReturn(Flux.just(serviceInstances));
+        ActiveHealthChecker checker = new ActiveHealthChecker(maxConcurrency,
+                (uri, secure) -> Mono.just(failing.stream().anyMatch(uri::contains) ? 503 : 200));
+        return new ActiveHealthCheckServiceInstanceListSupplier(delegate, checker, "/actuator/health", Duration.ofSeconds(10), now::get);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        List<ServiceInstance> serviceInstances = serviceInstances();
+        ActiveHealthCheckServiceInstanceListSupplier supplier = supplier(serviceInstances, 64);
+        try {
+            Assertions.assertSame(serviceInstances, supplier.get().blockFirst());
+            failing.add("10.238.0.2");
+            //第一次探测在一个间隔内随机分布，所以推进两个间隔
+            for (int round = 0; round < 4; round++) {
+                supplier.probeDue().block();
+                now.addAndGet(TimeUnit.SECONDS.toMillis(13));
+            }
+            supplier.probeDue().block();
+            List<ServiceInstance> healthy = supplier.get().blockFirst();
+            Assertions.assertEquals(List.of(serviceInstances.get(0), serviceInstances.get(2)), healthy);
+            //没有变化的时候返回同一个对象
+            Assertions.assertSame(healthy, supplier.get().blockFirst());
+
+            //一次成功就恢复
+            failing.clear();
+            now.addAndGet(TimeUnit.SECONDS.toMillis(13));
+            supplier.probeDue().block();
+            Assertions.assertSame(serviceInstances, supplier.get().blockFirst());
+
+            //所有实例都不健康的时候返回所有实例
+            failing.add("10.238.0.");
+            for (int round = 0; round < 3; round++) {
+                now.addAndGet(TimeUnit.SECONDS.toMillis(13));
+                supplier.probeDue().block();
+            }
+            Assertions.assertSame(serviceInstances, supplier.get().blockFirst());
+        } finally {
+            supplier.destroy();
+        }
+    }
+
+    @Test
+    public void testNoPermit() throws Exception {
+        List<ServiceInstance> serviceInstances = serviceInstances();
+        ActiveHealthCheckServiceInstanceListSupplier supplier = supplier(serviceInstances, 0);
+        try {
+            supplier.get().blockFirst();
+            failing.add("10.238.0.2");
+            for (int round = 0; round < 4; round++) {
+                now.addAndGet(TimeUnit.SECONDS.toMillis(13));
+                supplier.probeDue().block();
+            }
+            //没有名额的时候不探测，也不会把实例当作不健康
+            Assertions.assertSame(serviceInstances, supplier.get().blockFirst());
+        } finally {
+            supplier.destroy();
+        }
+    }
+
+    @Test
+    public void testProbe() {
+        DisposableServer server = HttpServer.create().port(0)
+                .route(routes -> routes
+                        .get("/actuator/health", (request, response) -> response.sendString(Mono.just("{\"status\":\"UP\"}")))
+                        .get("/down", (request, response) -> response.status(503).send()))
+                .bindNow();
+        ActiveHealthChecker checker = new ActiveHealthChecker(4, Duration.ofSeconds(2), 1);
+        try {
+            ServiceInstance serviceInstance = new DefaultServiceInstance(null, "test", "127.0.0.1", 1, false,
+                    Map.of(ActiveHealthChecker.MANAGEMENT_PORT, String.valueOf(server.port())));
+            Assertions.assertEquals(Boolean.TRUE, checker.probe(serviceInstance, "/actuator/health").block());
+            Assertions.assertEquals(Boolean.FALSE, checker.probe(serviceInstance, "/down").block());
+            //连接失败
+            ServiceInstance closed = new DefaultServiceInstance(null, "test", "127.0.0.1", 1, false);
+            Assertions.assertEquals(Boolean.FALSE, checker.probe(closed, "/actuator/health").block());
+        } finally {
+            checker.destroy();
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    public void testUri() {
+        Assertions.assertEquals("http://[::1]:8080/actuator/health", ActiveHealthChecker.getUri(
+                new DefaultServiceInstance(null, "test", "::1", 8080, false), "/actuator/health"));
+        Assertions.assertEquals("https://10.238.0.1:9090/health", ActiveHealthChecker.getUri(
+                new DefaultServiceInstance(null, "test", "10.238.0.1", 8443, true, Map.of(ActiveHealthChecker.MANAGEMENT_PORT, "9090")), "/health"));
+    }
+}
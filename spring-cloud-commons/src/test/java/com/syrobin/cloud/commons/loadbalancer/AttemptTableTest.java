@@ -0,0 +1,188 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: AttemptTable 单元测试
+ * @date 2026-10-17 15:10
+ */
+public class AttemptTableTest {
+
+    @Test
+    public void testRecordAndRead() {
+        AttemptTable attemptTable = new AttemptTable();
+        TriedInstances tried = new TriedInstances();
+        attemptTable.read(1L, tried);
+        Assertions.assertEquals(0, tried.getAttempts());
+        Assertions.assertFalse(tried.containsHost(1));
+
+        attemptTable.record(1L, 1, 10);
+        attemptTable.record(1L, 2, 10);
+        attemptTable.read(1L, tried);
+        Assertions.assertEquals(2, tried.getAttempts());
+        Assertions.assertTrue(tried.containsHost(1));
+        Assertions.assertTrue(tried.containsHost(2));
+        Assertions.assertTrue(tried.containsSubnet(10));
+        Assertions.assertFalse(tried.containsSubnet(11));
+
+        //其他 key 不受影响
+        attemptTable.read(2L, tried);
+        Assertions.assertEquals(0, tried.getAttempts());
+        Assertions.assertFalse(tried.containsHost(1));
+    }
+
+    @Test
+    public void testKeepLatestTried() {
+        AttemptTable attemptTable = new AttemptTable();
+        for (int i = 1; i <= AttemptTable.TRIED_CAPACITY + 1; i++) {
+            attemptTable.record(1L, i, i);
+        }
+        TriedInstances tried = new TriedInstances();
+        attemptTable.read(1L, tried);
+        Assertions.assertEquals(AttemptTable.TRIED_CAPACITY + 1, tried.getAttempts());
+        //最旧的被覆盖
+        Assertions.assertFalse(tried.containsHost(1));
+        for (int i = 2; i <= AttemptTable.TRIED_CAPACITY + 1; i++) {
+            Assertions.assertTrue(tried.containsHost(i));
+        }
+    }
+
+    @Test
+    public void testExpire() {
+        AtomicLong now = new AtomicLong(0);
+        AttemptTable attemptTable = new AttemptTable(1024, Duration.ofMinutes(3), now::get);
+        for (long key = 0; key < 100; key++) {
+            attemptTable.record(key, 1, 1);
+        }
+        Assertions.assertEquals(100, attemptTable.size());
+
+        now.set(Duration.ofMinutes(2).toMillis());
+        Assertions.assertEquals(1, attemptTable.getAttempts(0L));
+
+        now.set(Duration.ofMinutes(4).toMillis());
+        for (long key = 0; key < 100; key++) {
+            Assertions.assertEquals(0, attemptTable.getAttempts(key));
+        }
+        Assertions.assertEquals(0, attemptTable.size());
+        Assertions.assertEquals(100, attemptTable.getExpiredEvictions());
+    }
+
+    @Test
+    public void testOverflow() {
+        AttemptTable attemptTable = new AttemptTable(1024, Duration.ofMinutes(3));
+        for (long key = 0; key < 10000; key++) {
+            attemptTable.record(key, 1, 1);
+        }
+        Assertions.assertTrue(attemptTable.size() <= attemptTable.getCapacity() * 3 / 4);
+        Assertions.assertEquals(10000, attemptTable.size() + attemptTable.getOverflowEvictions());
+        //最新写入的一定还在
+        Assertions.assertEquals(1, attemptTable.getAttempts(9999L));
+    }
+
+    /**
+     * 随机写入、过期，和 HashMap 的结果对比，验证 backward shift 删除之后探测链仍然完整
+     */
+    @Test
+    public void testSameAsHashMap() {
+        Random random = new Random(7);
+        AtomicLong now = new AtomicLong(0);
+        Duration ttl = Duration.ofSeconds(12);
+        AttemptTable attemptTable = new AttemptTable(4096, ttl, now::get);
+        Map<Long, Long> lastWrite = new HashMap<>();
+        Map<Long, Integer> attempts = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            now.addAndGet(random.nextInt(3));
+            long key = random.nextInt(1500);
+            Long last = lastWrite.get(key);
+            //和定期清扫的精度一致，按 tick 判断是否过期
+            boolean expired = last == null || now.get() / 1000 - last / 1000 > 12;
+            int expected = expired ? 0 : attempts.get(key);
+            Assertions.assertEquals(expected, attemptTable.getAttempts(key));
+            attemptTable.record(key, 1, 1);
+            lastWrite.put(key, now.get());
+            attempts.put(key, expected + 1);
+        }
+        Assertions.assertEquals(0, attemptTable.getOverflowEvictions());
+    }
+
+    @Test
+    public void testRemove() {
+        AttemptTable attemptTable = new AttemptTable(64, Duration.ofMinutes(3));
+        for (long key = 0; key < 40; key++) {
+            attemptTable.record(key, 1, 1);
+        }
+        for (long key = 0; key < 40; key += 2) {
+            attemptTable.remove(key);
+        }
+        attemptTable.remove(1000L);
+        Assertions.assertEquals(20, attemptTable.size());
+        for (long key = 0; key < 40; key++) {
+            Assertions.assertEquals(key % 2 == 0 ? 0 : 1, attemptTable.getAttempts(key));
+        }
+    }
+
+    @Test
+    public void testGrowOnDemand() {
+        AttemptTable attemptTable = new AttemptTable();
+        //一开始只分配很小的表
+        int initial = attemptTable.getAllocatedCapacity();
+        Assertions.assertEquals(16 * AttemptTable.INITIAL_SEGMENT_CAPACITY, initial);
+        for (long key = 0; key < 10000; key++) {
+            attemptTable.record(key, (int) (key % 100) + 1, 1);
+        }
+        //扩容之后记录都还在，没有提前淘汰
+        Assertions.assertTrue(attemptTable.getAllocatedCapacity() > initial);
+        Assertions.assertTrue(attemptTable.getAllocatedCapacity() <= attemptTable.getCapacity());
+        Assertions.assertEquals(10000, attemptTable.size());
+        Assertions.assertEquals(0, attemptTable.getOverflowEvictions());
+        TriedInstances tried = new TriedInstances();
+        for (long key = 0; key < 10000; key++) {
+            attemptTable.read(key, tried);
+            Assertions.assertEquals(1, tried.attempts);
+            Assertions.assertTrue(tried.containsHost((int) (key % 100) + 1));
+        }
+
+        //达到容量上限之后不再扩容，淘汰最旧的记录
+        AttemptTable small = new AttemptTable(1024, Duration.ofMinutes(3));
+        for (long key = 0; key < 5000; key++) {
+            small.record(key, 1, 1);
+        }
+        Assertions.assertEquals(1024, small.getAllocatedCapacity());
+        Assertions.assertTrue(small.getOverflowEvictions() > 0);
+    }
+
+    @Test
+    public void testAttemptContext() {
+        AttemptContext attemptContext = new AttemptContext();
+        Assertions.assertNotEquals(attemptContext.getKey(), new AttemptContext().getKey());
+        RequestData requestData = new RequestData(HttpMethod.GET, URI.create("http://test/anything"), new HttpHeaders(),
+                null, Map.of(AttemptContext.ATTRIBUTE, attemptContext));
+        Assertions.assertSame(attemptContext, AttemptContext.of(new DefaultRequest<>(new RequestDataContext(requestData))));
+        Assertions.assertNull(AttemptContext.of(new DefaultRequest<>(new RequestDataContext())));
+        Assertions.assertNull(AttemptContext.of(null));
+
+        //关闭的时候删除记录
+        AttemptTable attemptTable = new AttemptTable();
+        attemptContext.bind(attemptTable);
+        attemptTable.record(attemptContext.getKey(), 1, 1);
+        Assertions.assertEquals(1, attemptTable.getAttempts(attemptContext.getKey()));
+        attemptContext.close();
+        Assertions.assertTrue(attemptContext.isClosed());
+        Assertions.assertEquals(0, attemptTable.getAttempts(attemptContext.getKey()));
+    }
+}
@@ -0,0 +1,133 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: BackgroundRankedInstanceSelector 单元测试
+ * @date 2026-10-18 16:50
+ */
+public class BackgroundRankedInstanceSelectorTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    //定时刷新间隔足够长，测试中手动调用 refresh
+    private final BackgroundRankedInstanceSelector selector = new BackgroundRankedInstanceSelector(Duration.ofHours(1), now::get);
+
+    @AfterEach
+    public void tearDown() {
+        selector.destroy();
+    }
+
+    private static ServiceInstanceSnapshot snapshot(int size) {
+        ServiceInstance[] serviceInstances = new ServiceInstance[size];
+        for (int i = 0; i < size; i++) {
+            serviceInstances[i] = new DefaultServiceInstance(null, "test", "10.238." + i + ".1", 80, false);
+        }
+        return new ServiceInstanceSnapshot(List.of(serviceInstances), Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+    }
+
+    private static CircuitBreaker circuitBreaker(AtomicReference<CircuitBreaker.State> state, float failureRate) {
+        CircuitBreaker circuitBreaker = Mockito.mock(CircuitBreaker.class);
+        CircuitBreaker.Metrics metrics = Mockito.mock(CircuitBreaker.Metrics.class);
+        when(circuitBreaker.getMetrics()).thenReturn(metrics);
+        when(circuitBreaker.getState()).thenAnswer(invocation -> state.get());
+        when(metrics.getFailureRate()).thenReturn(failureRate);
+        return circuitBreaker;
+    }
+
+    @Test
+    public void testRotateTopTier() {
+        ServiceInstanceSnapshot snapshot = snapshot(4);
+        AtomicReference<CircuitBreaker.State> closed = new AtomicReference<>(CircuitBreaker.State.CLOSED);
+        CircuitBreaker[] circuitBreakers = {
+                circuitBreaker(closed, 1),
+                circuitBreaker(closed, 30),
+                circuitBreaker(closed, 2),
+                circuitBreaker(closed, -1),
+        };
+        TriedInstances tried = new TriedInstances();
+        //第一次没有排序结果，同步选择错误率最低的
+        Assertions.assertEquals(3, selector.select(snapshot, circuitBreakers, tried));
+        //之后在第一梯队（错误率 0-5%）中轮询，不会选到错误率 30% 的实例
+        Set<Integer> selected = new HashSet<>();
+        for (int i = 0; i < 30; i++) {
+            int index = selector.select(snapshot, circuitBreakers, tried);
+            Assertions.assertNotEquals(1, index);
+            selected.add(index);
+        }
+        Assertions.assertEquals(Set.of(0, 2, 3), selected);
+    }
+
+    @Test
+    public void testRefreshAndSkipTried() {
+        ServiceInstanceSnapshot snapshot = snapshot(3);
+        AtomicReference<CircuitBreaker.State> first = new AtomicReference<>(CircuitBreaker.State.CLOSED);
+        AtomicReference<CircuitBreaker.State> closed = new AtomicReference<>(CircuitBreaker.State.CLOSED);
+        CircuitBreaker[] circuitBreakers = {
+                circuitBreaker(first, 0),
+                circuitBreaker(closed, 20),
+                circuitBreaker(closed, 40),
+        };
+        TriedInstances tried = new TriedInstances();
+        selector.select(snapshot, circuitBreakers, tried);
+        Assertions.assertEquals(0, selector.select(snapshot, circuitBreakers, tried));
+
+        //跳过已经尝试过的实例
+        AttemptTable attemptTable = new AttemptTable();
+        attemptTable.record(1L, snapshot, 0);
+        attemptTable.read(1L, tried);
+        Assertions.assertEquals(1, selector.select(snapshot, circuitBreakers, tried));
+
+        //断路器打开之后，刷新之前还使用之前的顺序
+        first.set(CircuitBreaker.State.OPEN);
+        TriedInstances none = new TriedInstances();
+        Assertions.assertEquals(0, selector.select(snapshot, circuitBreakers, none));
+        now.addAndGet(5);
+        Assertions.assertEquals(5, selector.getStalenessMillis());
+        selector.refresh();
+        Assertions.assertEquals(0, selector.getStalenessMillis());
+        Assertions.assertEquals(1, selector.select(snapshot, circuitBreakers, none));
+    }
+
+    @Test
+    public void testSnapshotChanged() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        selector.bindTo(registry, "test");
+        AtomicReference<CircuitBreaker.State> closed = new AtomicReference<>(CircuitBreaker.State.CLOSED);
+        CircuitBreaker[] circuitBreakers = {circuitBreaker(closed, 0), circuitBreaker(closed, 50)};
+        ServiceInstanceSnapshot snapshot = snapshot(2);
+        selector.select(snapshot, circuitBreakers, new TriedInstances());
+        selector.select(snapshot, circuitBreakers, new TriedInstances());
+        //实例列表变化，重新排序
+        ServiceInstanceSnapshot changed = snapshot(2);
+        Assertions.assertEquals(0, selector.select(changed, circuitBreakers, new TriedInstances()));
+        selector.select(changed, circuitBreakers, new TriedInstances());
+        Assertions.assertEquals(2, registry.get("loadbalancer.ranking.selections").tag("result", "miss").functionCounter().count());
+        Assertions.assertEquals(2, registry.get("loadbalancer.ranking.selections").tag("result", "hit").functionCounter().count());
+
+        //长时间没有使用的排序结果被清理
+        now.addAndGet(Duration.ofSeconds(2).toMillis());
+        selector.refresh();
+        Assertions.assertEquals(0, selector.getStalenessMillis());
+        selector.select(changed, circuitBreakers, new TriedInstances());
+        Assertions.assertEquals(3, registry.get("loadbalancer.ranking.selections").tag("result", "miss").functionCounter().count());
+    }
+}
@@ -0,0 +1,55 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: CircuitBreakerHandleTable 单元测试
+ * @date 2026-10-17 19:35
+ */
+public class CircuitBreakerHandleTableTest {
+
+    @Test
+    public void testResolveOncePerSnapshot() {
+        LoadingCache<String, AtomicLong> counters = Caffeine.newBuilder().build(k -> new AtomicLong());
+        HostIdInterner hostIdInterner = new HostIdInterner();
+        List<ServiceInstance> serviceInstances = List.of(
+                new DefaultServiceInstance(null, "test", "10.238.0.1", 80, false),
+                new DefaultServiceInstance(null, "test", "10.238.0.2", 80, false)
+        );
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances, counters, hostIdInterner);
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        AtomicInteger resolved = new AtomicInteger();
+        IntFunction<CircuitBreaker> resolver = i -> {
+            resolved.incrementAndGet();
+            return circuitBreakerRegistry.circuitBreaker(snapshot.getHost(i) + ":80/test");
+        };
+        CircuitBreakerHandleTable circuitBreakerHandleTable = new CircuitBreakerHandleTable();
+        CircuitBreaker[] circuitBreakers = circuitBreakerHandleTable.get("/test", snapshot, resolver);
+        Assertions.assertEquals("10.238.0.2:80/test", circuitBreakers[1].getName());
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertSame(circuitBreakers, circuitBreakerHandleTable.get("/test", snapshot, resolver));
+        }
+        Assertions.assertEquals(2, resolved.get());
+
+        //实例列表变化
+        ServiceInstanceSnapshot newSnapshot = new ServiceInstanceSnapshot(List.of(serviceInstances.get(1)), counters, hostIdInterner);
+        CircuitBreaker[] newCircuitBreakers = circuitBreakerHandleTable.get("/test", newSnapshot,
+                i -> circuitBreakerRegistry.circuitBreaker(newSnapshot.getHost(i) + ":80/test"));
+        Assertions.assertEquals(1, newCircuitBreakers.length);
+        Assertions.assertSame(circuitBreakers[1], newCircuitBreakers[0]);
+    }
+}
@@ -0,0 +1,122 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: DiscoverySnapshotStore 以及 SnapshotServiceInstanceListSupplier 单元测试
+ * @date 2026-10-18 11:10
+ */
+public class DiscoverySnapshotStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(100));
+
+    private DiscoverySnapshotStore store(Path path) {
+        return new DiscoverySnapshotStore(path, Duration.ofDays(7), Duration.ofHours(1), now::get);
+    }
+
+    private static List<ServiceInstance> serviceInstances() {
+        return List.of(
+                new DefaultServiceInstance("test-1", "test", "10.238.0.1", 80, false, Map.of("zone", "a", "version", "v1")),
+                new DefaultServiceInstance(null, "test", "10.238.0.2", 443, true, Map.of("zone", "中文"))
+        );
+    }
+
+    private static void assertSame(List<ServiceInstance> expected, List<ServiceInstance> actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i).getInstanceId(), actual.get(i).getInstanceId());
+            Assertions.assertEquals(expected.get(i).getHost(), actual.get(i).getHost());
+            Assertions.assertEquals(expected.get(i).getPort(), actual.get(i).getPort());
+            Assertions.assertEquals(expected.get(i).isSecure(), actual.get(i).isSecure());
+            Assertions.assertEquals(expected.get(i).getMetadata(), actual.get(i).getMetadata());
+        }
+    }
+
+    @Test
+    public void testWriteAndLoad() {
+        Path path = dir.resolve("snapshot.bin");
+        DiscoverySnapshotStore store = store(path);
+        Assertions.assertTrue(store.get("test").isEmpty());
+        store.put("test", serviceInstances());
+        store.put("other", List.of());
+        store.flush();
+        //原子 rename，不会留下临时文件
+        Assertions.assertFalse(Files.exists(dir.resolve("snapshot.bin.tmp")));
+
+        DiscoverySnapshotStore loaded = store(path);
+        assertSame(serviceInstances(), loaded.get("test"));
+        Assertions.assertEquals("test", loaded.get("test").get(0).getServiceId());
+        Assertions.assertTrue(loaded.get("other").isEmpty());
+
+        //超过 maxAge 的文件忽略
+        now.addAndGet(TimeUnit.DAYS.toMillis(8));
+        Assertions.assertTrue(store(path).get("test").isEmpty());
+    }
+
+    @Test
+    public void testCorrupted() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        DiscoverySnapshotStore store = store(path);
+        store.put("test", serviceInstances());
+        store.flush();
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+        Assertions.assertTrue(store(path).get("test").isEmpty());
+
+        Files.write(path, new byte[]{1, 2, 3});
+        Assertions.assertTrue(store(path).get("test").isEmpty());
+    }
+
+    @Test
+    public void testSeed() {
+        Path path = dir.resolve("snapshot.bin");
+        DiscoverySnapshotStore store = store(path);
+        store.put("test", serviceInstances());
+
+        AtomicReference<Flux<List<ServiceInstance>>> upstream = new AtomicReference<>(Flux.just(List.of()));
+        ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+        Mockito.when(delegate.getServiceId()).thenReturn("test");
+        Mockito.when(delegate.get()).thenAnswer(invocation -> upstream.get());
+        SnapshotServiceInstanceListSupplier supplier = new SnapshotServiceInstanceListSupplier(delegate, store);
+
+        //注册中心还没有返回实例
+        List<ServiceInstance> seeded = supplier.get().blockFirst();
+        assertSame(serviceInstances(), seeded);
+        Assertions.assertSame(seeded, supplier.get().blockFirst());
+        Assertions.assertTrue(supplier.isStale());
+        upstream.set(Flux.error(new IllegalStateException("timeout")));
+        Assertions.assertSame(seeded, supplier.get().blockFirst());
+
+        //注册中心确认之后不再使用快照
+        List<ServiceInstance> discovered = serviceInstances().subList(0, 1);
+        upstream.set(Flux.just(discovered));
+        Assertions.assertSame(discovered, supplier.get().blockFirst());
+        Assertions.assertFalse(supplier.isStale());
+        assertSame(discovered, store.get("test"));
+        upstream.set(Flux.just(List.of()));
+        Assertions.assertTrue(supplier.get().blockFirst().isEmpty());
+    }
+}
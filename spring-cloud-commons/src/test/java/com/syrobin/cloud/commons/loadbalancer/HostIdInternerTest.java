@@ -0,0 +1,68 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: HostIdInterner 单元测试
+ * @date 2026-10-20 15:40
+ */
+public class HostIdInternerTest {
+
+    @Test
+    public void testReleaseAndReuse() {
+        HostIdInterner hostIdInterner = new HostIdInterner();
+        int a = hostIdInterner.intern("10.238.0.1");
+        int b = hostIdInterner.intern("10.238.0.2");
+        Assertions.assertEquals(1, a);
+        Assertions.assertEquals(2, b);
+        //同一个字符串 id 不变，引用计数加一
+        Assertions.assertEquals(a, hostIdInterner.intern("10.238.0.1"));
+        hostIdInterner.release(a);
+        Assertions.assertEquals(2, hostIdInterner.size());
+        hostIdInterner.release(a);
+        Assertions.assertEquals(1, hostIdInterner.size());
+        //释放的 id 给新的字符串复用
+        Assertions.assertEquals(a, hostIdInterner.intern("10.238.0.3"));
+        Assertions.assertEquals(b, hostIdInterner.intern("10.238.0.2"));
+        //0 以及多余的释放忽略
+        hostIdInterner.release(0);
+        hostIdInterner.release(100);
+        Assertions.assertEquals(2, hostIdInterner.size());
+    }
+
+    @Test
+    public void testBoundedBySnapshot() {
+        HostIdInterner hostIdInterner = new HostIdInterner();
+        LoadingCache<String, AtomicLong> returned = Caffeine.newBuilder().build(k -> new AtomicLong());
+        ServiceInstanceSnapshot previous = null;
+        //滚动发布，每次实例的 ip 都不一样
+        for (int round = 0; round < 1000; round++) {
+            List<ServiceInstance> serviceInstances = List.of(
+                    new DefaultServiceInstance(null, "test", "10.238." + (round % 200) + "." + (round / 200 * 2 + 1), 80, false),
+                    new DefaultServiceInstance(null, "test", "10.238." + (round % 200) + "." + (round / 200 * 2 + 2), 80, false)
+            );
+            ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances, returned, hostIdInterner);
+            if (previous != null) {
+                previous.release();
+                //重复释放不影响
+                previous.release();
+            }
+            previous = snapshot;
+        }
+        //两个 ip 以及它们的网段
+        Assertions.assertEquals(3, hostIdInterner.size());
+        Assertions.assertTrue(hostIdInterner.getMaxId() <= 6, "max id " + hostIdInterner.getMaxId());
+        Assertions.assertNotEquals(previous.getHostId(0), previous.getHostId(1));
+        Assertions.assertEquals(previous.getSubnetId(0), previous.getSubnetId(1));
+    }
+}
@@ -0,0 +1,113 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: InflightTracker 以及 LeastOutstandingInstanceSelector 单元测试
+ * @date 2026-10-17 18:55
+ */
+public class InflightTrackerTest {
+
+    private final InflightTracker inflightTracker = new InflightTracker();
+
+    @Test
+    public void testLifecycle() {
+        DefaultRequest<Object> request = new DefaultRequest<>();
+        ServiceInstance serviceInstance = new DefaultServiceInstance(null, "test", "10.238.0.1", 80, false);
+        DefaultResponse response = new DefaultResponse(serviceInstance);
+        inflightTracker.onStart(request);
+        inflightTracker.onStartRequest(request, response);
+        inflightTracker.onStartRequest(request, response);
+        Assertions.assertEquals(2, inflightTracker.getInflight("10.238.0.1", 80));
+        inflightTracker.onComplete(new CompletionContext<>(CompletionContext.Status.SUCCESS, request, response));
+        inflightTracker.onComplete(new CompletionContext<>(CompletionContext.Status.FAILED, new RuntimeException(), request, response));
+        Assertions.assertEquals(0, inflightTracker.getInflight("10.238.0.1", 80));
+        //没有选到实例
+        inflightTracker.onComplete(new CompletionContext<>(CompletionContext.Status.DISCARD, request, new EmptyResponse()));
+        inflightTracker.onComplete(new CompletionContext<>(CompletionContext.Status.DISCARD, request, response));
+        Assertions.assertEquals(0, inflightTracker.getInflight("10.238.0.1", 80));
+    }
+
+    @Test
+    public void testLeastOutstanding() {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        CircuitBreaker[] circuitBreakers = new CircuitBreaker[4];
+        for (int i = 0; i < 4; i++) {
+            String host = "10.238.0." + (i + 1);
+            serviceInstances.add(new DefaultServiceInstance(null, "test", host, 80, false));
+            circuitBreakers[i] = circuitBreakerRegistry.circuitBreaker(host);
+        }
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances,
+                Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+        LeastOutstandingInstanceSelector selector = new LeastOutstandingInstanceSelector(inflightTracker);
+        inflightTracker.get("10.238.0.1", 80).add(3);
+        inflightTracker.get("10.238.0.2", 80).add(1);
+        inflightTracker.get("10.238.0.3", 80).add(2);
+        inflightTracker.get("10.238.0.4", 80).add(1);
+        int[] selected = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            selected[selector.select(snapshot, circuitBreakers, new TriedInstances())]++;
+        }
+        Assertions.assertEquals(0, selected[0] + selected[2]);
+        Assertions.assertTrue(selected[1] > 300 && selected[3] > 300);
+
+        //在途请求最少的实例断路器打开
+        circuitBreakers[1].transitionToOpenState();
+        Assertions.assertEquals(3, selector.select(snapshot, circuitBreakers, new TriedInstances()));
+    }
+
+    @Test
+    public void testRetainedWhileInSnapshot() {
+        ServiceInstance instance1 = new DefaultServiceInstance(null, "test", "10.238.0.1", 80, false);
+        ServiceInstance instance2 = new DefaultServiceInstance(null, "test", "10.238.0.2", 80, false);
+        ServiceInstance other = new DefaultServiceInstance(null, "other", "10.238.0.3", 80, false);
+        SnapshotAlignedCache<LongAdder> cache = new SnapshotAlignedCache<>(inflightTracker.getInflights(), LongAdder[]::new);
+        SnapshotAlignedCache<LongAdder> otherCache = new SnapshotAlignedCache<>(inflightTracker.getInflights(), LongAdder[]::new);
+        ServiceInstanceSnapshot snapshot = snapshot(List.of(instance1, instance2));
+        LongAdder[] inflights = cache.get(snapshot);
+
+        //其他微服务切换快照触发清理，在快照中的实例不会被清理，请求路径上更新的还是快照中的对象
+        otherCache.get(snapshot(List.of(other)));
+        otherCache.get(snapshot(List.of(other)));
+        DefaultRequest<Object> request = new DefaultRequest<>();
+        DefaultResponse response = new DefaultResponse(instance1);
+        inflightTracker.onStartRequest(request, response);
+        Assertions.assertEquals(1, inflights[0].sum());
+        Assertions.assertSame(inflights, cache.get(snapshot));
+
+        //实例下线的时候还有在途请求，计数器保留到请求结束，不会变成负数
+        cache.get(snapshot(List.of(instance2)));
+        Assertions.assertEquals(1, inflightTracker.getInflight("10.238.0.1", 80));
+        inflightTracker.onComplete(new CompletionContext<>(CompletionContext.Status.SUCCESS, request, response));
+        Assertions.assertEquals(0, inflightTracker.getInflight("10.238.0.1", 80));
+        //请求结束之后下次切换快照清理
+        otherCache.get(snapshot(List.of(other)));
+        Assertions.assertEquals(2, inflightTracker.getInflights().size());
+        //已经清理的实例再收到结束事件，不会创建计数器
+        inflightTracker.onComplete(new CompletionContext<>(CompletionContext.Status.SUCCESS, request, response));
+        Assertions.assertEquals(0, inflightTracker.getInflight("10.238.0.1", 80));
+        Assertions.assertEquals(2, inflightTracker.getInflights().size());
+    }
+
+    private static ServiceInstanceSnapshot snapshot(List<ServiceInstance> serviceInstances) {
+        return new ServiceInstanceSnapshot(serviceInstances, Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+    }
+}
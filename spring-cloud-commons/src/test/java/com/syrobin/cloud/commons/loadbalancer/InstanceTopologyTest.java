@@ -0,0 +1,125 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: InstanceTopology 以及按照故障域分散重试的单元测试
+ * @date 2026-10-18 15:40
+ */
+public class InstanceTopologyTest {
+
+    @Test
+    public void testSubnet() {
+        InstanceTopology topology = new InstanceTopology();
+        Assertions.assertEquals("10.0.1.0/24", topology.getSubnet("10.0.1.5"));
+        //之前字符串前缀匹配会把 10.0.11.x 当作 10.0.1 网段
+        Assertions.assertEquals("10.0.11.0/24", topology.getSubnet("10.0.11.5"));
+        Assertions.assertEquals("2001:db8:0:1::/64", topology.getSubnet("2001:db8:0:1:abcd::5"));
+        Assertions.assertEquals("2001:db8:0:1::/64", topology.getSubnet("[2001:0db8:0000:0001::6]"));
+        Assertions.assertNull(topology.getSubnet("user-service.default.svc.cluster.local"));
+
+        InstanceTopology wide = new InstanceTopology(20, 48);
+        Assertions.assertEquals("10.0.0.0/20", wide.getSubnet("10.0.15.5"));
+        Assertions.assertEquals("10.0.16.0/20", wide.getSubnet("10.0.16.5"));
+        Assertions.assertEquals("2001:db8::/48", wide.getSubnet("2001:db8:0:1::5"));
+    }
+
+    @Test
+    public void testAddress() {
+        InstanceTopology topology = new InstanceTopology();
+        Assertions.assertEquals("2001:db8::1", topology.getAddress("2001:0DB8:0:0::1"));
+        Assertions.assertEquals("10.0.1.5", topology.getAddress("10.0.1.5"));
+        Assertions.assertEquals("user-service", topology.getAddress("User-Service"));
+    }
+
+    @Test
+    public void testSpreadAcrossDomains() {
+        List<ServiceInstance> serviceInstances = List.of(
+                //0 和 1 在同一台物理机
+                new DefaultServiceInstance(null, "test", "10.0.1.1", 80, false, Map.of("host", "node-1", "rack", "r1")),
+                new DefaultServiceInstance(null, "test", "10.0.1.2", 80, false, Map.of("host", "node-1", "rack", "r1")),
+                //2 和 0 在同一个机架
+                new DefaultServiceInstance(null, "test", "10.0.2.1", 80, false, Map.of("host", "node-2", "rack", "r1")),
+                //3 和 0 在同一个网段
+                new DefaultServiceInstance(null, "test", "10.0.1.3", 80, false, Map.of("host", "node-3", "rack", "r2")),
+                //4 完全独立
+                new DefaultServiceInstance(null, "test", "10.0.11.1", 80, false, Map.of("host", "node-4", "rack", "r3"))
+        );
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances,
+                Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+        AttemptTable attemptTable = new AttemptTable();
+        attemptTable.record(1L, snapshot, 0);
+        TriedInstances tried = new TriedInstances();
+        attemptTable.read(1L, tried);
+        Assertions.assertEquals(TriedInstances.SAME_IP | TriedInstances.SAME_MACHINE | TriedInstances.SAME_RACK | TriedInstances.SAME_SUBNET,
+                tried.conflicts(snapshot, 0));
+        Assertions.assertEquals(TriedInstances.SAME_MACHINE | TriedInstances.SAME_RACK | TriedInstances.SAME_SUBNET,
+                tried.conflicts(snapshot, 1));
+        Assertions.assertEquals(TriedInstances.SAME_RACK, tried.conflicts(snapshot, 2));
+        Assertions.assertEquals(TriedInstances.SAME_SUBNET, tried.conflicts(snapshot, 3));
+        Assertions.assertEquals(0, tried.conflicts(snapshot, 4));
+
+        //重试选择完全独立的实例，其次是同网段，再其次是同机架
+        CircuitBreaker[] circuitBreakers = new CircuitBreaker[snapshot.size()];
+        for (int i = 0; i < circuitBreakers.length; i++) {
+            CircuitBreaker circuitBreaker = Mockito.mock(CircuitBreaker.class);
+            CircuitBreaker.Metrics metrics = Mockito.mock(CircuitBreaker.Metrics.class);
+            when(circuitBreaker.getMetrics()).thenReturn(metrics);
+            when(circuitBreaker.getState()).thenReturn(CircuitBreaker.State.CLOSED);
+            circuitBreakers[i] = circuitBreaker;
+        }
+        RankingInstanceSelector selector = new RankingInstanceSelector();
+        Assertions.assertEquals(4, selector.select(snapshot, circuitBreakers, tried));
+        attemptTable.record(1L, snapshot, 4);
+        attemptTable.read(1L, tried);
+        Assertions.assertEquals(3, selector.select(snapshot, circuitBreakers, tried));
+        attemptTable.record(1L, snapshot, 3);
+        attemptTable.read(1L, tried);
+        Assertions.assertEquals(2, selector.select(snapshot, circuitBreakers, tried));
+    }
+
+    @Test
+    public void testNoDomain() {
+        //没有 metadata 并且不是 ip 的实例之间不会因为缺少故障域而互相冲突
+        List<ServiceInstance> serviceInstances = List.of(
+                new DefaultServiceInstance(null, "test", "a.svc", 80, false),
+                new DefaultServiceInstance(null, "test", "b.svc", 80, false)
+        );
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances,
+                Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+        AttemptTable attemptTable = new AttemptTable();
+        attemptTable.record(1L, snapshot, 0);
+        TriedInstances tried = new TriedInstances();
+        attemptTable.read(1L, tried);
+        Assertions.assertEquals(TriedInstances.SAME_IP, tried.conflicts(snapshot, 0));
+        Assertions.assertEquals(0, tried.conflicts(snapshot, 1));
+    }
+
+    @Test
+    public void testNullHost() {
+        //有些注册中心（以及测试里面 mock 的实例）host 为 null，不能影响构建快照
+        InstanceTopology topology = new InstanceTopology();
+        Assertions.assertNull(topology.getSubnet(null));
+        Assertions.assertNull(topology.getAddress(null));
+        ServiceInstance serviceInstance = Mockito.spy(ServiceInstance.class);
+        when(serviceInstance.getInstanceId()).thenReturn("instance1");
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(List.of(serviceInstance),
+                Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+        Assertions.assertEquals(1, snapshot.size());
+        Assertions.assertEquals(0, snapshot.getHostId(0));
+    }
+}
@@ -0,0 +1,105 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.config.LoadBalancerZoneConfig;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: LocalityAwareServiceInstanceListSupplier 单元测试
+ * @date 2026-10-18 00:55
+ */
+public class LocalityAwareServiceInstanceListSupplierTest {
+
+    private int next;
+
+    private List<ServiceInstance> zone(String zone, int count) {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            next++;
+            serviceInstances.add(new DefaultServiceInstance(null, "test", "10.238.0." + next, 80, false, Map.of("zone", zone)));
+        }
+        return serviceInstances;
+    }
+
+    private static List<ServiceInstance> get(List<ServiceInstance> serviceInstances, String zone) {
+        ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+        Mockito.when(delegate.get()).thenReturn(Flux.just(serviceInstances));
+        return new LocalityAwareServiceInstanceListSupplier(delegate, new LoadBalancerZoneConfig(zone)).get().blockFirst();
+    }
+
+    private static long count(List<ServiceInstance> serviceInstances, String zone) {
+        return serviceInstances.stream().filter(serviceInstance -> zone.equals(serviceInstance.getMetadata().get("zone"))).count();
+    }
+
+    @Test
+    public void testSteadyState() {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        serviceInstances.addAll(zone("a", 10));
+        serviceInstances.addAll(zone("b", 10));
+        serviceInstances.addAll(zone("c", 10));
+        List<ServiceInstance> result = get(serviceInstances, "A");
+        Assertions.assertEquals(10, result.size());
+        Assertions.assertEquals(10, count(result, "a"));
+    }
+
+    @Test
+    public void testLocalZoneEmpty() {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        serviceInstances.addAll(zone("b", 3));
+        serviceInstances.addAll(zone("c", 3));
+        Assertions.assertEquals(serviceInstances, get(serviceInstances, "a"));
+    }
+
+    @Test
+    public void testSpillover() {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        serviceInstances.addAll(zone("a", 5));
+        serviceInstances.addAll(zone("b", 10));
+        serviceInstances.addAll(zone("c", 10));
+        //容量 5 / (25 / 3) = 0.6，本 zone 比例 0.6 / 0.7，需要加入 5 * (1 / 0.857 - 1) = 0.83 个其他 zone 的实例
+        List<ServiceInstance> result = get(serviceInstances, "a");
+        Assertions.assertEquals(5, count(result, "a"));
+        Assertions.assertEquals(6, result.size());
+
+        //本 zone 只剩一个实例，大部分流量溢出
+        serviceInstances = new ArrayList<>();
+        serviceInstances.addAll(zone("a", 1));
+        serviceInstances.addAll(zone("b", 10));
+        serviceInstances.addAll(zone("c", 10));
+        result = get(serviceInstances, "a");
+        Assertions.assertEquals(1, count(result, "a"));
+        //容量 1 / 7 = 0.143，本 zone 比例 0.204，加入 4 个其他 zone 的实例
+        Assertions.assertEquals(5, result.size());
+    }
+
+    @Test
+    public void testSpilloverCount() {
+        LocalityAwareServiceInstanceListSupplier supplier = new LocalityAwareServiceInstanceListSupplier(
+                Mockito.mock(ServiceInstanceListSupplier.class), new LoadBalancerZoneConfig("a"), 0.7);
+        //本 zone 容量 0.5，本 zone 比例 0.714，10 个本 zone 实例需要 4 个其他 zone 的实例
+        Assertions.assertEquals(4, supplier.getSpillover(10, 60, 3, 50));
+        Assertions.assertEquals(0, supplier.getSpillover(20, 60, 3, 40));
+        //不能超过其他 zone 的实例个数
+        Assertions.assertEquals(2, supplier.getSpillover(1, 21, 3, 2));
+    }
+
+    @Test
+    public void testNoZone() {
+        List<ServiceInstance> serviceInstances = zone("a", 3);
+        Assertions.assertSame(serviceInstances, get(serviceInstances, null));
+        Assertions.assertEquals(serviceInstances.stream().map(ServiceInstance::getHost).collect(Collectors.toList()),
+                get(serviceInstances, "a").stream().map(ServiceInstance::getHost).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,121 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: MaglevInstanceSelector 单元测试
+ * @date 2026-10-17 21:30
+ */
+public class MaglevInstanceSelectorTest {
+
+    private final LoadingCache<String, AtomicLong> counters = Caffeine.newBuilder().build(k -> new AtomicLong());
+    private final HostIdInterner hostIdInterner = new HostIdInterner();
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+
+    private List<ServiceInstance> serviceInstances(int size) {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            serviceInstances.add(new DefaultServiceInstance(null, "test", "10.238.0." + (i + 1), 80, false));
+        }
+        return serviceInstances;
+    }
+
+    private CircuitBreaker[] circuitBreakers(ServiceInstanceSnapshot snapshot) {
+        CircuitBreaker[] circuitBreakers = new CircuitBreaker[snapshot.size()];
+        for (int i = 0; i < circuitBreakers.length; i++) {
+            circuitBreakers[i] = circuitBreakerRegistry.circuitBreaker(snapshot.getHost(i) + ":80");
+        }
+        return circuitBreakers;
+    }
+
+    @Test
+    public void testBalancedTable() {
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances(10), counters, hostIdInterner);
+        int[] table = MaglevInstanceSelector.buildTable(snapshot);
+        int[] slots = new int[10];
+        for (int index : table) {
+            slots[index]++;
+        }
+        for (int slot : slots) {
+            Assertions.assertTrue(Math.abs(slot - table.length / 10) <= 1, "slot " + slot);
+        }
+    }
+
+    @Test
+    public void testMinimalDisruption() {
+        List<ServiceInstance> serviceInstances = serviceInstances(10);
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances, counters, hostIdInterner);
+        MaglevInstanceSelector selector = new MaglevInstanceSelector("hash-key", "hash-key");
+        CircuitBreaker[] circuitBreakers = circuitBreakers(snapshot);
+        String[] before = new String[10000];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = snapshot.getHost(selector.selectByHashKey(snapshot, circuitBreakers, new TriedInstances(), "key" + i));
+        }
+        //相同的 key 一定是同一个实例
+        Assertions.assertEquals(before[7], snapshot.getHost(selector.selectByHashKey(snapshot, circuitBreakers, new TriedInstances(), "key7")));
+
+        //下线一个实例，顺序打乱
+        List<ServiceInstance> newServiceInstances = new ArrayList<>(serviceInstances.subList(1, 10));
+        Collections.reverse(newServiceInstances);
+        ServiceInstanceSnapshot newSnapshot = new ServiceInstanceSnapshot(newServiceInstances, counters, hostIdInterner);
+        CircuitBreaker[] newCircuitBreakers = circuitBreakers(newSnapshot);
+        int moved = 0;
+        int movedFromRemaining = 0;
+        for (int i = 0; i < before.length; i++) {
+            String host = newSnapshot.getHost(selector.selectByHashKey(newSnapshot, newCircuitBreakers, new TriedInstances(), "key" + i));
+            if (!host.equals(before[i])) {
+                moved++;
+                if (!"10.238.0.1".equals(before[i])) {
+                    movedFromRemaining++;
+                }
+            }
+        }
+        //大约 1/10 的 key 在下线的实例上，Maglev 不保证其他 key 完全不动，但是只有很少一部分
+        Assertions.assertTrue(moved > 700 && moved < 1500, "moved " + moved);
+        Assertions.assertTrue(movedFromRemaining < 300, "moved from remaining " + movedFromRemaining);
+    }
+
+    @Test
+    public void testSkipOpenAndFallback() {
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances(5), counters, hostIdInterner);
+        CircuitBreaker[] circuitBreakers = circuitBreakers(snapshot);
+        MaglevInstanceSelector selector = new MaglevInstanceSelector("hash-key", "hash-key");
+        int index = selector.selectByHashKey(snapshot, circuitBreakers, new TriedInstances(), "user-1");
+        circuitBreakers[index].transitionToOpenState();
+        int next = selector.selectByHashKey(snapshot, circuitBreakers, new TriedInstances(), "user-1");
+        Assertions.assertNotEquals(index, next);
+        //恢复之后回到原来的实例
+        circuitBreakers[index].transitionToClosedState();
+        Assertions.assertEquals(index, selector.selectByHashKey(snapshot, circuitBreakers, new TriedInstances(), "user-1"));
+
+        //通过请求头读取 key
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("hash-key", "user-1");
+        RequestData requestData = new RequestData(HttpMethod.GET, URI.create("http://test/a"), headers, null, Map.of());
+        DefaultRequest<RequestDataContext> request = new DefaultRequest<>(new RequestDataContext(requestData));
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals(index, selector.select(snapshot, circuitBreakers, new TriedInstances(), request));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: OutlierDetector 以及 OutlierEjectingServiceInstanceListSupplier 单元测试
+ * @date 2026-10-18 00:25
+ */
+public class OutlierDetectorTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    private final OutlierDetector outlierDetector = new OutlierDetector(5, Duration.ofSeconds(30), Duration.ofSeconds(300), now::get);
+
+    private static ServiceInstance serviceInstance(int i) {
+        return new DefaultServiceInstance(null, "test", "10.238.0." + i, 80, false);
+    }
+
+    private void complete(ServiceInstance serviceInstance, int status) {
+        outlierDetector.onComplete(new CompletionContext<>(CompletionContext.Status.SUCCESS, new DefaultRequest<>(),
+                new DefaultResponse(serviceInstance), new ResponseData(null, null, null, status)));
+    }
+
+    private void fail(ServiceInstance serviceInstance, Throwable throwable) {
+        outlierDetector.onComplete(new CompletionContext<>(CompletionContext.Status.FAILED, throwable, new DefaultRequest<>(),
+                new DefaultResponse(serviceInstance)));
+    }
+
+    @Test
+    public void testConsecutiveFailures() {
+        ServiceInstance serviceInstance = serviceInstance(1);
+        for (int i = 0; i < 4; i++) {
+            complete(serviceInstance, 500);
+        }
+        //成功请求会清零
+        complete(serviceInstance, 404);
+        for (int i = 0; i < 4; i++) {
+            complete(serviceInstance, 503);
+        }
+        Assertions.assertEquals(0, outlierDetector.getEjectedUntil("10.238.0.1", 80));
+        fail(serviceInstance, new ConnectException("Connection refused"));
+        Assertions.assertEquals(now.get() + 30_000, outlierDetector.getEjectedUntil("10.238.0.1", 80));
+    }
+
+    @Test
+    public void testIgnored() {
+        ServiceInstance serviceInstance = serviceInstance(1);
+        for (int i = 0; i < 10; i++) {
+            complete(serviceInstance, OutlierDetector.CIRCUIT_BREAKER_ON);
+            complete(serviceInstance, OutlierDetector.BULKHEAD_FULL);
+            fail(serviceInstance, CallNotPermittedException.createCallNotPermittedException(CircuitBreaker.ofDefaults("test")));
+        }
+        Assertions.assertEquals(0, outlierDetector.getEjectedUntil("10.238.0.1", 80));
+        //读取超时以及连接失败
+        for (int i = 0; i < 5; i++) {
+            complete(serviceInstance, 582 + i % 2);
+        }
+        Assertions.assertTrue(outlierDetector.getEjectedUntil("10.238.0.1", 80) > 0);
+    }
+
+    @Test
+    public void testExponentialEjectionTime() {
+        long[] expected = {30_000, 60_000, 120_000, 240_000, 300_000};
+        for (long ejection : expected) {
+            for (int i = 0; i < 5; i++) {
+                fail(serviceInstance(1), new IOException("Read timed out"));
+            }
+            long ejectedUntil = outlierDetector.getEjectedUntil("10.238.0.1", 80);
+            Assertions.assertEquals(now.get() + ejection, ejectedUntil);
+            now.set(ejectedUntil);
+        }
+        //恢复之后稳定一段时间，驱逐次数清零
+        now.addAndGet(TimeUnit.SECONDS.toMillis(301));
+        for (int i = 0; i < 5; i++) {
+            fail(serviceInstance(1), new IOException("Read timed out"));
+        }
+        Assertions.assertEquals(now.get() + 30_000, outlierDetector.getEjectedUntil("10.238.0.1", 80));
+    }
+
+    @Test
+    public void testSupplier() {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            serviceInstances.add(serviceInstance(i));
+        }
+        ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+        Mockito.when(delegate.get()).thenReturn(Flux.just(serviceInstances));
+        OutlierEjectingServiceInstanceListSupplier supplier = new OutlierEjectingServiceInstanceListSupplier(delegate, outlierDetector, 50);
+        Assertions.assertSame(serviceInstances, supplier.get().blockFirst());
+
+        for (int i = 0; i < 5; i++) {
+            complete(serviceInstance(0), 500);
+        }
+        List<ServiceInstance> ejected = supplier.get().blockFirst();
+        Assertions.assertEquals(serviceInstances.subList(1, 4), ejected);
+        //没有变化的时候返回同一个对象
+        Assertions.assertSame(ejected, supplier.get().blockFirst());
+
+        //最多驱逐一半
+        now.addAndGet(1000);
+        for (int i = 0; i < 5; i++) {
+            complete(serviceInstance(1), 500);
+            complete(serviceInstance(2), 500);
+        }
+        ejected = supplier.get().blockFirst();
+        Assertions.assertEquals(List.of(serviceInstance(0), serviceInstance(3)), ejected);
+
+        //恢复之后重新加入
+        now.addAndGet(TimeUnit.SECONDS.toMillis(31));
+        Assertions.assertSame(serviceInstances, supplier.get().blockFirst());
+    }
+}
@@ -0,0 +1,135 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: PeakEwmaTracker 以及 PeakEwmaInstanceSelector 单元测试
+ * @date 2026-10-17 17:50
+ */
+public class PeakEwmaTrackerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final PeakEwmaTracker peakEwmaTracker = new PeakEwmaTracker(Duration.ofSeconds(10), now::get);
+
+    @Test
+    public void testPeakAndDecay() {
+        PeakEwmaTracker.PeakEwma peakEwma = peakEwmaTracker.get("10.238.0.1", 80);
+        peakEwma.observe(100, true);
+        //变慢马上生效
+        peakEwma.observe(1000, true);
+        Assertions.assertEquals(1000, peakEwma.getCost(), 0.001);
+        //变快按照时间衰减
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        peakEwma.observe(100, true);
+        Assertions.assertEquals(100 + 900 / Math.E, peakEwma.getCost(), 0.001);
+        //失败请求不会拉低
+        double cost = peakEwma.getCost();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        peakEwma.observe(1, false);
+        Assertions.assertTrue(peakEwma.getCost() > cost * 0.9);
+    }
+
+    @Test
+    public void testCircuitBreakerEvents() {
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        peakEwmaTracker.bindTo(circuitBreakerRegistry);
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("10.238.0.1:80/test");
+        PeakEwmaTracker.PeakEwma peakEwma = peakEwmaTracker.get("10.238.0.1", 80);
+        circuitBreaker.onSuccess(5, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(5), peakEwma.getCost(), 0.001);
+        circuitBreaker.onError(10, TimeUnit.MILLISECONDS, new RuntimeException());
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(10), peakEwma.getCost(), 0.001);
+    }
+
+    @Test
+    public void testServiceInstanceFromMethodId() {
+        Assertions.assertEquals("10.238.0.1:80", Resilience4jUtil.getServiceInstanceFromMethodId("10.238.0.1:80/test"));
+        Assertions.assertEquals("10.238.0.1:80", Resilience4jUtil.getServiceInstanceFromMethodId("10.238.0.1:80:public abstract java.lang.String a.b()"));
+        Assertions.assertNull(Resilience4jUtil.getServiceInstanceFromMethodId("testService"));
+        //路径中的冒号不影响
+        Assertions.assertEquals("10.238.0.1:80", Resilience4jUtil.getServiceInstanceFromMethodId("10.238.0.1:80/a:1/b"));
+    }
+
+    @Test
+    public void testIpv6ServiceInstanceFromMethodId() {
+        Assertions.assertEquals("fe80::1:8080", Resilience4jUtil.getServiceInstanceFromMethodId("fe80::1:8080/test"));
+        Assertions.assertEquals("fe80::1:8080", Resilience4jUtil.getServiceInstanceFromMethodId("fe80::1:8080:public abstract java.lang.String a.b()"));
+        //feign 通过 URL 获取的 host 带有方括号
+        Assertions.assertEquals("fe80::1:8080", Resilience4jUtil.getServiceInstanceFromMethodId("[fe80::1]:8080:public abstract java.lang.String a.b()"));
+        Assertions.assertEquals("2001:db8::10:80", Resilience4jUtil.getServiceInstanceFromMethodId("2001:db8::10:80/test"));
+
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        peakEwmaTracker.bindTo(circuitBreakerRegistry);
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("fe80::1:8080:public abstract java.lang.String a.b()");
+        circuitBreaker.onSuccess(5, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(5), peakEwmaTracker.get("fe80::1", 8080).getCost(), 0.001);
+    }
+
+    @Test
+    public void testSelectFaster() {
+        List<ServiceInstance> serviceInstances = List.of(
+                new DefaultServiceInstance(null, "test", "10.238.0.1", 80, false),
+                new DefaultServiceInstance(null, "test", "10.238.0.2", 80, false)
+        );
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances,
+                Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        CircuitBreaker[] circuitBreakers = {
+                circuitBreakerRegistry.circuitBreaker("10.238.0.1:80/test"),
+                circuitBreakerRegistry.circuitBreaker("10.238.0.2:80/test"),
+        };
+        peakEwmaTracker.get("10.238.0.1", 80).observe(TimeUnit.MILLISECONDS.toNanos(500), true);
+        peakEwmaTracker.get("10.238.0.2", 80).observe(TimeUnit.MILLISECONDS.toNanos(10), true);
+        InflightTracker inflightTracker = new InflightTracker();
+        PeakEwmaInstanceSelector selector = new PeakEwmaInstanceSelector(peakEwmaTracker, inflightTracker);
+        int[] selected = new int[2];
+        for (int i = 0; i < 100; i++) {
+            int index = selector.select(snapshot, circuitBreakers, new TriedInstances());
+            selected[index]++;
+            //模拟请求发出去之后没有返回
+            inflightTracker.get(snapshot.getHost(index), 80).increment();
+        }
+        //在途请求堆积之后，慢实例也会分到少量请求
+        Assertions.assertTrue(selected[1] > selected[0] * 5, "selected " + selected[0] + " " + selected[1]);
+        Assertions.assertTrue(selected[0] >= 1);
+    }
+
+    @Test
+    public void testSelectorSeesObservationsAfterPrune() {
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        peakEwmaTracker.bindTo(circuitBreakerRegistry);
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(
+                List.of(new DefaultServiceInstance(null, "test", "10.238.0.1", 80, false)),
+                Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+        SnapshotAlignedCache<PeakEwmaTracker.PeakEwma> cache = new SnapshotAlignedCache<>(peakEwmaTracker.getPeakEwmas(), PeakEwmaTracker.PeakEwma[]::new);
+        PeakEwmaTracker.PeakEwma[] peakEwmas = cache.get(snapshot);
+        //不在任何快照中的实例（直接指定 url 的调用）
+        circuitBreakerRegistry.circuitBreaker("10.238.0.9:80/test").onSuccess(5, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(2, peakEwmaTracker.getPeakEwmas().size());
+
+        //其他微服务切换快照，清理掉不在快照中的实例
+        SnapshotAlignedCache<PeakEwmaTracker.PeakEwma> otherCache = new SnapshotAlignedCache<>(peakEwmaTracker.getPeakEwmas(), PeakEwmaTracker.PeakEwma[]::new);
+        otherCache.get(new ServiceInstanceSnapshot(List.of(), Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner()));
+        otherCache.get(new ServiceInstanceSnapshot(List.of(), Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner()));
+        Assertions.assertEquals(1, peakEwmaTracker.getPeakEwmas().size());
+
+        //快照中的实例还是同一个对象，负载均衡器能看到新的观测值
+        circuitBreakerRegistry.circuitBreaker("10.238.0.1:80/test").onSuccess(20, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(20), peakEwmas[0].getCost(), 0.001);
+        Assertions.assertSame(peakEwmaTracker.get("10.238.0.1", 80), cache.get(snapshot)[0]);
+    }
+}
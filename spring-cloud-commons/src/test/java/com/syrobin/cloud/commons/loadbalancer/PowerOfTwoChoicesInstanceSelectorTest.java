@@ -0,0 +1,140 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: PowerOfTwoChoicesInstanceSelector 单元测试
+ * @date 2026-10-17 16:40
+ */
+public class PowerOfTwoChoicesInstanceSelectorTest {
+
+    private final HostIdInterner hostIdInterner = new HostIdInterner();
+    private final LoadingCache<String, AtomicLong> counters = Caffeine.newBuilder().build(k -> new AtomicLong());
+
+    private ServiceInstanceSnapshot snapshot(int size) {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String host = "10.238.0." + (i + 1);
+            serviceInstances.add(new DefaultServiceInstance(null, "test", host, 80, false));
+        }
+        return new ServiceInstanceSnapshot(serviceInstances, counters, hostIdInterner);
+    }
+
+    private CircuitBreaker circuitBreaker(CircuitBreaker.State state, float failureRate) {
+        CircuitBreaker circuitBreaker = Mockito.mock(CircuitBreaker.class);
+        CircuitBreaker.Metrics metrics = Mockito.mock(CircuitBreaker.Metrics.class);
+        when(circuitBreaker.getMetrics()).thenReturn(metrics);
+        when(circuitBreaker.getState()).thenReturn(state);
+        when(metrics.getFailureRate()).thenReturn(failureRate);
+        return circuitBreaker;
+    }
+
+    @Test
+    public void testSkipOpenAndTried() {
+        PowerOfTwoChoicesInstanceSelector selector = new PowerOfTwoChoicesInstanceSelector();
+        ServiceInstanceSnapshot snapshot = snapshot(10);
+        CircuitBreaker[] circuitBreakers = new CircuitBreaker[10];
+        for (int i = 0; i < 10; i++) {
+            circuitBreakers[i] = circuitBreaker(i < 5 ? CircuitBreaker.State.OPEN : CircuitBreaker.State.CLOSED, 0);
+        }
+        AttemptTable attemptTable = new AttemptTable();
+        attemptTable.record(1L, snapshot.getHostId(5), snapshot.getSubnetId(5));
+        TriedInstances tried = new TriedInstances();
+        attemptTable.read(1L, tried);
+        for (int i = 0; i < 1000; i++) {
+            int selected = selector.select(snapshot, circuitBreakers, tried);
+            Assertions.assertTrue(selected > 5, "selected " + selected);
+        }
+    }
+
+    @Test
+    public void testPickBetterOfTwo() {
+        PowerOfTwoChoicesInstanceSelector selector = new PowerOfTwoChoicesInstanceSelector();
+        ServiceInstanceSnapshot snapshot = snapshot(3);
+        CircuitBreaker[] circuitBreakers = {
+                circuitBreaker(CircuitBreaker.State.CLOSED, 50),
+                circuitBreaker(CircuitBreaker.State.CLOSED, 0),
+                circuitBreaker(CircuitBreaker.State.HALF_OPEN, 0),
+        };
+        int[] selected = new int[3];
+        for (int i = 0; i < 3000; i++) {
+            selected[selector.select(snapshot, circuitBreakers, new TriedInstances())]++;
+        }
+        //最好的实例只要被采样到就会被选中，最差的实例几乎不会被选中
+        Assertions.assertTrue(selected[1] > selected[0]);
+        Assertions.assertTrue(selected[0] > selected[2]);
+    }
+
+    @Test
+    public void testCompareInflight() {
+        InflightTracker inflightTracker = new InflightTracker();
+        PowerOfTwoChoicesInstanceSelector selector = new PowerOfTwoChoicesInstanceSelector(inflightTracker);
+        ServiceInstanceSnapshot snapshot = snapshot(2);
+        //两个实例只有在途请求数不同
+        CircuitBreaker[] circuitBreakers = {
+                circuitBreaker(CircuitBreaker.State.CLOSED, 0),
+                circuitBreaker(CircuitBreaker.State.CLOSED, 0),
+        };
+        inflightTracker.get("10.238.0.1", 80).add(3);
+        Assertions.assertTrue(selector.compare(snapshot, circuitBreakers, new TriedInstances(), 0, 1) > 0);
+        Assertions.assertTrue(selector.compare(snapshot, circuitBreakers, new TriedInstances(), 1, 0) < 0);
+        int[] selected = new int[2];
+        for (int i = 0; i < 1000; i++) {
+            selected[selector.select(snapshot, circuitBreakers, new TriedInstances())]++;
+        }
+        //只有采样一直落在同一个实例上的时候才会选到在途请求多的实例
+        Assertions.assertTrue(selected[1] > 950, "selected " + selected[1]);
+
+        //在途请求结束之后两个实例一样
+        inflightTracker.get("10.238.0.1", 80).add(-3);
+        Assertions.assertEquals(0, selector.compare(snapshot, circuitBreakers, new TriedInstances(), 0, 1));
+    }
+
+    @Test
+    public void testCompareBufferedCallsWithoutInflightTracker() {
+        PowerOfTwoChoicesInstanceSelector selector = new PowerOfTwoChoicesInstanceSelector();
+        ServiceInstanceSnapshot snapshot = snapshot(2);
+        CircuitBreaker[] circuitBreakers = {
+                circuitBreaker(CircuitBreaker.State.CLOSED, 0),
+                circuitBreaker(CircuitBreaker.State.CLOSED, 0),
+        };
+        when(circuitBreakers[0].getMetrics().getNumberOfBufferedCalls()).thenReturn(5);
+        when(circuitBreakers[1].getMetrics().getNumberOfBufferedCalls()).thenReturn(2);
+        //负载均衡器返回次数不再参与比较
+        snapshot.getReturnedCounter(1).set(100);
+        Assertions.assertTrue(selector.compare(snapshot, circuitBreakers, new TriedInstances(), 0, 1) > 0);
+    }
+
+    @Test
+    public void testFallbackWhenNoneAvailable() {
+        PowerOfTwoChoicesInstanceSelector selector = new PowerOfTwoChoicesInstanceSelector();
+        ServiceInstanceSnapshot snapshot = snapshot(5);
+        CircuitBreaker[] circuitBreakers = new CircuitBreaker[5];
+        for (int i = 0; i < 5; i++) {
+            circuitBreakers[i] = circuitBreaker(CircuitBreaker.State.OPEN, i == 3 ? 0 : 100);
+        }
+        //全部断路器打开的时候和完整排序一样，选择错误率最低的
+        Assertions.assertEquals(3, selector.select(snapshot, circuitBreakers, new TriedInstances()));
+    }
+
+    @Test
+    public void testMode() {
+        Assertions.assertEquals(LoadBalancerMode.POWER_OF_TWO_CHOICES, LoadBalancerMode.of("power-of-two-choices"));
+        Assertions.assertEquals(LoadBalancerMode.RANKING, LoadBalancerMode.of("RANKING"));
+    }
+}
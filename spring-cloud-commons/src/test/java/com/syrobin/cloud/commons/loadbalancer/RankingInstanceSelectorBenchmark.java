@@ -0,0 +1,129 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 对比之前 shuffle + Comparator 全排序的实现与 RankingInstanceSelector 单次遍历的实现
+ * 直接运行 main 方法即可
+ * @date 2026-10-17 11:05
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankingInstanceSelectorBenchmark {
+
+    @Param({"20", "200", "1000"})
+    private int instanceCount;
+
+    private List<ServiceInstance> serviceInstances;
+    private Map<ServiceInstance, CircuitBreaker> serviceInstanceCircuitBreakerMap;
+    private ServiceInstanceSnapshot snapshot;
+    private CircuitBreaker[] circuitBreakers;
+    private final Set<String> calledIps = ConcurrentHashMap.newKeySet();
+    private final Set<String> calledIpPrefixes = ConcurrentHashMap.newKeySet();
+    private final LoadingCache<String, AtomicLong> numberOfReturnedByLoadBalancer = Caffeine.newBuilder()
+            .build(k -> new AtomicLong(0L));
+    private final RankingInstanceSelector rankingInstanceSelector = new RankingInstanceSelector();
+    private final AttemptTable attemptTable = new AttemptTable();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        serviceInstances = new ArrayList<>(instanceCount);
+        serviceInstanceCircuitBreakerMap = new HashMap<>();
+        for (int i = 0; i < instanceCount; i++) {
+            String host = "10.238." + (i / 250) + "." + (i % 250 + 1);
+            ServiceInstance serviceInstance = new DefaultServiceInstance(host + ":80", "benchmark", host, 80, false);
+            CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(host);
+            for (int j = 0; j < 100; j++) {
+                if (random.nextInt(100) < 3) {
+                    circuitBreaker.onError(1, TimeUnit.MILLISECONDS, new RuntimeException());
+                } else {
+                    circuitBreaker.onSuccess(1, TimeUnit.MILLISECONDS);
+                }
+            }
+            serviceInstances.add(serviceInstance);
+            serviceInstanceCircuitBreakerMap.put(serviceInstance, circuitBreaker);
+        }
+        snapshot = new ServiceInstanceSnapshot(serviceInstances, numberOfReturnedByLoadBalancer, new HostIdInterner());
+        circuitBreakers = new CircuitBreaker[snapshot.size()];
+        for (int i = 0; i < circuitBreakers.length; i++) {
+            circuitBreakers[i] = serviceInstanceCircuitBreakerMap.get(snapshot.getInstance(i));
+        }
+    }
+
+    /**
+     * 之前 TracedCircuitBreakerRoundRobinLoadBalancer#getInstanceResponseByRoundRobin 的实现
+     */
+    @Benchmark
+    public ServiceInstance comparatorSort() {
+        List<ServiceInstance> instances = serviceInstances.stream().distinct().collect(Collectors.toList());
+        Collections.shuffle(instances);
+        Map<ServiceInstance, Integer> used = new HashMap<>();
+        Map<ServiceInstance, Long> counts = new HashMap<>();
+        instances = instances.stream().sorted(
+                Comparator
+                        .<ServiceInstance>comparingInt(serviceInstance -> used.computeIfAbsent(serviceInstance, k ->
+                                calledIps.stream().anyMatch(prefix -> serviceInstance.getHost().equalsIgnoreCase(prefix)) ? 1 : 0))
+                        .thenComparingInt(serviceInstance -> used.computeIfAbsent(serviceInstance, k ->
+                                calledIpPrefixes.stream().anyMatch(prefix -> serviceInstance.getHost().contains(prefix)) ? 1 : 0))
+                        .thenComparingInt(serviceInstance -> serviceInstanceCircuitBreakerMap.get(serviceInstance).getState().getOrder())
+                        .thenComparingDouble(serviceInstance -> serviceInstanceCircuitBreakerMap.get(serviceInstance).getMetrics().getFailureRate())
+                        .thenComparingLong(serviceInstance -> counts.computeIfAbsent(serviceInstance, k ->
+                                numberOfReturnedByLoadBalancer.get(k.toString()).get()))
+                        .thenComparingLong(serviceInstance -> serviceInstanceCircuitBreakerMap.get(serviceInstance).getMetrics().getNumberOfBufferedCalls())
+        ).collect(Collectors.toList());
+        return instances.get(0);
+    }
+
+    @Benchmark
+    public ServiceInstance singlePass() {
+        TriedInstances tried = new TriedInstances();
+        attemptTable.read(1L, tried);
+        int index = rankingInstanceSelector.select(snapshot, circuitBreakers, tried);
+        return snapshot.getInstance(index);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(RankingInstanceSelectorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
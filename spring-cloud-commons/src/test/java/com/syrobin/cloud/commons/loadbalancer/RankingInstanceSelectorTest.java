@@ -0,0 +1,89 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 单次遍历的选择结果必须和之前 Comparator 排序后排在第一位的实例（之一）一致
+ * @date 2026-10-17 11:40
+ */
+public class RankingInstanceSelectorTest {
+
+    private static final float[] FAILURE_RATES = {-1.0f, 0.0f, 0.1f, 0.2f, 50.0f};
+
+    @Test
+    public void testSameAsComparatorChain() {
+        Random random = new Random(7);
+        RankingInstanceSelector rankingInstanceSelector = new RankingInstanceSelector();
+        HostIdInterner hostIdInterner = new HostIdInterner();
+        for (int round = 0; round < 500; round++) {
+            int size = 1 + random.nextInt(12);
+            List<ServiceInstance> serviceInstances = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                String host = "10.238." + random.nextInt(3) + "." + (i + 1);
+                serviceInstances.add(new DefaultServiceInstance(null, "test", host, 80, false));
+            }
+            LoadingCache<String, AtomicLong> counters = Caffeine.newBuilder().build(k -> new AtomicLong(random.nextInt(2)));
+            ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances, counters, hostIdInterner);
+            CircuitBreaker[] circuitBreakers = new CircuitBreaker[snapshot.size()];
+            for (int i = 0; i < circuitBreakers.length; i++) {
+                CircuitBreaker circuitBreaker = Mockito.mock(CircuitBreaker.class);
+                CircuitBreaker.Metrics metrics = Mockito.mock(CircuitBreaker.Metrics.class);
+                when(circuitBreaker.getMetrics()).thenReturn(metrics);
+                when(circuitBreaker.getState()).thenReturn(CircuitBreaker.State.values()[random.nextInt(3)]);
+                when(metrics.getFailureRate()).thenReturn(FAILURE_RATES[random.nextInt(FAILURE_RATES.length)]);
+                when(metrics.getNumberOfBufferedCalls()).thenReturn(random.nextInt(3));
+                circuitBreakers[i] = circuitBreaker;
+            }
+            boolean calledIp = random.nextBoolean();
+            boolean calledSubnet = random.nextBoolean();
+            TriedInstances tried = new TriedInstances();
+            if (calledIp || calledSubnet) {
+                AttemptTable attemptTable = new AttemptTable();
+                attemptTable.record(round, calledIp ? snapshot.getHostId(0) : 0, calledSubnet ? snapshot.getSubnetId(snapshot.size() - 1) : 0);
+                attemptTable.read(round, tried);
+            }
+
+            Comparator<Integer> comparator = Comparator
+                    .<Integer>comparingInt(i -> calledIp && snapshot.getHost(i).equals(snapshot.getHost(0)) ? 1 : 0)
+                    .thenComparingInt(i -> calledSubnet && snapshot.getSubnet(i).equals(snapshot.getSubnet(snapshot.size() - 1)) ? 1 : 0)
+                    .thenComparingInt(i -> circuitBreakers[i].getState().getOrder())
+                    .thenComparingDouble(i -> circuitBreakers[i].getMetrics().getFailureRate())
+                    .thenComparingLong(i -> counters.get(Resilience4jUtil.getServiceInstance(snapshot.getHost(i), 80)).get())
+                    .thenComparingLong(i -> circuitBreakers[i].getMetrics().getNumberOfBufferedCalls());
+            int expectedFirst = 0;
+            for (int i = 1; i < snapshot.size(); i++) {
+                if (comparator.compare(i, expectedFirst) < 0) {
+                    expectedFirst = i;
+                }
+            }
+            int selected = rankingInstanceSelector.select(snapshot, circuitBreakers, tried);
+            Assertions.assertEquals(0, comparator.compare(selected, expectedFirst));
+        }
+    }
+
+    @Test
+    public void testSortableFloatBits() {
+        float[] values = {-1.0f, -0.0f, 0.0f, 0.1f, 1.0f, 100.0f};
+        for (int i = 1; i < values.length; i++) {
+            Assertions.assertTrue(RankingInstanceSelector.sortableFloatBits(values[i - 1]) < RankingInstanceSelector.sortableFloatBits(values[i]));
+        }
+    }
+}
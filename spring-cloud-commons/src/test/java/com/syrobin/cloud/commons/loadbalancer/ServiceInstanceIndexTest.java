@@ -0,0 +1,79 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.config.LoadBalancerZoneConfig;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: ServiceInstanceIndex 以及 SameZoneOnlyServiceInstanceListSupplier 单元测试
+ * @date 2026-10-18 01:20
+ */
+public class ServiceInstanceIndexTest {
+
+    private static ServiceInstance serviceInstance(int i, Map<String, String> metadata) {
+        return new DefaultServiceInstance(null, "test", "10.238.0." + i, 80, false, metadata);
+    }
+
+    private static List<ServiceInstance> serviceInstances() {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        serviceInstances.add(serviceInstance(1, Map.of("zone", "a", "version", "v1")));
+        serviceInstances.add(serviceInstance(2, Map.of("zone", "A", "version", "V1")));
+        serviceInstances.add(serviceInstance(3, Map.of("zone", "b", "version", "v1")));
+        serviceInstances.add(serviceInstance(4, Map.of()));
+        return serviceInstances;
+    }
+
+    @Test
+    public void testIndex() {
+        List<ServiceInstance> serviceInstances = serviceInstances();
+        ServiceInstanceIndex index = ServiceInstanceIndex.of(serviceInstances, null);
+        //zone 不区分大小写
+        Assertions.assertEquals(serviceInstances.subList(0, 2), index.getZone("a"));
+        Assertions.assertSame(index.getZone("a"), index.getZone("A"));
+        Assertions.assertTrue(index.getZone("c").isEmpty());
+        Assertions.assertEquals(Set.of("a", "b", ""), index.getZones());
+        Assertions.assertTrue(index.containsZone("B"));
+        //version 区分大小写
+        Assertions.assertEquals(List.of(serviceInstances.get(0), serviceInstances.get(2)), index.getVersion("v1"));
+        Assertions.assertEquals(List.of(serviceInstances.get(1)), index.getVersion("V1"));
+        Assertions.assertTrue(index.getVersion("v2").isEmpty());
+    }
+
+    @Test
+    public void testReuse() {
+        List<ServiceInstance> serviceInstances = serviceInstances();
+        ServiceInstanceIndex index = ServiceInstanceIndex.of(serviceInstances, null);
+        Assertions.assertSame(index, ServiceInstanceIndex.of(serviceInstances, index));
+        //内容相同但是是新的 List 对象，代表服务发现刷新过，需要重新构建
+        Assertions.assertNotSame(index, ServiceInstanceIndex.of(serviceInstances(), index));
+    }
+
+    @Test
+    public void testSameZoneOnly() {
+        List<ServiceInstance> serviceInstances = serviceInstances();
+        ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+        Mockito.when(delegate.get()).thenReturn(Flux.just(serviceInstances));
+        SameZoneOnlyServiceInstanceListSupplier supplier = new SameZoneOnlyServiceInstanceListSupplier(delegate, new LoadBalancerZoneConfig("A"));
+        List<ServiceInstance> result = supplier.get().blockFirst();
+        Assertions.assertEquals(serviceInstances.subList(0, 2), result);
+        //上游列表没有变化的时候返回同一个对象
+        Assertions.assertSame(result, supplier.get().blockFirst());
+
+        supplier = new SameZoneOnlyServiceInstanceListSupplier(delegate, new LoadBalancerZoneConfig("c"));
+        Assertions.assertTrue(supplier.get().blockFirst().isEmpty());
+        supplier = new SameZoneOnlyServiceInstanceListSupplier(delegate, new LoadBalancerZoneConfig(null));
+        Assertions.assertTrue(supplier.get().blockFirst().isEmpty());
+    }
+}
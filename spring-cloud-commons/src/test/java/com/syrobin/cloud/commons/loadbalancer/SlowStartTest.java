@@ -0,0 +1,117 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: SlowStart 以及 SlowStartInstanceSelector 单元测试
+ * @date 2026-10-17 23:35
+ */
+public class SlowStartTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    private final SlowStart slowStart = new SlowStart(Duration.ofSeconds(60), now::get);
+
+    private static ServiceInstance serviceInstance(int i) {
+        return new DefaultServiceInstance(null, "test", "10.238.0." + i, 80, false);
+    }
+
+    @Test
+    public void testFactor() {
+        ServiceInstance old = serviceInstance(1);
+        ServiceInstance added = serviceInstance(2);
+        //第一次看到的实例不需要预热
+        Assertions.assertTrue(slowStart.observe(List.of(old)).isEmpty());
+        Assertions.assertEquals(1, slowStart.getFactor(slowStart.getStartMillis(old)));
+        now.addAndGet(1000);
+        Assertions.assertEquals(List.of(added), slowStart.observe(List.of(old, added)));
+        Assertions.assertEquals(SlowStart.MIN_FACTOR, slowStart.getFactor(slowStart.getStartMillis(added)));
+        now.addAndGet(TimeUnit.SECONDS.toMillis(30));
+        Assertions.assertEquals(0.5, slowStart.getFactor(slowStart.getStartMillis(added)), 0.001);
+        now.addAndGet(TimeUnit.SECONDS.toMillis(30));
+        Assertions.assertEquals(1, slowStart.getFactor(slowStart.getStartMillis(added)));
+    }
+
+    @Test
+    public void testRegistrationTimestamp() {
+        slowStart.observe(List.of());
+        DefaultServiceInstance serviceInstance = new DefaultServiceInstance(null, "test", "10.238.0.1", 80, false,
+                Map.of(SlowStart.REGISTRATION_TIMESTAMP, String.valueOf(now.get() - TimeUnit.SECONDS.toMillis(45))));
+        slowStart.observe(List.of(serviceInstance));
+        Assertions.assertEquals(0.75, slowStart.getFactor(slowStart.getStartMillis(serviceInstance)), 0.001);
+    }
+
+    @Test
+    public void testReAdded() {
+        ServiceInstance serviceInstance = serviceInstance(1);
+        slowStart.observe(List.of(serviceInstance, serviceInstance(2)));
+        now.addAndGet(TimeUnit.MINUTES.toMillis(10));
+        //列表长时间没有变化，已有的实例不需要重新预热
+        Assertions.assertTrue(slowStart.observe(List.of(serviceInstance, serviceInstance(2))).isEmpty());
+        Assertions.assertEquals(1, slowStart.getFactor(slowStart.getStartMillis(serviceInstance)));
+        //下线之后用同样的 host:port 重新上线，不管间隔多久都重新预热
+        slowStart.observe(List.of(serviceInstance(2)));
+        now.addAndGet(1000);
+        Assertions.assertEquals(List.of(serviceInstance), slowStart.observe(List.of(serviceInstance, serviceInstance(2))));
+        Assertions.assertEquals(SlowStart.MIN_FACTOR, slowStart.getFactor(slowStart.getStartMillis(serviceInstance)));
+        Assertions.assertEquals(1, slowStart.getFactor(slowStart.getStartMillis(serviceInstance(2))));
+    }
+
+    @Test
+    public void testSelector() {
+        LoadingCache<String, AtomicLong> returned = Caffeine.newBuilder().build(k -> new AtomicLong());
+        HostIdInterner hostIdInterner = new HostIdInterner();
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        SlowStartInstanceSelector selector = new SlowStartInstanceSelector(new RankingInstanceSelector(), slowStart);
+
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            serviceInstances.add(serviceInstance(i));
+        }
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances, returned, hostIdInterner);
+        select(selector, snapshot, circuitBreakerRegistry, 1000);
+
+        //新增一个实例，返回次数从当前最小值开始，并且只接收少量请求
+        serviceInstances = new ArrayList<>(serviceInstances);
+        serviceInstances.add(serviceInstance(4));
+        snapshot = new ServiceInstanceSnapshot(serviceInstances, returned, hostIdInterner);
+        int[] selected = select(selector, snapshot, circuitBreakerRegistry, 1000);
+        Assertions.assertTrue(snapshot.getReturnedCounter(4).get() >= 250);
+        Assertions.assertTrue(selected[4] > 0 && selected[4] < 100, "selected " + selected[4]);
+
+        //预热完成之后平均分配
+        now.addAndGet(TimeUnit.SECONDS.toMillis(60));
+        selected = select(selector, snapshot, circuitBreakerRegistry, 1000);
+        Assertions.assertTrue(selected[4] > 150, "selected " + selected[4]);
+    }
+
+    private static int[] select(SlowStartInstanceSelector selector, ServiceInstanceSnapshot snapshot,
+                                CircuitBreakerRegistry circuitBreakerRegistry, int times) {
+        CircuitBreaker[] circuitBreakers = new CircuitBreaker[snapshot.size()];
+        for (int i = 0; i < circuitBreakers.length; i++) {
+            circuitBreakers[i] = circuitBreakerRegistry.circuitBreaker(snapshot.getHost(i) + ":80/test");
+        }
+        int[] selected = new int[snapshot.size()];
+        for (int i = 0; i < times; i++) {
+            int index = selector.select(snapshot, circuitBreakers, new TriedInstances());
+            selected[index]++;
+            snapshot.getReturnedCounter(index).incrementAndGet();
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,154 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: StaleWhileRevalidateServiceInstanceListSupplier 单元测试
+ * @date 2026-10-18 09:50
+ */
+public class StaleWhileRevalidateServiceInstanceListSupplierTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    private final AtomicReference<Flux<List<ServiceInstance>>> upstream = new AtomicReference<>();
+    private final ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+    //定时刷新间隔足够长，测试中手动调用 refresh
+    private final StaleWhileRevalidateServiceInstanceListSupplier supplier = new StaleWhileRevalidateServiceInstanceListSupplier(
+            delegate, Duration.ofHours(1), Duration.ofMinutes(5), Flux.never(), now::get);
+
+    {
+        Mockito.when(delegate.get()).thenAnswer(invocation -> upstream.get());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        supplier.destroy();
+    }
+
+    private static List<ServiceInstance> serviceInstances(int count) {
+        ServiceInstance[] serviceInstances = new ServiceInstance[count];
+        for (int i = 0; i < count; i++) {
+            serviceInstances[i] = new DefaultServiceInstance(null, "test", "10.238.0." + i, 80, false);
+        }
+        return List.of(serviceInstances);
+    }
+
+    @Test
+    public void testServeCached() {
+        List<ServiceInstance> first = serviceInstances(2);
+        upstream.set(Flux.just(first));
+        Assertions.assertSame(first, supplier.get().blockFirst());
+        //之后不再请求上游
+        upstream.set(Flux.error(new IllegalStateException("should not be called")));
+        Assertions.assertSame(first, supplier.get().blockFirst());
+
+        List<ServiceInstance> second = serviceInstances(3);
+        upstream.set(Flux.just(second));
+        supplier.refresh().block();
+        Assertions.assertEquals(second, supplier.get().blockFirst());
+    }
+
+    @Test
+    public void testDiff() {
+        List<ServiceInstance> first = serviceInstances(3);
+        upstream.set(Flux.just(first));
+        supplier.get().blockFirst();
+        //内容相同的新列表，继续返回之前的对象
+        upstream.set(Flux.just(serviceInstances(3)));
+        supplier.refresh().block();
+        Assertions.assertSame(first, supplier.get().blockFirst());
+        Assertions.assertEquals(0, supplier.getChanges());
+
+        //保留下来的实例顺序不变，新增的排在后面
+        ServiceInstance added = new DefaultServiceInstance(null, "test", "10.238.1.1", 80, false);
+        upstream.set(Flux.just(List.of(added, first.get(2), first.get(0))));
+        supplier.refresh().block();
+        Assertions.assertEquals(List.of(first.get(0), first.get(2), added), supplier.get().blockFirst());
+        Assertions.assertEquals(1, supplier.getChanges());
+
+        //metadata 变化
+        List<ServiceInstance> current = supplier.get().blockFirst();
+        ServiceInstance weighted = new DefaultServiceInstance(null, "test", "10.238.0.2", 80, false, Map.of("weight", "2"));
+        List<ServiceInstance> changed = StaleWhileRevalidateServiceInstanceListSupplier.diff(current, List.of(first.get(0), weighted, added));
+        Assertions.assertNotSame(current, changed);
+        Assertions.assertSame(weighted, changed.get(1));
+    }
+
+    @Test
+    public void testRefreshTrigger() throws Exception {
+        Sinks.Many<Object> events = Sinks.many().multicast().directBestEffort();
+        StaleWhileRevalidateServiceInstanceListSupplier triggered = new StaleWhileRevalidateServiceInstanceListSupplier(
+                delegate, Duration.ofHours(1), Duration.ofMinutes(5), events.asFlux(), now::get);
+        try {
+            upstream.set(Flux.just(serviceInstances(1)));
+            triggered.get().blockFirst();
+            upstream.set(Flux.just(serviceInstances(2)));
+            events.tryEmitNext(1L);
+            Assertions.assertEquals(2, triggered.get().blockFirst().size());
+        } finally {
+            triggered.destroy();
+        }
+    }
+
+    @Test
+    public void testRefreshError() {
+        List<ServiceInstance> first = serviceInstances(2);
+        upstream.set(Flux.just(first));
+        supplier.get().blockFirst();
+        now.addAndGet(10_000);
+        upstream.set(Flux.error(new IOException("Connection refused")));
+        supplier.refresh().block();
+        Assertions.assertSame(first, supplier.get().blockFirst());
+        Assertions.assertEquals(10_000, supplier.getStalenessMillis());
+    }
+
+    @Test
+    public void testEmptyProtection() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        supplier.bindTo(registry, "test");
+        List<ServiceInstance> first = serviceInstances(2);
+        upstream.set(Flux.just(first));
+        supplier.get().blockFirst();
+
+        upstream.set(Flux.just(List.of()));
+        supplier.refresh().block();
+        now.addAndGet(TimeUnit.MINUTES.toMillis(4));
+        supplier.refresh().block();
+        Assertions.assertSame(first, supplier.get().blockFirst());
+        Assertions.assertEquals(2, registry.get("loadbalancer.instances.refresh").tag("outcome", "empty_rejected").timer().count());
+        Assertions.assertEquals(240, registry.get("loadbalancer.instances.staleness").gauge().value());
+
+        //中间恢复过，重新计算连续为空的时间
+        upstream.set(Flux.just(first));
+        supplier.refresh().block();
+        upstream.set(Flux.just(List.of()));
+        supplier.refresh().block();
+        now.addAndGet(TimeUnit.MINUTES.toMillis(4));
+        supplier.refresh().block();
+        Assertions.assertSame(first, supplier.get().blockFirst());
+
+        //连续为空超过安全时间，接受空列表
+        now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        supplier.refresh().block();
+        Assertions.assertTrue(supplier.get().blockFirst().isEmpty());
+        Assertions.assertEquals(0, registry.get("loadbalancer.instances.staleness").gauge().value());
+    }
+}
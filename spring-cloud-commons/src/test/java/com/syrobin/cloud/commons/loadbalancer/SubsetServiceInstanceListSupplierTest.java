@@ -0,0 +1,111 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: SubsetServiceInstanceListSupplier 单元测试
+ * @date 2026-10-17 22:30
+ */
+public class SubsetServiceInstanceListSupplierTest {
+
+    private static List<ServiceInstance> serviceInstances(int count) {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            serviceInstances.add(new DefaultServiceInstance(null, "test", "10.238." + (i / 256) + "." + (i % 256), 80, false));
+        }
+        return serviceInstances;
+    }
+
+    private static List<ServiceInstance> subset(List<ServiceInstance> serviceInstances, String consumerId, int subsetSize) {
+        ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+        Mockito.when(delegate.get()).thenReturn(Flux.just(serviceInstances));
+        return new SubsetServiceInstanceListSupplier(delegate, consumerId, subsetSize).get().blockFirst();
+    }
+
+    @Test
+    public void testStable() {
+        List<ServiceInstance> serviceInstances = serviceInstances(100);
+        List<ServiceInstance> subset = subset(serviceInstances, "consumer-1", 10);
+        Assertions.assertEquals(10, subset.size());
+        Assertions.assertEquals(10, new HashSet<>(subset).size());
+        //和实例在列表中的顺序无关
+        List<ServiceInstance> reversed = new ArrayList<>(serviceInstances);
+        Collections.reverse(reversed);
+        Assertions.assertEquals(new HashSet<>(subset), new HashSet<>(subset(reversed, "consumer-1", 10)));
+        //不同调用方子集不同
+        Assertions.assertNotEquals(new HashSet<>(subset), new HashSet<>(subset(serviceInstances, "consumer-2", 10)));
+    }
+
+    @Test
+    public void testSameListReturnsSameSubset() {
+        List<ServiceInstance> serviceInstances = serviceInstances(100);
+        ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+        Mockito.when(delegate.get()).thenReturn(Flux.just(serviceInstances));
+        SubsetServiceInstanceListSupplier supplier = new SubsetServiceInstanceListSupplier(delegate, "consumer-1", 10);
+        Assertions.assertSame(supplier.get().blockFirst(), supplier.get().blockFirst());
+    }
+
+    @Test
+    public void testEvenSpread() {
+        List<ServiceInstance> serviceInstances = serviceInstances(50);
+        Map<ServiceInstance, Integer> counts = new HashMap<>();
+        int consumers = 1000;
+        for (int i = 0; i < consumers; i++) {
+            for (ServiceInstance serviceInstance : subset(serviceInstances, "consumer-" + i, 5)) {
+                counts.merge(serviceInstance, 1, Integer::sum);
+            }
+        }
+        //平均每个服务实例被 100 个调用方选中
+        Assertions.assertEquals(50, counts.size());
+        counts.values().forEach(count -> Assertions.assertTrue(count > 60 && count < 140, "count " + count));
+    }
+
+    @Test
+    public void testMinimalChurn() {
+        List<ServiceInstance> serviceInstances = serviceInstances(100);
+        int changed = 0;
+        for (int i = 0; i < 100; i++) {
+            String consumerId = "consumer-" + i;
+            List<ServiceInstance> before = subset(serviceInstances, consumerId, 10);
+            List<ServiceInstance> removed = new ArrayList<>(serviceInstances);
+            removed.remove(before.get(0));
+            Set<ServiceInstance> after = new HashSet<>(subset(removed, consumerId, 10));
+            //下线的实例被替换，其他实例保持不变
+            Set<ServiceInstance> kept = new HashSet<>(before);
+            kept.retainAll(after);
+            Assertions.assertEquals(9, kept.size());
+            //其他实例下线不影响这个调用方
+            List<ServiceInstance> other = new ArrayList<>(serviceInstances);
+            other.removeAll(before);
+            List<ServiceInstance> removedOther = new ArrayList<>(serviceInstances);
+            removedOther.remove(other.get(0));
+            if (!new HashSet<>(before).equals(new HashSet<>(subset(removedOther, consumerId, 10)))) {
+                changed++;
+            }
+        }
+        Assertions.assertEquals(0, changed);
+    }
+
+    @Test
+    public void testDisabled() {
+        List<ServiceInstance> serviceInstances = serviceInstances(10);
+        Assertions.assertSame(serviceInstances, subset(serviceInstances, "consumer-1", 0));
+        Assertions.assertSame(serviceInstances, subset(serviceInstances, "consumer-1", 10));
+    }
+}
@@ -0,0 +1,66 @@
+package com.syrobin.cloud.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: SmoothWeightedRoundRobin 以及 WeightedRoundRobinInstanceSelector 单元测试
+ * @date 2026-10-17 20:40
+ */
+public class WeightedRoundRobinInstanceSelectorTest {
+
+    @Test
+    public void testSchedule() {
+        Assertions.assertArrayEquals(new int[]{0, 0, 1, 0, 2, 0, 0}, SmoothWeightedRoundRobin.schedule(new int[]{5, 1, 1}));
+        //除以最大公约数
+        Assertions.assertArrayEquals(new int[]{0, 1, 0}, SmoothWeightedRoundRobin.schedule(new int[]{200, 100}));
+        //权重为 0 的实例不参与
+        Assertions.assertArrayEquals(new int[]{1}, SmoothWeightedRoundRobin.schedule(new int[]{0, 3}));
+        Assertions.assertEquals(0, SmoothWeightedRoundRobin.schedule(new int[]{0, 0}).length);
+        //超过最大长度按比例缩小
+        int[] schedule = SmoothWeightedRoundRobin.schedule(new int[]{1_000_000, 1});
+        Assertions.assertTrue(schedule.length <= SmoothWeightedRoundRobin.MAX_SCHEDULE_LENGTH + 1);
+        Assertions.assertEquals(1, Arrays.stream(schedule).filter(i -> i == 1).count());
+    }
+
+    @Test
+    public void testWeightedSelect() {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        String[] weights = {"4", "2", "abc", null};
+        CircuitBreaker[] circuitBreakers = new CircuitBreaker[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            String host = "10.238.0." + (i + 1);
+            Map<String, String> metadata = weights[i] == null ? Map.of() : Map.of(ServiceInstanceSnapshot.WEIGHT, weights[i]);
+            serviceInstances.add(new DefaultServiceInstance(null, "test", host, 80, false, metadata));
+            circuitBreakers[i] = circuitBreakerRegistry.circuitBreaker(host);
+        }
+        ServiceInstanceSnapshot snapshot = new ServiceInstanceSnapshot(serviceInstances,
+                Caffeine.newBuilder().build(k -> new AtomicLong()), new HostIdInterner());
+        WeightedRoundRobinInstanceSelector selector = new WeightedRoundRobinInstanceSelector();
+        int[] selected = new int[weights.length];
+        for (int i = 0; i < 800; i++) {
+            selected[selector.select(snapshot, circuitBreakers, new TriedInstances())]++;
+        }
+        Assertions.assertArrayEquals(new int[]{400, 200, 100, 100}, selected);
+
+        //断路器打开的实例顺延到下一个
+        circuitBreakers[0].transitionToOpenState();
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertNotEquals(0, selector.select(snapshot, circuitBreakers, new TriedInstances()));
+        }
+    }
+}
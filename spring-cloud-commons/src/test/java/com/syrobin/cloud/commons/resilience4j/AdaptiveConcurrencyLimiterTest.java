@@ -0,0 +1,109 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: AdaptiveConcurrencyLimiter 单元测试
+ * @date 2026-10-18 18:10
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    /**
+     * 模拟 limit 个请求同时在途，每个请求的响应时间都是 rtt
+     */
+    private static void saturate(AdaptiveConcurrencyLimiter limiter, long rttMillis, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int limit = limiter.getLimit();
+            int[] inflights = new int[limit];
+            for (int i = 0; i < limit; i++) {
+                inflights[i] = limiter.tryAcquire();
+                Assertions.assertTrue(inflights[i] >= 0);
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.onSample(TimeUnit.MILLISECONDS.toNanos(rttMillis), inflights[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testReject() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveConcurrencyLimiterRegistry limiterRegistry = new AdaptiveConcurrencyLimiterRegistry(2, 1, 10, 1.5, 0.2, registry);
+        AdaptiveConcurrencyLimiter limiter = limiterRegistry.limiter("test:10.238.0.1:80");
+        Assertions.assertSame(limiter, limiterRegistry.limiter("test:10.238.0.1:80"));
+        Assertions.assertEquals(0, limiter.tryAcquire());
+        Assertions.assertEquals(1, limiter.tryAcquire());
+        Assertions.assertEquals(-1, limiter.tryAcquire());
+        Assertions.assertEquals(1, registry.get("concurrency.rejected").functionCounter().count());
+        //没有发出去的请求只释放，不影响限制
+        limiter.release();
+        Assertions.assertEquals(1, limiter.getInflight());
+        Assertions.assertEquals(2, limiter.getLimit());
+        Assertions.assertEquals(1, limiter.tryAcquire());
+    }
+
+    @Test
+    public void testGrowAndShrink() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 4, 200, 1.5, 0.2);
+        //响应时间稳定，限制逐渐增长
+        saturate(limiter, 10, 20);
+        int grown = limiter.getLimit();
+        Assertions.assertTrue(grown > 30, "limit " + grown);
+
+        //实例变慢，限制马上缩小，不会低于最小值
+        saturate(limiter, 100, 1);
+        Assertions.assertTrue(limiter.getLimit() < grown / 2, "limit " + limiter.getLimit());
+        Assertions.assertTrue(limiter.getLimit() >= 4);
+    }
+
+    @Test
+    public void testNoGrowWhenIdle() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 20, 4, 200, 1.5, 0.2);
+        for (int i = 0; i < 1000; i++) {
+            int inflight = limiter.tryAcquire();
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(10), inflight);
+        }
+        //只有一个在途请求，不能证明可以承受更大的并发
+        Assertions.assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    public void testCappedByCapacity() {
+        AdaptiveConcurrencyLimiterRegistry limiterRegistry = new AdaptiveConcurrencyLimiterRegistry();
+        //隔离只能容纳 3 个请求，初始以及最大限制都不超过 3
+        AdaptiveConcurrencyLimiter limiter = limiterRegistry.limiter("test:10.238.0.1:80", 3);
+        Assertions.assertEquals(3, limiter.getLimit());
+        saturate(limiter, 10, 50);
+        Assertions.assertEquals(3, limiter.getLimit());
+        //已经创建的限制器不受之后传入的容量影响
+        Assertions.assertSame(limiter, limiterRegistry.limiter("test:10.238.0.1:80", 100));
+    }
+
+    @Test
+    public void testExpire() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AtomicLong nanos = new AtomicLong();
+        AdaptiveConcurrencyLimiterRegistry limiterRegistry = new AdaptiveConcurrencyLimiterRegistry(2, 1, 10, 1.5, 0.2, registry,
+                Duration.ofMinutes(10), nanos::get);
+        AdaptiveConcurrencyLimiter offline = limiterRegistry.limiter("test:10.238.0.1:80");
+        limiterRegistry.limiter("test:10.238.0.2:80");
+        Assertions.assertEquals(6, registry.getMeters().size());
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        limiterRegistry.limiter("test:10.238.0.2:80");
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        //下线的实例超过 10 分钟没有访问，限制器以及监控都被删除，还在访问的实例不受影响
+        Assertions.assertEquals(1, limiterRegistry.size());
+        Assertions.assertEquals(3, registry.getMeters().size());
+        Assertions.assertNotSame(offline, limiterRegistry.limiter("test:10.238.0.1:80"));
+        Assertions.assertEquals(6, registry.getMeters().size());
+    }
+}
@@ -0,0 +1,48 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: RequestDeadline 单元测试
+ * @date 2026-10-18 22:30
+ */
+public class RequestDeadlineTest {
+
+    @Test
+    public void testParse() {
+        Assertions.assertEquals(RequestDeadline.NONE, RequestDeadline.parse(null));
+        Assertions.assertEquals(RequestDeadline.NONE, RequestDeadline.parse(""));
+        Assertions.assertEquals(RequestDeadline.NONE, RequestDeadline.parse("abc"));
+        Assertions.assertEquals(RequestDeadline.NONE, RequestDeadline.parse("-1"));
+        Assertions.assertEquals(1234L, RequestDeadline.parse(" 1234 "));
+        //没有链路上下文的时候只有请求头中的截止时间
+        Assertions.assertEquals(1234L, RequestDeadline.resolve("1234"));
+        Assertions.assertEquals(RequestDeadline.NONE, RequestDeadline.resolve(null));
+    }
+
+    @Test
+    public void testClamp() {
+        Assertions.assertEquals(1000, RequestDeadline.clamp(1000, RequestDeadline.NONE));
+        Assertions.assertEquals(1000, RequestDeadline.clamp(1000, 5000));
+        Assertions.assertEquals(300, RequestDeadline.clamp(1000, 300));
+        Assertions.assertEquals(1, RequestDeadline.clamp(1000, 0));
+        Assertions.assertEquals(RequestDeadline.NONE, RequestDeadline.remainingMillis(RequestDeadline.NONE));
+    }
+
+    @Test
+    public void testHasTimeFor() {
+        long deadline = System.currentTimeMillis() + 1000;
+        Assertions.assertTrue(RequestDeadline.hasTimeFor(RequestDeadline.NONE, Double.MAX_VALUE));
+        Assertions.assertTrue(RequestDeadline.hasTimeFor(deadline, 0));
+        Assertions.assertTrue(RequestDeadline.hasTimeFor(deadline, TimeUnit.MILLISECONDS.toNanos(100)));
+        //剩余时间不够实例的预期响应时间
+        Assertions.assertFalse(RequestDeadline.hasTimeFor(deadline, TimeUnit.SECONDS.toNanos(2)));
+        //已经过了截止时间
+        Assertions.assertFalse(RequestDeadline.hasTimeFor(System.currentTimeMillis() - 1, 0));
+    }
+}
@@ -0,0 +1,73 @@
+package com.syrobin.cloud.commons.resilience4j;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: RetryBudget 单元测试
+ * @date 2026-10-18 21:00
+ */
+public class RetryBudgetTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private static int retries(RetryBudget budget, int attempts) {
+        int allowed = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (budget.tryRetry()) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    @Test
+    public void testMinRetriesPerSecond() {
+        RetryBudget budget = new RetryBudget("test", 0.2, 1, now::get);
+        //没有成功的请求，窗口内只有保底的重试次数
+        Assertions.assertEquals(RetryBudget.WINDOW_SECONDS, retries(budget, 100));
+        Assertions.assertEquals(100 - RetryBudget.WINDOW_SECONDS, budget.getRejected());
+    }
+
+    @Test
+    public void testRatioOfSuccesses() {
+        RetryBudget budget = new RetryBudget("test", 0.2, 0, now::get);
+        for (int i = 0; i < 100; i++) {
+            budget.onSuccess();
+        }
+        Assertions.assertEquals(20, retries(budget, 100));
+        //成功的请求继续增加预算
+        for (int i = 0; i < 10; i++) {
+            budget.onSuccess();
+        }
+        Assertions.assertEquals(2, retries(budget, 100));
+        Assertions.assertEquals(22, budget.getRetries());
+    }
+
+    @Test
+    public void testWindowExpired() {
+        RetryBudget budget = new RetryBudget("test", 0.5, 0, now::get);
+        for (int i = 0; i < 10; i++) {
+            budget.onSuccess();
+        }
+        Assertions.assertEquals(5, retries(budget, 10));
+        //窗口内的重试次数还没有过期
+        now.addAndGet((RetryBudget.WINDOW_SECONDS - 1) * 1000L);
+        for (int i = 0; i < 10; i++) {
+            budget.onSuccess();
+        }
+        Assertions.assertEquals(5, retries(budget, 10));
+        //第一秒的成功以及重试都过期了
+        now.addAndGet(1000);
+        Assertions.assertEquals(0, retries(budget, 10));
+        now.addAndGet(RetryBudget.WINDOW_SECONDS * 1000L);
+        Assertions.assertEquals(0, retries(budget, 10));
+        budget.onSuccess();
+        budget.onSuccess();
+        Assertions.assertEquals(1, retries(budget, 10));
+    }
+}
@@ -1,5 +1,6 @@
 package com.syrobin.cloud.api.gateway.config;
 
+import com.syrobin.cloud.api.gateway.core.SlowStart;
 import com.syrobin.cloud.api.gateway.core.VersionGrayLoadBalancer;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
@@ -9,6 +10,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+import java.time.Duration;
+
 /**
  * @author syrobin
  * @version v1.0
@@ -16,6 +19,10 @@ import org.springframework.core.env.Environment;
  * @date 2022-03-22 17:25
  */
 public class VersionLoadBalancerConfiguration {
+    /**
+     * 新实例预热时间，默认不预热，和 spring-cloud-commons 中的配置一致
+     */
+    public static final String SLOW_START_WINDOW = "slow-start.window";
 
     /**
      * 自定义灰度负载均衡器
@@ -28,7 +35,16 @@ public class VersionLoadBalancerConfiguration {
     ReactorLoadBalancer<ServiceInstance> versionGrayLoadBalancer(Environment environment,
                                                                  LoadBalancerClientFactory loadBalancerClientFactory) {
         String name = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
-        return new VersionGrayLoadBalancer(loadBalancerClientFactory.getLazyProvider(name,
+        VersionGrayLoadBalancer loadBalancer = new VersionGrayLoadBalancer(loadBalancerClientFactory.getLazyProvider(name,
                 ServiceInstanceListSupplier.class), name);
+        //新实例预热时间，优先读取微服务自己的配置
+        Duration slowStartWindow = environment.getProperty("spring.cloud.loadbalancer.clients." + name + "." + SLOW_START_WINDOW, Duration.class);
+        if (slowStartWindow == null) {
+            slowStartWindow = environment.getProperty("spring.cloud.loadbalancer." + SLOW_START_WINDOW, Duration.class, Duration.ZERO);
+        }
+        if (slowStartWindow.toMillis() > 0) {
+            loadBalancer.setSlowStart(new SlowStart(slowStartWindow));
+        }
+        return loadBalancer;
     }
 }
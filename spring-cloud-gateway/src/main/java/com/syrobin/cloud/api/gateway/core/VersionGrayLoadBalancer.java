@@ -11,24 +11,50 @@ import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
 import org.springframework.http.HttpHeaders;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 /**
  * @author syrobin
  * @version v1.0
  * @description: 自定义灰度负载均衡器
  * 通过给请求头添加Version 与 Service Instance 元数据属性进行对比
+ * 实例之间按照元数据中的 weight 平滑加权轮询，参考 {@link SmoothWeightedRoundRobin}
+ * 配置了预热的话，选中的预热实例按照预热系数的概率接收，放弃的话在轮询顺序中随机重新选择，参考 {@link #processRibbonInstanceResponse}
  * @date 2022-03-22 16:43
  */
 @Slf4j
 public class VersionGrayLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+    /**
+     * 实例元数据中的权重，没有配置或者配置错误的实例权重为 1
+     */
+    public static final String WEIGHT = "weight";
+    /**
+     * 实例元数据中的版本，和请求头 version 对比
+     */
+    public static final String VERSION = "version";
+    /**
+     * 预热中的实例被放弃之后最多重新选择的次数，大部分实例都在预热（比如整体重新发布）的时候不能无限重试
+     */
+    static final int MAX_SLOW_START_REDRAWS = 8;
 
     final String serviceId;
     final AtomicInteger position;
     ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+    /**
+     * 实例列表没有变化（上游返回同一个 List 对象）的时候复用计算好的轮询顺序
+     */
+    private volatile Schedules schedules;
+    /**
+     * 新实例预热，为 null 代表不预热
+     */
+    private SlowStart slowStart;
 
 
     public VersionGrayLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
@@ -44,6 +70,10 @@ public class VersionGrayLoadBalancer implements ReactorServiceInstanceLoadBalanc
     }
 
 
+    public void setSlowStart(SlowStart slowStart) {
+        this.slowStart = slowStart;
+    }
+
     @Override
     public Mono<Response<ServiceInstance>> choose(Request request) {
 
@@ -68,34 +98,153 @@ public class VersionGrayLoadBalancer implements ReactorServiceInstanceLoadBalanc
 
             // 获取请求头
             String reqVersion = headers.getFirst("version");
+            Schedules schedules = getSchedules(instances);
             if (StringUtils.isEmpty(reqVersion)) {
-                return processRibbonInstanceResponse(instances);
+                return processRibbonInstanceResponse(schedules.all);
             }
 
             log.info("request header version : {}", reqVersion);
-            //过滤服务实例
-            List<ServiceInstance> serviceInstances = instances.stream()
-                    .filter(instance -> reqVersion.equals(instance.getMetadata().get("version")))
-                    .collect(Collectors.toList());
-            if (!serviceInstances.isEmpty()){
-                return processRibbonInstanceResponse(serviceInstances);
-            }else {
-                return processRibbonInstanceResponse(instances);
+            //按照实例列表刷新时建立的版本索引查找，匹配不到实例的版本使用所有实例
+            Schedule schedule = schedules.getVersion(reqVersion);
+            if (schedule == null) {
+                return processRibbonInstanceResponse(schedules.all);
             }
+            return processRibbonInstanceResponse(schedule);
 
         }
     }
 
+    private Schedules getSchedules(List<ServiceInstance> instances) {
+        Schedules current = this.schedules;
+        if (current == null || current.source != instances) {
+            current = new Schedules(instances, slowStart);
+            this.schedules = current;
+        }
+        return current;
+    }
+
     /**
      * 负载均衡器
      * 考 org.springframework.cloud.loadbalancer.core.RoundRobinLoadBalancer#getInstanceResponse
-     * @param instances
+     * 按照预先计算好的平滑加权轮询顺序选择
+     * <p>
+     * 预热中的实例按照 1 - 预热系数的概率放弃，然后在轮询顺序中随机位置重新选择，重新选中的实例同样需要检查预热，
+     * 最多 {@link #MAX_SLOW_START_REDRAWS} 次，都被放弃的话使用最后一次选中的实例。
+     * 重新选择不移动共享的 position，否则每次放弃都会让预先计算好的轮询顺序错位；
+     * 随机位置按照权重分布，所以这样的拒绝采样等价于预热实例的权重乘以预热系数
+     * @param schedule
      * @return
      */
-    private Response<ServiceInstance> processRibbonInstanceResponse(List<ServiceInstance> instances) {
-        int pos = Math.abs(this.position.incrementAndGet());
-        ServiceInstance instance = instances.get(pos % instances.size());
-        return new DefaultResponse(instance);
+    private Response<ServiceInstance> processRibbonInstanceResponse(Schedule schedule) {
+        int index = next(schedule);
+        if (slowStart != null && slowStart.currentTimeMillis() < schedule.endMillis) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < MAX_SLOW_START_REDRAWS && !accept(schedule, index, random); i++) {
+                index = redraw(schedule, random);
+            }
+        }
+        return new DefaultResponse(schedule.instances[index]);
+    }
+
+    private boolean accept(Schedule schedule, int index, ThreadLocalRandom random) {
+        double factor = slowStart.getFactor(schedule.startMillis[index]);
+        return factor >= 1 || random.nextDouble() < factor;
+    }
+
+    private static int redraw(Schedule schedule, ThreadLocalRandom random) {
+        if (schedule.order.length == 0) {
+            return random.nextInt(schedule.instances.length);
+        }
+        return schedule.order[random.nextInt(schedule.order.length)];
+    }
+
+    private int next(Schedule schedule) {
+        //溢出之后 Math.abs(Integer.MIN_VALUE) 仍然是负数，所以直接去掉符号位
+        int pos = this.position.incrementAndGet() & Integer.MAX_VALUE;
+        if (schedule.order.length == 0) {
+            //所有实例权重都是 0，退化为普通轮询
+            return pos % schedule.instances.length;
+        }
+        return schedule.order[pos % schedule.order.length];
+    }
+
+    static int getWeight(ServiceInstance instance) {
+        String weight = instance.getMetadata() == null ? null : instance.getMetadata().get(WEIGHT);
+        if (weight == null) {
+            return 1;
+        }
+        try {
+            return Math.max(Integer.parseInt(weight.trim()), 0);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * 每次实例列表刷新时构建一次，version -> 实例列表的索引在构建时一次遍历完成，
+     * 每个版本的轮询顺序在第一次请求这个版本时计算，只有索引中存在的版本才会缓存，请求头是外部传入的，不能让任意值把缓存撑大
+     */
+    private static class Schedules {
+        private final List<ServiceInstance> source;
+        private final SlowStart slowStart;
+        private final Schedule all;
+        private final Map<String, List<ServiceInstance>> index = new HashMap<>();
+        private final ConcurrentHashMap<String, Schedule> versions = new ConcurrentHashMap<>();
+
+        private Schedules(List<ServiceInstance> source, SlowStart slowStart) {
+            this.source = source;
+            this.slowStart = slowStart;
+            if (slowStart != null) {
+                slowStart.observe(source);
+            }
+            this.all = new Schedule(source, slowStart);
+            for (ServiceInstance instance : source) {
+                String version = instance.getMetadata() == null ? null : instance.getMetadata().get(VERSION);
+                if (version != null) {
+                    index.computeIfAbsent(version, k -> new ArrayList<>()).add(instance);
+                }
+            }
+        }
+
+        /**
+         * @return 这个版本的轮询顺序，没有这个版本的实例返回 null
+         */
+        private Schedule getVersion(String version) {
+            Schedule schedule = versions.get(version);
+            if (schedule != null) {
+                return schedule;
+            }
+            List<ServiceInstance> instances = index.get(version);
+            if (instances == null) {
+                return null;
+            }
+            return versions.computeIfAbsent(version, k -> new Schedule(instances, slowStart));
+        }
+    }
+
+    private static class Schedule {
+        private final ServiceInstance[] instances;
+        private final int[] order;
+        private final long[] startMillis;
+        private final long endMillis;
+
+        private Schedule(List<ServiceInstance> instances, SlowStart slowStart) {
+            this.instances = instances.toArray(new ServiceInstance[0]);
+            int[] weights = new int[this.instances.length];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = getWeight(this.instances[i]);
+            }
+            this.order = SmoothWeightedRoundRobin.schedule(weights);
+            this.startMillis = new long[this.instances.length];
+            long end = Long.MIN_VALUE;
+            if (slowStart != null) {
+                for (int i = 0; i < startMillis.length; i++) {
+                    startMillis[i] = slowStart.getStartMillis(this.instances[i]);
+                    end = Math.max(end, slowStart.getEndMillis(startMillis[i]));
+                }
+            }
+            this.endMillis = end;
+        }
     }
 
 }
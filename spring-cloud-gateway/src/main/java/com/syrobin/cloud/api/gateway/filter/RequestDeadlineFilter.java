@@ -0,0 +1,84 @@
+package com.syrobin.cloud.api.gateway.filter;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 设置调用链的截止时间请求头 {@link #HEADER}，值为毫秒时间戳，等于现在加上转发的响应超时（路由 metadata 中的 response-timeout，
+ * 没有的话是 spring.cloud.gateway.httpclient.response-timeout），网关不再等待之后，后面的微服务也不再重试
+ * <p>
+ * 调用方自己带了截止时间的话取更早的那个，调用方只能缩短截止时间。
+ * 后面的微服务通过 Sleuth baggage 读取以及继续传递这个请求头（参考 spring-cloud-commons 中的 RequestDeadline），
+ * 网关不依赖 spring-cloud-commons，所以请求头名称在这里单独定义
+ * @date 2026-10-18 22:10
+ */
+@Log4j2
+@Component
+public class RequestDeadlineFilter extends AbstractTracedFilter {
+
+    public static final String HEADER = "x-request-deadline";
+
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    @Override
+    protected Mono<Void> traced(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Duration responseTimeout = getResponseTimeout(exchange);
+        if (responseTimeout == null || responseTimeout.isNegative() || responseTimeout.isZero()) {
+            return chain.filter(exchange);
+        }
+        long deadline = System.currentTimeMillis() + responseTimeout.toMillis();
+        String requested = exchange.getRequest().getHeaders().getFirst(HEADER);
+        if (requested != null) {
+            try {
+                long requestedDeadline = Long.parseLong(requested.trim());
+                if (requestedDeadline > 0) {
+                    deadline = Math.min(deadline, requestedDeadline);
+                }
+            } catch (NumberFormatException e) {
+                log.info("ignore invalid {} header: {}", HEADER, requested);
+            }
+        }
+        String value = String.valueOf(deadline);
+        return chain.filter(exchange.mutate()
+                .request(builder -> builder.headers(headers -> headers.set(HEADER, value)))
+                .build());
+    }
+
+    private Duration getResponseTimeout(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route != null) {
+            Object timeout = route.getMetadata().get(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR);
+            if (timeout instanceof Number) {
+                return Duration.ofMillis(((Number) timeout).longValue());
+            }
+            if (timeout != null) {
+                try {
+                    return Duration.ofMillis(Long.parseLong(timeout.toString()));
+                } catch (NumberFormatException e) {
+                    log.info("ignore invalid route response-timeout: {}", timeout);
+                }
+            }
+        }
+        return httpClientProperties.getResponseTimeout();
+    }
+
+    @Override
+    public int getOrder() {
+        //在 QueryNormalizationFilter 之后，尽早设置，之后的过滤器以及转发都能看到
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+}
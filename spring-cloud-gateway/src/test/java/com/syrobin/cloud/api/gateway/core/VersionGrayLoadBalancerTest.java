@@ -0,0 +1,188 @@
+package com.syrobin.cloud.api.gateway.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.LinkedMultiValueMap;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: VersionGrayLoadBalancer 单元测试
+ * @date 2026-10-19 10:20
+ */
+public class VersionGrayLoadBalancerTest {
+
+    private final AtomicReference<List<ServiceInstance>> serviceInstances = new AtomicReference<>();
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+
+    private VersionGrayLoadBalancer loadBalancer() {
+        ServiceInstanceListSupplier supplier = Mockito.mock(ServiceInstanceListSupplier.class);
+        when(supplier.get(any())).thenAnswer(invocation -> Flux.just(serviceInstances.get()));
+        @SuppressWarnings("unchecked")
+        ObjectProvider<ServiceInstanceListSupplier> provider = Mockito.mock(ObjectProvider.class);
+        when(provider.getIfAvailable(any())).thenReturn(supplier);
+        return new VersionGrayLoadBalancer(provider, "test", 0);
+    }
+
+    private static ServiceInstance instance(int i, String... metadata) {
+        Map<String, String> map = new HashMap<>();
+        for (int j = 0; j < metadata.length; j += 2) {
+            map.put(metadata[j], metadata[j + 1]);
+        }
+        return new DefaultServiceInstance("instance" + i, "test", "10.238.0." + i, 80, false, map);
+    }
+
+    private static Request<RequestDataContext> request(String version) {
+        HttpHeaders headers = new HttpHeaders();
+        if (version != null) {
+            headers.add("version", version);
+        }
+        RequestData requestData = new RequestData(HttpMethod.GET, URI.create("http://test/anything"), headers,
+                new LinkedMultiValueMap<>(), new HashMap<>());
+        return new DefaultRequest<>(new RequestDataContext(requestData));
+    }
+
+    private Map<String, Integer> choose(VersionGrayLoadBalancer loadBalancer, String version, int times) {
+        Map<String, Integer> selected = new HashMap<>();
+        for (int i = 0; i < times; i++) {
+            ServiceInstance serviceInstance = loadBalancer.choose(request(version)).block().getServer();
+            selected.merge(serviceInstance.getInstanceId(), 1, Integer::sum);
+        }
+        return selected;
+    }
+
+    @Test
+    public void testWeights() {
+        serviceInstances.set(List.of(
+                instance(1, VersionGrayLoadBalancer.WEIGHT, "5"),
+                instance(2),
+                instance(3, VersionGrayLoadBalancer.WEIGHT, "1"),
+                //权重为 0 的实例不接收流量
+                instance(4, VersionGrayLoadBalancer.WEIGHT, "0")
+        ));
+        //整数轮正好按照权重分配
+        Map<String, Integer> selected = choose(loadBalancer(), null, 700);
+        Assertions.assertEquals(500, selected.get("instance1"));
+        Assertions.assertEquals(100, selected.get("instance2"));
+        Assertions.assertEquals(100, selected.get("instance3"));
+        Assertions.assertNull(selected.get("instance4"));
+    }
+
+    @Test
+    public void testVersion() {
+        serviceInstances.set(List.of(
+                instance(1, VersionGrayLoadBalancer.VERSION, "v1"),
+                instance(2, VersionGrayLoadBalancer.VERSION, "v2"),
+                instance(3, VersionGrayLoadBalancer.VERSION, "v2", VersionGrayLoadBalancer.WEIGHT, "3"),
+                instance(4)
+        ));
+        VersionGrayLoadBalancer loadBalancer = loadBalancer();
+        Map<String, Integer> selected = choose(loadBalancer, "v2", 400);
+        Assertions.assertEquals(2, selected.size());
+        Assertions.assertEquals(100, selected.get("instance2"));
+        Assertions.assertEquals(300, selected.get("instance3"));
+
+        Assertions.assertEquals(Map.of("instance1", 10), choose(loadBalancer, "v1", 10));
+
+        //没有这个版本的实例使用所有实例
+        selected = choose(loadBalancer, "v3", 600);
+        Assertions.assertEquals(4, selected.size());
+        Assertions.assertEquals(100, selected.get("instance1"));
+        Assertions.assertEquals(300, selected.get("instance3"));
+    }
+
+    @Test
+    public void testSlowStart() {
+        VersionGrayLoadBalancer loadBalancer = loadBalancer();
+        loadBalancer.setSlowStart(new SlowStart(Duration.ofSeconds(100), now::get));
+        serviceInstances.set(List.of(instance(1), instance(2)));
+        //第一次拿到的实例不需要预热
+        Map<String, Integer> selected = choose(loadBalancer, null, 100);
+        Assertions.assertEquals(50, selected.get("instance1"));
+        Assertions.assertEquals(50, selected.get("instance2"));
+
+        //两个新实例上线，预热系数从 0.1 开始，等价于权重 1 * 0.1，各占 0.1 / 2.2
+        serviceInstances.set(List.of(instance(1), instance(2), instance(3), instance(4)));
+        selected = choose(loadBalancer, null, 22000);
+        //重新选中的实例也需要检查预热，否则轮询顺序中紧跟在预热实例后面的预热实例会拿到大部分被放弃的流量
+        for (String warming : List.of("instance3", "instance4")) {
+            int count = selected.get(warming);
+            Assertions.assertTrue(count > 700 && count < 1300, warming + " " + count);
+        }
+        //放弃预热实例不会让轮询顺序错位，两个已经运行的实例平分剩下的流量
+        int difference = Math.abs(selected.get("instance1") - selected.get("instance2"));
+        Assertions.assertTrue(difference < 600, "difference " + difference);
+
+        //预热一半，各占 0.5 / 3
+        now.addAndGet(TimeUnit.SECONDS.toMillis(50));
+        selected = choose(loadBalancer, null, 12000);
+        for (String warming : List.of("instance3", "instance4")) {
+            int count = selected.get(warming);
+            Assertions.assertTrue(count > 1700 && count < 2300, warming + " " + count);
+        }
+
+        //预热结束之后恢复普通轮询
+        now.addAndGet(TimeUnit.SECONDS.toMillis(50));
+        selected = choose(loadBalancer, null, 400);
+        Assertions.assertEquals(100, selected.get("instance4"));
+        Assertions.assertEquals(100, selected.get("instance1"));
+    }
+
+    @Test
+    public void testSlowStartReAdded() {
+        VersionGrayLoadBalancer loadBalancer = loadBalancer();
+        loadBalancer.setSlowStart(new SlowStart(Duration.ofSeconds(100), now::get));
+        serviceInstances.set(List.of(instance(1), instance(2)));
+        choose(loadBalancer, null, 10);
+
+        //实例下线之后用同样的 host:port 重新上线，中间实例列表没有再变化，也需要重新预热，权重 0.1 / 1.1
+        serviceInstances.set(List.of(instance(1)));
+        choose(loadBalancer, null, 10);
+        now.addAndGet(TimeUnit.MINUTES.toMillis(10));
+        serviceInstances.set(List.of(instance(1), instance(2)));
+        Map<String, Integer> selected = choose(loadBalancer, null, 11000);
+        int count = selected.get("instance2");
+        Assertions.assertTrue(count > 700 && count < 1300, "instance2 " + count);
+    }
+
+    @Test
+    public void testAllWarming() {
+        VersionGrayLoadBalancer loadBalancer = loadBalancer();
+        loadBalancer.setSlowStart(new SlowStart(Duration.ofSeconds(100), now::get));
+        String registered = String.valueOf(now.get());
+        List<ServiceInstance> instances = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            instances.add(instance(i, SlowStart.REGISTRATION_TIMESTAMP, registered));
+        }
+        serviceInstances.set(instances);
+        //所有实例都在预热的时候重新选择次数有上限，请求仍然会分配到所有实例上
+        Map<String, Integer> selected = choose(loadBalancer, null, 3000);
+        Assertions.assertEquals(3, selected.size());
+        selected.values().forEach(count -> Assertions.assertTrue(count > 800, "selected " + selected));
+    }
+}
@@ -0,0 +1,129 @@
+package com.syrobin.cloud.api.gateway.filter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: RequestDeadlineFilter 单元测试
+ * @date 2026-10-17 11:10
+ */
+public class RequestDeadlineFilterTest {
+
+    private final RequestDeadlineFilter filter = new RequestDeadlineFilter();
+    private final HttpClientProperties httpClientProperties = new HttpClientProperties();
+
+    @BeforeEach
+    public void setUp() {
+        httpClientProperties.setResponseTimeout(Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(filter, "httpClientProperties", httpClientProperties);
+    }
+
+    /**
+     * 经过过滤器之后转发出去的截止时间请求头，没有的话返回 null
+     */
+    private String filter(ServerWebExchange exchange) {
+        AtomicReference<ServerWebExchange> filtered = new AtomicReference<>();
+        filter.traced(exchange, e -> {
+            filtered.set(e);
+            return Mono.empty();
+        }).block();
+        return filtered.get().getRequest().getHeaders().getFirst(RequestDeadlineFilter.HEADER);
+    }
+
+    private static MockServerWebExchange exchange(String deadline) {
+        MockServerHttpRequest.BaseBuilder<?> builder = MockServerHttpRequest.get("/test");
+        if (deadline != null) {
+            builder.header(RequestDeadlineFilter.HEADER, deadline);
+        }
+        return MockServerWebExchange.from(builder);
+    }
+
+    private static void route(ServerWebExchange exchange, Object responseTimeout) {
+        Route route = Route.async()
+                .id("test")
+                .uri("lb://test")
+                .predicate(e -> true)
+                .metadata(Map.of(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR, responseTimeout))
+                .build();
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+    }
+
+    /**
+     * 截止时间应该等于执行过滤器时的时间加上 timeoutMillis
+     */
+    private void assertDeadline(long timeoutMillis, ServerWebExchange exchange) {
+        long before = System.currentTimeMillis();
+        String actual = filter(exchange);
+        long after = System.currentTimeMillis();
+        Assertions.assertNotNull(actual);
+        long deadline = Long.parseLong(actual);
+        Assertions.assertTrue(deadline >= before + timeoutMillis && deadline <= after + timeoutMillis,
+                actual + " is not in [" + (before + timeoutMillis) + ", " + (after + timeoutMillis) + "]");
+    }
+
+    @Test
+    public void testGlobalResponseTimeout() {
+        assertDeadline(10000, exchange(null));
+    }
+
+    @Test
+    public void testRouteMetadata() {
+        MockServerWebExchange exchange = exchange(null);
+        //路由 metadata 中的 response-timeout 优先，数字和字符串都可以
+        route(exchange, 3000);
+        assertDeadline(3000, exchange);
+
+        exchange = exchange(null);
+        route(exchange, "5000");
+        assertDeadline(5000, exchange);
+
+        //无效的配置使用全局的 response-timeout
+        exchange = exchange(null);
+        route(exchange, "invalid");
+        assertDeadline(10000, exchange);
+    }
+
+    @Test
+    public void testEarlierDeadlineWins() {
+        //调用方的截止时间更早，使用调用方的
+        String earlier = String.valueOf(System.currentTimeMillis() + 2000);
+        Assertions.assertEquals(earlier, filter(exchange(earlier)));
+        //调用方的截止时间更晚，使用网关计算的
+        long later = System.currentTimeMillis() + 60000;
+        assertDeadline(10000, exchange(String.valueOf(later)));
+        //路由的超时也参与比较
+        MockServerWebExchange exchange = exchange(earlier);
+        route(exchange, 1000);
+        assertDeadline(1000, exchange);
+    }
+
+    @Test
+    public void testInvalidDeadlineIgnored() {
+        assertDeadline(10000, exchange("invalid"));
+        assertDeadline(10000, exchange("-1"));
+    }
+
+    @Test
+    public void testNoResponseTimeout() {
+        //没有配置响应超时的时候不设置截止时间，调用方的请求头原样传递
+        httpClientProperties.setResponseTimeout(null);
+        Assertions.assertNull(filter(exchange(null)));
+        Assertions.assertEquals("123", filter(exchange("123")));
+    }
+}
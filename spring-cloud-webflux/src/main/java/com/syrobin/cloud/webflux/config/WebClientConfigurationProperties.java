@@ -54,6 +54,23 @@ public class WebClientConfigurationProperties {
          * 响应超时
          */
         private Duration responseTimeout = Duration.ofSeconds(8);
+        /**
+         * 是否开启对冲请求，只对 GET 以及 retryablePaths 生效，参考 HedgingExchangeFilterFunction
+         */
+        private boolean hedgeEnabled = false;
+        /**
+         * 主请求超过这个时间没有响应的时候，向另一个实例发送对冲请求，一般设置为响应时间的 p95。
+         * 固定配置，不会根据实例的响应时间调整，原因参考 HedgingExchangeFilterFunction
+         */
+        private Duration hedgeDelay = Duration.ofMillis(100);
+        /**
+         * 对冲预算，最近 10 秒的对冲请求数不超过成功请求数的这个比例
+         */
+        private double hedgeBudgetRatio = 0.1;
+        /**
+         * 对冲预算，请求量很小的时候每秒最少允许的对冲请求数
+         */
+        private int hedgeMinPerSecond = 1;
 
         /**
          * 是否匹配
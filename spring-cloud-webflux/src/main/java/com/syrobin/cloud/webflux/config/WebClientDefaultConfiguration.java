@@ -2,6 +2,13 @@ package com.syrobin.cloud.webflux.config;
 
 import com.alibaba.fastjson.JSON;
 
+import com.syrobin.cloud.commons.loadbalancer.AttemptContext;
+import com.syrobin.cloud.commons.loadbalancer.PeakEwmaTracker;
+import com.syrobin.cloud.commons.resilience4j.RequestDeadline;
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
+import com.syrobin.cloud.commons.resilience4j.RetryBudgetRegistry;
+import com.syrobin.cloud.webflux.webclient.HedgingExchangeFilterFunction;
+import com.syrobin.cloud.webflux.webclient.RequestDeadlineExchangeFilterFunction;
 import com.syrobin.cloud.webflux.webclient.WebClientNamedContextFactory;
 import com.syrobin.cloud.webflux.webclient.resilience4j.ClientResponseCircuitBreakerOperator;
 import com.syrobin.cloud.webflux.webclient.resilience4j.retry.ClientResponseRetryOperator;
@@ -19,6 +26,7 @@ import io.netty.handler.timeout.WriteTimeoutHandler;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cloud.client.DefaultServiceInstance;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.loadbalancer.reactive.ReactorLoadBalancerExchangeFilterFunction;
@@ -28,10 +36,12 @@ import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 
 import java.net.URI;
@@ -52,7 +62,9 @@ public class WebClientDefaultConfiguration {
             WebClientConfigurationProperties webClientConfigurationProperties,
             Environment environment,
             RetryRegistry retryRegistry,
-            CircuitBreakerRegistry circuitBreakerRegistry
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            ObjectProvider<RetryBudgetRegistry> retryBudgetRegistry,
+            ObjectProvider<PeakEwmaTracker> peakEwmaTracker
     ) {
         String name = environment.getProperty(WebClientNamedContextFactory.PROPERTY_NAME);
         Map<String, WebClientConfigurationProperties.WebClientProperties> configs = webClientConfigurationProperties.getConfigs();
@@ -80,62 +92,12 @@ public class WebClientDefaultConfiguration {
         } catch (ConfigurationNotFoundException e) {
             retry = retryRegistry.retry(serviceName);
         }
-        //覆盖其中的异常判断
-        retry = Retry.of(serviceName, RetryConfig.from(retry.getRetryConfig()).retryOnException(throwable -> {
-            //WebClientResponseException 会重试，因为在这里能 catch 的 WebClientResponseException 只对可以重试的请求封装了 WebClientResponseException
-            //参考 ClientResponseCircuitBreakerSubscriber 的代码
-            if (throwable instanceof WebClientResponseException) {
-                log.info("should retry on {}", throwable.toString());
-                return true;
-            }
-            //断路器异常重试，因为请求没有发出去
-            if (throwable instanceof CallNotPermittedException) {
-                log.info("should retry on {}", throwable.toString());
-                return true;
-            }
-            if (throwable instanceof WebClientRequestException) {
-                WebClientRequestException webClientRequestException = (WebClientRequestException) throwable;
-                HttpMethod method = webClientRequestException.getMethod();
-                URI uri = webClientRequestException.getUri();
-                //判断是否为响应超时，响应超时代表请求已经发出去了，对于非 GET 并且没有标注可以重试的请求则不能重试
-                boolean isResponseTimeout = false;
-                Throwable cause = throwable.getCause();
-                //netty 的读取超时一般是 ReadTimeoutException
-                if (cause instanceof ReadTimeoutException) {
-                    log.info("Cause is a ReadTimeoutException which indicates it is a response time out");
-                    isResponseTimeout = true;
-                } else {
-                    //对于其他一些框架，使用了 java 底层 nio 的一般是 SocketTimeoutException，message 为 read time out
-                    //还有一些其他异常，但是 message 都会有 read time out 字段，所以通过 message 判断
-                    String message = throwable.getMessage();
-                    if (StringUtils.isNotBlank(message)) {
-                        message = message.replace(" ", "");
-                        if (StringUtils.containsIgnoreCase(message, "readtimeout")) {
-                            log.info("Throwable message contains readtimeout which indicates it is a response time out: {}", throwable.getMessage());
-                            isResponseTimeout = true;
-                        }
-                        if (StringUtils.containsIgnoreCase(message, "respon")) {
-                            log.info("Throwable message contains connectionreset which indicates it is a connection reset {}", throwable.getMessage());
-                            isResponseTimeout = true;
-                        }
-                    }
-                }
-                //如果请求是 GET 或者标注了重试，则直接判断可以重试
-                if (method == HttpMethod.GET || webClientProperties.retryablePathsMatch(uri.getPath())) {
-                    log.info("should retry on {}-{}, {}", method, uri, throwable.toString());
-                    return true;
-                } else {
-                    //否则，只针对请求还没有发出去的异常进行重试
-                    if (isResponseTimeout) {
-                        log.info("should not retry on {}-{}, {}", method, uri, throwable.toString());
-                    } else {
-                        log.info("should retry on {}-{}, {}", method, uri, throwable.toString());
-                        return true;
-                    }
-                }
-            }
-            return false;
-        }).build());
+        //重试预算和 Retry 使用同一个名称，没有开启的时候为 null
+        RetryBudgetRegistry budgetRegistry = retryBudgetRegistry.getIfAvailable();
+        RetryBudget retryBudget = budgetRegistry == null ? null : budgetRegistry.budget(serviceName);
+        //覆盖其中的异常判断，重试预算在 ClientResponseRetryOperator 确定会重试之后才扣减
+        retry = Retry.of(serviceName, RetryConfig.from(retry.getRetryConfig())
+                .retryOnException(throwable -> shouldRetry(throwable, webClientProperties)).build());
 
 
         HttpClient httpClient = HttpClient
@@ -149,6 +111,7 @@ public class WebClientDefaultConfiguration {
 
         Retry finalRetry = retry;
         String finalServiceName = serviceName;
+        PeakEwmaTracker tracker = peakEwmaTracker.getIfAvailable();
         return WebClient.builder()
                 .exchangeStrategies(ExchangeStrategies.builder()
                         .codecs(configurer -> configurer
@@ -157,12 +120,45 @@ public class WebClientDefaultConfiguration {
                                 .maxInMemorySize(16 * 1024 * 1024))
                 .build())
                 .clientConnector(new ReactorClientHttpConnector(httpClient))
+                //每次调用的 AttemptContext 在重试外面，负载均衡器用它排除重试之前调用过的实例
+                //调用完成、失败或者被取消的时候关闭
+                //调用链的截止时间也在订阅的时候读取一次，之后的重试都使用这个截止时间
+                .filter((clientRequest, exchangeFunction) -> Mono.using(
+                        AttemptContext::new,
+                        attemptContext -> exchangeFunction.exchange(ClientRequest.from(clientRequest)
+                                .attribute(AttemptContext.ATTRIBUTE, attemptContext)
+                                .attribute(RequestDeadline.ATTRIBUTE, RequestDeadline.resolve(clientRequest.headers().getFirst(RequestDeadline.HEADER)))
+                                .build()),
+                        AttemptContext::close
+                ))
                 //Retry在负载均衡前
                 .filter((clientRequest, exchangeFunction) -> {
-                    return exchangeFunction
-                            .exchange(clientRequest)
-                            .transform(ClientResponseRetryOperator.of(finalRetry));
+                    //剩余时间不够失败实例的预期响应时间的时候不再重试
+                    long deadline = getDeadline(clientRequest);
+                    Mono<ClientResponse> exchange = exchangeFunction.exchange(clientRequest);
+                    //每次成功的调用增加重试预算，放在重试里面，每次重试重新订阅的时候都会经过这里
+                    if (retryBudget != null) {
+                        exchange = exchange.doOnNext(clientResponse -> {
+                            if (clientResponse.statusCode().is2xxSuccessful()) {
+                                retryBudget.onSuccess();
+                            }
+                        });
+                    }
+                    return exchange.transform(ClientResponseRetryOperator.of(finalRetry,
+                            throwable -> RequestDeadline.hasTimeFor(deadline, getExpectedNanos(throwable, tracker)), retryBudget));
                 })
+                //每次尝试的响应超时缩短到剩余时间，已经过了截止时间的直接失败，重试的时候会重新订阅，所以需要 defer
+                //对冲请求在重试里面，对冲请求也要经过截止时间、负载均衡以及断路器
+                .filters(filters -> {
+                    if (webClientProperties.isHedgeEnabled()) {
+                        filters.add(new HedgingExchangeFilterFunction(
+                                webClientProperties.getHedgeDelay(),
+                                new RetryBudget(finalServiceName + ":hedge", webClientProperties.getHedgeBudgetRatio(), webClientProperties.getHedgeMinPerSecond()),
+                                clientRequest -> clientRequest.method() == HttpMethod.GET || webClientProperties.retryablePathsMatch(clientRequest.url().getPath())
+                        ));
+                    }
+                })
+                .filter(new RequestDeadlineExchangeFilterFunction(webClientProperties.getResponseTimeout()))
                 //负载均衡器，改写url
                 .filter(lbFunction)
                 //实例级别的断路器需要在负载均衡获取真正地址之后
@@ -185,6 +181,85 @@ public class WebClientDefaultConfiguration {
                 .build();
     }
 
+    /**
+     * 根据异常判断请求是否可以重试
+     */
+    private static boolean shouldRetry(Throwable throwable, WebClientConfigurationProperties.WebClientProperties webClientProperties) {
+        //WebClientResponseException 会重试，因为在这里能 catch 的 WebClientResponseException 只对可以重试的请求封装了 WebClientResponseException
+        //参考 ClientResponseCircuitBreakerSubscriber 的代码
+        if (throwable instanceof WebClientResponseException) {
+            log.info("should retry on {}", throwable.toString());
+            return true;
+        }
+        //断路器异常重试，因为请求没有发出去
+        if (throwable instanceof CallNotPermittedException) {
+            log.info("should retry on {}", throwable.toString());
+            return true;
+        }
+        if (throwable instanceof WebClientRequestException) {
+            WebClientRequestException webClientRequestException = (WebClientRequestException) throwable;
+            HttpMethod method = webClientRequestException.getMethod();
+            URI uri = webClientRequestException.getUri();
+            //判断是否为响应超时，响应超时代表请求已经发出去了，对于非 GET 并且没有标注可以重试的请求则不能重试
+            boolean isResponseTimeout = false;
+            Throwable cause = throwable.getCause();
+            //netty 的读取超时一般是 ReadTimeoutException
+            if (cause instanceof ReadTimeoutException) {
+                log.info("Cause is a ReadTimeoutException which indicates it is a response time out");
+                isResponseTimeout = true;
+            } else {
+                //对于其他一些框架，使用了 java 底层 nio 的一般是 SocketTimeoutException，message 为 read time out
+                //还有一些其他异常，但是 message 都会有 read time out 字段，所以通过 message 判断
+                String message = throwable.getMessage();
+                if (StringUtils.isNotBlank(message)) {
+                    message = message.replace(" ", "");
+                    if (StringUtils.containsIgnoreCase(message, "readtimeout")) {
+                        log.info("Throwable message contains readtimeout which indicates it is a response time out: {}", throwable.getMessage());
+                        isResponseTimeout = true;
+                    }
+                    if (StringUtils.containsIgnoreCase(message, "respon")) {
+                        log.info("Throwable message contains connectionreset which indicates it is a connection reset {}", throwable.getMessage());
+                        isResponseTimeout = true;
+                    }
+                }
+            }
+            //如果请求是 GET 或者标注了重试，则直接判断可以重试
+            if (method == HttpMethod.GET || webClientProperties.retryablePathsMatch(uri.getPath())) {
+                log.info("should retry on {}-{}, {}", method, uri, throwable.toString());
+                return true;
+            } else {
+                //否则，只针对请求还没有发出去的异常进行重试
+                if (isResponseTimeout) {
+                    log.info("should not retry on {}-{}, {}", method, uri, throwable.toString());
+                } else {
+                    log.info("should retry on {}-{}, {}", method, uri, throwable.toString());
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long getDeadline(ClientRequest clientRequest) {
+        return clientRequest.attribute(RequestDeadline.ATTRIBUTE).map(Long.class::cast).orElse(RequestDeadline.NONE);
+    }
+
+    /**
+     * 失败实例的 Peak EWMA 响应时间，断路器打开之类拿不到实例地址的异常返回 0
+     */
+    private static double getExpectedNanos(Throwable throwable, PeakEwmaTracker tracker) {
+        URI uri = null;
+        if (throwable instanceof WebClientRequestException) {
+            uri = ((WebClientRequestException) throwable).getUri();
+        } else if (throwable instanceof WebClientResponseException && ((WebClientResponseException) throwable).getRequest() != null) {
+            uri = ((WebClientResponseException) throwable).getRequest().getURI();
+        }
+        if (tracker == null || uri == null) {
+            return 0;
+        }
+        return tracker.get(uri.getHost(), uri.getPort()).getCost();
+    }
+
     private ServiceInstance getServiceInstance(ClientRequest clientRequest) {
         URI url = clientRequest.url();
         DefaultServiceInstance defaultServiceInstance = new DefaultServiceInstance();
@@ -0,0 +1,138 @@
+package com.syrobin.cloud.webflux.webclient;
+
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 对冲请求，只对可以重试的请求（GET 以及 retryablePaths）生效
+ * <p>
+ * 主请求超过 hedgeDelay 还没有响应的时候，再发送一个对冲请求，取先成功返回的 ClientResponse，取消另一个：
+ * <ul>
+ *     <li>需要放在 Retry 之后、负载均衡之前，对冲请求也经过负载均衡，AttemptContext 中已经记录了主请求的实例，所以会选择另一个实例；
+ *     也经过实例级别的断路器，断路器打开的时候对冲请求失败，继续等待主请求</li>
+ *     <li>对冲请求开始之前主请求失败的话直接返回这个异常，交给 Retry 处理；对冲请求开始之后一个失败继续等待另一个，都失败的时候返回主请求的异常</li>
+ *     <li>对冲预算复用 {@link RetryBudget}，最近一段时间的对冲请求数不超过成功请求数的一定比例，预算用完之后不再对冲，避免放大负载</li>
+ *     <li>被取消的请求在断路器中只释放许可，不记录为失败（参考 ClientResponseCircuitBreakerSubscriber#hookOnCancel）</li>
+ *     <li>没有胜出但是已经返回的响应都会释放，否则连接不会回到连接池</li>
+ * </ul>
+ * hedgeDelay 是每个 WebClient 固定配置的，没有使用实例的响应时间：这个过滤器在负载均衡之前，发送主请求之前还不知道会选择哪个实例，
+ * 而 {@code PeakEwmaTracker} 记录的是每个实例的加权平均响应时间，不是 p95，用它作为对冲延迟会让对冲请求过多
+ * @date 2026-10-18 23:00
+ */
+@Log4j2
+public class HedgingExchangeFilterFunction implements ExchangeFilterFunction {
+
+    private final Duration hedgeDelay;
+    private final RetryBudget hedgeBudget;
+    private final Predicate<ClientRequest> hedgeable;
+
+    public HedgingExchangeFilterFunction(Duration hedgeDelay, RetryBudget hedgeBudget, Predicate<ClientRequest> hedgeable) {
+        this.hedgeDelay = hedgeDelay;
+        this.hedgeBudget = hedgeBudget;
+        this.hedgeable = hedgeable;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!hedgeable.test(request)) {
+            return next.exchange(request);
+        }
+        return Mono.defer(() -> {
+            Race race = new Race();
+            //主请求在对冲请求开始之前失败的话，对冲请求不再发送，直接结束竞争
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Mono<ClientResponse> primary = next.exchange(request)
+                    .doOnError(e -> primaryFailed.tryEmitEmpty())
+                    .doOnNext(race::onResponse);
+            Mono<ClientResponse> hedge = Mono.delay(hedgeDelay)
+                    .takeUntilOther(primaryFailed.asMono())
+                    .flatMap(tick -> {
+                        if (!hedgeBudget.tryRetry()) {
+                            log.debug("hedge budget of {} exhausted, keep waiting for {}", hedgeBudget.getName(), request.url());
+                            return Mono.<ClientResponse>empty();
+                        }
+                        log.debug("hedge request {} after {}", request.url(), hedgeDelay);
+                        return next.exchange(request);
+                    })
+                    .doOnNext(race::onResponse);
+            //每个请求只在竞争中出现一次，取第一个成功返回的响应，取消另一个
+            return Mono.firstWithValue(primary, hedge)
+                    .onErrorMap(NoSuchElementException.class, HedgingExchangeFilterFunction::unwrap)
+                    .doOnNext(clientResponse -> {
+                        race.onWinner(clientResponse);
+                        if (clientResponse.statusCode().is2xxSuccessful()) {
+                            hedgeBudget.onSuccess();
+                        }
+                    })
+                    .doFinally(signalType -> race.onFinally());
+        });
+    }
+
+    /**
+     * firstWithValue 所有请求都失败（或者对冲请求没有发送）的时候抛出 NoSuchElementException，里面是所有异常，取出主请求的异常，Retry 根据这个异常判断是否重试
+     */
+    private static Throwable unwrap(NoSuchElementException e) {
+        if (e.getCause() == null) {
+            return e;
+        }
+        List<Throwable> causes = Exceptions.unwrapMultiple(e.getCause());
+        return causes.isEmpty() ? e : causes.get(0);
+    }
+
+    /**
+     * 记录竞争中返回的所有响应，竞争结束之后释放不是胜出者的响应。
+     * 响应和竞争结果可能在不同的线程上先后到达，所以两边都会尝试释放，每个响应只会被取出一次
+     */
+    private static final class Race {
+        private final Queue<ClientResponse> responses = new ConcurrentLinkedQueue<>();
+        private volatile ClientResponse winner;
+        private volatile boolean finished;
+
+        void onResponse(ClientResponse clientResponse) {
+            responses.add(clientResponse);
+            releaseLosers();
+        }
+
+        void onWinner(ClientResponse clientResponse) {
+            winner = clientResponse;
+            finished = true;
+            releaseLosers();
+        }
+
+        /**
+         * 竞争失败或者被取消的时候没有胜出者，返回的响应都需要释放
+         */
+        void onFinally() {
+            finished = true;
+            releaseLosers();
+        }
+
+        private void releaseLosers() {
+            if (!finished) {
+                return;
+            }
+            ClientResponse clientResponse;
+            while ((clientResponse = responses.poll()) != null) {
+                if (clientResponse != winner) {
+                    clientResponse.releaseBody().subscribe();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.syrobin.cloud.webflux.webclient;
+
+import com.syrobin.cloud.commons.resilience4j.DeadlineExceededException;
+import com.syrobin.cloud.commons.resilience4j.RequestDeadline;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.time.Duration;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 每次尝试的响应超时缩短到调用链的剩余时间（截止时间保存在 {@link RequestDeadline#ATTRIBUTE} 属性中），
+ * 已经过了截止时间的直接失败，抛出 {@link DeadlineExceededException}
+ * <p>
+ * 需要放在 Retry 里面，重试的时候会重新订阅，所以剩余时间在 defer 中计算
+ * @date 2026-10-17 11:30
+ */
+public class RequestDeadlineExchangeFilterFunction implements ExchangeFilterFunction {
+
+    private final Duration responseTimeout;
+
+    public RequestDeadlineExchangeFilterFunction(Duration responseTimeout) {
+        this.responseTimeout = responseTimeout;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            long deadline = request.attribute(RequestDeadline.ATTRIBUTE).map(Long.class::cast).orElse(RequestDeadline.NONE);
+            long remaining = RequestDeadline.remainingMillis(deadline);
+            if (remaining <= 0) {
+                return Mono.error(new DeadlineExceededException(deadline));
+            }
+            if (remaining >= responseTimeout.toMillis()) {
+                return next.exchange(request);
+            }
+            return next.exchange(ClientRequest.from(request)
+                    .httpRequest(httpRequest -> {
+                        Object nativeRequest = httpRequest.getNativeRequest();
+                        if (nativeRequest instanceof HttpClientRequest) {
+                            ((HttpClientRequest) nativeRequest).responseTimeout(Duration.ofMillis(remaining));
+                        }
+                    })
+                    .build());
+        });
+    }
+}
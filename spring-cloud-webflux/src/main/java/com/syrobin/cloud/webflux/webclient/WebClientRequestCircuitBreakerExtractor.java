@@ -34,4 +34,13 @@ public class WebClientRequestCircuitBreakerExtractor implements CircuitBreakerEx
         }
         return circuitBreaker;
     }
+
+    /**
+     * 断路器名称由实例和路径决定，配置由微服务名称决定，同一个负载均衡器的微服务名称是一样的，所以直接用路径作为 key
+     */
+    @Override
+    public Object getCircuitBreakerKey(Request request) {
+        RequestDataContext context = (RequestDataContext) request.getContext();
+        return context.getClientRequest().getUrl().getPath();
+    }
 }
@@ -1,5 +1,6 @@
 package com.syrobin.cloud.webflux.webclient.resilience4j.retry;
 
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
 import io.github.resilience4j.reactor.IllegalPublisherException;
 import io.github.resilience4j.retry.Retry;
 import lombok.extern.log4j.Log4j2;
@@ -9,6 +10,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
 
 /**
@@ -22,25 +24,43 @@ import java.util.function.UnaryOperator;
 @Log4j2
 public class ClientResponseRetryOperator implements UnaryOperator<Publisher<ClientResponse>> {
     private final Retry retry;
-
-    private ClientResponseRetryOperator(Retry retry) {
+    /**
+     * 在 Retry 的异常判断之前调用，返回 false 的时候不再重试，也不会经过 Retry 的异常判断（比如不会消耗重试预算）
+     */
+    private final Predicate<Throwable> precondition;
+    /**
+     * 可以为 null，在 Retry 判断还会重试（onError 返回非负的等待时间）之后才扣减，预算用完的时候不再重试
+     */
+    private final RetryBudget retryBudget;
+
+    private ClientResponseRetryOperator(Retry retry, Predicate<Throwable> precondition, RetryBudget retryBudget) {
         this.retry = retry;
+        this.precondition = precondition;
+        this.retryBudget = retryBudget;
     }
 
     public static ClientResponseRetryOperator of(Retry retry) {
-        return new ClientResponseRetryOperator(retry);
+        return new ClientResponseRetryOperator(retry, throwable -> true, null);
+    }
+
+    public static ClientResponseRetryOperator of(Retry retry, Predicate<Throwable> precondition) {
+        return new ClientResponseRetryOperator(retry, precondition, null);
+    }
+
+    public static ClientResponseRetryOperator of(Retry retry, Predicate<Throwable> precondition, RetryBudget retryBudget) {
+        return new ClientResponseRetryOperator(retry, precondition, retryBudget);
     }
 
     @Override
     public Publisher<ClientResponse> apply(Publisher<ClientResponse> publisher) {
         if (publisher instanceof Mono) {
-            ClientResponseContext clientResponseContext = new ClientResponseContext(retry.asyncContext());
+            ClientResponseContext clientResponseContext = new ClientResponseContext(retry.asyncContext(), precondition, retryBudget);
             Mono<ClientResponse> upstream = (Mono<ClientResponse>) publisher;
             return upstream.doOnNext(clientResponseContext::handleResult)
                     .retryWhen(reactor.util.retry.Retry.withThrowable(errors -> errors.flatMap(clientResponseContext::handleErrors)))
                     .doOnSuccess(t -> clientResponseContext.onComplete());
         } else if (publisher instanceof Flux) {
-            ClientResponseContext clientResponseContext = new ClientResponseContext(retry.asyncContext());
+            ClientResponseContext clientResponseContext = new ClientResponseContext(retry.asyncContext(), precondition, retryBudget);
             Flux<ClientResponse> upstream = (Flux<ClientResponse>) publisher;
             return upstream.doOnNext(clientResponseContext::handleResult)
                     .retryWhen(reactor.util.retry.Retry.withThrowable(errors -> errors.flatMap(clientResponseContext::handleErrors)))
@@ -53,9 +73,13 @@ public class ClientResponseRetryOperator implements UnaryOperator<Publisher<Clie
     private static class ClientResponseContext {
 
         private final Retry.AsyncContext<ClientResponse> retryContext;
+        private final Predicate<Throwable> precondition;
+        private final RetryBudget retryBudget;
 
-        ClientResponseContext(Retry.AsyncContext<ClientResponse> retryContext) {
+        ClientResponseContext(Retry.AsyncContext<ClientResponse> retryContext, Predicate<Throwable> precondition, RetryBudget retryBudget) {
             this.retryContext = retryContext;
+            this.precondition = precondition;
+            this.retryBudget = retryBudget;
         }
 
         void onComplete() {
@@ -81,11 +105,21 @@ public class ClientResponseRetryOperator implements UnaryOperator<Publisher<Clie
                 throw (Error) throwable;
             }
 
+            if (!precondition.test(throwable)) {
+                log.info("web client retry: precondition failed, will not retry: {}", throwable.toString());
+                return Mono.error(throwable);
+            }
+
             long waitDurationMillis = retryContext.onError(throwable);
             log.info("web client retry: got exception: {}, retry waitDurationMillis: {}", throwable.toString(), waitDurationMillis);
             if (waitDurationMillis == -1) {
                 return Mono.error(throwable);
             }
+            //达到最大重试次数的时候 onError 返回 -1，到这里一定会重试，这时候才扣减重试预算
+            if (retryBudget != null && !retryBudget.tryRetry()) {
+                log.info("web client retry: retry budget of {} exhausted, will not retry: {}", retryBudget.getName(), throwable.toString());
+                return Mono.error(throwable);
+            }
 
             return Mono.delay(Duration.ofMillis(waitDurationMillis));
         }
@@ -0,0 +1,171 @@
+package com.syrobin.cloud.webflux.webclient;
+
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: HedgingExchangeFilterFunction 单元测试，ExchangeFunction 按照调用顺序返回预先设置的结果，第一个是主请求，第二个是对冲请求
+ * @date 2026-10-17 14:20
+ */
+public class HedgingExchangeFilterFunctionTest {
+
+    private static final Duration HEDGE_DELAY = Duration.ofMillis(50);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://test/anything")).build();
+    private final AtomicInteger exchanges = new AtomicInteger();
+    private RetryBudget hedgeBudget = new RetryBudget("test:hedge", 0, 1);
+
+    @SafeVarargs
+    private final Mono<ClientResponse> exchange(Mono<ClientResponse>... attempts) {
+        List<Mono<ClientResponse>> list = Arrays.asList(attempts);
+        HedgingExchangeFilterFunction filter = new HedgingExchangeFilterFunction(HEDGE_DELAY, hedgeBudget, clientRequest -> true);
+        return filter.filter(request, clientRequest -> list.get(exchanges.getAndIncrement()));
+    }
+
+    private static ClientResponse response() {
+        ClientResponse clientResponse = Mockito.mock(ClientResponse.class);
+        when(clientResponse.statusCode()).thenReturn(HttpStatus.OK);
+        when(clientResponse.releaseBody()).thenReturn(Mono.empty());
+        return clientResponse;
+    }
+
+    private static void assertReleased(ClientResponse clientResponse, boolean released) {
+        Mockito.verify(clientResponse, Mockito.times(released ? 1 : 0)).releaseBody();
+    }
+
+    @Test
+    public void testPrimaryWinsBeforeHedge() {
+        ClientResponse primary = response();
+        Assertions.assertSame(primary, exchange(Mono.just(primary)).block(TIMEOUT));
+        //主请求在对冲延迟之内返回，不发送对冲请求
+        Assertions.assertEquals(1, exchanges.get());
+        Assertions.assertEquals(0, hedgeBudget.getRetries());
+        assertReleased(primary, false);
+    }
+
+    @Test
+    public void testPrimaryWinsAfterHedge() {
+        ClientResponse primary = response();
+        AtomicBoolean hedgeCancelled = new AtomicBoolean();
+        Mono<ClientResponse> result = exchange(
+                Mono.delay(HEDGE_DELAY.multipliedBy(2)).thenReturn(primary),
+                Mono.<ClientResponse>never().doOnCancel(() -> hedgeCancelled.set(true)));
+        Assertions.assertSame(primary, result.block(TIMEOUT));
+        Assertions.assertEquals(2, exchanges.get());
+        Assertions.assertEquals(1, hedgeBudget.getRetries());
+        Assertions.assertTrue(hedgeCancelled.get());
+        assertReleased(primary, false);
+    }
+
+    @Test
+    public void testHedgeWins() {
+        ClientResponse hedge = response();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        Mono<ClientResponse> result = exchange(
+                Mono.<ClientResponse>never().doOnCancel(() -> primaryCancelled.set(true)),
+                Mono.just(hedge));
+        Assertions.assertSame(hedge, result.block(TIMEOUT));
+        Assertions.assertEquals(2, exchanges.get());
+        Assertions.assertTrue(primaryCancelled.get());
+        assertReleased(hedge, false);
+    }
+
+    @Test
+    public void testLoserReleased() {
+        ClientResponse primary = response();
+        ClientResponse hedge = response();
+        //主请求不响应取消，在对冲请求胜出之后仍然返回响应，模拟两个响应同时到达
+        AtomicReference<CoreSubscriber<? super ClientResponse>> primarySubscriber = new AtomicReference<>();
+        Mono<ClientResponse> uncancellable = new Mono<ClientResponse>() {
+            @Override
+            public void subscribe(CoreSubscriber<? super ClientResponse> actual) {
+                primarySubscriber.set(actual);
+                actual.onSubscribe(Operators.emptySubscription());
+            }
+        };
+        Assertions.assertSame(hedge, exchange(uncancellable, Mono.just(hedge)).block(TIMEOUT));
+        primarySubscriber.get().onNext(primary);
+        //胜出的响应交给调用方，没有胜出的响应释放
+        assertReleased(primary, true);
+        assertReleased(hedge, false);
+    }
+
+    @Test
+    public void testPrimaryFailsBeforeHedge() {
+        IllegalStateException primaryError = new IllegalStateException("primary");
+        Mono<ClientResponse> result = exchange(Mono.error(primaryError), Mono.just(response()));
+        //对冲请求开始之前主请求失败，直接返回主请求的异常，不发送对冲请求
+        Assertions.assertSame(primaryError, Assertions.assertThrows(IllegalStateException.class, () -> result.block(TIMEOUT)));
+        Assertions.assertEquals(1, exchanges.get());
+        Assertions.assertEquals(0, hedgeBudget.getRetries());
+    }
+
+    @Test
+    public void testBothFail() {
+        IllegalStateException primaryError = new IllegalStateException("primary");
+        IllegalStateException hedgeError = new IllegalStateException("hedge");
+        Mono<ClientResponse> result = exchange(
+                Mono.delay(HEDGE_DELAY.multipliedBy(2)).then(Mono.error(primaryError)),
+                Mono.delay(HEDGE_DELAY).then(Mono.error(hedgeError)));
+        //都失败的时候返回主请求的异常，Retry 根据这个异常判断是否重试
+        Assertions.assertSame(primaryError, Assertions.assertThrows(IllegalStateException.class, () -> result.block(TIMEOUT)));
+        Assertions.assertEquals(2, exchanges.get());
+    }
+
+    @Test
+    public void testPrimaryFailsHedgeWins() {
+        ClientResponse hedge = response();
+        Mono<ClientResponse> result = exchange(
+                Mono.delay(HEDGE_DELAY.multipliedBy(2)).then(Mono.error(new IllegalStateException("primary"))),
+                Mono.delay(HEDGE_DELAY.multipliedBy(3)).thenReturn(hedge));
+        //对冲请求开始之后主请求失败，继续等待对冲请求
+        Assertions.assertSame(hedge, result.block(TIMEOUT));
+        assertReleased(hedge, false);
+    }
+
+    @Test
+    public void testBudgetExhausted() {
+        hedgeBudget = new RetryBudget("test:hedge", 0, 0);
+        ClientResponse primary = response();
+        Mono<ClientResponse> result = exchange(Mono.delay(HEDGE_DELAY.multipliedBy(2)).thenReturn(primary));
+        //预算用完不发送对冲请求，继续等待主请求
+        Assertions.assertSame(primary, result.block(TIMEOUT));
+        Assertions.assertEquals(1, exchanges.get());
+        Assertions.assertEquals(1, hedgeBudget.getRejected());
+    }
+
+    @Test
+    public void testNotHedgeable() {
+        ClientResponse primary = response();
+        HedgingExchangeFilterFunction filter = new HedgingExchangeFilterFunction(HEDGE_DELAY, hedgeBudget, clientRequest -> false);
+        Mono<ClientResponse> result = filter.filter(request, clientRequest -> {
+            exchanges.incrementAndGet();
+            return Mono.delay(HEDGE_DELAY.multipliedBy(2)).thenReturn(primary);
+        });
+        Assertions.assertSame(primary, result.block(TIMEOUT));
+        Assertions.assertEquals(1, exchanges.get());
+        Assertions.assertEquals(0, hedgeBudget.getRetries());
+    }
+}
@@ -0,0 +1,105 @@
+package com.syrobin.cloud.webflux.webclient;
+
+import com.syrobin.cloud.commons.resilience4j.DeadlineExceededException;
+import com.syrobin.cloud.commons.resilience4j.RequestDeadline;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: RequestDeadlineExchangeFilterFunction 单元测试
+ * @date 2026-10-17 11:40
+ */
+public class RequestDeadlineExchangeFilterFunctionTest {
+
+    private final RequestDeadlineExchangeFilterFunction filter = new RequestDeadlineExchangeFilterFunction(Duration.ofSeconds(60));
+    private final AtomicReference<ClientRequest> exchanged = new AtomicReference<>();
+    private final AtomicInteger exchanges = new AtomicInteger();
+
+    private Mono<ClientResponse> exchange(ClientRequest request) {
+        return filter.filter(request, clientRequest -> {
+            exchanges.incrementAndGet();
+            exchanged.set(clientRequest);
+            return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+        });
+    }
+
+    private static ClientRequest request(long deadline) {
+        return ClientRequest.create(HttpMethod.GET, URI.create("http://test/anything"))
+                .attribute(RequestDeadline.ATTRIBUTE, deadline)
+                .build();
+    }
+
+    /**
+     * 在 mock 的 reactor netty 请求上执行转发出去的请求的 httpRequest 回调，返回设置的响应超时，没有设置返回 null
+     */
+    private Duration responseTimeout() {
+        if (exchanged.get().httpRequest() == null) {
+            return null;
+        }
+        HttpClientRequest nativeRequest = Mockito.mock(HttpClientRequest.class);
+        ClientHttpRequest httpRequest = Mockito.mock(ClientHttpRequest.class);
+        when(httpRequest.getNativeRequest()).thenReturn(nativeRequest);
+        exchanged.get().httpRequest().accept(httpRequest);
+        ArgumentCaptor<Duration> captor = ArgumentCaptor.forClass(Duration.class);
+        Mockito.verify(nativeRequest, Mockito.atMost(1)).responseTimeout(captor.capture());
+        return captor.getAllValues().isEmpty() ? null : captor.getValue();
+    }
+
+    @Test
+    public void testNoDeadline() {
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://test/anything")).build();
+        Assertions.assertEquals(HttpStatus.OK, exchange(request).block().statusCode());
+        Assertions.assertSame(request, exchanged.get());
+        Assertions.assertNull(responseTimeout());
+    }
+
+    @Test
+    public void testRemainingLongerThanResponseTimeout() {
+        ClientRequest request = request(System.currentTimeMillis() + 120_000);
+        Assertions.assertEquals(HttpStatus.OK, exchange(request).block().statusCode());
+        Assertions.assertSame(request, exchanged.get());
+        Assertions.assertNull(responseTimeout());
+    }
+
+    @Test
+    public void testResponseTimeoutClamped() {
+        Assertions.assertEquals(HttpStatus.OK, exchange(request(System.currentTimeMillis() + 30_000)).block().statusCode());
+        Duration responseTimeout = responseTimeout();
+        Assertions.assertNotNull(responseTimeout);
+        Assertions.assertTrue(responseTimeout.toMillis() > 20_000 && responseTimeout.toMillis() <= 30_000, responseTimeout.toString());
+    }
+
+    @Test
+    public void testDeadlineExceeded() {
+        Mono<ClientResponse> response = exchange(request(System.currentTimeMillis() - 100));
+        Assertions.assertThrows(DeadlineExceededException.class, response::block);
+        Assertions.assertEquals(0, exchanges.get());
+    }
+
+    @Test
+    public void testRemainingEvaluatedOnSubscribe() throws InterruptedException {
+        //重试的时候重新订阅，剩余时间在订阅的时候计算
+        Mono<ClientResponse> response = exchange(request(System.currentTimeMillis() + 50));
+        Thread.sleep(100);
+        Assertions.assertThrows(DeadlineExceededException.class, response::block);
+        Assertions.assertEquals(0, exchanges.get());
+    }
+}
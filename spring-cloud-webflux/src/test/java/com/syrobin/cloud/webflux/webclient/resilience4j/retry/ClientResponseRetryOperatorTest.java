@@ -0,0 +1,74 @@
+package com.syrobin.cloud.webflux.webclient.resilience4j.retry;
+
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: ClientResponseRetryOperator 单元测试
+ * @date 2026-10-17 10:50
+ */
+public class ClientResponseRetryOperatorTest {
+
+    private final Retry retry = Retry.of("test", RetryConfig.custom()
+            .maxAttempts(3)
+            .waitDuration(Duration.ofMillis(1))
+            .retryOnException(throwable -> throwable instanceof IllegalStateException)
+            .build());
+
+    private static int call(ClientResponseRetryOperator operator, RuntimeException exception) {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<ClientResponse> mono = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.<ClientResponse>error(exception);
+        });
+        RuntimeException thrown = Assertions.assertThrows(RuntimeException.class, () -> mono.transform(operator).block());
+        Assertions.assertSame(exception, thrown);
+        return attempts.get();
+    }
+
+    @Test
+    public void testRetryBudgetLastFailureNotCharged() {
+        //每秒保底 1 次，窗口内一共 10 次重试
+        RetryBudget retryBudget = new RetryBudget("test", 0, 1);
+        ClientResponseRetryOperator operator = ClientResponseRetryOperator.of(retry, throwable -> true, retryBudget);
+        //最大 3 次尝试，每次调用只重试 2 次，最后一次失败不扣减预算
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(3, call(operator, new IllegalStateException("test")));
+        }
+        Assertions.assertEquals(10, retryBudget.getRetries());
+        Assertions.assertEquals(0, retryBudget.getRejected());
+        //预算用完，不再重试
+        Assertions.assertEquals(1, call(operator, new IllegalStateException("test")));
+        Assertions.assertEquals(1, retryBudget.getRejected());
+    }
+
+    @Test
+    public void testRetryBudgetNotChargedWhenNotRetryable() {
+        RetryBudget retryBudget = new RetryBudget("test", 0, 1);
+        ClientResponseRetryOperator operator = ClientResponseRetryOperator.of(retry, throwable -> true, retryBudget);
+        Assertions.assertEquals(1, call(operator, new IllegalArgumentException("test")));
+        Assertions.assertEquals(0, retryBudget.getRetries());
+    }
+
+    @Test
+    public void testPrecondition() {
+        RetryBudget retryBudget = new RetryBudget("test", 0, 1);
+        AtomicInteger preconditions = new AtomicInteger();
+        //第二次失败之后前置条件不满足（比如剩余时间不够），不再重试
+        ClientResponseRetryOperator operator = ClientResponseRetryOperator.of(retry, throwable -> preconditions.incrementAndGet() < 2, retryBudget);
+        Assertions.assertEquals(2, call(operator, new IllegalStateException("test")));
+        Assertions.assertEquals(2, preconditions.get());
+        //前置条件不满足的时候不经过 Retry 的判断，也不扣减重试预算
+        Assertions.assertEquals(1, retryBudget.getRetries());
+    }
+}
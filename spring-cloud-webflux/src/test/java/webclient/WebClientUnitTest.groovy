@@ -2,6 +2,8 @@ package webclient
 
 import brave.Span
 import brave.Tracer
+import com.syrobin.cloud.commons.loadbalancer.InstanceSelector
+import com.syrobin.cloud.commons.loadbalancer.RankingInstanceSelector
 import com.syrobin.cloud.commons.loadbalancer.TracedCircuitBreakerRoundRobinLoadBalancer
 import com.syrobin.cloud.commons.resilience4j.CircuitBreakerExtractor
 import com.syrobin.cloud.webflux.webclient.WebClientNamedContextFactory
@@ -68,6 +70,8 @@ class WebClientUnitTest extends Specification {
 
 	TracedCircuitBreakerRoundRobinLoadBalancer loadBalancerClientFactoryInstance = Spy();
 	ServiceInstanceListSupplier serviceInstanceListSupplier = Spy();
+	//choose 每次选择实例都会调用一次 select，通过它统计调用负载均衡器的次数
+	InstanceSelector instanceSelector = Spy(RankingInstanceSelector);
 
 	//所有测试的方法执行前会调用的方法
 	def setup() {
@@ -76,6 +80,7 @@ class WebClientUnitTest extends Specification {
 		loadBalancerClientFactoryInstance.setCircuitBreakerRegistry(circuitBreakerRegistry)
 		loadBalancerClientFactoryInstance.setCircuitBreakerExtractor(circuitBreakerExtractor)
 		loadBalancerClientFactoryInstance.setServiceInstanceListSupplier(serviceInstanceListSupplier)
+		loadBalancerClientFactoryInstance.setInstanceSelector(instanceSelector)
 	}
 
 	def "测试断路器异常重试以及断路器级别"() {
@@ -102,7 +107,7 @@ class WebClientUnitTest extends Specification {
 				println(stringMono.block())
 			}
 		then:"调用至少 10 次负载均衡器且没有异常即成功，考虑可能会有重试"
-			(10.._) * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			(10.._) * instanceSelector.select(_, _, _, _)
 		when: "调用不同的路径，验证断路器在这个路径上都是关闭"
 			//调用 10 次
 			for (i in 0..<10) {
@@ -112,7 +117,7 @@ class WebClientUnitTest extends Specification {
 				println(stringMono.block())
 			}
 		then: "调用必须为正好 10 次代表没有重试，一次成功，断路器之间相互隔离"
-			10 * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			10 * instanceSelector.select(_, _, _, _)
 	}
 
 	def "测试针对 connectTimeout 重试"() {
@@ -142,7 +147,7 @@ class WebClientUnitTest extends Specification {
 				}
 			}
 		then:"调用至少 20 次负载均衡器且没有异常即成功"
-			(20.._) * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			(20.._) * instanceSelector.select(_, _, _, _)
 	}
 
 	def "测试针对 readTimeout 重试"() {
@@ -164,7 +169,7 @@ class WebClientUnitTest extends Specification {
 				}
 			}
 		then: "每次都会超时所以会重试，根据配置一共有 3 次"
-			3 * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			3 * instanceSelector.select(_, _, _, _)
 		when: "测试 POST 延迟 3 秒返回，超过读取超时，同时路径在重试路径中"
 			//清除断路器影响
 			circuitBreakerRegistry.getAllCircuitBreakers().forEach({ c -> c.reset() })
@@ -180,7 +185,7 @@ class WebClientUnitTest extends Specification {
 				}
 			}
 		then: "每次都会超时所以会重试，根据配置一共有 3 次"
-			3 * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			3 * instanceSelector.select(_, _, _, _)
 		when: "测试 POST 延迟 2 秒返回，超过读取超时，这个不能重试"
 			//清除断路器影响
 			circuitBreakerRegistry.getAllCircuitBreakers().forEach({ c -> c.reset() })
@@ -196,7 +201,7 @@ class WebClientUnitTest extends Specification {
 				}
 			}
 		then: "没有重试，只有一次调用"
-			1 * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			1 * instanceSelector.select(_, _, _, _)
 	}
 
 	def "测试非 200 响应码返回" () {
@@ -218,7 +223,7 @@ class WebClientUnitTest extends Specification {
 				}
 			}
 		then: "每次都没有返回 2xx 所以会重试，根据配置一共有 3 次"
-			3 * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			3 * instanceSelector.select(_, _, _, _)
 		when: "测试 POST 返回 500"
 			//清除断路器影响
 			circuitBreakerRegistry.getAllCircuitBreakers().forEach({ c -> c.reset() })
@@ -234,7 +239,7 @@ class WebClientUnitTest extends Specification {
 				}
 			}
 		then: "POST 默认不重试，所以只会调用一次"
-			1 * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			1 * instanceSelector.select(_, _, _, _)
 		when: "测试 POST 返回 400，这个请求路径在重试路径中"
 			//清除断路器影响
 			circuitBreakerRegistry.getAllCircuitBreakers().forEach({ c -> c.reset() })
@@ -250,6 +255,6 @@ class WebClientUnitTest extends Specification {
 				}
 			}
 		then: "路径在重试路径中，所以会重试"
-			3 * loadBalancerClientFactoryInstance.getInstanceResponseByRoundRobin(*_)
+			3 * instanceSelector.select(_, _, _, _)
 	}
 }
\ No newline at end of file
@@ -1,25 +1,31 @@
 package com.syrobin.cloud.webmvc.config;
 
 import brave.Tracer;
+import com.syrobin.cloud.commons.resilience4j.AdaptiveConcurrencyLimiterRegistry;
 import com.syrobin.cloud.commons.resilience4j.CircuitBreakerExtractor;
 import com.syrobin.cloud.webmvc.feign.ApacheHttpClient;
 import com.syrobin.cloud.webmvc.feign.FeignBlockingLoadBalancerClientDelegate;
 import com.syrobin.cloud.webmvc.feign.FeignRequestCircuitBreakerExtractor;
+import com.syrobin.cloud.webmvc.feign.IsolationMode;
 import com.syrobin.cloud.webmvc.feign.Resilience4jFeignClient;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
 import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
 
 import java.util.concurrent.TimeUnit;
 
@@ -31,6 +37,8 @@ import java.util.concurrent.TimeUnit;
  */
 @Configuration(proxyBeanMethods = false)
 public class CommonOpenFeignConfiguration {
+    private static final String ADAPTIVE_CONCURRENCY = "feign.adaptive-concurrency.";
+    private static final String ISOLATION_MODE = "feign.isolation.mode";
 
     @Bean
     public CircuitBreakerExtractor feignCircuitBreakerExtractor() {
@@ -55,6 +63,24 @@ public class CommonOpenFeignConfiguration {
         return httpClientBuilder.build();
     }
 
+    /**
+     * 每个实例的自适应并发限制，参考 AdaptiveConcurrencyLimiter，默认关闭，配置 feign.adaptive-concurrency.enabled 为 true 开启
+     * 开启之后超过限制的请求直接返回 BULKHEAD_FULL，上线前需要根据实际的并发确认 initial-limit 以及 max-limit
+     * 每个实例的 max-limit 实际不超过这个实例线程池（信号量）隔离的容量，需要更高的并发的时候要同时调大 resilience4j 的隔离配置
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "feign.adaptive-concurrency", name = "enabled", havingValue = "true")
+    public AdaptiveConcurrencyLimiterRegistry adaptiveConcurrencyLimiterRegistry(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new AdaptiveConcurrencyLimiterRegistry(
+                environment.getProperty(ADAPTIVE_CONCURRENCY + "initial-limit", Integer.class, AdaptiveConcurrencyLimiterRegistry.DEFAULT_INITIAL_LIMIT),
+                environment.getProperty(ADAPTIVE_CONCURRENCY + "min-limit", Integer.class, AdaptiveConcurrencyLimiterRegistry.DEFAULT_MIN_LIMIT),
+                environment.getProperty(ADAPTIVE_CONCURRENCY + "max-limit", Integer.class, AdaptiveConcurrencyLimiterRegistry.DEFAULT_MAX_LIMIT),
+                environment.getProperty(ADAPTIVE_CONCURRENCY + "tolerance", Double.class, AdaptiveConcurrencyLimiterRegistry.DEFAULT_TOLERANCE),
+                environment.getProperty(ADAPTIVE_CONCURRENCY + "smoothing", Double.class, AdaptiveConcurrencyLimiterRegistry.DEFAULT_SMOOTHING),
+                meterRegistry.getIfAvailable()
+        );
+    }
+
     @Bean
     public ApacheHttpClient apacheHttpClient(HttpClient httpClient) {
         return new ApacheHttpClient(httpClient);
@@ -72,20 +98,28 @@ public class CommonOpenFeignConfiguration {
             ObjectProvider<LoadBalancerClient> loadBalancerClientProvider,
             //resilience4j 的线程隔离
             ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry,
+            //resilience4j 的信号量隔离，feign.isolation.mode 为 semaphore 或者 virtual-thread 时使用
+            BulkheadRegistry bulkheadRegistry,
             //resilience4j 的断路器
             CircuitBreakerRegistry circuitBreakerRegistry,
             //Sleuth 的 Tracer，用于获取请求上下文
             Tracer tracer,
+            //自适应并发限制，关闭的时候没有这个 Bean
+            ObjectProvider<AdaptiveConcurrencyLimiterRegistry> adaptiveConcurrencyLimiterRegistry,
             //负载均衡属性
             LoadBalancerProperties properties,
             //为何使用这个不直接用 FeignBlockingLoadBalancerClient 请参考 FeignBlockingLoadBalancerClientDelegate 的注释
-            LoadBalancerClientFactory loadBalancerClientFactory ) {
+            LoadBalancerClientFactory loadBalancerClientFactory,
+            Environment environment) {
         return new FeignBlockingLoadBalancerClientDelegate(
                 new Resilience4jFeignClient(
                         apacheHttpClient,
                         threadPoolBulkheadRegistry,
+                        bulkheadRegistry,
                         circuitBreakerRegistry,
-                        tracer
+                        tracer,
+                        adaptiveConcurrencyLimiterRegistry.getIfAvailable(),
+                        environment.getProperty(ISOLATION_MODE, IsolationMode.class, IsolationMode.THREAD_POOL)
                 ),
                 loadBalancerClientProvider,
                 properties,
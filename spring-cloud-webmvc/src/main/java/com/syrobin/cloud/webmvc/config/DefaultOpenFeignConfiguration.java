@@ -1,18 +1,32 @@
 package com.syrobin.cloud.webmvc.config;
 
+import com.syrobin.cloud.commons.loadbalancer.PeakEwmaTracker;
+import com.syrobin.cloud.commons.resilience4j.RequestDeadline;
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
+import com.syrobin.cloud.commons.resilience4j.RetryBudgetRegistry;
+import com.syrobin.cloud.webmvc.feign.AttemptScopedFeignDecorator;
 import com.syrobin.cloud.webmvc.feign.DefaultErrorDecoder;
 import com.syrobin.cloud.webmvc.feign.FeignDecoratorBuilderInterceptor;
+import com.syrobin.cloud.webmvc.feign.OpenfeignUtil;
+import com.syrobin.cloud.webmvc.feign.RetryBudgetFeignDecorator;
+import com.syrobin.cloud.webmvc.feign.RetryBudgetIntervalBiFunction;
 import feign.Feign;
+import feign.Request;
+import feign.RetryableException;
 import feign.codec.ErrorDecoder;
+import io.github.resilience4j.feign.FeignDecorator;
 import io.github.resilience4j.feign.FeignDecorators;
 import io.github.resilience4j.feign.Resilience4jFeign;
 import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
 import io.github.resilience4j.retry.RetryRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.List;
 
 /**
@@ -34,14 +48,25 @@ public class DefaultOpenFeignConfiguration {
 
     @Bean
     public Feign.Builder resilience4jFeignBuilder(List<FeignDecoratorBuilderInterceptor> feignDecoratorBuilderInterceptors,
-                                                  FeignDecorators.Builder builder) {
+                                                  FeignDecorators.Builder builder,
+                                                  Environment environment,
+                                                  ObjectProvider<RetryBudgetRegistry> retryBudgetRegistry) {
         feignDecoratorBuilderInterceptors.forEach(feignDecoratorBuilderInterceptor -> feignDecoratorBuilderInterceptor.intercept(builder));
-        return Resilience4jFeign.builder(builder.build());
+        FeignDecorator feignDecorator = builder.build();
+        //成功调用的记录需要在重试以及 fallback 里面
+        RetryBudget retryBudget = getRetryBudget(environment, retryBudgetRegistry);
+        if (retryBudget != null) {
+            feignDecorator = new RetryBudgetFeignDecorator(retryBudget, feignDecorator);
+        }
+        //每次调用的 AttemptContext 需要在重试外面
+        return Resilience4jFeign.builder(new AttemptScopedFeignDecorator(feignDecorator));
     }
 
     @Bean
     public FeignDecorators.Builder defaultBuilder(Environment environment,
-                                                  RetryRegistry retryRegistry) {
+                                                  RetryRegistry retryRegistry,
+                                                  ObjectProvider<RetryBudgetRegistry> retryBudgetRegistry,
+                                                  ObjectProvider<PeakEwmaTracker> peakEwmaTracker) {
         String name = environment.getProperty("feign.client.name");
         Retry retry = null;
         try {
@@ -51,11 +76,54 @@ public class DefaultOpenFeignConfiguration {
         }
 
         //覆盖其中的异常判断，只针对 feign.RetryableException 进行重试，所有需要重试的异常我们都在 DefaultErrorDecoder 以及 Resilience4jFeignClient 中封装成了 RetryableException
-        retry = Retry.of(name, RetryConfig.from(retry.getRetryConfig())
-                .retryOnException(throwable -> throwable instanceof feign.RetryableException).build());
+        //剩余时间不够之后不再重试，快速失败
+        PeakEwmaTracker tracker = peakEwmaTracker.getIfAvailable();
+        RetryConfig.Builder<Object> retryConfigBuilder = RetryConfig.from(retry.getRetryConfig())
+                .retryOnException(throwable -> throwable instanceof feign.RetryableException
+                        && hasTimeForRetry((RetryableException) throwable, tracker));
+        //重试预算在确定会重试之后才扣减，用完之后不再重试，快速失败
+        RetryBudget retryBudget = getRetryBudget(environment, retryBudgetRegistry);
+        if (retryBudget != null) {
+            //intervalFunction 和 intervalBiFunction 只能配置一个，原有的间隔统一使用 intervalBiFunction
+            retryConfigBuilder
+                    .intervalFunction(null)
+                    .intervalBiFunction(new RetryBudgetIntervalBiFunction<>(retryBudget, retry.getRetryConfig().getIntervalBiFunction()));
+        }
+        retry = Retry.of(name, retryConfigBuilder.build());
 
 
         return FeignDecorators.builder().withRetry(retry);
     }
 
+    /**
+     * 调用链剩余的时间是否够再调用一次，使用失败实例的 Peak EWMA 响应时间作为预期的响应时间
+     */
+    private static boolean hasTimeForRetry(RetryableException e, PeakEwmaTracker tracker) {
+        Request request = e.request();
+        if (request == null) {
+            return true;
+        }
+        long deadline = RequestDeadline.resolve(OpenfeignUtil.getFirstHeader(request, RequestDeadline.HEADER));
+        if (deadline == RequestDeadline.NONE) {
+            return true;
+        }
+        double expectedNanos = 0;
+        if (tracker != null) {
+            try {
+                URL url = new URL(request.url());
+                expectedNanos = tracker.get(url.getHost(), url.getPort()).getCost();
+            } catch (MalformedURLException ignored) {
+            }
+        }
+        return RequestDeadline.hasTimeFor(deadline, expectedNanos);
+    }
+
+    /**
+     * 和 Retry 使用同一个名称，没有开启重试预算的时候返回 null
+     */
+    private static RetryBudget getRetryBudget(Environment environment, ObjectProvider<RetryBudgetRegistry> retryBudgetRegistry) {
+        RetryBudgetRegistry registry = retryBudgetRegistry.getIfAvailable();
+        return registry == null ? null : registry.budget(environment.getProperty("feign.client.name"));
+    }
+
 }
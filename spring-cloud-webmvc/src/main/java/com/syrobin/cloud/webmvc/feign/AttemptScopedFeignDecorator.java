@@ -0,0 +1,56 @@
+package com.syrobin.cloud.webmvc.feign;
+
+import com.syrobin.cloud.commons.loadbalancer.AttemptContext;
+import feign.InvocationHandlerFactory;
+import feign.Target;
+import io.github.resilience4j.feign.FeignDecorator;
+import io.vavr.CheckedFunction1;
+
+import java.lang.reflect.Method;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 在所有 resilience4j 装饰器（重试、fallback）外面为每次 FeignClient 方法调用创建一个 {@link AttemptContext}，
+ * 重试都在同一个线程中进行，负载均衡器选择实例也是在调用线程中（线程隔离在负载均衡之后），
+ * 所以通过 ThreadLocal 传递给 FeignBlockingLoadBalancerClientExtend，放入 RequestData 的 attributes 中。
+ * 方法调用结束的时候关闭上下文
+ * @date 2026-10-18 14:20
+ */
+public class AttemptScopedFeignDecorator implements FeignDecorator {
+
+    private static final ThreadLocal<AttemptContext> CURRENT = new ThreadLocal<>();
+
+    private final FeignDecorator delegate;
+
+    public AttemptScopedFeignDecorator(FeignDecorator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public CheckedFunction1<Object[], Object> decorate(CheckedFunction1<Object[], Object> invocationCall, Method method,
+                                                       InvocationHandlerFactory.MethodHandler methodHandler, Target<?> target) {
+        CheckedFunction1<Object[], Object> decorated = delegate.decorate(invocationCall, method, methodHandler, target);
+        return args -> {
+            //fallback 中可能再调用其他 FeignClient，结束后恢复外层的上下文
+            AttemptContext previous = CURRENT.get();
+            try (AttemptContext attemptContext = new AttemptContext()) {
+                CURRENT.set(attemptContext);
+                return decorated.apply(args);
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * 当前线程正在进行的 FeignClient 调用的上下文，没有的话返回 null
+     */
+    public static AttemptContext current() {
+        return CURRENT.get();
+    }
+}
@@ -19,9 +19,11 @@ public class DefaultErrorDecoder implements ErrorDecoder {
     @Override
     public Exception decode(String methodKey, Response response) {
         boolean queryRequest = OpenfeignUtil.isRetryableRequest(response.request());
-        boolean shouldThrowRetryable = queryRequest
+        //过了截止时间的请求，调用方已经不再等待，不需要重试
+        boolean shouldThrowRetryable = response.status() != SpecialHttpStatus.DEADLINE_EXCEEDED.getValue()
+                && (queryRequest
                 || response.status() == SpecialHttpStatus.CIRCUIT_BREAKER_ON.getValue()
-                || response.status() == SpecialHttpStatus.RETRYABLE_IO_EXCEPTION.getValue();
+                || response.status() == SpecialHttpStatus.RETRYABLE_IO_EXCEPTION.getValue());
         log.info("{} response: {}-{}, should retry: {}", methodKey, response.status(), response.reason(), shouldThrowRetryable);
         //对于查询请求以及可以重试的响应码的异常，进行重试，即抛出可重试异常 RetryableException
         if (shouldThrowRetryable) {
@@ -3,6 +3,7 @@ package com.syrobin.cloud.webmvc.feign;
 import feign.Client;
 import feign.Request;
 import feign.Response;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
@@ -23,7 +24,7 @@ import java.io.IOException;
  * 导致我们在初始化的 FeignClient 的时候，无法拿到 BlockingClient
  * 所以，需要通过 ObjectProvider 封装 LoadBalancerClient，在真正调用 FeignClient 的时候通过 ObjectProvider 拿到 LoadBalancerClient 来创建 FeignBlockingLoadBalancerClient
  */
-public class FeignBlockingLoadBalancerClientDelegate implements Client {
+public class FeignBlockingLoadBalancerClientDelegate implements Client, DisposableBean {
 
     private FeignBlockingLoadBalancerClientExtend feignBlockingLoadBalancerClient;
 
@@ -60,4 +61,14 @@ public class FeignBlockingLoadBalancerClientDelegate implements Client {
         return feignBlockingLoadBalancerClient.execute(request, options);
 
     }
+
+    /**
+     * 被代理的 Client 不是 Bean，随这个 Bean 一起关闭，例如 Resilience4jFeignClient 的虚拟线程 Executor
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (delegate instanceof DisposableBean) {
+            ((DisposableBean) delegate).destroy();
+        }
+    }
 }
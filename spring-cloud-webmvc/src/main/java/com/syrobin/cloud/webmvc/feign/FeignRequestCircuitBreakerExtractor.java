@@ -36,7 +36,20 @@ public class FeignRequestCircuitBreakerExtractor implements CircuitBreakerExtrac
 		catch (ConfigurationNotFoundException e) {
 			circuitBreaker = circuitBreakerRegistry.circuitBreaker(serviceInstanceMethodId);
 		}
-		log.info("FeignRequestCircuitBreakerExtractor-getCircuitBreaker: {} -> {}", circuitBreaker.getName(), JSON.toJSONString(circuitBreaker.getMetrics()));
+		if (log.isDebugEnabled()) {
+			log.debug("FeignRequestCircuitBreakerExtractor-getCircuitBreaker: {} -> {}", circuitBreaker.getName(), JSON.toJSONString(circuitBreaker.getMetrics()));
+		}
 		return circuitBreaker;
 	}
+
+	/**
+	 * 断路器名称由实例和方法决定，配置由 FeignClient 的 contextId 决定，方法已经确定了 FeignClient，所以直接用方法作为 key
+	 */
+	@Override
+	public Object getCircuitBreakerKey(Request request) {
+		RequestDataContext context = (RequestDataContext) request.getContext();
+		RequestTemplate requestTemplate = (RequestTemplate) context.getClientRequest().getAttributes()
+				.get(FeignBlockingLoadBalancerClientExtend.REQUEST_TEMPLATE);
+		return requestTemplate.methodMetadata().method();
+	}
 }
@@ -0,0 +1,22 @@
+package com.syrobin.cloud.webmvc.feign;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: {@link Resilience4jFeignClient} 每个实例的隔离方式，通过 feign.isolation.mode 配置，默认 {@link #THREAD_POOL}
+ * @date 2026-10-18 19:10
+ */
+public enum IsolationMode {
+    /**
+     * 每个实例一个 ThreadPoolBulkhead，请求在线程池中执行，调用线程等待结果，配置参考 resilience4j.thread-pool-bulkhead
+     */
+    THREAD_POOL,
+    /**
+     * 每个实例一个信号量 Bulkhead，请求直接在调用线程执行，没有线程切换，配置参考 resilience4j.bulkhead
+     */
+    SEMAPHORE,
+    /**
+     * 和 {@link #SEMAPHORE} 一样用信号量限制每个实例的并发，请求在虚拟线程中执行，需要 JDK 21 以上，否则退化为 {@link #SEMAPHORE}
+     */
+    VIRTUAL_THREAD,
+}
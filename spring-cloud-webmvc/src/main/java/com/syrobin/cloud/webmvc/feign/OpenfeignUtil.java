@@ -6,6 +6,8 @@ import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.springframework.http.HttpStatus;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
 
@@ -42,6 +44,18 @@ public class OpenfeignUtil {
 
     }
 
+    /**
+     * 请求头的第一个值，请求头名称不区分大小写，没有的话返回 null
+     */
+    public static String getFirstHeader(Request request, String name) {
+        for (Map.Entry<String, Collection<String>> header : request.headers().entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                return header.getValue().iterator().next();
+            }
+        }
+        return null;
+    }
+
     /**
      * 针对 OpenFeign 的 circuitBreaker 封装，根据响应进行断路
      * @param circuitBreaker
@@ -3,12 +3,17 @@ package com.syrobin.cloud.webmvc.feign;
 import brave.Span;
 import brave.Tracer;
 import com.alibaba.fastjson.JSON;
+import com.syrobin.cloud.commons.resilience4j.AdaptiveConcurrencyLimiter;
+import com.syrobin.cloud.commons.resilience4j.AdaptiveConcurrencyLimiterRegistry;
+import com.syrobin.cloud.commons.resilience4j.RequestDeadline;
 import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
 import com.syrobin.cloud.webmvc.misc.SpecialHttpStatus;
 import feign.Client;
 import feign.Request;
 import feign.Response;
+import io.github.resilience4j.bulkhead.Bulkhead;
 import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkhead;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
@@ -16,6 +21,7 @@ import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.client.DefaultServiceInstance;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.openfeign.FeignClient;
@@ -23,8 +29,12 @@ import org.springframework.cloud.openfeign.FeignClient;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /**
@@ -34,23 +44,114 @@ import java.util.function.Supplier;
  * @date 2022-07-13 15:23
  */
 @Slf4j
-public class Resilience4jFeignClient implements Client {
+public class Resilience4jFeignClient implements Client, DisposableBean {
 
     private final ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry;
+    /**
+     * 信号量隔离以及虚拟线程隔离使用，线程池隔离的时候可以为 null
+     */
+    private final BulkheadRegistry bulkheadRegistry;
     private final CircuitBreakerRegistry circuitBreakerRegistry;
     private final Tracer tracer;
     private ApacheHttpClient apacheHttpClient;
+    /**
+     * 可以为 null，为 null 的时候只有线程池隔离
+     */
+    private final AdaptiveConcurrencyLimiterRegistry adaptiveConcurrencyLimiterRegistry;
+    private final IsolationMode isolationMode;
+    /**
+     * 虚拟线程隔离使用，每个任务一个新的虚拟线程，不需要池化，在 {@link #destroy()} 中关闭
+     */
+    private final ExecutorService virtualThreadExecutor;
 
     public Resilience4jFeignClient(ApacheHttpClient apacheHttpClient,
                                    ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry,
                                    CircuitBreakerRegistry circuitBreakerRegistry,
                                    Tracer tracer
 
+    ) {
+        this(apacheHttpClient, threadPoolBulkheadRegistry, circuitBreakerRegistry, tracer, null);
+    }
+
+    public Resilience4jFeignClient(ApacheHttpClient apacheHttpClient,
+                                   ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry,
+                                   CircuitBreakerRegistry circuitBreakerRegistry,
+                                   Tracer tracer,
+                                   AdaptiveConcurrencyLimiterRegistry adaptiveConcurrencyLimiterRegistry
+    ) {
+        this(apacheHttpClient, threadPoolBulkheadRegistry, null, circuitBreakerRegistry, tracer,
+                adaptiveConcurrencyLimiterRegistry, IsolationMode.THREAD_POOL);
+    }
+
+    public Resilience4jFeignClient(ApacheHttpClient apacheHttpClient,
+                                   ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry,
+                                   BulkheadRegistry bulkheadRegistry,
+                                   CircuitBreakerRegistry circuitBreakerRegistry,
+                                   Tracer tracer,
+                                   AdaptiveConcurrencyLimiterRegistry adaptiveConcurrencyLimiterRegistry,
+                                   IsolationMode isolationMode
+    ) {
+        this(apacheHttpClient, threadPoolBulkheadRegistry, bulkheadRegistry, circuitBreakerRegistry, tracer,
+                adaptiveConcurrencyLimiterRegistry, isolationMode,
+                isolationMode == IsolationMode.VIRTUAL_THREAD ? newVirtualThreadExecutor() : null);
+    }
+
+    /**
+     * @param virtualThreadExecutor 虚拟线程隔离执行请求的 Executor，单元测试可以传入普通线程池，为 null 的时候虚拟线程隔离退化为信号量隔离
+     */
+    Resilience4jFeignClient(ApacheHttpClient apacheHttpClient,
+                            ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry,
+                            BulkheadRegistry bulkheadRegistry,
+                            CircuitBreakerRegistry circuitBreakerRegistry,
+                            Tracer tracer,
+                            AdaptiveConcurrencyLimiterRegistry adaptiveConcurrencyLimiterRegistry,
+                            IsolationMode isolationMode,
+                            ExecutorService virtualThreadExecutor
     ) {
         this.apacheHttpClient = apacheHttpClient;
         this.threadPoolBulkheadRegistry = threadPoolBulkheadRegistry;
+        this.bulkheadRegistry = bulkheadRegistry;
         this.circuitBreakerRegistry = circuitBreakerRegistry;
         this.tracer = tracer;
+        this.adaptiveConcurrencyLimiterRegistry = adaptiveConcurrencyLimiterRegistry;
+        if (isolationMode != IsolationMode.VIRTUAL_THREAD) {
+            virtualThreadExecutor = null;
+        } else if (virtualThreadExecutor == null) {
+            log.warn("virtual threads are not supported by java {}, fall back to semaphore isolation", System.getProperty("java.version"));
+            isolationMode = IsolationMode.SEMAPHORE;
+        }
+        if (isolationMode != IsolationMode.THREAD_POOL && bulkheadRegistry == null) {
+            throw new IllegalArgumentException("bulkheadRegistry is required by " + isolationMode + " isolation");
+        }
+        this.isolationMode = isolationMode;
+        this.virtualThreadExecutor = virtualThreadExecutor;
+    }
+
+    /**
+     * 编译目标是 Java 11，通过反射调用 JDK 21 的 Executors.newVirtualThreadPerTaskExecutor
+     *
+     * @return 不支持虚拟线程的时候返回 null
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public IsolationMode getIsolationMode() {
+        return isolationMode;
+    }
+
+    /**
+     * 关闭虚拟线程隔离的 Executor，正在执行的请求会继续执行完，之后提交的请求会被拒绝
+     */
+    @Override
+    public void destroy() {
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
     }
 
     @Override
@@ -63,14 +164,19 @@ public class Resilience4jFeignClient implements Client {
         //获取实例+方法唯一id
         String serviceInstanceMethodId = getServiceInstanceMethodId(request);
 
-        ThreadPoolBulkhead threadPoolBulkhead;
-        CircuitBreaker circuitBreaker;
-        try {
-            //每个实例一个线程池
-            threadPoolBulkhead = threadPoolBulkheadRegistry.bulkhead(contextId + ":" + serviceInstanceId, contextId);
-        } catch (Exception e) {
-            threadPoolBulkhead = threadPoolBulkheadRegistry.bulkhead( contextId + ":" + serviceInstanceId);
+        //调用链的截止时间，已经过了截止时间的请求不再发出去，否则超时缩短到剩余时间
+        long deadline = RequestDeadline.resolve(OpenfeignUtil.getFirstHeader(request, RequestDeadline.HEADER));
+        long remaining = RequestDeadline.remainingMillis(deadline);
+        if (remaining <= 0) {
+            return Response.builder()
+                    .request(request)
+                    .status(SpecialHttpStatus.DEADLINE_EXCEEDED.getValue())
+                    .reason("request deadline " + deadline + " exceeded by " + -remaining + "ms")
+                    .requestTemplate(request.requestTemplate()).build();
         }
+        Request.Options clampedOptions = clampOptions(options, remaining);
+
+        CircuitBreaker circuitBreaker;
         try {
             ///每个服务实例具体方法一个resilience4j熔断记录器，在服务实例具体方法维度做熔断，所有这个服务的实例具体方法共享这个服务的resilience4j熔断配置
             circuitBreaker = circuitBreakerRegistry.circuitBreaker(serviceInstanceMethodId, contextId);
@@ -79,46 +185,96 @@ public class Resilience4jFeignClient implements Client {
 
         }
 
-        //保持traceId
+        //每个实例一个线程池或者信号量
+        String bulkheadName = contextId + ":" + serviceInstanceId;
+        ThreadPoolBulkhead threadPoolBulkhead = null;
+        Bulkhead bulkhead = null;
+        Object bulkheadMetrics;
+        //隔离能同时容纳的请求数，自适应并发限制不会超过这个值
+        int bulkheadCapacity;
+        if (isolationMode == IsolationMode.THREAD_POOL) {
+            try {
+                threadPoolBulkhead = threadPoolBulkheadRegistry.bulkhead(bulkheadName, contextId);
+            } catch (Exception e) {
+                threadPoolBulkhead = threadPoolBulkheadRegistry.bulkhead(bulkheadName);
+            }
+            bulkheadMetrics = threadPoolBulkhead.getMetrics();
+            bulkheadCapacity = threadPoolBulkhead.getBulkheadConfig().getMaxThreadPoolSize()
+                    + threadPoolBulkhead.getBulkheadConfig().getQueueCapacity();
+        } else {
+            try {
+                bulkhead = bulkheadRegistry.bulkhead(bulkheadName, contextId);
+            } catch (Exception e) {
+                bulkhead = bulkheadRegistry.bulkhead(bulkheadName);
+            }
+            bulkheadMetrics = bulkhead.getMetrics();
+            bulkheadCapacity = bulkhead.getBulkheadConfig().getMaxConcurrentCalls();
+        }
+
+        //保持traceId，信号量隔离在调用线程执行，span 本来就在作用域中，重复设置没有影响
         Span span = tracer.currentSpan();
-        ThreadPoolBulkhead finalThreadPoolBulkhead = threadPoolBulkhead;
         CircuitBreaker finalCircuitBreaker = circuitBreaker;
-        Supplier<CompletionStage<Response>> completionStageSupplier = ThreadPoolBulkhead.decorateSupplier(threadPoolBulkhead,
-                OpenfeignUtil.decorateSupplier(circuitBreaker, () -> {
-                    try (Tracer.SpanInScope cleared = tracer.withSpanInScope(span)) {
-                        log.info("call url: {} -> {}, ThreadPoolStats({}): {}, CircuitBreakStats({}): {}",
-                                request.httpMethod(),
-                                request.url(),
-                                serviceInstanceId,
-                                JSON.toJSONString(finalThreadPoolBulkhead.getMetrics()),
-                                serviceInstanceMethodId,
-                                JSON.toJSONString(finalCircuitBreaker.getMetrics())
-                        );
-                        Response execute = apacheHttpClient.execute(request, options);
-                        log.info("response: {} - {}", execute.status(), execute.reason());
-                        return execute;
-                    } catch (IOException e) {
-                        throw new CompletionException(e);
-                    }
-                })
-        );
+        Supplier<Response> responseSupplier = OpenfeignUtil.decorateSupplier(circuitBreaker, () -> {
+            try (Tracer.SpanInScope cleared = tracer.withSpanInScope(span)) {
+                log.info("call url: {} -> {}, BulkheadStats({}): {}, CircuitBreakStats({}): {}",
+                        request.httpMethod(),
+                        request.url(),
+                        serviceInstanceId,
+                        JSON.toJSONString(bulkheadMetrics),
+                        serviceInstanceMethodId,
+                        JSON.toJSONString(finalCircuitBreaker.getMetrics())
+                );
+                Response execute = apacheHttpClient.execute(request, clampedOptions);
+                log.info("response: {} - {}", execute.status(), execute.reason());
+                return execute;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
 
         ServiceInstance serviceInstance = getServiceInstance(request);
+        //自适应并发限制，实例变慢的时候限制跟着缩小，超过限制直接返回，不在线程池中排队，重试会换一个实例
+        //限制器和隔离使用同一个名称，最大限制就是隔离的容量，获取到许可的请求一定能进入隔离，隔离满了的拒绝只会在没有开启自适应并发限制的时候出现
+        AdaptiveConcurrencyLimiter limiter = null;
+        int inflight = 0;
+        if (adaptiveConcurrencyLimiterRegistry != null) {
+            limiter = adaptiveConcurrencyLimiterRegistry.limiter(bulkheadName, bulkheadCapacity);
+            inflight = limiter.tryAcquire();
+            if (inflight < 0) {
+                return Response.builder()
+                        .request(request)
+                        .status(SpecialHttpStatus.BULKHEAD_FULL.getValue())
+                        .reason("adaptive concurrency limit " + limiter.getLimit() + " of " + limiter.getName() + " exceeded")
+                        .requestTemplate(request.requestTemplate()).build();
+            }
+        }
+        long startNanos = System.nanoTime();
+        //请求没有发出去的时候不记录响应时间
+        boolean sent = true;
         try {
-            Response response = Try.ofSupplier(completionStageSupplier).get().toCompletableFuture().join();
-            return response;
+            return isolate(threadPoolBulkhead, bulkhead, responseSupplier);
         } catch (BulkheadFullException e) {
+            sent = false;
             //线程池限流异常
             return Response.builder()
                     .request(request)
                     .status(SpecialHttpStatus.BULKHEAD_FULL.getValue())
                     .reason(e.getLocalizedMessage())
                     .requestTemplate(request.requestTemplate()).build();
+        } catch (CallNotPermittedException e) {
+            //信号量隔离在调用线程执行，断路器打开的异常不会被封装
+            sent = false;
+            return Response.builder()
+                    .request(request)
+                    .status(SpecialHttpStatus.CIRCUIT_BREAKER_ON.getValue())
+                    .reason(e.getLocalizedMessage())
+                    .requestTemplate(request.requestTemplate()).build();
         } catch (CompletionException e) {
             //内部抛出的所有异常都被封装了一层 CompletionException，所以这里需要取出里面的 Exception
             Throwable cause = e.getCause();
             //对于断路器打开，返回对应特殊的错误码
             if (cause instanceof CallNotPermittedException) {
+                sent = false;
                 return Response.builder()
                         .request(request)
                         .status(SpecialHttpStatus.CIRCUIT_BREAKER_ON.getValue())
@@ -147,7 +303,45 @@ public class Resilience4jFeignClient implements Client {
                 }
             }
             throw e;
+        } finally {
+            if (limiter != null) {
+                if (sent) {
+                    limiter.onSample(System.nanoTime() - startNanos, inflight);
+                } else {
+                    limiter.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 按照隔离方式执行请求，线程池以及虚拟线程中抛出的异常会被封装成 CompletionException
+     */
+    private Response isolate(ThreadPoolBulkhead threadPoolBulkhead, Bulkhead bulkhead, Supplier<Response> responseSupplier) {
+        switch (isolationMode) {
+            case SEMAPHORE:
+                return Bulkhead.decorateSupplier(bulkhead, responseSupplier).get();
+            case VIRTUAL_THREAD:
+                bulkhead.acquirePermission();
+                try {
+                    return CompletableFuture.supplyAsync(responseSupplier, virtualThreadExecutor).join();
+                } finally {
+                    bulkhead.onComplete();
+                }
+            default:
+                Supplier<CompletionStage<Response>> completionStageSupplier = ThreadPoolBulkhead.decorateSupplier(threadPoolBulkhead, responseSupplier);
+                return Try.ofSupplier(completionStageSupplier).get().toCompletableFuture().join();
+        }
+    }
+
+    private static Request.Options clampOptions(Request.Options options, long remaining) {
+        if (remaining >= options.connectTimeoutMillis() && remaining >= options.readTimeoutMillis()) {
+            return options;
         }
+        return new Request.Options(
+                RequestDeadline.clamp(options.connectTimeoutMillis(), remaining), TimeUnit.MILLISECONDS,
+                RequestDeadline.clamp(options.readTimeoutMillis(), remaining), TimeUnit.MILLISECONDS,
+                options.isFollowRedirects());
     }
 
     private ServiceInstance getServiceInstance(Request request) throws MalformedURLException {
@@ -0,0 +1,38 @@
+package com.syrobin.cloud.webmvc.feign;
+
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
+import feign.InvocationHandlerFactory;
+import feign.Target;
+import io.github.resilience4j.feign.FeignDecorator;
+import io.vavr.CheckedFunction1;
+
+import java.lang.reflect.Method;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 在所有 resilience4j 装饰器（重试、fallback）里面记录每次成功的调用，增加 {@link RetryBudget} 的重试预算。
+ * 放在里面是因为 fallback 会把失败的调用变成正常返回，不能算作成功
+ * @date 2026-10-18 20:50
+ */
+public class RetryBudgetFeignDecorator implements FeignDecorator {
+
+    private final RetryBudget retryBudget;
+    private final FeignDecorator delegate;
+
+    public RetryBudgetFeignDecorator(RetryBudget retryBudget, FeignDecorator delegate) {
+        this.retryBudget = retryBudget;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public CheckedFunction1<Object[], Object> decorate(CheckedFunction1<Object[], Object> invocationCall, Method method,
+                                                       InvocationHandlerFactory.MethodHandler methodHandler, Target<?> target) {
+        return delegate.decorate(args -> {
+            //非 2xx 的响应会被 ErrorDecoder 转换成异常，正常返回就是成功
+            Object result = invocationCall.apply(args);
+            retryBudget.onSuccess();
+            return result;
+        }, method, methodHandler, target);
+    }
+}
@@ -0,0 +1,36 @@
+package com.syrobin.cloud.webmvc.feign;
+
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
+import feign.RetryableException;
+import io.github.resilience4j.core.IntervalBiFunction;
+import io.vavr.control.Either;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: 在重试间隔函数里面扣减 {@link RetryBudget}，预算用完的时候直接抛出这次的异常，不再重试
+ * <p>
+ * 不能放在 retryOnException 里面：resilience4j 先调用异常判断，再判断是否已经达到最大重试次数，
+ * 最后一次失败之后也会经过异常判断，放在那里每次调用都会多扣减一次预算。
+ * 间隔函数只在判断还会重试之后才会调用，所以这里扣减的预算就是真正的重试次数
+ * @date 2026-10-17 10:20
+ */
+public class RetryBudgetIntervalBiFunction<T> implements IntervalBiFunction<T> {
+
+    private final RetryBudget retryBudget;
+    private final IntervalBiFunction<T> delegate;
+
+    public RetryBudgetIntervalBiFunction(RetryBudget retryBudget, IntervalBiFunction<T> delegate) {
+        this.retryBudget = retryBudget;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Long apply(Integer numOfAttempts, Either<Throwable, T> either) {
+        //只有 RetryableException 会重试，参考 DefaultOpenFeignConfiguration 中的异常判断；根据返回结果的重试不扣减预算
+        if (either.isLeft() && either.getLeft() instanceof RetryableException && !retryBudget.tryRetry()) {
+            throw (RetryableException) either.getLeft();
+        }
+        return delegate.apply(numOfAttempts, either);
+    }
+}
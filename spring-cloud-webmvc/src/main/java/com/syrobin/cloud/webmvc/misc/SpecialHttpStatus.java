@@ -20,6 +20,14 @@ public enum SpecialHttpStatus {
      * 不能重试的异常
      */
     NOT_RETRYABLE_IO_EXCEPTION(583),
+    /**
+     * 线程隔离满了，请求没有发出去
+     */
+    BULKHEAD_FULL(584),
+    /**
+     * 已经过了调用链的截止时间，请求没有发出去，也不能重试
+     */
+    DEADLINE_EXCEEDED(585),
     ;
     private int value;
 
@@ -1,5 +1,7 @@
 package org.springframework.cloud.openfeign.loadbalancer;
 
+import com.syrobin.cloud.commons.loadbalancer.AttemptContext;
+import com.syrobin.cloud.webmvc.feign.AttemptScopedFeignDecorator;
 import feign.Client;
 import feign.Request;
 import feign.Response;
@@ -87,8 +89,13 @@ public class FeignBlockingLoadBalancerClientExtend implements Client {
 	static RequestData buildRequestData(Request request) {
 		HttpHeaders requestHeaders = new HttpHeaders();
 		request.headers().forEach((key, value) -> requestHeaders.put(key, new ArrayList<>(value)));
+		//同时放入这次调用的 AttemptContext，负载均衡器用它排除重试之前调用过的实例
+		AttemptContext attemptContext = AttemptScopedFeignDecorator.current();
+		Map<String, Object> attributes = attemptContext == null
+				? Map.of(REQUEST_TEMPLATE, request.requestTemplate())
+				: Map.of(REQUEST_TEMPLATE, request.requestTemplate(), AttemptContext.ATTRIBUTE, attemptContext);
 		return new RequestData(HttpMethod.resolve(request.httpMethod().name()), URI.create(request.url()),
-				requestHeaders, null, Map.of(REQUEST_TEMPLATE, request.requestTemplate()));
+				requestHeaders, null, attributes);
 	}
 
 	public static final String REQUEST_TEMPLATE = "request_template";
@@ -3,6 +3,8 @@ package com.syrobin.cloud.webmvc.feign;
 import brave.Span;
 import brave.Tracer;
 import com.google.common.collect.Sets;
+import com.syrobin.cloud.commons.loadbalancer.AttemptTable;
+import com.syrobin.cloud.commons.loadbalancer.ServiceInstanceSnapshot;
 import com.syrobin.cloud.commons.loadbalancer.TracedCircuitBreakerRoundRobinLoadBalancer;
 import feign.Request;
 import feign.RetryableException;
@@ -43,7 +45,6 @@ import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.mockito.Mockito.when;
@@ -189,6 +190,29 @@ public class OpenFeignClientTest {
         }
     }
 
+    /**
+     * 每次逻辑调用有自己的 AttemptContext，调用结束的时候会删除 AttemptTable 中的记录，调用之后按照 key 读取不到尝试次数，
+     * 所以替换为 spy，统计负载均衡器记录选择结果（record）的次数，每次选择实例记录一次
+     */
+    private AttemptTable spyAttemptTable(String serviceId) {
+        TracedCircuitBreakerRoundRobinLoadBalancer loadBalancerClientFactoryInstance
+                = (TracedCircuitBreakerRoundRobinLoadBalancer) loadBalancerClientFactory.getInstance(serviceId);
+        AttemptTable attemptTable = loadBalancerClientFactoryInstance.getAttemptTable();
+        if (!Mockito.mockingDetails(attemptTable).isSpy()) {
+            attemptTable = Mockito.spy(new AttemptTable());
+            loadBalancerClientFactoryInstance.setAttemptTable(attemptTable);
+        }
+        return attemptTable;
+    }
+
+    /**
+     * 验证上一次调用之后负载均衡器选择了几次实例，并清空统计
+     */
+    private static void assertAttempts(AttemptTable attemptTable, int attempts) {
+        Mockito.verify(attemptTable, Mockito.times(attempts)).record(Mockito.anyLong(), Mockito.any(ServiceInstanceSnapshot.class), Mockito.anyInt());
+        Mockito.clearInvocations(attemptTable);
+    }
+
     /**
      * 验证配置生效
      */
@@ -198,60 +222,52 @@ public class OpenFeignClientTest {
         try (Tracer.SpanInScope cleared = tracer.withSpanInScope(span)) {
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            long l = span.context().traceId();
-            TracedCircuitBreakerRoundRobinLoadBalancer loadBalancerClientFactoryInstance
-                    = (TracedCircuitBreakerRoundRobinLoadBalancer) loadBalancerClientFactory.getInstance(TEST_SERVICE_1);
-            AtomicInteger atomicInteger = loadBalancerClientFactoryInstance.getPositionCache().get(l);
-            int start = atomicInteger.get();
+            AttemptTable attemptTable = spyAttemptTable(TEST_SERVICE_1);
+            Mockito.clearInvocations(attemptTable);
             try {
                 //get 方法会重试
                 testService1Client.testGetRetryStatus500();
             } catch (Exception e) {
             }
-            Assertions.assertEquals(DEFAULT_RETRY, atomicInteger.get() - start);
+            assertAttempts(attemptTable, DEFAULT_RETRY);
 
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            start = atomicInteger.get();
             try {
                 //post 方法不会重试
                 testService1Client.testPostRetryStatus500();
             } catch (Exception e) {
             }
-            Assertions.assertEquals(atomicInteger.get() - start, 1);
+            assertAttempts(attemptTable, 1);
 
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            loadBalancerClientFactoryInstance
-                    = (TracedCircuitBreakerRoundRobinLoadBalancer) loadBalancerClientFactory.getInstance(TEST_SERVICE_2);
-            atomicInteger = loadBalancerClientFactoryInstance.getPositionCache().get(l);
-            start = atomicInteger.get();
+            attemptTable = spyAttemptTable(TEST_SERVICE_2);
+            Mockito.clearInvocations(attemptTable);
             try {
                 //get 方法会重试，针对 testservice 2 我们配置了不同的重试次数
                 testService2Client.testGetRetryStatus500();
             } catch (Exception e) {
             }
-            Assertions.assertEquals(atomicInteger.get() - start, TEST_SERVICE_2_RETRY);
+            assertAttempts(attemptTable, TEST_SERVICE_2_RETRY);
 
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            start = atomicInteger.get();
             try {
                 //默认 post 不会重试
                 testService2Client.testPostRetryStatus500();
             } catch (Exception e) {
             }
-            Assertions.assertEquals(atomicInteger.get() - start, 1);
+            assertAttempts(attemptTable, 1);
 
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            start = atomicInteger.get();
             try {
                 //带了注解，会重试
                 testService2Client.testPostWithAnnotationRetryStatus500();
             } catch (Exception e) {
             }
-            Assertions.assertEquals(atomicInteger.get() - start, TEST_SERVICE_2_RETRY);
+            assertAttempts(attemptTable, TEST_SERVICE_2_RETRY);
         }
     }
 
@@ -631,50 +647,42 @@ public class OpenFeignClientTest {
         try (Tracer.SpanInScope cleared = tracer.withSpanInScope(span)) {
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            long l = span.context().traceId();
-            TracedCircuitBreakerRoundRobinLoadBalancer loadBalancerClientFactoryInstance
-                    = (TracedCircuitBreakerRoundRobinLoadBalancer) loadBalancerClientFactory.getInstance(TEST_SERVICE_1);
-            AtomicInteger atomicInteger = loadBalancerClientFactoryInstance.getPositionCache().get(l);
-            int start = atomicInteger.get();
+            AttemptTable attemptTable = spyAttemptTable(TEST_SERVICE_1);
+            Mockito.clearInvocations(attemptTable);
             //不超时，则不会有重试，也不会有异常导致 fallback
             String s = testService1Client.testGetDelayOneSecond();
             Assertions.assertNotEquals(s, "fallback");
             //没有重试，只会请求一次
-            Assertions.assertEquals(1, atomicInteger.get() - start);
+            assertAttempts(attemptTable, 1);
 
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            start = atomicInteger.get();
             //超时，并且方法可以重试，所以会请求 3 次
             s = testService1Client.testGetDelayThreeSeconds();
             Assertions.assertEquals(s, "fallback");
-            Assertions.assertEquals(DEFAULT_RETRY, atomicInteger.get() - start);
+            assertAttempts(attemptTable, DEFAULT_RETRY);
 
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            start = atomicInteger.get();
             //超时
             s = testService1Client.testPostDelayThreeSeconds();
             Assertions.assertEquals(s, "fallback");
             //因为 post 方法默认不重试，所以只有一次
-            Assertions.assertEquals(1, atomicInteger.get() - start);
+            assertAttempts(attemptTable, 1);
 
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            loadBalancerClientFactoryInstance
-                    = (TracedCircuitBreakerRoundRobinLoadBalancer) loadBalancerClientFactory.getInstance(TEST_SERVICE_2);
-            atomicInteger = loadBalancerClientFactoryInstance.getPositionCache().get(l);
-            start = atomicInteger.get();
+            attemptTable = spyAttemptTable(TEST_SERVICE_2);
+            Mockito.clearInvocations(attemptTable);
             //不超时
             s = testService2Client.testGetDelayOneSecond();
-            Assertions.assertEquals(1, atomicInteger.get() - start);
+            assertAttempts(attemptTable, 1);
 
             //防止断路器影响
             circuitBreakerRegistry.getAllCircuitBreakers().asJava().forEach(CircuitBreaker::reset);
-            start = atomicInteger.get();
             //验证不同微服务配置是否生效，对于 testService2Client 不超时
             s = testService2Client.testGetDelayThreeSeconds();
-            Assertions.assertEquals(1, atomicInteger.get() - start);
+            assertAttempts(attemptTable, 1);
         }
     }
 }
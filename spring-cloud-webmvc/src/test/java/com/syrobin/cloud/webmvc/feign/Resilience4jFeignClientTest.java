@@ -0,0 +1,310 @@
+package com.syrobin.cloud.webmvc.feign;
+
+import brave.Tracing;
+import com.syrobin.cloud.commons.resilience4j.AdaptiveConcurrencyLimiter;
+import com.syrobin.cloud.commons.resilience4j.AdaptiveConcurrencyLimiterRegistry;
+import com.syrobin.cloud.commons.resilience4j.RequestDeadline;
+import com.syrobin.cloud.commons.resilience4j.Resilience4jUtil;
+import com.syrobin.cloud.webmvc.misc.SpecialHttpStatus;
+import feign.MethodMetadata;
+import feign.Request;
+import feign.RequestTemplate;
+import feign.Response;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadConfig;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.GetMapping;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: Resilience4jFeignClient 单元测试，不发送真实请求，ApacheHttpClient 使用 mock
+ * @date 2026-10-19 11:00
+ */
+public class Resilience4jFeignClientTest {
+
+    private static final String CONTEXT_ID = "testServiceClient";
+    private static final String URL = "http://10.238.0.1:8080/anything";
+
+    @FeignClient(name = "testService", contextId = CONTEXT_ID)
+    public interface TestClient {
+        @GetMapping("/anything")
+        String anything();
+    }
+
+    private final ApacheHttpClient apacheHttpClient = Mockito.mock(ApacheHttpClient.class);
+    //每个实例只允许一个并发请求，并且不等待，方便验证隔离已满
+    private final BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(
+            BulkheadConfig.custom().maxConcurrentCalls(1).maxWaitDuration(Duration.ZERO).build());
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    private final AdaptiveConcurrencyLimiterRegistry adaptiveConcurrencyLimiterRegistry = new AdaptiveConcurrencyLimiterRegistry();
+    private final ExecutorService caller = Executors.newSingleThreadExecutor();
+    private Resilience4jFeignClient client;
+
+    @AfterEach
+    public void tearDown() {
+        caller.shutdownNow();
+        if (client != null) {
+            client.destroy();
+        }
+    }
+
+    /**
+     * 虚拟线程隔离在 JDK 21 以上使用真正的虚拟线程，否则使用普通线程池代替，验证的是同一段隔离逻辑
+     */
+    private Resilience4jFeignClient client(IsolationMode isolationMode) {
+        ExecutorService executor = null;
+        if (isolationMode == IsolationMode.VIRTUAL_THREAD) {
+            executor = Resilience4jFeignClient.newVirtualThreadExecutor();
+            if (executor == null) {
+                executor = Executors.newCachedThreadPool();
+            }
+        }
+        client = new Resilience4jFeignClient(apacheHttpClient, ThreadPoolBulkheadRegistry.ofDefaults(), bulkheadRegistry,
+                circuitBreakerRegistry, Tracing.newBuilder().build().tracer(), adaptiveConcurrencyLimiterRegistry,
+                isolationMode, executor);
+        Assertions.assertEquals(isolationMode, client.getIsolationMode());
+        return client;
+    }
+
+    static Request request(Map<String, Collection<String>> headers) throws Exception {
+        MethodMetadata methodMetadata = Mockito.mock(MethodMetadata.class);
+        when(methodMetadata.method()).thenReturn(TestClient.class.getMethod("anything"));
+        RequestTemplate requestTemplate = new RequestTemplate();
+        requestTemplate.methodMetadata(methodMetadata);
+        return Request.create(Request.HttpMethod.GET, URL, headers, null, StandardCharsets.UTF_8, requestTemplate);
+    }
+
+    private static Response ok(Request request) {
+        return Response.builder().request(request).status(200).build();
+    }
+
+    private AdaptiveConcurrencyLimiter limiter() {
+        return adaptiveConcurrencyLimiterRegistry.limiter(CONTEXT_ID + ":10.238.0.1:8080");
+    }
+
+    private Bulkhead bulkhead() {
+        return bulkheadRegistry.bulkhead(CONTEXT_ID + ":10.238.0.1:8080");
+    }
+
+    @Test
+    public void testSemaphoreBulkheadFull() throws Exception {
+        testBulkheadFull(client(IsolationMode.SEMAPHORE));
+    }
+
+    @Test
+    public void testVirtualThreadBulkheadFull() throws Exception {
+        testBulkheadFull(client(IsolationMode.VIRTUAL_THREAD));
+    }
+
+    private void testBulkheadFull(Resilience4jFeignClient client) throws Exception {
+        Request request = request(Map.of());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(apacheHttpClient.execute(any(), any())).thenAnswer(invocation -> {
+            entered.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return ok(request);
+        });
+        CompletableFuture<Response> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.execute(request, new Request.Options());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, caller);
+        Assertions.assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        //同一个实例的并发已经被占满，请求不会发出去；自适应并发限制不超过信号量的容量，由限制器直接拒绝
+        Response rejected = client.execute(request, new Request.Options());
+        Assertions.assertEquals(SpecialHttpStatus.BULKHEAD_FULL.getValue(), rejected.status());
+        Mockito.verify(apacheHttpClient, Mockito.times(1)).execute(any(), any());
+        Assertions.assertEquals(1, limiter().getLimit());
+        Assertions.assertEquals(1, limiter().getRejected());
+        //被拒绝的请求没有占用许可，只剩下正在执行的请求
+        Assertions.assertEquals(1, limiter().getInflight());
+
+        release.countDown();
+        Assertions.assertEquals(200, first.get(10, TimeUnit.SECONDS).status());
+        Assertions.assertEquals(0, limiter().getInflight());
+        Assertions.assertEquals(1, bulkhead().getMetrics().getAvailableConcurrentCalls());
+    }
+
+    @Test
+    public void testThreadPoolLimitedByCapacity() throws Exception {
+        //一个线程，队列长度为 1，同时最多容纳 2 个请求
+        ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry = ThreadPoolBulkheadRegistry.of(ThreadPoolBulkheadConfig.custom()
+                .coreThreadPoolSize(1).maxThreadPoolSize(1).queueCapacity(1).build());
+        client = new Resilience4jFeignClient(apacheHttpClient, threadPoolBulkheadRegistry, circuitBreakerRegistry,
+                Tracing.newBuilder().build().tracer(), adaptiveConcurrencyLimiterRegistry);
+        Request request = request(Map.of());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(apacheHttpClient.execute(any(), any())).thenAnswer(invocation -> {
+            entered.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return ok(request);
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<?>[] running = new CompletableFuture[2];
+            for (int i = 0; i < running.length; i++) {
+                running[i] = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return client.execute(request, new Request.Options());
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, callers);
+            }
+            Assertions.assertTrue(entered.await(10, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (limiter().getInflight() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            //限制器的最大限制是线程池的容量，超过的请求由限制器拒绝，不会进入线程池
+            Assertions.assertEquals(2, limiter().getLimit());
+            Response rejected = client.execute(request, new Request.Options());
+            Assertions.assertEquals(SpecialHttpStatus.BULKHEAD_FULL.getValue(), rejected.status());
+            Assertions.assertTrue(rejected.reason().contains("adaptive concurrency limit"), rejected.reason());
+            Assertions.assertEquals(1, limiter().getRejected());
+
+            release.countDown();
+            for (CompletableFuture<?> future : running) {
+                Assertions.assertEquals(200, ((Response) future.get(10, TimeUnit.SECONDS)).status());
+            }
+            Assertions.assertEquals(0, limiter().getInflight());
+            Assertions.assertTrue(limiter().getLimit() <= 2);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSemaphoreCircuitBreakerOpen() throws Exception {
+        testCircuitBreakerOpen(client(IsolationMode.SEMAPHORE));
+    }
+
+    @Test
+    public void testVirtualThreadCircuitBreakerOpen() throws Exception {
+        testCircuitBreakerOpen(client(IsolationMode.VIRTUAL_THREAD));
+    }
+
+    private void testCircuitBreakerOpen(Resilience4jFeignClient client) throws Exception {
+        String circuitBreakerName = Resilience4jUtil.getServiceInstanceMethodId(new URL(URL), TestClient.class.getMethod("anything"));
+        circuitBreakerRegistry.circuitBreaker(circuitBreakerName).transitionToOpenState();
+
+        Response response = client.execute(request(Map.of()), new Request.Options());
+        Assertions.assertEquals(SpecialHttpStatus.CIRCUIT_BREAKER_ON.getValue(), response.status());
+        Mockito.verify(apacheHttpClient, Mockito.never()).execute(any(), any());
+        //断路器打开的请求没有发出去，自适应并发限制以及信号量的许可都要释放
+        Assertions.assertEquals(0, limiter().getInflight());
+        Assertions.assertEquals(1, bulkhead().getMetrics().getAvailableConcurrentCalls());
+    }
+
+    @Test
+    public void testIsolationThread() throws Exception {
+        Request request = request(Map.of());
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        when(apacheHttpClient.execute(any(), any())).thenAnswer(invocation -> {
+            thread.set(Thread.currentThread());
+            return ok(request);
+        });
+        //信号量隔离在调用线程执行
+        Assertions.assertEquals(200, client(IsolationMode.SEMAPHORE).execute(request, new Request.Options()).status());
+        Assertions.assertSame(Thread.currentThread(), thread.get());
+        Assertions.assertEquals(0, limiter().getInflight());
+        client.destroy();
+
+        //虚拟线程隔离在另一个线程执行，调用线程等待结果
+        Assertions.assertEquals(200, client(IsolationMode.VIRTUAL_THREAD).execute(request, new Request.Options()).status());
+        Assertions.assertNotSame(Thread.currentThread(), thread.get());
+        Assertions.assertEquals(0, limiter().getInflight());
+        Assertions.assertEquals(1, bulkhead().getMetrics().getAvailableConcurrentCalls());
+    }
+
+    @Test
+    public void testDeadlineExceeded() throws Exception {
+        String deadline = String.valueOf(System.currentTimeMillis() - 100);
+        Response response = client(IsolationMode.SEMAPHORE).execute(
+                request(Map.of(RequestDeadline.HEADER, List.of(deadline))), new Request.Options());
+        //已经过了截止时间的请求不会发出去，也不占用任何许可
+        Assertions.assertEquals(SpecialHttpStatus.DEADLINE_EXCEEDED.getValue(), response.status());
+        Mockito.verify(apacheHttpClient, Mockito.never()).execute(any(), any());
+        Assertions.assertEquals(0, limiter().getInflight());
+        Assertions.assertEquals(1, bulkhead().getMetrics().getAvailableConcurrentCalls());
+    }
+
+    @Test
+    public void testOptionsClampedToDeadline() throws Exception {
+        when(apacheHttpClient.execute(any(), any())).thenAnswer(invocation -> ok(invocation.getArgument(0)));
+        Request.Options options = new Request.Options(10, TimeUnit.SECONDS, 60, TimeUnit.SECONDS, false);
+        ArgumentCaptor<Request.Options> captor = ArgumentCaptor.forClass(Request.Options.class);
+        Resilience4jFeignClient client = client(IsolationMode.SEMAPHORE);
+
+        //没有截止时间，使用原来的超时
+        Assertions.assertEquals(200, client.execute(request(Map.of()), options).status());
+        //剩余时间比超时长，使用原来的超时
+        String later = String.valueOf(System.currentTimeMillis() + 120_000);
+        Assertions.assertEquals(200, client.execute(request(Map.of(RequestDeadline.HEADER, List.of(later))), options).status());
+        //剩余时间比超时短，缩短到剩余时间
+        String earlier = String.valueOf(System.currentTimeMillis() + 30_000);
+        Assertions.assertEquals(200, client.execute(request(Map.of(RequestDeadline.HEADER, List.of(earlier))), options).status());
+
+        Mockito.verify(apacheHttpClient, Mockito.times(3)).execute(any(), captor.capture());
+        List<Request.Options> captured = captor.getAllValues();
+        Assertions.assertSame(options, captured.get(0));
+        Assertions.assertSame(options, captured.get(1));
+        Request.Options clamped = captured.get(2);
+        Assertions.assertTrue(clamped.readTimeoutMillis() > 20_000 && clamped.readTimeoutMillis() <= 30_000, String.valueOf(clamped.readTimeoutMillis()));
+        //比剩余时间短的超时不变
+        Assertions.assertEquals(10_000, clamped.connectTimeoutMillis());
+        Assertions.assertEquals(options.isFollowRedirects(), clamped.isFollowRedirects());
+    }
+
+    @Test
+    public void testVirtualThreadFallbackAndDestroy() {
+        //不支持虚拟线程的时候退化为信号量隔离
+        client = new Resilience4jFeignClient(apacheHttpClient, ThreadPoolBulkheadRegistry.ofDefaults(), bulkheadRegistry,
+                circuitBreakerRegistry, Tracing.newBuilder().build().tracer(), null, IsolationMode.VIRTUAL_THREAD, null);
+        Assertions.assertEquals(IsolationMode.SEMAPHORE, client.getIsolationMode());
+        client.destroy();
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        client = new Resilience4jFeignClient(apacheHttpClient, ThreadPoolBulkheadRegistry.ofDefaults(), bulkheadRegistry,
+                circuitBreakerRegistry, Tracing.newBuilder().build().tracer(), null, IsolationMode.VIRTUAL_THREAD, executor);
+        client.destroy();
+        Assertions.assertTrue(executor.isShutdown());
+
+        //虚拟线程隔离需要信号量
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Resilience4jFeignClient(apacheHttpClient,
+                ThreadPoolBulkheadRegistry.ofDefaults(), null, circuitBreakerRegistry, Tracing.newBuilder().build().tracer(),
+                null, IsolationMode.SEMAPHORE, null));
+    }
+}
@@ -0,0 +1,73 @@
+package com.syrobin.cloud.webmvc.feign;
+
+import com.syrobin.cloud.commons.resilience4j.RetryBudget;
+import feign.Request;
+import feign.RetryableException;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author syrobin
+ * @version v1.0
+ * @description: RetryBudgetIntervalBiFunction 单元测试，和 DefaultOpenFeignConfiguration 一样组装 Retry
+ * @date 2026-10-17 10:40
+ */
+public class RetryBudgetIntervalBiFunctionTest {
+
+    private static final Request REQUEST = Request.create(Request.HttpMethod.GET, "http://10.238.0.1:8080/anything",
+            Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+
+    private static Retry retry(RetryBudget retryBudget) {
+        RetryConfig retryConfig = RetryConfig.custom().maxAttempts(3).waitDuration(Duration.ofMillis(1)).build();
+        return Retry.of("test", RetryConfig.from(retryConfig)
+                .retryOnException(throwable -> throwable instanceof RetryableException)
+                .intervalFunction(null)
+                .intervalBiFunction(new RetryBudgetIntervalBiFunction<>(retryBudget, retryConfig.getIntervalBiFunction()))
+                .build());
+    }
+
+    private static int call(Retry retry) {
+        AtomicInteger attempts = new AtomicInteger();
+        Supplier<Object> supplier = Retry.decorateSupplier(retry, () -> {
+            attempts.incrementAndGet();
+            throw new RetryableException(500, "test", Request.HttpMethod.GET, null, REQUEST);
+        });
+        Assertions.assertThrows(RetryableException.class, supplier::get);
+        return attempts.get();
+    }
+
+    @Test
+    public void testLastFailureNotCharged() {
+        //每秒保底 1 次，窗口内一共 10 次重试
+        RetryBudget retryBudget = new RetryBudget("test", 0, 1);
+        Retry retry = retry(retryBudget);
+        //最大 3 次尝试，每次调用只重试 2 次，最后一次失败不扣减预算
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(3, call(retry));
+        }
+        Assertions.assertEquals(10, retryBudget.getRetries());
+        Assertions.assertEquals(0, retryBudget.getRejected());
+        //预算用完，不再重试
+        Assertions.assertEquals(1, call(retry));
+        Assertions.assertEquals(1, retryBudget.getRejected());
+    }
+
+    @Test
+    public void testNotRetryableNotCharged() {
+        RetryBudget retryBudget = new RetryBudget("test", 0, 1);
+        Supplier<Object> supplier = Retry.decorateSupplier(retry(retryBudget), () -> {
+            throw new IllegalStateException("test");
+        });
+        Assertions.assertThrows(IllegalStateException.class, supplier::get);
+        Assertions.assertEquals(0, retryBudget.getRetries());
+        Assertions.assertEquals(0, retryBudget.getRejected());
+    }
+}